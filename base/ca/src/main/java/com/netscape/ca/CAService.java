@@ -82,6 +82,7 @@ import com.netscape.certsrv.profile.EProfileException;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IService;
 import com.netscape.certsrv.request.RequestId;
+import com.netscape.certsrv.util.IStatsSubsystem;
 import com.netscape.cms.logging.Logger;
 import com.netscape.cms.logging.SignedAuditLogger;
 import com.netscape.cms.profile.common.Profile;
@@ -296,6 +297,9 @@ public class CAService implements ICAService, IService {
             RemoteAuthority remauthority =
                     new RemoteAuthority(host, port, uri, timeout);
 
+            // the remote authority must be able to decode compact messages
+            remauthority.setCompactEncoding(config.getBoolean("compactEncoding", false));
+
             // Changed by beomsuk
             //connector =
             //	new HttpConnector(mCA, nickname, remauthority, resendInterval);
@@ -782,7 +786,9 @@ public class CAService implements ICAService, IService {
 
         // set issuer, serial number
         try {
+            long startTime = System.currentTimeMillis();
             BigInteger serialNo = cr.getNextSerialNumber();
+            recordStage("serial_allocation", startTime);
             logger.info("CAService: Signing cert 0x" + serialNo.toString(16));
 
             certi.set(X509CertInfo.SERIAL_NUMBER, new CertificateSerialNumber(serialNo));
@@ -851,7 +857,9 @@ public class CAService implements ICAService, IService {
         ctEngine.process(certi, mCA, aid, algname);
 
         logger.debug("CAService: issueX509Cert: About to ca.sign cert.");
+        long startTime = System.currentTimeMillis();
         cert = ca.sign(certi, algname);
+        recordStage("signing", startTime);
         return cert;
     }
 
@@ -899,7 +907,9 @@ public class CAService implements ICAService, IService {
                 metaInfo.set(CertRecord.META_OLD_CERT, oldSerialNo.toString());
             }
 
+            long startTime = System.currentTimeMillis();
             cr.addCertificateRecord(new CertRecord(newSerialNo, cert, metaInfo));
+            recordStage("cert_record_write", startTime);
 
             if (renewal) {
 
@@ -975,6 +985,18 @@ public class CAService implements ICAService, IService {
         }
     }
 
+    /**
+     * Records the time a stage of the request processed by the
+     * current thread took.
+     */
+    private void recordStage(String stage, long startTime) {
+        CAEngine engine = CAEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.recordStage(stage, startTime);
+        }
+    }
+
     /**
      * revoke cert, check fields in crlentry, etc.
      */
@@ -2002,6 +2024,16 @@ class serviceGetRevocationInfo implements IServant {
                 }
             }
         }
+
+        // let the requestor cache the status until the next CRL update
+        ICRLIssuingPoint crlIssuingPoint = engine.getMasterCRLIssuingPoint();
+        if (crlIssuingPoint != null && crlIssuingPoint.isCRLIssuingPointEnabled()) {
+            Date nextUpdate = crlIssuingPoint.getNextUpdate();
+            if (nextUpdate != null) {
+                request.setExtData(IRequest.CRL_NEXT_UPDATE, Long.toString(nextUpdate.getTime()));
+            }
+        }
+
         return true;
     }
 }
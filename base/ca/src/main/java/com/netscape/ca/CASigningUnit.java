@@ -18,6 +18,10 @@
 package com.netscape.ca;
 
 import java.security.SignatureException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NoSuchTokenException;
@@ -49,6 +53,15 @@ public final class CASigningUnit extends SigningUnit {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CASigningUnit.class);
 
+    public static final String PROP_SIGNER_POOL_SIZE = "signerPoolSize";
+
+    // maximum number of idle signature contexts per algorithm, 0 to disable
+    // the pool; should not exceed the number of sessions the token allows
+    private int mSignerPoolSize;
+
+    // signature contexts initialized with the private key, per algorithm
+    private Map<SignatureAlgorithm, BlockingQueue<Signature>> mSigners = new ConcurrentHashMap<>();
+
     public CASigningUnit() {
     }
 
@@ -114,6 +127,10 @@ public final class CASigningUnit extends SigningUnit {
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            mSignerPoolSize = config.getInteger(PROP_SIGNER_POOL_SIZE, 8);
+            logger.debug("SigningUnit: signer pool size: " + mSignerPoolSize);
+            mSigners.clear();
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -155,12 +172,8 @@ public final class CASigningUnit extends SigningUnit {
             signAlg = checkSigningAlgorithmFromName(algname);
         }
 
-        // XXX use a pool of signers based on alg ?
-        // XXX Map algor. name to id. hack: use hardcoded define for now.
-        logger.info("CASigningUnit: Getting algorithm context for " + algname + " " + signAlg);
-        Signature signer = mToken.getSignatureContext(signAlg);
-
-        signer.initSign(mPrivk);
+        // signature contexts are not returned to the pool on failure
+        Signature signer = getSigner(signAlg);
         signer.update(data);
 
         /* debugging
@@ -179,7 +192,52 @@ public final class CASigningUnit extends SigningUnit {
             throw new SignatureException("SignatureException forced for testing");
         }
 
-        return signer.sign();
+        byte[] signature = signer.sign();
+
+        // after sign() the context is ready to sign again with the same key
+        releaseSigner(signAlg, signer);
+
+        return signature;
+    }
+
+    /**
+     * Returns an idle signature context for the algorithm initialized
+     * with the private key, or creates a new one.
+     */
+    private Signature getSigner(SignatureAlgorithm signAlg) throws Exception {
+
+        BlockingQueue<Signature> signers = mSigners.get(signAlg);
+
+        if (signers != null) {
+            Signature signer = signers.poll();
+            if (signer != null) {
+                return signer;
+            }
+        }
+
+        logger.info("CASigningUnit: Getting algorithm context for " + signAlg);
+        Signature signer = mToken.getSignatureContext(signAlg);
+
+        signer.initSign(mPrivk);
+
+        return signer;
+    }
+
+    /**
+     * Returns a signature context to the pool. The context is discarded
+     * if the pool is full or disabled.
+     */
+    private void releaseSigner(SignatureAlgorithm signAlg, Signature signer) {
+
+        if (mSignerPoolSize <= 0) {
+            return;
+        }
+
+        BlockingQueue<Signature> signers = mSigners.computeIfAbsent(
+                signAlg,
+                k -> new LinkedBlockingQueue<>(mSignerPoolSize));
+
+        signers.offer(signer);
     }
 
     public boolean verify(byte[] data, byte[] signature, String algname) throws Exception {
@@ -3036,6 +3036,12 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
             mNextCRLNumber = mCRLNumber.add(BigInteger.ONE);
             mNextDeltaCRLNumber = mNextCRLNumber;
 
+            // certificates revoked on other clones may still be cached on this
+            // server; the clones themselves are not updated (they don't
+            // generate CRLs) and rely on the interval-based expiry
+            CAEngine engine = CAEngine.getInstance();
+            engine.updateRevocationStatus(mCRLCerts.keySet());
+
             logger.debug("CRLIssuingPoint: Logging CRL Update to transaction log");
             long totalTime = 0;
             long crlTime = 0;
@@ -63,6 +63,7 @@ public class AuthzRealmConstraint extends EnrollConstraint {
                 " value=" + value);
 
         mConfig.getSubStore("params").putString(name, value);
+        clearParams();
     }
 
     public IDescriptor getConfigDescriptor(Locale locale, String name) {
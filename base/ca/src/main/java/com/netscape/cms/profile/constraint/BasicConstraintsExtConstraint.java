@@ -210,6 +210,7 @@ public class BasicConstraintsExtConstraint extends EnrollConstraint {
 
             }
             mConfig.getSubStore("params").putString(name, value);
+            clearParams();
         }
     }
 }
@@ -19,6 +19,7 @@ package com.netscape.cms.profile.constraint;
 
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
@@ -33,6 +34,7 @@ import com.netscape.certsrv.property.EPropertyException;
 import com.netscape.certsrv.property.IDescriptor;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.cms.profile.common.EnrollProfile;
+import com.netscape.cms.profile.common.ProfileParams;
 import com.netscape.cms.profile.def.PolicyDefault;
 
 /**
@@ -50,6 +52,9 @@ public abstract class EnrollConstraint extends PolicyConstraint {
     protected IConfigStore mConfig = null;
     protected Vector<String> mConfigNames = new Vector<String>();
 
+    // parameter values resolved from mConfig
+    private ProfileParams mParams = new ProfileParams();
+
     public EnrollConstraint() {
     }
 
@@ -86,6 +91,8 @@ public abstract class EnrollConstraint extends PolicyConstraint {
         } else {
             mConfig.getSubStore(CONFIG_PARAMS).putString(name, value);
         }
+
+        clearParams();
     }
 
     public String getConfig(String name) {
@@ -101,28 +108,34 @@ public abstract class EnrollConstraint extends PolicyConstraint {
      */
     public String getConfig(String name, String defval) {
 
-        if (mConfig == null) {
-            logger.warn("Error: Missing profile configuration");
-            return null;
-        }
-
-        IConfigStore params = mConfig.getSubStore(CONFIG_PARAMS);
+        Map<String, String> params = getParams();
         if (params == null) {
-            logger.warn("Error: Missing constraint parameters");
             return null;
         }
 
-        try {
-            return params.getString(name, defval);
+        String value = params.get(name);
+        return value == null ? defval : value;
+    }
 
-        } catch (EBaseException e) {
-            logger.warn("EnrollConstraint: " + e.getMessage(), e);
-            return null;
-        }
+    /**
+     * Returns the parameter values in profile configuration. The values
+     * are read once and reused until the parameters are modified.
+     */
+    protected Map<String, String> getParams() {
+        return mParams.get(mConfig);
+    }
+
+    /**
+     * Discards the parameter values read from profile configuration.
+     * This must be called when the parameters are modified.
+     */
+    protected void clearParams() {
+        mParams.clear();
     }
 
     public void init(IConfigStore config) throws EProfileException {
         mConfig = config;
+        clearParams();
     }
 
     public IConfigStore getConfigStore() {
@@ -72,6 +72,7 @@ public class ExtensionConstraint extends EnrollConstraint {
                 }
             }
             mConfig.getSubStore("params").putString(name, value);
+            clearParams();
         }
     }
 
@@ -85,6 +85,7 @@ public class SigningAlgConstraint extends EnrollConstraint {
                 }
             }
             mConfig.getSubStore("params").putString(name, value);
+            clearParams();
         }
     }
 
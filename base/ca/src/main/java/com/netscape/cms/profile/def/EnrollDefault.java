@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -56,6 +57,7 @@ import com.netscape.certsrv.property.EPropertyException;
 import com.netscape.certsrv.property.IDescriptor;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.cms.profile.common.EnrollProfile;
+import com.netscape.cms.profile.common.ProfileParams;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.cert.PrettyPrintFormat;
 
@@ -83,6 +85,9 @@ public abstract class EnrollDefault extends PolicyDefault {
     protected Vector<String> mConfigNames = new Vector<String>();
     protected Vector<String> mValueNames = new Vector<String>();
 
+    // parameter values resolved from mConfig
+    private ProfileParams mParams = new ProfileParams();
+
     public EnrollDefault() {
     }
 
@@ -105,6 +110,8 @@ public abstract class EnrollDefault extends PolicyDefault {
         } else {
             mConfig.getSubStore("params").putString(name, value);
         }
+
+        clearParams();
     }
 
     public String getConfig(String name) {
@@ -120,28 +127,34 @@ public abstract class EnrollDefault extends PolicyDefault {
      */
     public String getConfig(String name, String defval) {
 
-        if (mConfig == null) {
-            logger.error("Missing profile configuration");
-            return null;
-        }
-
-        IConfigStore params = mConfig.getSubStore("params");
+        Map<String, String> params = getParams();
         if (params == null) {
-            logger.error("Missing constraint parameters");
             return null;
         }
 
-        try {
-            return params.getString(name, defval);
+        String value = params.get(name);
+        return value == null ? defval : value;
+    }
 
-        } catch (EBaseException e) {
-            logger.warn("EnrollDefault: " + e.getMessage(), e);
-            return null;
-        }
+    /**
+     * Returns the parameter values in profile configuration. The values
+     * are read once and reused until the parameters are modified.
+     */
+    protected Map<String, String> getParams() {
+        return mParams.get(mConfig);
+    }
+
+    /**
+     * Discards the parameter values read from profile configuration.
+     * This must be called when the parameters are modified.
+     */
+    protected void clearParams() {
+        mParams.clear();
     }
 
     public void init(IConfigStore config) throws EProfileException {
         mConfig = config;
+        clearParams();
     }
 
     /**
@@ -34,6 +34,7 @@ import com.netscape.certsrv.authentication.ExternalAuthToken;
 import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.EPropertyNotFound;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.logging.event.CertRequestProcessedEvent;
@@ -43,6 +44,7 @@ import com.netscape.certsrv.profile.ProfileAttribute;
 import com.netscape.certsrv.profile.ProfileInput;
 import com.netscape.certsrv.request.INotify;
 import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.IRequestScheduler;
 import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
 import com.netscape.cms.profile.ProfileAuthenticator;
@@ -52,6 +54,7 @@ import com.netscape.cms.servlet.common.AuthCredentials;
 import com.netscape.cms.servlet.processors.CAProcessor;
 import com.netscape.cms.tomcat.ExternalPrincipal;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.request.RequestQueue;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
 public class CertProcessor extends CAProcessor {
@@ -226,106 +229,182 @@ public class CertProcessor extends CAProcessor {
 
         CAEngine engine = CAEngine.getInstance();
 
-        for (IRequest req : reqs) {
+        RequestQueue requestQueue = engine.getRequestQueue();
+        IRequestScheduler scheduler = requestQueue.getRequestScheduler();
+
+        for (int i = 0; i < reqs.length; i++) {
+
+            IRequest req = reqs[i];
+
+            // may reject the request if the server is overloaded
+            if (scheduler != null) {
+                try {
+                    scheduler.requestIn(req);
+
+                } catch (ServiceUnavailableException e) {
+
+                    if (i == 0) {
+                        // nothing has been processed, reject the enrollment
+                        throw e;
+                    }
+
+                    // the previous requests have been processed already,
+                    // reject the remaining requests individually
+                    errorCode = "3";
+                    rejectRequests(locale, reqs, i, e.getMessage(), auditSubjectID);
+                    break;
+                }
+            }
+
             try {
-                // reset the "auditRequesterID"
-                auditRequesterID = auditRequesterID(req);
-
-                logger.info("CertProcessor: Processing certificate request:");
-
-                if (req != null) {
-                    Enumeration<String> reqKeys = req.getExtDataKeys();
-                    while (reqKeys.hasMoreElements()) {
-                        String reqKey = reqKeys.nextElement();
-                        String reqVal = req.getExtDataInString(reqKey);
-                        if (reqVal != null) {
-                            logger.info("CertProcessor: - " + reqKey + ": " + reqVal);
+                requestQueue.beginUpdates(req);
+
+                try {
+                    // reset the "auditRequesterID"
+                    auditRequesterID = auditRequesterID(req);
+
+                    logger.info("CertProcessor: Processing certificate request:");
+
+                    if (req != null) {
+                        Enumeration<String> reqKeys = req.getExtDataKeys();
+                        while (reqKeys.hasMoreElements()) {
+                            String reqKey = reqKeys.nextElement();
+                            String reqVal = req.getExtDataInString(reqKey);
+                            if (reqVal != null) {
+                                logger.info("CertProcessor: - " + reqKey + ": " + reqVal);
+                            }
                         }
                     }
-                }
 
-                logger.info("CertProcessor: Submitting certificate request to " + profile.getId() + " profile");
+                    logger.info("CertProcessor: Submitting certificate request to " + profile.getId() + " profile");
+
+                    profile.submit(authToken, req);
+
+                    req.setRequestStatus(RequestStatus.COMPLETE);
+
+                    X509CertImpl x509cert = req.getExtDataInCert(EnrollProfile.REQUEST_ISSUED_CERT);
 
-                profile.submit(authToken, req);
+                    if (x509cert != null) {
+
+                        signedAuditLogger.log(CertRequestProcessedEvent.createSuccessEvent(
+                                auditSubjectID,
+                                auditRequesterID,
+                                ILogger.SIGNED_AUDIT_ACCEPTANCE,
+                                x509cert));
+                    }
+
+                } catch (EDeferException e) {
+
+                    logger.warn("Certificate request deferred: " + e.getMessage());
+
+                    req.setRequestStatus(RequestStatus.PENDING);
+                    // need to notify
+                    INotify notify = engine.getRequestQueue().getPendingNotify();
+                    if (notify != null) {
+                        notify.notify(req);
+                    }
 
-                req.setRequestStatus(RequestStatus.COMPLETE);
+                    errorCode = "2";
+                    req.setExtData(IRequest.ERROR_CODE, errorCode);
 
-                X509CertImpl x509cert = req.getExtDataInCert(EnrollProfile.REQUEST_ISSUED_CERT);
+                    // do NOT store a message in the signed audit log file
+                    // as this errorCode indicates that a process has been
+                    // deferred for manual acceptance/cancellation/rejection
 
-                if (x509cert != null) {
+                } catch (ERejectException e) {
 
-                    signedAuditLogger.log(CertRequestProcessedEvent.createSuccessEvent(
+                    logger.warn("Certificate request rejected: " + e.getMessage(), e);
+
+                    req.setRequestStatus(RequestStatus.REJECTED);
+
+                    errorCode = "3";
+                    req.setExtData(IRequest.ERROR, e.toString());
+                    req.setExtData(IRequest.ERROR_CODE, errorCode);
+
+                    signedAuditLogger.log(CertRequestProcessedEvent.createFailureEvent(
                             auditSubjectID,
                             auditRequesterID,
-                            ILogger.SIGNED_AUDIT_ACCEPTANCE,
-                            x509cert));
-                }
+                            ILogger.SIGNED_AUDIT_REJECTION,
+                            codeToReason(locale, errorCode, e.toString(), req.getRequestId())));
+
+                } catch (Throwable e) {
 
-            } catch (EDeferException e) {
+                    logger.warn("Certificate request failed: " + e.getMessage(), e);
 
-                logger.warn("Certificate request deferred: " + e.getMessage());
+                    errorCode = "1";
+                    errorReason = codeToReason(locale, errorCode, null, req.getRequestId());
+                    req.setExtData(IRequest.ERROR, errorReason);
+                    req.setExtData(IRequest.ERROR_CODE, errorCode);
 
-                req.setRequestStatus(RequestStatus.PENDING);
-                // need to notify
-                INotify notify = engine.getRequestQueue().getPendingNotify();
-                if (notify != null) {
-                    notify.notify(req);
+                    signedAuditLogger.log(CertRequestProcessedEvent.createFailureEvent(
+                            auditSubjectID,
+                            auditRequesterID,
+                            ILogger.SIGNED_AUDIT_REJECTION,
+                            errorReason));
                 }
 
-                errorCode = "2";
-                req.setExtData(IRequest.ERROR_CODE, errorCode);
+                try {
+                    logger.info("Updating certificate request");
+
+                    if (errorCode == null) {
+                        engine.getRequestQueue().markAsServiced(req);
+                    } else {
+                        engine.getRequestQueue().updateRequest(req);
+                    }
+
+                } catch (EBaseException e) {
+                    logger.warn("Unable to update certificate request: " + e.getMessage(), e);
+                }
 
-                // do NOT store a message in the signed audit log file
-                // as this errorCode indicates that a process has been
-                // deferred for manual acceptance/cancellation/rejection
+                try {
+                    requestQueue.endUpdates(req);
 
-            } catch (ERejectException e) {
+                } catch (EBaseException e) {
+                    logger.warn("Unable to update certificate request: " + e.getMessage(), e);
+                }
 
-                logger.warn("Certificate request rejected: " + e.getMessage(), e);
+            } finally {
+                if (scheduler != null) {
+                    scheduler.requestOut(req);
+                }
+            }
+        }
 
-                req.setRequestStatus(RequestStatus.REJECTED);
+        return errorCode;
+    }
 
-                errorCode = "3";
-                req.setExtData(IRequest.ERROR, e.toString());
-                req.setExtData(IRequest.ERROR_CODE, errorCode);
+    /**
+     * Rejects the requests starting from the specified index
+     * without submitting them to the profile.
+     */
+    protected void rejectRequests(Locale locale, IRequest[] reqs, int start, String reason,
+            String auditSubjectID) {
 
-                signedAuditLogger.log(CertRequestProcessedEvent.createFailureEvent(
-                        auditSubjectID,
-                        auditRequesterID,
-                        ILogger.SIGNED_AUDIT_REJECTION,
-                        codeToReason(locale, errorCode, e.toString(), req.getRequestId())));
+        CAEngine engine = CAEngine.getInstance();
+        String errorCode = "3";
 
-            } catch (Throwable e) {
+        for (int i = start; i < reqs.length; i++) {
 
-                logger.warn("Certificate request failed: " + e.getMessage(), e);
+            IRequest req = reqs[i];
+            logger.warn("CertProcessor: Rejecting certificate request " + req.getRequestId() + ": " + reason);
 
-                errorCode = "1";
-                errorReason = codeToReason(locale, errorCode, null, req.getRequestId());
-                req.setExtData(IRequest.ERROR, errorReason);
-                req.setExtData(IRequest.ERROR_CODE, errorCode);
+            req.setRequestStatus(RequestStatus.REJECTED);
+            req.setExtData(IRequest.ERROR, reason);
+            req.setExtData(IRequest.ERROR_CODE, errorCode);
 
-                signedAuditLogger.log(CertRequestProcessedEvent.createFailureEvent(
-                        auditSubjectID,
-                        auditRequesterID,
-                        ILogger.SIGNED_AUDIT_REJECTION,
-                        errorReason));
-            }
+            signedAuditLogger.log(CertRequestProcessedEvent.createFailureEvent(
+                    auditSubjectID,
+                    auditRequesterID(req),
+                    ILogger.SIGNED_AUDIT_REJECTION,
+                    codeToReason(locale, errorCode, reason, req.getRequestId())));
 
             try {
-                logger.info("Updating certificate request");
-
-                if (errorCode == null) {
-                    engine.getRequestQueue().markAsServiced(req);
-                } else {
-                    engine.getRequestQueue().updateRequest(req);
-                }
+                engine.getRequestQueue().updateRequest(req);
 
             } catch (EBaseException e) {
                 logger.warn("Unable to update certificate request: " + e.getMessage(), e);
             }
         }
-
-        return errorCode;
     }
 
     protected void populateRequests(CertEnrollmentRequest data, boolean isRenewal,
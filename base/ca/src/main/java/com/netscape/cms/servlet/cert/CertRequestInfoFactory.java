@@ -19,6 +19,7 @@
 package com.netscape.cms.servlet.cert;
 
 import java.math.BigInteger;
+import java.net.URI;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.UriBuilder;
@@ -38,6 +39,14 @@ import com.netscape.cms.profile.common.EnrollProfile;
 public class CertRequestInfoFactory {
 
     public static CertRequestInfo create(IRequest request, UriInfo uriInfo) throws SecurityException, NoSuchMethodException {
+        return create(request, uriInfo.getBaseUri());
+    }
+
+    /**
+     * @param baseUri base URI of the REST services, e.g. copied from
+     * the UriInfo of the HTTP request
+     */
+    public static CertRequestInfo create(IRequest request, URI baseUri) throws SecurityException, NoSuchMethodException {
 
         CertRequestInfo info = new CertRequestInfo();
 
@@ -52,7 +61,7 @@ public class CertRequestInfoFactory {
         Path certRequestPath = CertRequestResource.class.getMethod("getRequestInfo", RequestId.class ).getAnnotation(Path.class);
         RequestId requestId = request.getRequestId();
 
-        UriBuilder reqBuilder = uriInfo.getBaseUriBuilder();
+        UriBuilder reqBuilder = UriBuilder.fromUri(baseUri);
         reqBuilder.path(certRequestPath.value());
         info.setRequestURL(reqBuilder.build(requestId).toString());
 
@@ -86,7 +95,7 @@ public class CertRequestInfoFactory {
 
 
         Path certPath = CertResource.class.getMethod("getCert", CertId.class).getAnnotation(Path.class);
-        UriBuilder certBuilder = uriInfo.getBaseUriBuilder();
+        UriBuilder certBuilder = UriBuilder.fromUri(baseUri);
         certBuilder.path(certPath.value());
 
         info.setCertURL(certBuilder.build(serialNo).toString());
@@ -0,0 +1,222 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.servlet.cert;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.netscape.certsrv.base.ServiceUnavailableException;
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.RequestId;
+
+/**
+ * A bounded pool of worker threads that submits enrollment requests
+ * to their profiles asynchronously, e.g.:
+ *
+ * <pre>
+ * ca.enrollment.async.threads=4
+ * ca.enrollment.async.queueSize=1000
+ * ca.enrollment.async.maxWaiters=10
+ * </pre>
+ *
+ * The requests are tracked until their submission completes, so
+ * clients can wait for the result instead of polling. Each waiting
+ * client holds an HTTP worker thread, so the number of concurrent
+ * waits is limited.
+ *
+ * The same threads process the CSRs of batch enrollments, so the
+ * number of enrollment threads does not grow with the number of
+ * concurrent batches.
+ */
+public class EnrollmentExecutor implements Executor {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(EnrollmentExecutor.class);
+
+    public final static int DEFAULT_THREADS = 4;
+    public final static int DEFAULT_QUEUE_SIZE = 1000;
+    public final static int DEFAULT_MAX_WAITERS = 10;
+
+    private ThreadPoolExecutor executor;
+    private Map<RequestId, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+    private Semaphore waiters;
+
+    public EnrollmentExecutor(int threads, int queueSize, int maxWaiters) {
+
+        waiters = new Semaphore(Math.max(0, maxWaiters));
+
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread thread = new Thread(r, "EnrollmentExecutor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Runs the submission of the requests in a worker thread with
+     * a copy of the current session context.
+     *
+     * @param reqs requests to track
+     * @param task submission task
+     * @exception ServiceUnavailableException the queue is full
+     */
+    public void submit(IRequest[] reqs, Runnable task) {
+
+        // the servlet request is recycled once the response is sent
+        SessionContext context = new SessionContext();
+        context.putAll(SessionContext.getContext());
+        context.remove("sslClientCertProvider");
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        for (IRequest req : reqs) {
+            pending.put(req.getRequestId(), future);
+        }
+
+        try {
+            executor.execute(() -> {
+
+                SessionContext.setContext(context);
+
+                try {
+                    task.run();
+
+                } catch (Throwable e) {
+                    logger.error("EnrollmentExecutor: Unable to submit requests: " + e.getMessage(), e);
+
+                } finally {
+                    SessionContext.releaseContext();
+
+                    for (IRequest req : reqs) {
+                        pending.remove(req.getRequestId());
+                    }
+
+                    future.complete(null);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            for (IRequest req : reqs) {
+                pending.remove(req.getRequestId());
+            }
+
+            logger.warn("EnrollmentExecutor: Rejecting requests: Too many pending requests");
+            throw new ServiceUnavailableException("Server is busy, please try again later");
+        }
+    }
+
+    /**
+     * Runs a task in a worker thread. The caller is responsible for
+     * setting up the session context of the task.
+     *
+     * @param task task
+     * @exception ServiceUnavailableException the queue is full
+     */
+    public void execute(Runnable task) {
+
+        try {
+            executor.execute(task);
+
+        } catch (RejectedExecutionException e) {
+            logger.warn("EnrollmentExecutor: Rejecting task: Too many pending requests");
+            throw new ServiceUnavailableException("Server is busy, please try again later");
+        }
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public boolean isPending(RequestId id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Waits until the asynchronous submission of a request completes.
+     *
+     * @param id request ID
+     * @param timeout maximum wait time in milliseconds
+     * @return false if the request is still being submitted, or if
+     * there are too many clients waiting
+     */
+    public boolean waitForRequest(RequestId id, long timeout) throws InterruptedException {
+
+        CompletableFuture<Void> future = pending.get(id);
+        if (future == null) {
+            return true;
+        }
+
+        if (!waiters.tryAcquire()) {
+            logger.debug("EnrollmentExecutor: Too many clients waiting, not waiting for request " + id);
+            return false;
+        }
+
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+
+        } catch (TimeoutException e) {
+            return false;
+
+        } catch (ExecutionException e) {
+            // the task failures are logged by the worker
+
+        } finally {
+            waiters.release();
+        }
+
+        return true;
+    }
+
+    public int getPendingRequests() {
+        return pending.size();
+    }
+
+    public void shutdown() {
+
+        logger.info("EnrollmentExecutor: Shutting down");
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                // the requests will be rejected on restart
+                logger.warn("EnrollmentExecutor: " + executor.getQueue().size() + " requests not submitted");
+                executor.shutdownNow();
+            }
+
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
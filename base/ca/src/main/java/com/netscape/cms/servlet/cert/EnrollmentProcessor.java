@@ -27,17 +27,20 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang3.StringUtils;
+import org.dogtagpki.server.ca.CAEngine;
 
 import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.base.BadRequestDataException;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.EPropertyNotFound;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.ca.AuthorityID;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.profile.ProfileAttribute;
 import com.netscape.certsrv.profile.ProfileInput;
 import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.RequestStatus;
 import com.netscape.cms.profile.ProfileAuthenticator;
 import com.netscape.cms.profile.common.EnrollProfile;
 import com.netscape.cms.profile.common.Profile;
@@ -45,6 +48,7 @@ import com.netscape.cms.servlet.common.AuthCredentials;
 import com.netscape.cms.servlet.common.CMSTemplate;
 import com.netscape.cms.servlet.profile.SSLClientCertProvider;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.request.RequestQueue;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
 public class EnrollmentProcessor extends CertProcessor {
@@ -120,6 +124,25 @@ public class EnrollmentProcessor extends CertProcessor {
             AuthCredentials credentials,
             IAuthToken authToken)
         throws Exception {
+        return processEnrollment(data, request, aid, credentials, authToken, null);
+    }
+
+    /**
+     * Process the HTTP request. If an executor is specified the requests
+     * are stored after validation and submitted to the profile by the
+     * executor, so the method returns the requests in BEGIN state without
+     * waiting for the certificates to be issued.
+     *
+     * @exception Exception an error has occurred
+     */
+    public HashMap<String, Object> processEnrollment(
+            CertEnrollmentRequest data,
+            HttpServletRequest request,
+            AuthorityID aid,
+            AuthCredentials credentials,
+            IAuthToken authToken,
+            EnrollmentExecutor executor)
+        throws Exception {
 
         try {
             if (logger.isDebugEnabled()) {
@@ -145,6 +168,8 @@ public class EnrollmentProcessor extends CertProcessor {
                 throw new BadRequestDataException("Profile " + profileId + " not enabled");
             }
 
+            setTimingProfile(profileId);
+
             Map<String, String> ctx = new HashMap<>();
 
             // set arbitrary user data into request, if any
@@ -170,8 +195,12 @@ public class EnrollmentProcessor extends CertProcessor {
             // insert profile context so that input parameter can be retrieved
             SessionContext context = SessionContext.getContext();
             context.put("profileContext", ctx);
-            context.put("sslClientCertProvider", new SSLClientCertProvider(request));
-            logger.debug("EnrollmentProcessor: set sslClientCertProvider");
+
+            // without the HTTP request the caller provides the client certificate
+            if (request != null) {
+                context.put("sslClientCertProvider", new SSLClientCertProvider(request));
+                logger.debug("EnrollmentProcessor: set sslClientCertProvider");
+            }
 
             // before creating the request, authenticate the request
             if (authToken == null && authenticator != null) {
@@ -185,9 +214,11 @@ public class EnrollmentProcessor extends CertProcessor {
             // create and populate request
             ///////////////////////////////////////////////
             startTiming("request_population");
+            long startTime = System.currentTimeMillis();
             IRequest[] reqs = profile.createRequests(ctx, locale);
             populateRequests(data, false, locale, null, null, null, profileId, profile,
                     ctx, authenticator, authToken, reqs);
+            recordStage("request_creation", startTime);
             endTiming("request_population");
 
             ///////////////////////////////////////////////
@@ -204,6 +235,19 @@ public class EnrollmentProcessor extends CertProcessor {
             ///////////////////////////////////////////////
             // submit request
             ///////////////////////////////////////////////
+            if (executor != null) {
+                submitRequestsAsync(executor, profile, authToken, reqs);
+
+                HashMap<String, Object> ret = new HashMap<String, Object>();
+                ret.put(ARG_REQUESTS, reqs);
+                ret.put(ARG_PROFILE, profile);
+
+                logger.debug("EnrollmentSubmitter: requests queued");
+                endTiming("enrollment");
+
+                return ret;
+            }
+
             String errorCode = submitRequests(locale, profile, authToken, reqs);
             String errorReason = null;
 
@@ -235,7 +279,71 @@ public class EnrollmentProcessor extends CertProcessor {
         }
     }
 
+    /**
+     * Stores the requests so they can be retrieved while they are
+     * processed, and submits them to the profile in a worker thread.
+     */
+    private void submitRequestsAsync(
+            EnrollmentExecutor executor,
+            Profile profile,
+            IAuthToken authToken,
+            IRequest[] reqs) throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        RequestQueue requestQueue = engine.getRequestQueue();
+
+        for (IRequest req : reqs) {
+            // rejected on restart if the server stops before processing it
+            requestQueue.markAsync(req);
+            requestQueue.updateRequest(req);
+        }
+
+        try {
+            executor.submit(reqs, () -> {
+                // the timing profile is per thread
+                setTimingProfile(profile.getId());
+                try {
+                    submitRequests(locale, profile, authToken, reqs);
+
+                } catch (ServiceUnavailableException e) {
+                    // rejected by the request scheduler, the requests
+                    // must not stay in BEGIN state until the next restart
+                    logger.warn("EnrollmentProcessor: Canceling requests: " + e.getMessage());
+                    try {
+                        cancelRequests(reqs, e.getMessage());
+                    } catch (EBaseException ex) {
+                        logger.warn("EnrollmentProcessor: Unable to cancel requests: " + ex.getMessage(), ex);
+                    }
 
+                } finally {
+                    setTimingProfile(null);
+                }
+            });
 
+        } catch (ServiceUnavailableException e) {
+            cancelRequests(reqs, e.getMessage());
+            throw e;
+        }
+    }
 
+    /**
+     * Cancels the requests that have not been processed.
+     */
+    private void cancelRequests(IRequest[] reqs, String error) throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        RequestQueue requestQueue = engine.getRequestQueue();
+
+        for (IRequest req : reqs) {
+
+            if (req.getRequestStatus() != RequestStatus.BEGIN
+                    || req.getExtDataInString(IRequest.ERROR_CODE) != null) {
+                continue;
+            }
+
+            req.setRequestStatus(RequestStatus.CANCELED);
+            req.setExtData(IRequest.ERROR, error);
+            requestQueue.updateRequest(req);
+        }
+    }
 }
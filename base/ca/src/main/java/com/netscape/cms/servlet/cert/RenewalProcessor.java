@@ -230,6 +230,8 @@ public class RenewalProcessor extends CertProcessor {
                 throw new BadRequestDataException("Profile " + profileId + " not enabled");
             }
 
+            setTimingProfile(profileId);
+
             Map<String, String> ctx = new HashMap<>();
 
             if (aidString != null)
@@ -344,9 +346,11 @@ public class RenewalProcessor extends CertProcessor {
             // create and populate requests
             ///////////////////////////////////////////////
             startTiming("request_population");
+            long startTime = System.currentTimeMillis();
             IRequest[] reqs = profile.createRequests(ctx, locale);
             populateRequests(data, true, locale, origNotAfter, origSubjectDN, origReq, profileId,
                     profile, ctx, authenticator, authToken, reqs);
+            recordStage("request_creation", startTime);
             endTiming("request_population");
 
             ///////////////////////////////////////////////
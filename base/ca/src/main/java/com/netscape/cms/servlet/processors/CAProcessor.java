@@ -239,6 +239,26 @@ public class CAProcessor extends Processor {
                 statsSub.endTiming(event);
                 iter.remove();
             }
+            statsSub.setProfile(null);
+        }
+    }
+
+    /**
+     * Sets the profile for the stage timings of the current thread.
+     */
+    public void setTimingProfile(String profileID) {
+        CAEngine engine = CAEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.setProfile(profileID);
+        }
+    }
+
+    public void recordStage(String stage, long startTime) {
+        CAEngine engine = CAEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.recordStage(stage, startTime);
         }
     }
 
@@ -433,7 +453,10 @@ public class CAProcessor extends Processor {
             }
         }
 
-        credentials.set("clientHost", request.getRemoteHost());
+        // without the HTTP request the client host is provided in the credentials
+        if (request != null) {
+            credentials.set("clientHost", request.getRemoteHost());
+        }
 
         IAuthToken authToken = authenticator.authenticate(credentials);
         logger.debug("CAProcessor: Token: " + authToken);
@@ -459,6 +482,7 @@ public class CAProcessor extends Processor {
             AuthCredentials credentials) throws EBaseException {
 
         startTiming("profile_authentication");
+        long startTime = System.currentTimeMillis();
 
         logger.debug("authenticate: authentication required.");
         String uid_cred = "Unidentified";
@@ -469,10 +493,15 @@ public class CAProcessor extends Processor {
         if (authIds != null) {
             while (authIds.hasMoreElements()) {
                 String authName = authIds.nextElement();
-                String value = request.getParameter(authName);
+                Object value = null;
+                if (request != null) {
+                    value = request.getParameter(authName);
+                } else if (credentials != null) {
+                    value = credentials.get(authName);
+                }
                 if (value != null) {
                     if (authName.equals("uid")) {
-                        uid_attempted_cred = value;
+                        uid_attempted_cred = value.toString();
                     }
                 }
             }
@@ -530,6 +559,7 @@ public class CAProcessor extends Processor {
                 authMgrID));
 
         endTiming("profile_authentication");
+        recordStage("authentication", startTime);
 
         return authToken;
     }
@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.ldap;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
@@ -24,6 +25,7 @@ import java.util.Enumeration;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.dogtagpki.server.ca.CAEngine;
 import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
 
 import com.netscape.ca.CertificateAuthority;
@@ -42,6 +44,7 @@ import com.netscape.cms.publish.publishers.FileBasedPublisher;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.dbs.CertRecord;
 import com.netscape.cmscore.dbs.CertificateRepository;
+import com.netscape.cmscore.request.RequestNotifier;
 
 import netscape.ldap.LDAPConnection;
 
@@ -64,6 +67,9 @@ public class CAPublisherProcessor extends PublisherProcessor {
     protected CertificateAuthority ca;
     private boolean createOwnDNEntry;
 
+    // connection shared by the publishing batch of the current thread
+    private ThreadLocal<LDAPConnection> batchConn = new ThreadLocal<>();
+
     public CAPublisherProcessor(String id) {
         super(id);
     }
@@ -111,7 +117,26 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 int savePublishingStatus = queueConfig.getInteger("saveStatus", 0);
                 logger.info("CAPublisherProcessor: - save status: " + savePublishingStatus);
 
+                int maxThreadsPerListener = queueConfig.getInteger("maxThreadsPerListener",
+                        RequestNotifier.DEFAULT_MAX_THREADS_PER_LISTENER);
+                logger.info("CAPublisherProcessor: - max threads per listener: " + maxThreadsPerListener);
+
+                int batchSize = queueConfig.getInteger("batchSize", RequestNotifier.DEFAULT_BATCH_SIZE);
+                logger.info("CAPublisherProcessor: - batch size: " + batchSize);
+
+                CAEngine engine = CAEngine.getInstance();
+                String defaultJournal = engine.getInstanceDir() + File.separator + "ca"
+                        + File.separator + "publishing" + File.separator + "queue.journal";
+
+                String journal = queueConfig.getString("journal", defaultJournal);
+                logger.info("CAPublisherProcessor: - journal: " + journal);
+
+                boolean journalSync = queueConfig.getBoolean("journalSync", true);
+                logger.info("CAPublisherProcessor: - journal sync: " + journalSync);
+
                 IRequestNotifier requestNotifier = ca.getRequestNotifier();
+                requestNotifier.setListenerLimits(maxThreadsPerListener, batchSize);
+                requestNotifier.setPublishingJournal(journal, journalSync);
                 requestNotifier.setPublishingQueue(
                         isPublishingQueueEnabled,
                         publishingQueuePriorityLevel,
@@ -681,6 +706,41 @@ public class CAPublisherProcessor extends PublisherProcessor {
         }
     }
 
+    /**
+     * Makes the cert publishing operations of the current thread use
+     * the same LDAP connection until endBatch() is called.
+     */
+    public void beginBatch() throws ELdapException {
+
+        if (mLdapConnModule == null || batchConn.get() != null) {
+            return;
+        }
+
+        batchConn.set(mLdapConnModule.getConn());
+    }
+
+    public void endBatch() throws ELdapException {
+
+        LDAPConnection conn = batchConn.get();
+        if (conn == null) {
+            return;
+        }
+
+        batchConn.remove();
+        mLdapConnModule.returnConn(conn);
+    }
+
+    private LDAPConnection getConn() throws ELdapException {
+        LDAPConnection conn = batchConn.get();
+        return conn != null ? conn : mLdapConnModule.getConn();
+    }
+
+    private void returnConn(LDAPConnection conn) throws ELdapException {
+        if (conn != batchConn.get()) {
+            mLdapConnModule.returnConn(conn);
+        }
+    }
+
     private void publishNow(ILdapMapper mapper, ILdapPublisher publisher, IRequest r, Object obj) throws ELdapException {
 
         if (!isCertPublishingEnabled()) {
@@ -697,7 +757,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 logger.info("CAPublisherProcessor: LDAP connection module: " + mLdapConnModule);
                 if (mLdapConnModule != null) {
                     try {
-                        conn = mLdapConnModule.getConn();
+                        conn = getConn();
                     } catch (ELdapException e) {
                         throw e;
                     }
@@ -752,7 +812,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
 
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn);
             }
         }
     }
@@ -828,7 +888,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
 
             if (mapper != null) {
                 if (mLdapConnModule != null) {
-                    conn = mLdapConnModule.getConn();
+                    conn = getConn();
                 }
                 dirdn = mapper.map(conn, r, obj);
             }
@@ -842,7 +902,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
 
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn);
             }
         }
     }
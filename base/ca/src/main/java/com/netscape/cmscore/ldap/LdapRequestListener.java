@@ -18,16 +18,21 @@
 package com.netscape.cmscore.ldap;
 
 import java.util.Hashtable;
+import java.util.List;
 
+import org.dogtagpki.server.ca.CAEngine;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.base.ISubsystem;
+import com.netscape.certsrv.ldap.ELdapException;
+import com.netscape.certsrv.request.IBatchRequestListener;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IRequestListener;
+import com.netscape.certsrv.util.IStatsSubsystem;
 
-public class LdapRequestListener implements IRequestListener {
+public class LdapRequestListener implements IBatchRequestListener {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LdapRequestListener.class);
 
@@ -37,6 +42,8 @@ public class LdapRequestListener implements IRequestListener {
      */
     private Hashtable<String, IRequestListener> mRequestListeners = new Hashtable<String, IRequestListener>();
 
+    private CAPublisherProcessor mPublisherProcessor;
+
     public LdapRequestListener() {
     }
 
@@ -45,6 +52,8 @@ public class LdapRequestListener implements IRequestListener {
 
     public void setPublisherProcessor(CAPublisherProcessor publisherProcessor) {
 
+        mPublisherProcessor = publisherProcessor;
+
         mRequestListeners.put(IRequest.ENROLLMENT_REQUEST,
                 new LdapEnrollmentListener(publisherProcessor));
 
@@ -138,7 +147,47 @@ public class LdapRequestListener implements IRequestListener {
             logger.warn("Nothing to publish for request type " + type);
             return;
         }
+
+        long startTime = System.currentTimeMillis();
         handler.accept(r);
+
+        String profileID = r.getExtDataInString(IRequest.PROFILE_ID);
+        if (profileID == null) {
+            return;
+        }
+
+        CAEngine engine = CAEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.recordStage(profileID, "publishing", startTime);
+        }
+    }
+
+    /**
+     * Publishes the requests with a single LDAP connection.
+     */
+    public void acceptAll(List<IRequest> requests) {
+
+        try {
+            mPublisherProcessor.beginBatch();
+
+        } catch (ELdapException e) {
+            // each request will try to get its own connection
+            logger.warn("Unable to get LDAP connection for publishing batch: " + e.getMessage(), e);
+        }
+
+        try {
+            for (IRequest r : requests) {
+                accept(r);
+            }
+
+        } finally {
+            try {
+                mPublisherProcessor.endBatch();
+            } catch (ELdapException e) {
+                logger.warn("Unable to release LDAP connection: " + e.getMessage(), e);
+            }
+        }
     }
 
 }
@@ -67,6 +67,7 @@ import com.netscape.certsrv.publish.CRLPublisher;
 import com.netscape.certsrv.request.IRequestListener;
 import com.netscape.certsrv.request.IRequestScheduler;
 import com.netscape.certsrv.util.AsyncLoader;
+import com.netscape.cms.servlet.cert.EnrollmentExecutor;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
@@ -115,6 +116,7 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
 
     protected CAPolicy caPolicy;
     protected CAService caService;
+    protected EnrollmentExecutor enrollmentExecutor;
 
     protected CertificateVersion defaultCertVersion;
     protected long defaultCertValidity;
@@ -218,6 +220,10 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
         return caService;
     }
 
+    public EnrollmentExecutor getEnrollmentExecutor() {
+        return enrollmentExecutor;
+    }
+
     /**
      * Retrieves the default certificate version.
      *
@@ -776,6 +782,9 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
         String schedulerClass = caConfig.getString("requestSchedulerClass", null);
         logger.info("CAEngine: - scheduler: " + schedulerClass);
 
+        boolean coalesceWrites = caConfig.getBoolean("coalesceRequestWrites", false);
+        logger.info("CAEngine: - coalesce writes: " + coalesceWrites);
+
         requestRepository = new CertRequestRepository(dbSubsystem);
 
         requestQueue = new RequestQueue(
@@ -786,11 +795,35 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
                 requestNotifier,
                 pendingNotifier);
 
+        requestQueue.setCoalesceWrites(coalesceWrites);
+
         if (schedulerClass != null) {
             IRequestScheduler scheduler = (IRequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
+            scheduler.init(caConfig.getSubStore("requestScheduler"));
             requestQueue.setRequestScheduler(scheduler);
         }
 
+        logger.info("CAEngine: Initializing asynchronous enrollment executor");
+
+        int asyncThreads = caConfig.getInteger("enrollment.async.threads", EnrollmentExecutor.DEFAULT_THREADS);
+        logger.info("CAEngine: - threads: " + asyncThreads);
+
+        if (asyncThreads < 1) {
+            throw new EBaseException("Invalid number of enrollment threads: " + asyncThreads);
+        }
+
+        int asyncQueueSize = caConfig.getInteger("enrollment.async.queueSize", EnrollmentExecutor.DEFAULT_QUEUE_SIZE);
+        logger.info("CAEngine: - queue size: " + asyncQueueSize);
+
+        if (asyncQueueSize < 1) {
+            throw new EBaseException("Invalid enrollment queue size: " + asyncQueueSize);
+        }
+
+        int asyncMaxWaiters = caConfig.getInteger("enrollment.async.maxWaiters", EnrollmentExecutor.DEFAULT_MAX_WAITERS);
+        logger.info("CAEngine: - max waiters: " + asyncMaxWaiters);
+
+        enrollmentExecutor = new EnrollmentExecutor(asyncThreads, asyncQueueSize, asyncMaxWaiters);
+
         if (!isPreOpMode()) {
             logger.info("CAEngine: Starting CA services");
 
@@ -1615,8 +1648,10 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
 
         X509CertImpl cert = (X509CertImpl) certificates[0];
         int result = VerifiedCert.UNKNOWN;
+        long generation = 0;
 
         if (mVCList != null) {
+            generation = mVCList.getGeneration();
             result = mVCList.check(cert);
         }
 
@@ -1634,12 +1669,12 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
             if (certificateRepository.isCertificateRevoked(cert) != null) {
                 revoked = true;
                 if (mVCList != null) {
-                    mVCList.update(cert, VerifiedCert.REVOKED);
+                    mVCList.update(cert, VerifiedCert.REVOKED, generation);
                 }
 
             } else {
                 if (mVCList != null) {
-                    mVCList.update(cert, VerifiedCert.NOT_REVOKED);
+                    mVCList.update(cert, VerifiedCert.NOT_REVOKED, generation);
                 }
             }
 
@@ -1660,6 +1695,14 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
 
     protected void shutdownSubsystems() {
 
+        if (enrollmentExecutor != null) {
+            enrollmentExecutor.shutdown();
+        }
+
+        if (requestNotifier != null) {
+            requestNotifier.shutdown();
+        }
+
         super.shutdownSubsystems();
 
         for (ICRLIssuingPoint crlIssuingPoint : crlIssuingPoints.values()) {
@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package org.dogtagpki.server.ca.rest;
 
+import java.net.URI;
 import java.security.Principal;
 import java.security.SecureRandom;
 import java.util.Collection;
@@ -32,6 +33,7 @@ import org.dogtagpki.server.ca.CAEngine;
 
 import com.netscape.ca.CertificateAuthority;
 import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.base.BadRequestDataException;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ca.AuthorityID;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
@@ -47,6 +49,7 @@ import com.netscape.cms.profile.common.Profile;
 import com.netscape.cms.realm.PKIPrincipal;
 import com.netscape.cms.servlet.cert.CertRequestInfoFactory;
 import com.netscape.cms.servlet.cert.CertReviewResponseFactory;
+import com.netscape.cms.servlet.cert.EnrollmentExecutor;
 import com.netscape.cms.servlet.cert.EnrollmentProcessor;
 import com.netscape.cms.servlet.cert.RenewalProcessor;
 import com.netscape.cms.servlet.cert.RequestProcessor;
@@ -192,10 +195,61 @@ public class CertRequestDAO extends CMSRequestDAO {
             UriInfo uriInfo,
             Locale locale)
         throws Exception {
+        return submitRequest(aid, data, request, uriInfo, locale, null);
+    }
+
+    /**
+     * Submits an enrollment request. If an executor is specified the
+     * request is processed asynchronously and the info is returned
+     * right after the request has been validated.
+     *
+     * @param data
+     * @param executor executor for asynchronous processing, or null
+     * @return info for the request submitted.
+     * @throws Exception
+     */
+    public CertRequestInfos submitRequest(
+            AuthorityID aid,
+            CertEnrollmentRequest data,
+            HttpServletRequest request,
+            UriInfo uriInfo,
+            Locale locale,
+            EnrollmentExecutor executor)
+        throws Exception {
+        return submitRequest(aid, data, request, uriInfo.getBaseUri(), locale, executor);
+    }
+
+    /**
+     * Submits an enrollment request outside of the HTTP request thread.
+     * The remote host and address are taken from the enrollment request,
+     * and the client certificate from the session context.
+     *
+     * @param baseUri base URI of the REST services
+     */
+    public CertRequestInfos submitRequest(
+            AuthorityID aid,
+            CertEnrollmentRequest data,
+            URI baseUri,
+            Locale locale)
+        throws Exception {
+        return submitRequest(aid, data, null, baseUri, locale, null);
+    }
+
+    private CertRequestInfos submitRequest(
+            AuthorityID aid,
+            CertEnrollmentRequest data,
+            HttpServletRequest request,
+            URI baseUri,
+            Locale locale,
+            EnrollmentExecutor executor)
+        throws Exception {
 
         CertRequestInfos ret = new CertRequestInfos();
 
         AuthCredentials credentials = new AuthCredentials();
+        if (request == null && data.getRemoteHost() != null) {
+            credentials.set("clientHost", data.getRemoteHost());
+        }
         String uid = data.getAttribute("uid");
         if (uid != null) {
             credentials.set("uid", uid);
@@ -207,17 +261,20 @@ public class CertRequestDAO extends CMSRequestDAO {
 
         HashMap<String, Object> results = null;
         if (data.isRenewal()) {
+            if (executor != null) {
+                throw new BadRequestDataException("Renewal requests cannot be submitted asynchronously");
+            }
             RenewalProcessor processor = new RenewalProcessor("caProfileSubmit", locale);
             results = processor.processRenewal(data, request, credentials);
         } else {
             EnrollmentProcessor processor = new EnrollmentProcessor("caProfileSubmit", locale);
-            results = processor.processEnrollment(data, request, aid, credentials);
+            results = processor.processEnrollment(data, request, aid, credentials, null, executor);
         }
 
         IRequest reqs[] = (IRequest[]) results.get(CAProcessor.ARG_REQUESTS);
         for (IRequest req : reqs) {
             try {
-                CertRequestInfo info = CertRequestInfoFactory.create(req, uriInfo);
+                CertRequestInfo info = CertRequestInfoFactory.create(req, baseUri);
                 ret.addEntry(info);
             } catch (NoSuchMethodException e) {
                 logger.warn("Error in creating certrequestinfo - no such method: " + e.getMessage(), e);
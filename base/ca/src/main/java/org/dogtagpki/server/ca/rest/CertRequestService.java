@@ -19,20 +19,37 @@
 package org.dogtagpki.server.ca.rest;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.PathParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.dogtagpki.server.ca.CAEngine;
 import org.jboss.resteasy.plugins.providers.atom.Link;
 import org.mozilla.jss.netscape.security.x509.X500Name;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netscape.ca.CertificateAuthority;
 import com.netscape.certsrv.authentication.EAuthException;
+import com.netscape.certsrv.authentication.ISSLClientCertProvider;
 import com.netscape.certsrv.authorization.EAuthzException;
 import com.netscape.certsrv.base.BadRequestDataException;
 import com.netscape.certsrv.base.BadRequestException;
@@ -42,12 +59,14 @@ import com.netscape.certsrv.base.HTTPGoneException;
 import com.netscape.certsrv.base.PKIException;
 import com.netscape.certsrv.base.ResourceNotFoundException;
 import com.netscape.certsrv.base.ServiceUnavailableException;
+import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.base.UnauthorizedException;
 import com.netscape.certsrv.ca.AuthorityID;
 import com.netscape.certsrv.ca.CADisabledException;
 import com.netscape.certsrv.ca.CAMissingCertException;
 import com.netscape.certsrv.ca.CAMissingKeyException;
 import com.netscape.certsrv.ca.CANotFoundException;
+import com.netscape.certsrv.cert.CertBatchEnrollmentRequest;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
 import com.netscape.certsrv.cert.CertRequestInfos;
@@ -61,12 +80,19 @@ import com.netscape.certsrv.profile.ProfileDataInfo;
 import com.netscape.certsrv.profile.ProfileDataInfos;
 import com.netscape.certsrv.profile.ProfileInput;
 import com.netscape.certsrv.property.EPropertyException;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.IRequestList;
 import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestNotFoundException;
 import com.netscape.cms.profile.common.Profile;
 import com.netscape.cms.servlet.base.PKIService;
+import com.netscape.cms.servlet.cert.CertRequestInfoFactory;
+import com.netscape.cms.servlet.cert.EnrollmentExecutor;
+import com.netscape.cms.servlet.processors.CAProcessor;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.EngineConfig;
 import com.netscape.cmscore.profile.ProfileSubsystem;
+import com.netscape.cmscore.request.RequestRepository;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
 /**
@@ -82,6 +108,14 @@ public class CertRequestService extends PKIService implements CertRequestResourc
     public static final int DEFAULT_MAXRESULTS = 100;
     public static final int DEFAULT_MAXTIME = 10;
 
+    public static final int DEFAULT_BATCH_MAXSIZE = 10000;
+    public static final int DEFAULT_BATCH_THREADS = 4;
+
+    public static final int DEFAULT_MAX_WAIT_TIME = 10; // seconds
+
+    public static final int DEFAULT_EXPORT_PAGE_SIZE = 1000;
+    public static final int MAX_EXPORT_PAGE_SIZE = 10000;
+
     /**
      * Used to retrieve key request info for a specific request
      */
@@ -118,50 +152,44 @@ public class CertRequestService extends PKIService implements CertRequestResourc
 
         logger.info("CertRequestService: Receiving certificate request");
 
-        if (data == null) {
-            String message = "Unable to create enrollment request: Missing input data";
-            logger.error(message);
-            throw new BadRequestException(message);
-        }
+        CertRequestInfos infos = submitEnrollment(data, aidString, adnString, null);
 
-        if (aidString != null && adnString != null)
-            throw new BadRequestException("Cannot provide both issuer-id and issuer-dn");
-
-        CAEngine engine = CAEngine.getInstance();
-        CertificateAuthority ca = engine.getCA();
-
-        AuthorityID aid = null;
-        if (aidString != null) {
-            try {
-                aid = new AuthorityID(aidString);
-            } catch (IllegalArgumentException e) {
-                throw new BadRequestException("invalid AuthorityID: " + aidString, e);
-            }
+        // this will return an error code of 200, instead of 201
+        // because it is possible to create more than one request
+        // as a result of this enrollment
 
-            ca = engine.getCA(aid);
+        return createOKResponse(infos);
+    }
 
-            if (ca == null)
-                throw new ResourceNotFoundException("CA not found: " + aidString);
-        }
+    @Override
+    public Response enrollCertAsync(CertEnrollmentRequest data, String aidString, String adnString) {
 
-        if (adnString != null) {
-            X500Name adn = null;
-            try {
-                adn = new X500Name(adnString);
-            } catch (IOException e) {
-                throw new BadRequestException("invalid DN: " + adnString, e);
-            }
+        logger.info("CertRequestService: Receiving asynchronous certificate request");
 
-            ca = engine.getCA(adn);
+        CAEngine engine = CAEngine.getInstance();
+        CertRequestInfos infos = submitEnrollment(data, aidString, adnString, engine.getEnrollmentExecutor());
+
+        // the requests are still being processed
+        return Response
+                .status(Response.Status.ACCEPTED)
+                .entity(infos)
+                .type(getResponseFormat())
+                .build();
+    }
 
-            if (ca == null)
-                throw new ResourceNotFoundException("CA not found: " + adnString);
+    private CertRequestInfos submitEnrollment(
+            CertEnrollmentRequest data,
+            String aidString,
+            String adnString,
+            EnrollmentExecutor executor) {
 
-            aid = ca.getAuthorityID();
+        if (data == null) {
+            String message = "Unable to create enrollment request: Missing input data";
+            logger.error(message);
+            throw new BadRequestException(message);
         }
 
-        if (!ca.getAuthorityEnabled())
-            throw new ConflictingOperationException("CA not enabled: " + aid.toString());
+        AuthorityID aid = getAuthorityID(aidString, adnString);
 
         data.setRemoteHost(servletRequest.getRemoteHost());
         data.setRemoteAddr(servletRequest.getRemoteAddr());
@@ -170,7 +198,10 @@ public class CertRequestService extends PKIService implements CertRequestResourc
 
         CertRequestInfos infos;
         try {
-            infos = dao.submitRequest(aid, data, servletRequest, uriInfo, getLocale(headers));
+            infos = dao.submitRequest(aid, data, servletRequest, uriInfo, getLocale(headers), executor);
+
+        } catch (ServiceUnavailableException e) {
+            throw e;
 
         } catch (EAuthException e) {
             String message = "Authentication failed: " + e.getMessage();
@@ -198,11 +229,316 @@ public class CertRequestService extends PKIService implements CertRequestResourc
             throw new PKIException(message, e);
         }
 
-        // this will return an error code of 200, instead of 201
-        // because it is possible to create more than one request
-        // as a result of this enrollment
+        return infos;
+    }
 
-        return createOKResponse(infos);
+    @Override
+    public Response waitRequestInfo(RequestId id, Integer timeout) {
+
+        logger.info("CertRequestService: Waiting for certificate request " + id);
+
+        if (id == null) {
+            String message = "Unable to get certificate request info: Missing request ID";
+            logger.error(message);
+            throw new BadRequestException(message);
+        }
+
+        CAEngine engine = CAEngine.getInstance();
+        EngineConfig cs = engine.getConfig();
+
+        int maxTimeout;
+        try {
+            maxTimeout = cs.getInteger("ca.enrollment.async.maxWaitTime", DEFAULT_MAX_WAIT_TIME);
+        } catch (EBaseException e) {
+            throw new PKIException("Unable to get asynchronous enrollment configuration: " + e.getMessage(), e);
+        }
+
+        long waitTime = timeout == null ? maxTimeout : Math.max(0, Math.min(timeout, maxTimeout));
+
+        EnrollmentExecutor executor = engine.getEnrollmentExecutor();
+        try {
+            if (executor != null && !executor.waitForRequest(id, waitTime * 1000)) {
+                logger.debug("CertRequestService: Request " + id + " is still being processed");
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PKIException("Interrupted while waiting for request " + id, e);
+        }
+
+        return getRequestInfo(id);
+    }
+
+    @Override
+    public Response enrollCerts(CertBatchEnrollmentRequest data, String aidString, String adnString) {
+
+        logger.info("CertRequestService: Receiving batch certificate request");
+
+        if (data == null || data.getRequest() == null) {
+            String message = "Unable to create enrollment requests: Missing input data";
+            logger.error(message);
+            throw new BadRequestException(message);
+        }
+
+        CertEnrollmentRequest template = data.getRequest();
+
+        if (template.isRenewal()) {
+            throw new BadRequestException("Renewal requests cannot be submitted in a batch");
+        }
+
+        final List<String> csrs = data.getCSRs();
+
+        if (csrs == null || csrs.isEmpty()) {
+            throw new BadRequestException("Unable to create enrollment requests: Missing CSRs");
+        }
+
+        CAEngine engine = CAEngine.getInstance();
+        EngineConfig cs = engine.getConfig();
+
+        int maxSize;
+        final int threads;
+        try {
+            maxSize = cs.getInteger("ca.enrollment.batch.maxSize", DEFAULT_BATCH_MAXSIZE);
+            threads = cs.getInteger("ca.enrollment.batch.threads", DEFAULT_BATCH_THREADS);
+        } catch (EBaseException e) {
+            throw new PKIException("Unable to get batch enrollment configuration: " + e.getMessage(), e);
+        }
+
+        if (threads < 1) {
+            throw new PKIException("Invalid number of batch enrollment threads: " + threads);
+        }
+
+        if (csrs.size() > maxSize) {
+            throw new BadRequestException("Too many CSRs in batch: " + csrs.size() + " (max: " + maxSize + ")");
+        }
+
+        // the CSRs are processed by the shared enrollment threads
+        final EnrollmentExecutor executor = engine.getEnrollmentExecutor();
+
+        if (executor == null) {
+            throw new PKIException("Enrollment executor not available");
+        }
+
+        final AuthorityID aid = getAuthorityID(aidString, adnString);
+
+        template.setRemoteHost(servletRequest.getRemoteHost());
+        template.setRemoteAddr(servletRequest.getRemoteAddr());
+
+        // each enrollment gets its own copy of the template
+        final String templateXML;
+        try {
+            templateXML = template.toXML();
+        } catch (Exception e) {
+            throw new PKIException("Unable to create enrollment requests: " + e.getMessage(), e);
+        }
+
+        // the servlet request is not thread-safe and is recycled once the
+        // response is sent, so copy the values needed by the enrollment
+        // threads while in the request thread
+        final URI baseUri = uriInfo.getBaseUri();
+        final Locale locale = getLocale(headers);
+
+        X509Certificate[] clientCerts = (X509Certificate[]) servletRequest.getAttribute(CAProcessor.CERT_ATTR);
+        final X509Certificate[] certs = clientCerts == null ? null : clientCerts.clone();
+
+        final SessionContext context = new SessionContext();
+        context.putAll(SessionContext.getContext());
+        context.put("sslClientCertProvider", (ISSLClientCertProvider) () -> certs);
+
+        logger.info("CertRequestService: Enrolling " + csrs.size() + " CSRs with " + threads + " threads");
+
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                ObjectMapper mapper = new ObjectMapper();
+
+                CompletionService<Map<String, Object>> completionService =
+                        new ExecutorCompletionService<>(executor);
+
+                List<Future<Map<String, Object>>> futures = new ArrayList<>();
+
+                // limit the pending enrollments so the results are
+                // streamed while the remaining CSRs are processed and
+                // the batch does not take over the shared threads
+                int window = Math.min(threads, executor.getThreads()) * 2;
+                int submitted = 0;
+                int completed = 0;
+
+                try {
+                    while (completed < csrs.size()) {
+
+                        while (submitted < csrs.size() && submitted - completed < window) {
+                            final int index = submitted;
+                            final String csr = csrs.get(index);
+
+                            try {
+                                futures.add(completionService.submit(() -> enroll(
+                                        index, csr, templateXML, aid, baseUri, context, locale)));
+
+                            } catch (ServiceUnavailableException e) {
+
+                                if (submitted > completed) {
+                                    // retry once a pending enrollment completes
+                                    break;
+                                }
+
+                                Map<String, Object> result = new LinkedHashMap<>();
+                                result.put("index", index);
+                                result.put("error", e.getMessage());
+
+                                writeResult(writer, mapper, result);
+                                completed++;
+                            }
+
+                            submitted++;
+                        }
+
+                        if (completed == submitted) {
+                            continue;
+                        }
+
+                        Map<String, Object> result = completionService.take().get();
+                        completed++;
+
+                        writeResult(writer, mapper, result);
+                    }
+
+                } catch (IOException e) {
+                    throw e;
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PKIException("Batch enrollment interrupted", e);
+
+                } catch (ExecutionException e) {
+                    logger.error("Unable to enroll certificates: " + e.getMessage(), e);
+                    throw new PKIException("Unable to enroll certificates: " + e.getMessage(), e);
+
+                } finally {
+                    // skip the queued enrollments if the batch is aborted,
+                    // e.g. the client disconnected
+                    for (Future<Map<String, Object>> future : futures) {
+                        future.cancel(false);
+                    }
+                }
+
+                logger.info("CertRequestService: Enrolled " + completed + " CSRs");
+            }
+        };
+
+        return createOKResponse(so);
+    }
+
+    private void writeResult(Writer writer, ObjectMapper mapper, Map<String, Object> result) throws IOException {
+        writer.write(mapper.writeValueAsString(result));
+        writer.write("\n");
+        writer.flush();
+    }
+
+    /**
+     * Submits one CSR of a batch using the enrollment template.
+     * Errors are returned in the result so the rest of the batch
+     * can continue.
+     */
+    private Map<String, Object> enroll(
+            int index,
+            String csr,
+            String templateXML,
+            AuthorityID aid,
+            URI baseUri,
+            SessionContext context,
+            Locale locale) {
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+
+        // session attributes may be modified during the enrollment
+        SessionContext sc = new SessionContext();
+        sc.putAll(context);
+        SessionContext.setContext(sc);
+
+        try {
+            CertEnrollmentRequest data = CertEnrollmentRequest.fromXML(templateXML);
+
+            for (ProfileInput input : data.getInputs()) {
+                ProfileAttribute csrAttr = input.getAttribute("cert_request");
+                if (csrAttr != null) {
+                    csrAttr.setValue(csr);
+                }
+            }
+
+            CertRequestDAO dao = new CertRequestDAO();
+            CertRequestInfos infos = dao.submitRequest(aid, data, baseUri, locale);
+
+            List<Map<String, Object>> requests = new ArrayList<>();
+
+            for (CertRequestInfo info : infos.getEntries()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("requestID", info.getRequestId() == null ? null : info.getRequestId().toHexString());
+                entry.put("requestStatus", info.getRequestStatus() == null ? null : info.getRequestStatus().toString());
+                entry.put("certID", info.getCertId() == null ? null : info.getCertId().toHexString());
+                entry.put("errorMessage", info.getErrorMessage());
+                requests.add(entry);
+            }
+
+            result.put("requests", requests);
+
+        } catch (Exception e) {
+            logger.warn("CertRequestService: Unable to enroll CSR #" + index + ": " + e.getMessage(), e);
+            result.put("error", e.getMessage());
+
+        } finally {
+            SessionContext.releaseContext();
+        }
+
+        return result;
+    }
+
+    private AuthorityID getAuthorityID(String aidString, String adnString) {
+
+        if (aidString != null && adnString != null)
+            throw new BadRequestException("Cannot provide both issuer-id and issuer-dn");
+
+        CAEngine engine = CAEngine.getInstance();
+        CertificateAuthority ca = engine.getCA();
+
+        AuthorityID aid = null;
+        if (aidString != null) {
+            try {
+                aid = new AuthorityID(aidString);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("invalid AuthorityID: " + aidString, e);
+            }
+
+            ca = engine.getCA(aid);
+
+            if (ca == null)
+                throw new ResourceNotFoundException("CA not found: " + aidString);
+        }
+
+        if (adnString != null) {
+            X500Name adn = null;
+            try {
+                adn = new X500Name(adnString);
+            } catch (IOException e) {
+                throw new BadRequestException("invalid DN: " + adnString, e);
+            }
+
+            ca = engine.getCA(adn);
+
+            if (ca == null)
+                throw new ResourceNotFoundException("CA not found: " + adnString);
+
+            aid = ca.getAuthorityID();
+        }
+
+        if (!ca.getAuthorityEnabled())
+            throw new ConflictingOperationException("CA not enabled: " + aid.toString());
+
+        return aid;
     }
 
     @Override
@@ -393,6 +729,95 @@ public class CertRequestService extends PKIService implements CertRequestResourc
         return createOKResponse(requests);
     }
 
+    @Override
+    public Response exportRequests(String requestState, String requestType, Integer pageSize) {
+
+        logger.info("CertRequestService: Exporting cert requests");
+
+        pageSize = pageSize == null ? DEFAULT_EXPORT_PAGE_SIZE : pageSize;
+        if (pageSize <= 0 || pageSize > MAX_EXPORT_PAGE_SIZE) {
+            throw new BadRequestException("Invalid page size: " + pageSize);
+        }
+        final int exportPageSize = pageSize;
+
+        final String filter = createSearchFilter(requestState, requestType);
+        logger.info("CertRequestService: Search filter: " + filter);
+
+        CAEngine engine = CAEngine.getInstance();
+        final RequestRepository requestRepository = engine.getRequestRepository();
+        final URI baseUri = uriInfo.getBaseUri();
+
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                ObjectMapper mapper = new ObjectMapper();
+
+                RequestId last = null;
+                long total = 0;
+
+                try {
+                    while (true) {
+                        IRequestList list = requestRepository.findRequestRecordsAfter(filter, last, exportPageSize);
+                        int count = 0;
+
+                        while (list != null && list.hasMoreElements()) {
+                            IRequest request = list.nextRequestObject();
+                            if (request == null) continue;
+
+                            writer.write(mapper.writeValueAsString(createExportEntry(request, baseUri)));
+                            writer.write("\n");
+
+                            last = request.getRequestId();
+                            count++;
+                        }
+
+                        // push each page to the client before fetching the next one
+                        writer.flush();
+                        total += count;
+
+                        if (count < exportPageSize) break;
+                    }
+
+                } catch (IOException e) {
+                    throw e;
+
+                } catch (Exception e) {
+                    logger.error("CertRequestService: Unable to export cert requests: " + e.getMessage(), e);
+                    throw new PKIException("Unable to export cert requests: " + e.getMessage(), e);
+                }
+
+                logger.info("CertRequestService: Exported " + total + " cert requests");
+            }
+        };
+
+        return createOKResponse(so);
+    }
+
+    private Map<String, Object> createExportEntry(IRequest request, URI baseUri) throws Exception {
+
+        CertRequestInfo info = CertRequestInfoFactory.create(request, baseUri);
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("requestID", request.getRequestId().toHexString());
+        entry.put("requestType", info.getRequestType());
+        entry.put("requestStatus", info.getRequestStatus() == null ? null : info.getRequestStatus().toString());
+        entry.put("profileID", request.getExtDataInString(IRequest.PROFILE_ID));
+
+        Date creationTime = request.getCreationTime();
+        entry.put("creationTime", creationTime == null ? null : creationTime.getTime());
+
+        Date modificationTime = request.getModificationTime();
+        entry.put("modificationTime", modificationTime == null ? null : modificationTime.getTime());
+
+        entry.put("certID", info.getCertId() == null ? null : info.getCertId().toHexString());
+        entry.put("errorMessage", info.getErrorMessage());
+
+        return entry;
+    }
+
     private String createSearchFilter(String requestState, String requestType) {
         String filter = "";
         int matches = 0;
@@ -20,8 +20,12 @@ package org.dogtagpki.server.ca.rest;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.Principal;
 import java.security.PublicKey;
@@ -30,10 +34,13 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.catalina.realm.GenericPrincipal;
 import org.dogtag.util.cert.CertUtil;
@@ -52,6 +59,7 @@ import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 import org.mozilla.jss.netscape.security.x509.X509ExtensionException;
 import org.mozilla.jss.netscape.security.x509.X509Key;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netscape.ca.CertificateAuthority;
 import com.netscape.certsrv.base.BadRequestException;
 import com.netscape.certsrv.base.EBaseException;
@@ -99,6 +107,9 @@ public class CertService extends PKIService implements CertResource {
     public static final int DEFAULT_MAXTIME = 0;
     public static final int DEFAULT_MAXRESULTS = 20;
 
+    public static final int DEFAULT_EXPORT_PAGE_SIZE = 1000;
+    public static final int MAX_EXPORT_PAGE_SIZE = 10000;
+
     public CertService() {
 
         CAEngine engine = CAEngine.getInstance();
@@ -501,6 +512,107 @@ public class CertService extends PKIService implements CertResource {
         return createOKResponse(infos);
     }
 
+    @Override
+    public Response exportCerts(CertSearchRequest data, String format, Integer pageSize) {
+
+        logger.info("Exporting certificates");
+
+        if (data == null) {
+            data = new CertSearchRequest();
+        }
+
+        final String exportFormat = format == null ? "ndjson" : format.toLowerCase();
+        if (!exportFormat.equals("ndjson") && !exportFormat.equals("pem")) {
+            throw new BadRequestException("Unsupported export format: " + format);
+        }
+
+        pageSize = pageSize == null ? DEFAULT_EXPORT_PAGE_SIZE : pageSize;
+        if (pageSize <= 0 || pageSize > MAX_EXPORT_PAGE_SIZE) {
+            throw new BadRequestException("Invalid page size: " + pageSize);
+        }
+        final int exportPageSize = pageSize;
+
+        final String filter = createSearchFilter(data);
+        logger.info("Search filter: " + filter);
+
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                ObjectMapper mapper = new ObjectMapper();
+
+                BigInteger last = null;
+                long total = 0;
+
+                try {
+                    while (true) {
+                        Enumeration<CertRecord> e = repo.findCertRecordsAfter(filter, last, exportPageSize);
+                        int count = 0;
+
+                        while (e.hasMoreElements()) {
+                            CertRecord record = e.nextElement();
+                            if (record == null) continue;
+
+                            if (exportFormat.equals("pem")) {
+                                writer.write(CertUtil.toPEM(record.getCertificate()));
+                            } else {
+                                writer.write(mapper.writeValueAsString(createExportEntry(record)));
+                                writer.write("\n");
+                            }
+
+                            last = record.getSerialNumber();
+                            count++;
+                        }
+
+                        // push each page to the client before fetching the next one
+                        writer.flush();
+                        total += count;
+
+                        if (count < exportPageSize) break;
+                    }
+
+                } catch (IOException e) {
+                    throw e;
+
+                } catch (Exception e) {
+                    logger.error("Unable to export certificates: " + e.getMessage(), e);
+                    throw new PKIException("Unable to export certificates: " + e.getMessage(), e);
+                }
+
+                logger.info("Exported " + total + " certificates");
+            }
+        };
+
+        return createOKResponse(so);
+    }
+
+    private Map<String, Object> createExportEntry(CertRecord record) throws Exception {
+
+        X509CertImpl cert = record.getCertificate();
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("id", new CertId(record.getSerialNumber()).toHexString());
+        entry.put("subjectDN", cert.getSubjectDN().toString());
+        entry.put("issuerDN", cert.getIssuerDN().toString());
+        entry.put("status", record.getStatus());
+        entry.put("notValidBefore", cert.getNotBefore().getTime());
+        entry.put("notValidAfter", cert.getNotAfter().getTime());
+
+        Date issuedOn = record.getCreateTime();
+        entry.put("issuedOn", issuedOn == null ? null : issuedOn.getTime());
+        entry.put("issuedBy", record.getIssuedBy());
+
+        Date revokedOn = record.getRevokedOn();
+        entry.put("revokedOn", revokedOn == null ? null : revokedOn.getTime());
+        entry.put("revokedBy", record.getRevokedBy());
+
+        entry.put("encoded", Utils.base64encode(cert.getEncoded(), false));
+
+        return entry;
+    }
+
     public CertData getCert(CertRetrievalRequest data, boolean generateNonce) throws Exception {
 
         CAEngine engine = CAEngine.getInstance();
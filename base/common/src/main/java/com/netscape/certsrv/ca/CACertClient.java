@@ -19,10 +19,14 @@ package com.netscape.certsrv.ca;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status.Family;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.mozilla.jss.netscape.security.x509.X500Name;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -30,6 +34,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netscape.certsrv.authentication.EAuthException;
+import com.netscape.certsrv.cert.CertBatchEnrollmentRequest;
 import com.netscape.certsrv.cert.CertData;
 import com.netscape.certsrv.cert.CertDataInfos;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
@@ -93,6 +98,11 @@ public class CACertClient extends Client {
         return client.getEntity(response, CertDataInfos.class);
     }
 
+    public StreamingOutput exportCerts(CertSearchRequest data, String format, Integer pageSize) throws Exception {
+        Response response = certClient.exportCerts(data, format, pageSize);
+        return client.getEntity(response, StreamingOutput.class);
+    }
+
     public CertRequestInfo revokeCert(CertId id, CertRevokeRequest request) throws Exception {
         Response response = certClient.revokeCert(id, request);
         return client.getEntity(response, CertRequestInfo.class);
@@ -122,11 +132,82 @@ public class CACertClient extends Client {
         return client.getEntity(response, CertRequestInfos.class);
     }
 
+    public CertRequestInfos enrollRequestAsync(
+            CertEnrollmentRequest data, AuthorityID aid, X500Name adn) throws Exception {
+        String aidString = aid != null ? aid.toString() : null;
+        String adnString = null;
+        if (adn != null) {
+            try {
+                adnString = adn.toLdapDNString();
+            } catch (IOException e) {
+            }
+        }
+        Response response = certRequestClient.enrollCertAsync(data, aidString, adnString);
+        return client.getEntity(response, CertRequestInfos.class);
+    }
+
+    /**
+     * Submits a batch enrollment and copies the NDJSON results to
+     * the output stream as they arrive from the server.
+     */
+    public void enrollRequests(
+            CertBatchEnrollmentRequest data, AuthorityID aid, X500Name adn, OutputStream out) throws Exception {
+        String aidString = aid != null ? aid.toString() : null;
+        String adnString = null;
+        if (adn != null) {
+            try {
+                adnString = adn.toLdapDNString();
+            } catch (IOException e) {
+            }
+        }
+        Response response = certRequestClient.enrollCerts(data, aidString, adnString);
+        copyEntity(response, out);
+    }
+
+    /**
+     * Exports the cert requests matching the search parameters and
+     * copies the NDJSON records to the output stream as they arrive
+     * from the server.
+     */
+    public void exportRequests(
+            String requestState, String requestType, Integer pageSize, OutputStream out) throws Exception {
+        Response response = certRequestClient.exportRequests(requestState, requestType, pageSize);
+        copyEntity(response, out);
+    }
+
+    private void copyEntity(Response response, OutputStream out) throws Exception {
+
+        if (response.getStatusInfo().getFamily() != Family.SUCCESSFUL) {
+            // throws the server error
+            client.getEntity(response, String.class);
+            return;
+        }
+
+        // the response is not buffered so the records are not delayed
+        // until the whole response completes
+        try (InputStream in = response.readEntity(InputStream.class)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                out.flush();
+            }
+
+        } finally {
+            response.close();
+        }
+    }
+
     public CertRequestInfo getRequest(RequestId id) throws Exception {
         Response response = certRequestClient.getRequestInfo(id);
         return client.getEntity(response, CertRequestInfo.class);
     }
 
+    public CertRequestInfo waitRequest(RequestId id, Integer timeout) throws Exception {
+        Response response = certRequestClient.waitRequestInfo(id, timeout);
+        return client.getEntity(response, CertRequestInfo.class);
+    }
+
     public CertReviewResponse reviewRequest(RequestId id) throws Exception {
         Response response = certRequestClient.reviewRequest(id);
         return client.getEntity(response, CertReviewResponse.class);
@@ -0,0 +1,91 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.cert;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A batch of certificate requests enrolled with the same profile.
+ *
+ * The enrollment request is used as a template: each CSR is stored
+ * in the template's cert_request input to create one enrollment.
+ */
+@XmlRootElement(name = "CertBatchEnrollmentRequest")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertBatchEnrollmentRequest {
+
+    @XmlElement(name = "Request")
+    protected CertEnrollmentRequest request;
+
+    @XmlElement(name = "CSR")
+    protected List<String> csrs = new ArrayList<String>();
+
+    public CertEnrollmentRequest getRequest() {
+        return request;
+    }
+
+    public void setRequest(CertEnrollmentRequest request) {
+        this.request = request;
+    }
+
+    public List<String> getCSRs() {
+        return csrs;
+    }
+
+    public void setCSRs(List<String> csrs) {
+        this.csrs = csrs;
+    }
+
+    public void addCSR(String csr) {
+        csrs.add(csr);
+    }
+
+    public String toXML() throws Exception {
+        JAXBContext context = JAXBContext.newInstance(CertBatchEnrollmentRequest.class);
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        StringWriter sw = new StringWriter();
+        marshaller.marshal(this, sw);
+        return sw.toString();
+    }
+
+    public static CertBatchEnrollmentRequest fromXML(String string) throws Exception {
+        JAXBContext context = JAXBContext.newInstance(CertBatchEnrollmentRequest.class);
+        Unmarshaller unmarshaller = context.createUnmarshaller();
+        return (CertBatchEnrollmentRequest) unmarshaller.unmarshal(new StringReader(string));
+    }
+
+    public String toString() {
+        try {
+            return toXML();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -21,7 +21,9 @@ import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.netscape.certsrv.acls.ACLMapping;
@@ -38,6 +40,33 @@ public interface CertRequestResource {
         @QueryParam("issuer-id") String caIDString,
         @QueryParam("issuer-dn") String caDNString);
 
+    /**
+     * Creates certificate requests and returns them right after they have
+     * been validated. The certificates are issued in the background, the
+     * requests can be retrieved with waitRequestInfo() or getRequestInfo().
+     */
+    @POST
+    @Path("certrequests/async")
+    public Response enrollCertAsync(
+        CertEnrollmentRequest data,
+        @QueryParam("issuer-id") String caIDString,
+        @QueryParam("issuer-dn") String caDNString);
+
+    /**
+     * Enrolls a batch of certificate requests with the same profile.
+     * The results are streamed as NDJSON records as they complete.
+     * Only agents can submit batches.
+     */
+    @POST
+    @Path("certrequests/batch")
+    @ACLMapping("certrequests.batch")
+    @AuthMethodMapping("certrequests.batch")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response enrollCerts(
+        CertBatchEnrollmentRequest data,
+        @QueryParam("issuer-id") String caIDString,
+        @QueryParam("issuer-dn") String caDNString);
+
     /**
      * Used to retrieve cert request info for a specific request
      */
@@ -45,6 +74,16 @@ public interface CertRequestResource {
     @Path("certrequests/{id}")
     public Response getRequestInfo(@PathParam("id") RequestId id);
 
+    /**
+     * Waits until an asynchronous certificate request has been processed
+     * or the timeout (in seconds) expires, then returns the request info.
+     */
+    @GET
+    @Path("certrequests/{id}/wait")
+    public Response waitRequestInfo(
+            @PathParam("id") RequestId id,
+            @QueryParam("timeout") Integer timeout);
+
     /**
      * Used to generate list of cert requests based on the search parameters
      */
@@ -59,6 +98,19 @@ public interface CertRequestResource {
             @QueryParam("maxResults") Integer maxResults,
             @QueryParam("maxTime") Integer maxTime);
 
+    /**
+     * Streams the cert requests matching the search parameters as
+     * newline-delimited JSON, reading them from the database in pages.
+     */
+    @GET
+    @Path("agent/certrequests/export")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @ACLMapping("certrequests")
+    @AuthMethodMapping("certrequests")
+    public Response exportRequests(@QueryParam("requestState") String requestState,
+            @QueryParam("requestType") String requestType,
+            @QueryParam("pageSize") Integer pageSize);
+
     @GET
     @Path("agent/certrequests/{id}")
     @ACLMapping("certrequests")
@@ -4,7 +4,9 @@ import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.netscape.certsrv.acls.ACLMapping;
@@ -40,6 +42,16 @@ public interface CertResource {
     @AuthMethodMapping("certs")
     public Response reviewCert(@PathParam("id") CertId id);
 
+    @POST
+    @Path("agent/certs/export")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @ACLMapping("certs")
+    @AuthMethodMapping("certs")
+    public Response exportCerts(
+            CertSearchRequest data,
+            @QueryParam("format") String format,
+            @QueryParam("pageSize") Integer pageSize);
+
     @POST
     @Path("agent/certs/{id}/revoke-ca")
     @ACLMapping("certs")
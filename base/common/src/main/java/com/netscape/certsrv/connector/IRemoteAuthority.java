@@ -75,4 +75,12 @@ public interface IRemoteAuthority {
      * @return String with Content-Type, if it was set
      */
     public String getContentType();
+
+    /**
+     * Checks whether requests to the Remote Authority should use the
+     * compact request encoding instead of Java serialization.
+     *
+     * @return true if compact encoding is enabled
+     */
+    public boolean isCompactEncoding();
 }
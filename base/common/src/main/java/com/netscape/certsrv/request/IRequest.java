@@ -148,6 +148,8 @@ public interface IRequest extends Serializable {
     // revocation request attributes (internally set)
     public static final String REVOKED_CERTS = "revokedCerts";
     public static final String REVOKED_REASON = "revocationReason";
+    // next update of the CA's revocation list (milliseconds)
+    public static final String CRL_NEXT_UPDATE = "crlNextUpdate";
     // CCA -> CLA request attributes
     public static final String REVOKED_CERT_RECORDS = "revokedCertRecs";
     // crl update status after a revocation.
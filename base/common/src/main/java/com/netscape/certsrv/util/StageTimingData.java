@@ -0,0 +1,254 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.util;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlList;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Timing statistics of a stage of the certificate issuance
+ * for a profile. The times are in milliseconds.
+ *
+ * The histogram contains the number of operations that took up to
+ * the corresponding bucket time, and the operations that took longer
+ * than the last bucket time in the last element.
+ */
+@XmlRootElement(name="StageTiming")
+public class StageTimingData {
+
+    public static Marshaller marshaller;
+    public static Unmarshaller unmarshaller;
+
+    static {
+        try {
+            marshaller = JAXBContext.newInstance(StageTimingData.class).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            unmarshaller = JAXBContext.newInstance(StageTimingData.class).createUnmarshaller();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    String profileID;
+    String stage;
+    long count;
+    long totalTime;
+    long minTime;
+    long maxTime;
+    long averageTime;
+    long p50;
+    long p90;
+    long p99;
+    long[] buckets;
+    long[] histogram;
+
+    @XmlAttribute(name="profileID")
+    public String getProfileID() {
+        return profileID;
+    }
+
+    public void setProfileID(String profileID) {
+        this.profileID = profileID;
+    }
+
+    @XmlAttribute(name="stage")
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    @XmlElement(name="Count")
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @XmlElement(name="TotalTime")
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public void setTotalTime(long totalTime) {
+        this.totalTime = totalTime;
+    }
+
+    @XmlElement(name="MinTime")
+    public long getMinTime() {
+        return minTime;
+    }
+
+    public void setMinTime(long minTime) {
+        this.minTime = minTime;
+    }
+
+    @XmlElement(name="MaxTime")
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    @XmlElement(name="AverageTime")
+    public long getAverageTime() {
+        return averageTime;
+    }
+
+    public void setAverageTime(long averageTime) {
+        this.averageTime = averageTime;
+    }
+
+    @XmlElement(name="P50")
+    public long getP50() {
+        return p50;
+    }
+
+    public void setP50(long p50) {
+        this.p50 = p50;
+    }
+
+    @XmlElement(name="P90")
+    public long getP90() {
+        return p90;
+    }
+
+    public void setP90(long p90) {
+        this.p90 = p90;
+    }
+
+    @XmlElement(name="P99")
+    public long getP99() {
+        return p99;
+    }
+
+    public void setP99(long p99) {
+        this.p99 = p99;
+    }
+
+    @XmlElement(name="Buckets")
+    @XmlList
+    public long[] getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(long[] buckets) {
+        this.buckets = buckets;
+    }
+
+    @XmlElement(name="Histogram")
+    @XmlList
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(long[] histogram) {
+        this.histogram = histogram;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (int) (averageTime ^ (averageTime >>> 32));
+        result = prime * result + Arrays.hashCode(buckets);
+        result = prime * result + (int) (count ^ (count >>> 32));
+        result = prime * result + Arrays.hashCode(histogram);
+        result = prime * result + (int) (maxTime ^ (maxTime >>> 32));
+        result = prime * result + (int) (minTime ^ (minTime >>> 32));
+        result = prime * result + (int) (p50 ^ (p50 >>> 32));
+        result = prime * result + (int) (p90 ^ (p90 >>> 32));
+        result = prime * result + (int) (p99 ^ (p99 >>> 32));
+        result = prime * result + ((profileID == null) ? 0 : profileID.hashCode());
+        result = prime * result + ((stage == null) ? 0 : stage.hashCode());
+        result = prime * result + (int) (totalTime ^ (totalTime >>> 32));
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        StageTimingData other = (StageTimingData) obj;
+        if (averageTime != other.averageTime)
+            return false;
+        if (!Arrays.equals(buckets, other.buckets))
+            return false;
+        if (count != other.count)
+            return false;
+        if (!Arrays.equals(histogram, other.histogram))
+            return false;
+        if (maxTime != other.maxTime)
+            return false;
+        if (minTime != other.minTime)
+            return false;
+        if (p50 != other.p50)
+            return false;
+        if (p90 != other.p90)
+            return false;
+        if (p99 != other.p99)
+            return false;
+        if (profileID == null) {
+            if (other.profileID != null)
+                return false;
+        } else if (!profileID.equals(other.profileID))
+            return false;
+        if (stage == null) {
+            if (other.stage != null)
+                return false;
+        } else if (!stage.equals(other.stage))
+            return false;
+        if (totalTime != other.totalTime)
+            return false;
+        return true;
+    }
+
+    public String toString() {
+        try {
+            StringWriter sw = new StringWriter();
+            marshaller.marshal(this, sw);
+            return sw.toString();
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static StageTimingData valueOf(String string) throws Exception {
+        return (StageTimingData) unmarshaller.unmarshal(new StringReader(string));
+    }
+}
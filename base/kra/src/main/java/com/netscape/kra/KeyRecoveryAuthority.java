@@ -409,6 +409,7 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyService, IKeyRecove
         if (schedulerClass != null) {
             try {
                 IRequestScheduler scheduler = (IRequestScheduler) Class.forName(schedulerClass).getDeclaredConstructor().newInstance();
+                scheduler.init(mConfig.getSubStore("requestScheduler"));
 
                 requestQueue.setRequestScheduler(scheduler);
             } catch (Exception e) {
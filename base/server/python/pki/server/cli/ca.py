@@ -58,6 +58,7 @@ class CACLI(pki.cli.CLI):
         self.add_module(pki.server.cli.group.GroupCLI(self))
         self.add_module(CAProfileCLI())
         self.add_module(pki.server.cli.range.RangeCLI(self))
+        self.add_module(CATimingCLI())
         self.add_module(pki.server.cli.user.UserCLI(self))
 
 
@@ -497,6 +498,150 @@ class CACertRequestShowCLI(pki.cli.CLI):
             CACertRequestCLI.print_request(request, details=True)
 
 
+class CATimingCLI(pki.cli.CLI):
+
+    def __init__(self):
+        super(CATimingCLI, self).__init__(
+            'timing', 'CA issuance timing commands')
+
+        self.add_module(CATimingFindCLI())
+
+    @staticmethod
+    def print_timing(timing):
+        print('  Profile ID: %s' % timing['profileID'])
+        print('  Stage: %s' % timing['stage'])
+        print('  Count: %s' % timing['Count'])
+        print('  Average Time (ms): %s' % timing['AverageTime'])
+        print('  Min Time (ms): %s' % timing['MinTime'])
+        print('  Max Time (ms): %s' % timing['MaxTime'])
+        print('  P50 (ms): %s' % timing['P50'])
+        print('  P90 (ms): %s' % timing['P90'])
+        print('  P99 (ms): %s' % timing['P99'])
+
+
+class CATimingFindCLI(pki.cli.CLI):
+
+    def __init__(self):
+        super(CATimingFindCLI, self).__init__(
+            'find', 'Find CA issuance stage timings')
+
+    def print_help(self):
+        print('Usage: pki-server ca-timing-find [OPTIONS]')
+        print()
+        print('  -i, --instance <instance ID>       Instance ID (default: pki-tomcat).')
+        print('      --profile <profile ID>         Profile ID.')
+        print('      --stage <stage>                Stage name.')
+        print('  -u, --username <username>          Agent username.')
+        print('  -w, --password <password>          Agent password.')
+        print('      --client-cert <file>           Agent certificate in PEM format.')
+        print('      --client-key <file>            Agent key in PEM format.')
+        print('      --ca-cert <file>               CA certificate to verify the server.')
+        print('  -v, --verbose                      Run in verbose mode.')
+        print('      --debug                        Run in debug mode.')
+        print('      --help                         Show help message.')
+        print()
+
+    def execute(self, argv):
+
+        try:
+            opts, _ = getopt.gnu_getopt(argv, 'i:u:w:v', [
+                'instance=', 'profile=', 'stage=',
+                'username=', 'password=',
+                'client-cert=', 'client-key=', 'ca-cert=',
+                'verbose', 'debug', 'help'])
+
+        except getopt.GetoptError as e:
+            logger.error(e)
+            self.print_help()
+            sys.exit(1)
+
+        instance_name = 'pki-tomcat'
+        profile_id = None
+        stage = None
+        username = None
+        password = None
+        client_cert = None
+        client_key = None
+        ca_cert = None
+
+        for o, a in opts:
+            if o in ('-i', '--instance'):
+                instance_name = a
+
+            elif o == '--profile':
+                profile_id = a
+
+            elif o == '--stage':
+                stage = a
+
+            elif o in ('-u', '--username'):
+                username = a
+
+            elif o in ('-w', '--password'):
+                password = a
+
+            elif o == '--client-cert':
+                client_cert = a
+
+            elif o == '--client-key':
+                client_key = a
+
+            elif o == '--ca-cert':
+                ca_cert = a
+
+            elif o in ('-v', '--verbose'):
+                logging.getLogger().setLevel(logging.INFO)
+
+            elif o == '--debug':
+                logging.getLogger().setLevel(logging.DEBUG)
+
+            elif o == '--help':
+                self.print_help()
+                sys.exit()
+
+            else:
+                logger.error('Invalid option: %s', o)
+                self.print_help()
+                sys.exit(1)
+
+        if not client_cert and not (username and password):
+            logger.error('Missing agent credentials')
+            self.print_help()
+            sys.exit(1)
+
+        instance = pki.server.instance.PKIServerFactory.create(instance_name)
+        if not instance.exists():
+            logger.error('Invalid instance: %s', instance_name)
+            sys.exit(1)
+
+        instance.load()
+
+        subsystem = instance.get_subsystem('ca')
+        if not subsystem:
+            logger.error('No CA subsystem in instance %s', instance_name)
+            sys.exit(1)
+
+        results = subsystem.find_stage_timings(
+            profile_id=profile_id,
+            stage=stage,
+            username=username,
+            password=password,
+            client_cert=client_cert,
+            client_key=client_key,
+            ca_cert=ca_cert)
+
+        self.print_message('%s entries matched' % len(results))
+
+        first = True
+        for timing in results:
+            if first:
+                first = False
+            else:
+                print()
+
+            CATimingCLI.print_timing(timing)
+
+
 class CACloneCLI(pki.cli.CLI):
 
     def __init__(self):
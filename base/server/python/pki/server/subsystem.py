@@ -40,6 +40,7 @@ import ldap
 import ldap.filter
 
 import pki
+import pki.client
 import pki.nssdb
 import pki.util
 import pki.server
@@ -1745,6 +1746,46 @@ class CASubsystem(PKISubsystem):
         entry = entries[0]
         return self.create_request_object(entry)
 
+    def find_stage_timings(
+            self,
+            profile_id=None,
+            stage=None,
+            username=None,
+            password=None,
+            client_cert=None,
+            client_key=None,
+            ca_cert=None):
+        '''
+        Retrieve the timing statistics of the certificate issuance stages
+        from the running CA using an agent certificate or password.
+        '''
+
+        server_config = self.instance.get_server_config()
+
+        connection = pki.client.PKIConnection(
+            protocol='https',
+            hostname=socket.getfqdn(),
+            port=server_config.get_secure_port(),
+            trust_env=False,
+            verify=ca_cert if ca_cert else False)
+
+        if client_cert:
+            connection.set_authentication_cert(client_cert, client_key)
+
+        else:
+            connection.authenticate(username, password)
+
+        params = {}
+
+        if profile_id:
+            params['profile'] = profile_id
+
+        if stage:
+            params['stage'] = stage
+
+        response = connection.get('/ca/rest/stats/timings', params=params)
+        return response.json().get('entries', [])
+
     def create_request_object(self, entry):
 
         attrs = entry[1]
@@ -126,5 +126,21 @@ public interface IRequestNotifier extends INotify {
                                     int publishingQueuePageSize,
                                     int savePublishingStatus);
 
+    /**
+     * Sets the journal file of the publishing queue.
+     *
+     * @param filename journal file, or null to keep the queue in memory only
+     * @param sync true to flush each update to the disk
+     */
+    public void setPublishingJournal(String filename, boolean sync);
+
+    /**
+     * Sets the limits for running the listeners.
+     *
+     * @param maxThreadsPerListener maximum number of threads running a listener
+     * @param batchSize maximum number of requests passed to a batch listener at once
+     */
+    public void setListenerLimits(int maxThreadsPerListener, int batchSize);
+
     public void updatePublishingStatus(String id);
 }
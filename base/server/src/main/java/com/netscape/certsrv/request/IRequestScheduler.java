@@ -19,18 +19,29 @@ package com.netscape.certsrv.request;
 
 //import java.io.Serializable;
 
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
+
 /**
- * This is an interface to a request scheduler that prioritizes
- * the threads based on the request processing order.
- * The request that enters the request queue first should
- * be processed first.
+ * This is an interface to a request scheduler that controls
+ * the admission of requests into the request processing.
  *
  * @version $Revision$ $Date$
  */
 public interface IRequestScheduler {
 
     /**
-     * Request entered the request queue processing.
+     * Initializes the request scheduler.
+     *
+     * @param config scheduler configuration
+     * @exception EBaseException failed to initialize
+     */
+    public void init(IConfigStore config) throws EBaseException;
+
+    /**
+     * Request entered the request queue processing. The scheduler
+     * may block the calling thread until the request can be processed,
+     * or reject the request with ServiceUnavailableException.
      *
      * @param r request
      */
@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.certsrv.util;
 
+import java.util.Collection;
 import java.util.Date;
 
 import com.netscape.certsrv.base.ISubsystem;
@@ -50,6 +51,38 @@ public interface IStatsSubsystem extends ISubsystem {
      */
     public void endTiming(String id);
 
+    /**
+     * Sets the profile of the request processed by the current
+     * thread for the stage timings.
+     *
+     * @param profileID profile ID, or null if there is none
+     * @return the previous profile ID
+     */
+    public String setProfile(String profileID);
+
+    /**
+     * Records the time a stage of the request processed by the
+     * current thread took. Does nothing if the profile is not set.
+     *
+     * @param stage stage name
+     * @param startTime start time in milliseconds
+     */
+    public void recordStage(String stage, long startTime);
+
+    /**
+     * Records the time a stage of a request took.
+     *
+     * @param profileID profile ID
+     * @param stage stage name
+     * @param startTime start time in milliseconds
+     */
+    public void recordStage(String profileID, String stage, long startTime);
+
+    /**
+     * Returns the stage timings per profile.
+     */
+    public Collection<StageTimingData> getStageTimings();
+
     /**
      * Resets counters.
      */
@@ -20,8 +20,10 @@ package com.netscape.cms.authorization;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Locale;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.dogtagpki.server.authorization.AuthorizationConfig;
 import org.dogtagpki.server.authorization.AuthzManagerConfig;
@@ -29,7 +31,6 @@ import org.dogtagpki.server.authorization.AuthzToken;
 import org.dogtagpki.server.authorization.IAuthzManager;
 import org.mozilla.jss.netscape.security.util.Utils;
 
-import com.netscape.certsrv.acls.ACLEntry;
 import com.netscape.certsrv.acls.EACLsException;
 import com.netscape.certsrv.acls.IACL;
 import com.netscape.certsrv.authentication.IAuthToken;
@@ -38,9 +39,12 @@ import com.netscape.certsrv.authorization.EAuthzInternalError;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cms.authorization.CompiledACLs.Entries;
+import com.netscape.cms.authorization.CompiledACLs.Expression;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
+import com.netscape.cmscore.usrgrp.UGSubsystem;
 
 /**
  * An abstract class represents an authorization manager that governs the
@@ -79,6 +83,9 @@ public abstract class AAclAuthz implements IAuthzManager {
 
     protected static final String ACLS_ATTR = "aclResources";
 
+    protected static final String PROP_DECISION_CACHE_TIMEOUT = "decisionCacheTimeout";
+    protected static final int DECISION_CACHE_SIZE = 10000;
+
     /* name of this authorization manager instance */
     private String mName = null;
 
@@ -90,6 +97,25 @@ public abstract class AAclAuthz implements IAuthzManager {
     private Hashtable<String, IACL> mACLs = new Hashtable<>();
     private Hashtable<String, IAccessEvaluator> mEvaluators = new Hashtable<String, IAccessEvaluator>();
 
+    // compiled ACLs, recreated after the ACLs or evaluators are changed
+    private volatile CompiledACLs mCompiledACLs;
+
+    // incremented when the ACLs or evaluators are changed, so results
+    // computed from the previous ACLs are not cached
+    private volatile long mGeneration;
+
+    // cached decisions per (user, resource, operation) for ACLs that only
+    // use the user and group evaluators, disabled by default
+    private long mDecisionCacheTimeout;
+    private Map<String, Decision> mDecisions = new ConcurrentHashMap<>();
+
+    static class Decision {
+        String error; // null if permitted
+        long expirationTime;
+        long modificationCount;
+        long generation;
+    }
+
     /* Vector of extendedPluginInfo strings */
     protected static Vector<String> mExtendedPluginInfo = null;
 
@@ -116,6 +142,9 @@ public abstract class AAclAuthz implements IAuthzManager {
 
         logger.debug("AAclAuthz: init begins");
 
+        mDecisionCacheTimeout = config.getInteger(PROP_DECISION_CACHE_TIMEOUT, 0) * 1000L;
+        logger.debug("AAclAuthz: decision cache timeout: " + mDecisionCacheTimeout + "ms");
+
         // load access evaluators specified in the config file
         CMSEngine engine = CMS.getCMSEngine();
         EngineConfig mainConfig = engine.getConfig();
@@ -190,11 +219,14 @@ public abstract class AAclAuthz implements IAuthzManager {
         ACL acl = ACL.parseACL(resACLs);
 
         if (acl != null) {
-            ACL curACL = (ACL) mACLs.get(acl.getName());
-            if (curACL == null) {
-                mACLs.put(acl.getName(), acl);
-            } else {
-                curACL.merge(acl);
+            synchronized (this) {
+                ACL curACL = (ACL) mACLs.get(acl.getName());
+                if (curACL == null) {
+                    mACLs.put(acl.getName(), acl);
+                } else {
+                    curACL.merge(acl);
+                }
+                invalidateACLs();
             }
         } else {
             logger.warn("AAclAuthz: parseACL failed");
@@ -252,10 +284,45 @@ public abstract class AAclAuthz implements IAuthzManager {
      * in the expressions.
      */
     public void registerEvaluator(String type, IAccessEvaluator evaluator) {
-        mEvaluators.put(type, evaluator);
+        synchronized (this) {
+            mEvaluators.put(type, evaluator);
+            invalidateACLs();
+        }
         logger.info("AAclAuthz: " + type + " evaluator registered");
     }
 
+    /**
+     * Discards the compiled ACLs and the cached decisions. The ACLs are
+     * compiled under the same lock, so a compilation in progress cannot
+     * publish ACLs compiled before the change.
+     */
+    protected synchronized void invalidateACLs() {
+        mCompiledACLs = null;
+        mDecisions.clear();
+        // after clearing, so a thread that sees the new generation
+        // does not see the previous compiled ACLs
+        mGeneration++;
+    }
+
+    /**
+     * Returns the compiled ACLs, compiling the current ACLs if needed.
+     */
+    protected CompiledACLs getCompiledACLs() {
+
+        CompiledACLs compiledACLs = mCompiledACLs;
+        if (compiledACLs != null) {
+            return compiledACLs;
+        }
+
+        synchronized (this) {
+            if (mCompiledACLs == null) {
+                logger.debug("AAclAuthz: compiling ACLs");
+                mCompiledACLs = new CompiledACLs(mACLs, mEvaluators, getOrder());
+            }
+            return mCompiledACLs;
+        }
+    }
+
     /*******************************************************
      * with session context
      *******************************************************/
@@ -284,7 +351,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    protected synchronized void checkPermission(String name, String perm)
+    protected void checkPermission(String name, String perm)
             throws EACLsException {
 
         String resource = "";
@@ -341,134 +408,34 @@ public abstract class AAclAuthz implements IAuthzManager {
      */
     private boolean checkACLs(String name, String perm)
             throws EACLsException {
-        ACL acl = (ACL) mACLs.get(name);
 
-        // no such resource, pass it down
-        if (acl == null) {
-            String infoMsg = "checkACLs(): no acl for" +
-                    name + "...pass down to next node";
-
-            logger.info("AAclAuthz: " + infoMsg);
-
-            return false;
-        }
-
-        Enumeration<ACLEntry> e = acl.entries();
-
-        if ((e == null) || (e.hasMoreElements() == false)) {
-            // no acis for node, pass down to next node
-            String infoMsg = " AAclAuthz.checkACLs(): no acis for " +
-                    name + " acl entry...pass down to next node";
-
-            logger.info("AAclAuthz: " + infoMsg);
+        Entries entries = getCompiledACLs().getNodeEntries(name, perm);
 
+        // no such resource or no acis for node, pass it down
+        if (entries == null) {
+            logger.info("AAclAuthz: checkACLs(): no acl for " + name + "...pass down to next node");
             return false;
         }
 
         /**
          * must pass all ACLEntry
          */
-        for (; e.hasMoreElements();) {
-            ACLEntry entry = e.nextElement();
-
-            // if permission not pertinent, move on to next ACLEntry
-            if (entry.containPermission(perm) == true) {
-                if (evaluateExpressions(entry.getAttributeExpressions())) {
-                    if (entry.checkPermission(perm) == false) {
-                        logger.error("AAclAuthz: checkACLs(): permission denied");
-                        throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
-                    }
-                } else if (entry.getType() == ACLEntry.Type.Allow) {
-                    // didn't meet the access expression for "allow", failed
-                    logger.error("AAclAuthz: checkACLs(): permission denied");
-                    throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
-                }
+        for (Expression expression : entries.allow) {
+            if (!expression.evaluate()) {
+                // didn't meet the access expression for "allow", failed
+                logger.error("AAclAuthz: checkACLs(): permission denied");
+                throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
             }
         }
 
-        return true;
-    }
-
-    /**
-     * Resolves the given expressions.
-     * expression || expression || ...
-     * example:
-     * group="Administrators" || group="Operators"
-     */
-    private boolean evaluateExpressions(String s) {
-        // XXX - just handle "||" (or) among multiple expressions for now
-        // XXX - could use some optimization ... later
-
-        logger.debug("evaluating expressions: " + s);
-
-        Vector<Object> v = new Vector<Object>();
-
-        while (s.length() > 0) {
-            int orIndex = s.indexOf("||");
-            int andIndex = s.indexOf("&&");
-
-            // this is the last expression
-            if (orIndex == -1 && andIndex == -1) {
-                boolean passed = evaluateExpression(s.trim());
-
-                v.addElement(Boolean.valueOf(passed));
-                break;
-
-                // || first
-            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
-                String s1 = s.substring(0, orIndex);
-                boolean passed = evaluateExpression(s1.trim());
-
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("||");
-                s = s.substring(orIndex + 2);
-                // && first
-            } else {
-                String s1 = s.substring(0, andIndex);
-                boolean passed = evaluateExpression(s1.trim());
-
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("&&");
-                s = s.substring(andIndex + 2);
+        for (Expression expression : entries.deny) {
+            if (expression.evaluate()) {
+                logger.error("AAclAuthz: checkACLs(): permission denied");
+                throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
             }
         }
 
-        if (v.size() == 1) {
-            Boolean bool = (Boolean) v.remove(0);
-
-            return bool.booleanValue();
-        }
-        boolean left = false;
-        String op = "";
-        boolean right = false;
-
-        while (v.size() > 0) {
-            if (op.equals(""))
-                left = ((Boolean) v.remove(0)).booleanValue();
-            op = (String) v.remove(0);
-            right = ((Boolean) v.remove(0)).booleanValue();
-            left = evaluateExp(left, op, right);
-        }
-
-        return left;
-    }
-
-    /**
-     * Resolves the given expression.
-     */
-    private boolean evaluateExpression(String expression) {
-        // XXX - just recognize "=" for now!!
-        int i = expression.indexOf("=");
-        String type = expression.substring(0, i);
-        String value = expression.substring(i + 1);
-        IAccessEvaluator evaluator = mEvaluators.get(type);
-
-        if (evaluator == null) {
-            logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
-            return false;
-        }
-
-        return evaluator.evaluate(type, "=", value);
+        return true;
     }
 
     /*******************************************************
@@ -500,243 +467,168 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    public synchronized void checkPermission(IAuthToken authToken, String name,
+    public void checkPermission(IAuthToken authToken, String name,
             String perm)
             throws EACLsException {
 
         logger.debug("AAclAuthz.checkPermission(" + name + ", " + perm + ")");
 
-        Vector<String> nodes = getNodes(name);
-        EvaluationOrder order = getOrder();
+        String error = null;
+        String key = getDecisionKey(authToken, name, perm);
+        Decision decision = key == null ? null : getDecision(key);
 
-        boolean permitted = false;
-        if (order == EvaluationOrder.DenyAllow) {
-            checkDenyEntries(authToken, nodes, perm);
-            permitted = checkAllowEntries(authToken, nodes, perm);
-        } else if (order == EvaluationOrder.AllowDeny) {
-            permitted = checkAllowEntries(authToken, nodes, perm);
-            checkDenyEntries(authToken, nodes, perm);
+        if (decision != null) {
+            logger.debug("AAclAuthz: using cached decision");
+            error = decision.error;
+
+        } else {
+            long modificationCount = getModificationCount();
+            long generation = mGeneration;
+            error = evaluatePermission(authToken, name, perm);
+
+            // only cache decisions that depend on nothing but the user,
+            // e.g. not on the client IP address or the auth method
+            if (key != null && getCompiledACLs().getEntries(name, perm).isUserOnly()) {
+                putDecision(key, error, modificationCount, generation);
+            }
+        }
+
+        if (error == null) {
+            logger.info("AAclAuthz: Granting " + perm + " permission for " + name);
+            return;
+        }
+
+        if (error.equals("CMS_ACL_PERMISSION_DENIED")) {
+            logger.error("AAclAuthz: checkPermission(): permission denied");
+            throw new EACLsException(CMS.getUserMessage(error));
         }
 
-        if (!permitted) {
-            String[] params = new String[2];
-            params[0] = name;
-            params[1] = perm;
+        String[] params = new String[2];
+        params[0] = name;
+        params[1] = perm;
+
+        logger.error(CMS.getLogMessage("AUTHZ_EVALUATOR_ACCESS_DENIED", name, perm));
+
+        throw new EACLsException(CMS.getUserMessage(error, params));
+    }
+
+    /**
+     * Evaluates the compiled ACLs.
+     *
+     * @return null if permitted, otherwise the user message ID of the error
+     */
+    protected String evaluatePermission(IAuthToken authToken, String name, String perm) {
+
+        CompiledACLs acls = getCompiledACLs();
+        Entries entries = acls.getEntries(name, perm);
 
-            logger.error(CMS.getLogMessage("AUTHZ_EVALUATOR_ACCESS_DENIED", name, perm));
+        boolean permitted = false;
+        if (acls.getOrder() == EvaluationOrder.DenyAllow) {
+            if (checkDenyEntries(authToken, entries.deny)) {
+                return "CMS_ACL_PERMISSION_DENIED";
+            }
+            permitted = checkAllowEntries(authToken, entries.allow);
 
-            throw new EACLsException(CMS.getUserMessage("CMS_ACL_NO_PERMISSION", params));
+        } else {
+            permitted = checkAllowEntries(authToken, entries.allow);
+            if (checkDenyEntries(authToken, entries.deny)) {
+                return "CMS_ACL_PERMISSION_DENIED";
+            }
         }
 
-        logger.info("AAclAuthz: Granting " + perm + " permission for " + name);
+        return permitted ? null : "CMS_ACL_NO_PERMISSION";
     }
 
     protected boolean checkAllowEntries(
             IAuthToken authToken,
-            Iterable<String> nodes,
-            String perm) {
-        for (ACLEntry entry : getEntries(ACLEntry.Type.Allow, nodes, perm)) {
-            logger.debug("checkAllowEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
+            Iterable<Expression> expressions) {
+        for (Expression expression : expressions) {
+            logger.debug("checkAllowEntries(): expressions: " + expression);
+            if (expression.evaluate(authToken)) {
                 return true;
             }
         }
         return false;
     }
 
-    /** throw EACLsException if a deny entry is matched */
-    protected void checkDenyEntries(
+    /** returns true if a deny entry is matched */
+    protected boolean checkDenyEntries(
             IAuthToken authToken,
-            Iterable<String> nodes,
-            String perm)
-            throws EACLsException {
-        for (ACLEntry entry : getEntries(ACLEntry.Type.Deny, nodes, perm)) {
-            logger.debug("checkDenyEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
-                logger.error("AAclAuthz: checkPermission(): permission denied");
-                throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
-            }
-        }
-    }
-
-    protected Iterable<ACLEntry> getEntries(
-            ACLEntry.Type entryType,
-            Iterable<String> nodes,
-            String operation
-    ) {
-        Vector<ACLEntry> v = new Vector<ACLEntry>();
-
-        for (String name : nodes) {
-            ACL acl = (ACL) mACLs.get(name);
-            if (acl == null)
-                continue;
-            Enumeration<ACLEntry> e = acl.entries();
-            while (e.hasMoreElements()) {
-                ACLEntry entry = e.nextElement();
-
-                if (entry.getType() == entryType &&
-                        entry.containPermission(operation)) {
-                    v.addElement(entry);
-                }
+            Iterable<Expression> expressions) {
+        for (Expression expression : expressions) {
+            logger.debug("checkDenyEntries(): expressions: " + expression);
+            if (expression.evaluate(authToken)) {
+                return true;
             }
         }
-
-        return v;
+        return false;
     }
 
-    /**
-     * Resolves the given expressions.
-     * expression || expression || ...
-     * example:
-     * group="Administrators" || group="Operators"
-     */
-    private boolean evaluateExpressions(IAuthToken authToken, String s) {
-        // XXX - just handle "||" (or) among multiple expressions for now
-        // XXX - could use some optimization ... later
-        logger.debug("evaluating expressions: " + s);
-
-        Vector<Object> v = new Vector<Object>();
-
-        while (s.length() > 0) {
-            int orIndex = s.indexOf("||");
-            int andIndex = s.indexOf("&&");
-
-            // this is the last expression
-            if (orIndex == -1 && andIndex == -1) {
-                boolean passed = evaluateExpression(authToken, s.trim());
-
-                logger.debug("evaluated expression: " + s.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                break;
-
-                // || first
-            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
-                String s1 = s.substring(0, orIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("||");
-                s = s.substring(orIndex + 2);
-                // && first
-            } else {
-                String s1 = s.substring(0, andIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("&&");
-                s = s.substring(andIndex + 2);
-            }
-        }
+    private String getDecisionKey(IAuthToken authToken, String name, String perm) {
 
-        if (v.size() == 0) {
-            return false;
+        if (mDecisionCacheTimeout <= 0 || authToken == null) {
+            return null;
         }
 
-        if (v.size() == 1) {
-            Boolean bool = (Boolean) v.remove(0);
-
-            return bool.booleanValue();
+        String userID = authToken.getInString(IAuthToken.USER_ID);
+        if (userID == null) {
+            return null;
         }
 
-        boolean left = false;
-        String op = "";
-        boolean right = false;
-
-        while (v.size() > 0) {
-            if (op.equals(""))
-                left = ((Boolean) v.remove(0)).booleanValue();
-            op = (String) v.remove(0);
-            right = ((Boolean) v.remove(0)).booleanValue();
-            left = evaluateExp(left, op, right);
-        }
+        // the user evaluator reads the uid attribute
+        String uid = authToken.getInString(IAuthToken.UID);
 
-        return left;
+        return userID + "\n" + uid + "\n" + name + "\n" + perm;
     }
 
-    public Vector<String> getNodes(String resourceID) {
-        Vector<String> v = new Vector<String>();
+    private Decision getDecision(String key) {
 
-        if (resourceID != null && !resourceID.equals("")) {
-            v.addElement(resourceID);
-        } else {
-            return v;
+        Decision decision = mDecisions.get(key);
+        if (decision == null) {
+            return null;
         }
-        int index = resourceID.lastIndexOf(".");
-        String name = resourceID;
 
-        while (index != -1) {
-            name = name.substring(0, index);
-            v.addElement(name);
-            index = name.lastIndexOf(".");
+        if (decision.expirationTime < System.currentTimeMillis()
+                || decision.modificationCount != getModificationCount()
+                || decision.generation != mGeneration) {
+            mDecisions.remove(key);
+            return null;
         }
 
-        return v;
+        return decision;
     }
 
-    /**
-     * Resolves the given expression.
-     */
-    private boolean evaluateExpression(IAuthToken authToken, String expression) {
-        String op = getOp(expression);
-        String type = "";
-        String value = "";
-
-        if (!op.equals("")) {
-            int len = op.length();
-            int i = expression.indexOf(op);
+    private void putDecision(String key, String error, long modificationCount, long generation) {
 
-            type = expression.substring(0, i).trim();
-            value = expression.substring(i + len).trim();
+        if (generation != mGeneration) {
+            // the ACLs have changed during the evaluation
+            return;
         }
-        IAccessEvaluator evaluator = mEvaluators.get(type);
 
-        if (evaluator == null) {
-            logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
-            return false;
+        if (mDecisions.size() >= DECISION_CACHE_SIZE) {
+            mDecisions.clear();
         }
 
-        return evaluator.evaluate(authToken, type, op, value);
-    }
+        Decision decision = new Decision();
+        decision.error = error;
+        decision.expirationTime = System.currentTimeMillis() + mDecisionCacheTimeout;
+        decision.modificationCount = modificationCount;
+        decision.generation = generation;
 
-    private String getOp(String exp) {
-        int i = exp.indexOf("!=");
+        mDecisions.put(key, decision);
+    }
 
-        if (i == -1) {
-            i = exp.indexOf("=");
-            if (i == -1) {
-                i = exp.indexOf(">");
-                if (i == -1) {
-                    i = exp.indexOf("<");
-                    if (i == -1) {
-                        logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
-                    } else {
-                        return "<";
-                    }
-                } else {
-                    return ">";
-                }
-            } else {
-                return "=";
-            }
-        } else {
-            return "!=";
-        }
-        return "";
+    /**
+     * Group membership changes invalidate cached decisions.
+     */
+    private long getModificationCount() {
+        CMSEngine engine = CMS.getCMSEngine();
+        UGSubsystem ugSubsystem = engine.getUGSubsystem();
+        return ugSubsystem == null ? 0 : ugSubsystem.getModificationCount();
     }
 
-    private boolean evaluateExp(boolean left, String op, boolean right) {
-        if (op.equals("||")) {
-            if (left == false && right == false)
-                return false;
-            return true;
-        } else if (op.equals("&&")) {
-            if (left == true && right == true)
-                return true;
-            return false;
-        }
-        return false;
+    public Vector<String> getNodes(String resourceID) {
+        return new Vector<String>(CompiledACLs.getNodes(resourceID));
     }
 
     /*******************************************************
@@ -763,7 +655,10 @@ public abstract class AAclAuthz implements IAuthzManager {
             throw new EACLsException(CMS.getUserMessage("CMS_ACL_PARSING_ERROR_0"));
         }
 
-        mACLs.put(ac.getName(), ac);
+        synchronized (this) {
+            mACLs.put(ac.getName(), ac);
+            invalidateACLs();
+        }
     }
 
     /**
@@ -882,6 +777,6 @@ public abstract class AAclAuthz implements IAuthzManager {
     }
 
     public boolean evaluateACLs(IAuthToken authToken, String exp) {
-        return evaluateExpressions(authToken, exp);
+        return getCompiledACLs().getExpression(exp).evaluate(authToken);
     }
 }
@@ -0,0 +1,389 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.authorization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import com.netscape.certsrv.acls.ACLEntry;
+import com.netscape.certsrv.acls.IACL;
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cms.authorization.AAclAuthz.EvaluationOrder;
+import com.netscape.cmscore.apps.CMS;
+
+/**
+ * An immutable snapshot of the ACLs of an authorization manager.
+ *
+ * The ACL entries are copied when the snapshot is created, so later
+ * changes to the ACL objects do not affect it. The attribute
+ * expressions are parsed once, and the allow and deny
+ * entries that apply to a resource and an operation (including the
+ * entries of the parent resources) are collected on first use, so
+ * permission checks can be evaluated concurrently without locking.
+ * The snapshot is replaced whenever the ACLs or evaluators change.
+ */
+public class CompiledACLs {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CompiledACLs.class);
+
+    /**
+     * Evaluators whose result depends only on the user in the
+     * authentication token. Other evaluators (e.g. ipaddress)
+     * read per-request inputs from the session context.
+     */
+    public static final Set<String> USER_EVALUATORS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("user", "group")));
+
+    /**
+     * A parsed attribute expression, e.g.
+     * group="Administrators" || group="Operators"
+     *
+     * The terms are combined from left to right without precedence,
+     * like the original string evaluation.
+     */
+    public static class Expression {
+
+        String source;
+        List<Term> terms = new ArrayList<>();
+        List<String> operators = new ArrayList<>();
+
+        public boolean evaluate(IAuthToken authToken) {
+            return evaluate(term -> term.evaluate(authToken));
+        }
+
+        /**
+         * Evaluates the expression against the session context.
+         */
+        public boolean evaluate() {
+            return evaluate(term -> term.evaluate());
+        }
+
+        private boolean evaluate(Predicate<Term> evaluator) {
+
+            if (terms.isEmpty()) {
+                return false;
+            }
+
+            boolean result = evaluator.test(terms.get(0));
+
+            for (int i = 0; i < operators.size(); i++) {
+                String op = operators.get(i);
+                boolean hasTerm = i + 1 < terms.size();
+
+                if (op.equals("||")) {
+                    result = result || hasTerm && evaluator.test(terms.get(i + 1));
+                } else {
+                    result = result && hasTerm && evaluator.test(terms.get(i + 1));
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Returns true if the expression only uses the user and
+         * group evaluators, so its result can be cached per user.
+         */
+        public boolean isUserOnly() {
+            for (Term term : terms) {
+                if (!USER_EVALUATORS.contains(term.type)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String toString() {
+            return source;
+        }
+    }
+
+    static class Term {
+
+        String expression;
+        String type;
+        String op;
+        String value;
+        IAccessEvaluator evaluator;
+
+        boolean evaluate(IAuthToken authToken) {
+
+            if (evaluator == null) {
+                logger.warn("CompiledACLs: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
+                return false;
+            }
+
+            boolean passed = evaluator.evaluate(authToken, type, op, value);
+            logger.debug("evaluated expression: " + expression + " to be " + passed);
+
+            return passed;
+        }
+
+        boolean evaluate() {
+
+            if (evaluator == null) {
+                logger.warn("CompiledACLs: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
+                return false;
+            }
+
+            boolean passed = evaluator.evaluate(type, op, value);
+            logger.debug("evaluated expression: " + expression + " to be " + passed);
+
+            return passed;
+        }
+    }
+
+    /**
+     * The allow and deny entries for a resource and an operation.
+     */
+    public static class Entries {
+        List<Expression> allow = new ArrayList<>();
+        List<Expression> deny = new ArrayList<>();
+
+        /**
+         * True if all expressions only use the user and group evaluators.
+         */
+        boolean userOnly = true;
+
+        void add(ACLEntry.Type type, Expression expression) {
+
+            if (type == ACLEntry.Type.Allow) {
+                allow.add(expression);
+            } else {
+                deny.add(expression);
+            }
+
+            userOnly = userOnly && expression.isUserOnly();
+        }
+
+        public boolean isUserOnly() {
+            return userOnly;
+        }
+    }
+
+    /**
+     * A copy of an ACL entry.
+     */
+    static class Rule {
+        ACLEntry.Type type;
+        Set<String> permissions;
+        String expression;
+    }
+
+    private EvaluationOrder order;
+    private Map<String, List<Rule>> acls = new HashMap<>();
+    private Map<String, IAccessEvaluator> evaluators;
+
+    private Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    private Map<String, Entries> entries = new ConcurrentHashMap<>();
+    private Map<String, Entries> nodeEntries = new ConcurrentHashMap<>();
+
+    public CompiledACLs(
+            Map<String, IACL> acls,
+            Map<String, IAccessEvaluator> evaluators,
+            EvaluationOrder order) {
+
+        for (Map.Entry<String, IACL> aclEntry : acls.entrySet()) {
+
+            IACL acl = aclEntry.getValue();
+            List<Rule> rules = new ArrayList<>();
+
+            Enumeration<ACLEntry> e = acl.entries();
+            while (e.hasMoreElements()) {
+                ACLEntry entry = e.nextElement();
+
+                Rule rule = new Rule();
+                rule.type = entry.getType();
+                rule.permissions = new HashSet<>(Collections.list(entry.permissions()));
+                rule.expression = entry.getAttributeExpressions();
+
+                rules.add(rule);
+            }
+
+            this.acls.put(aclEntry.getKey(), Collections.unmodifiableList(rules));
+        }
+
+        this.evaluators = new HashMap<>(evaluators);
+        this.order = order;
+    }
+
+    public EvaluationOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the entries that apply to the operation on the resource
+     * or on any of its parent resources.
+     */
+    public Entries getEntries(String resource, String operation) {
+        return entries.computeIfAbsent(resource + ":" + operation, k -> createEntries(resource, operation));
+    }
+
+    /**
+     * Returns the entries that apply to the operation on the resource
+     * itself, or null if the resource has no ACL entries.
+     */
+    public Entries getNodeEntries(String resource, String operation) {
+
+        List<Rule> rules = acls.get(resource);
+        if (rules == null || rules.isEmpty()) {
+            return null;
+        }
+
+        return nodeEntries.computeIfAbsent(resource + ":" + operation, k -> {
+            Entries result = new Entries();
+            addEntries(result, rules, operation);
+            return result;
+        });
+    }
+
+    public Expression getExpression(String expression) {
+        return expressions.computeIfAbsent(expression, k -> parseExpression(expression));
+    }
+
+    private Entries createEntries(String resource, String operation) {
+
+        Entries result = new Entries();
+
+        for (String name : getNodes(resource)) {
+            List<Rule> rules = acls.get(name);
+            if (rules == null) {
+                continue;
+            }
+
+            addEntries(result, rules, operation);
+        }
+
+        return result;
+    }
+
+    private void addEntries(Entries result, List<Rule> rules, String operation) {
+
+        for (Rule rule : rules) {
+
+            if (!rule.permissions.contains(operation)) {
+                continue;
+            }
+
+            result.add(rule.type, getExpression(rule.expression));
+        }
+    }
+
+    static List<String> getNodes(String resourceID) {
+
+        List<String> nodes = new ArrayList<>();
+
+        if (resourceID == null || resourceID.equals("")) {
+            return nodes;
+        }
+
+        String name = resourceID;
+        nodes.add(name);
+
+        int index = name.lastIndexOf(".");
+        while (index != -1) {
+            name = name.substring(0, index);
+            nodes.add(name);
+            index = name.lastIndexOf(".");
+        }
+
+        return nodes;
+    }
+
+    private Expression parseExpression(String s) {
+
+        Expression expression = new Expression();
+        expression.source = s;
+
+        while (s.length() > 0) {
+            int orIndex = s.indexOf("||");
+            int andIndex = s.indexOf("&&");
+
+            // this is the last expression
+            if (orIndex == -1 && andIndex == -1) {
+                expression.terms.add(parseTerm(s.trim()));
+                break;
+
+            // || first
+            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
+                expression.terms.add(parseTerm(s.substring(0, orIndex).trim()));
+                expression.operators.add("||");
+                s = s.substring(orIndex + 2);
+
+            // && first
+            } else {
+                expression.terms.add(parseTerm(s.substring(0, andIndex).trim()));
+                expression.operators.add("&&");
+                s = s.substring(andIndex + 2);
+            }
+        }
+
+        return expression;
+    }
+
+    private Term parseTerm(String expression) {
+
+        Term term = new Term();
+        term.expression = expression;
+        term.op = getOp(expression);
+        term.type = "";
+        term.value = "";
+
+        if (!term.op.equals("")) {
+            int i = expression.indexOf(term.op);
+            term.type = expression.substring(0, i).trim();
+            term.value = expression.substring(i + term.op.length()).trim();
+        }
+
+        term.evaluator = evaluators.get(term.type);
+
+        return term;
+    }
+
+    private String getOp(String exp) {
+
+        if (exp.indexOf("!=") != -1) {
+            return "!=";
+        }
+
+        if (exp.indexOf("=") != -1) {
+            return "=";
+        }
+
+        if (exp.indexOf(">") != -1) {
+            return ">";
+        }
+
+        if (exp.indexOf("<") != -1) {
+            return "<";
+        }
+
+        logger.warn("CompiledACLs: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
+        return "";
+    }
+}
@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.CharArrayReader;
 import java.io.CharArrayWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -43,15 +44,20 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 
@@ -94,6 +100,19 @@ import netscape.ldap.client.JDAPFilterSubString;
 /**
  * A log event listener which write logs to log files
  *
+ * The events can be written asynchronously by a separate thread, e.g.:
+ *
+ * <pre>
+ * log.instance.SignedAudit.async=true
+ * log.instance.SignedAudit.queueSize=10000
+ * log.instance.SignedAudit.queueFullPolicy=block
+ * log.instance.SignedAudit.fsync=true
+ * </pre>
+ *
+ * The events are formatted in the caller's thread and queued. When the
+ * queue is full the caller waits (block) or the event is rejected (fail).
+ * With fsync the log is flushed, signed and synced after each batch.
+ *
  * @version $Revision$, $Date$
  **/
 public class LogFile implements ILogEventListener, IExtendedPluginInfo {
@@ -117,6 +136,13 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     static final String PROP_LAST_HASH_FILE_NAME = "lastHashFileName";
     static final String PROP_BUFFER_SIZE = "bufferSize";
     static final String PROP_FLUSH_INTERVAL = "flushInterval";
+    static final String PROP_ASYNC = "async";
+    static final String PROP_QUEUE_SIZE = "queueSize";
+    static final String PROP_QUEUE_FULL_POLICY = "queueFullPolicy";
+    static final String PROP_FSYNC = "fsync";
+
+    public static final String QUEUE_FULL_BLOCK = "block";
+    public static final String QUEUE_FULL_FAIL = "fail";
 
     private final static String LOG_SIGNED_AUDIT_EXCEPTION =
                                "LOG_SIGNED_AUDIT_EXCEPTION_1";
@@ -141,6 +167,17 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     static final int FLUSH_INTERVAL = 5;
 
+    /**
+     * The default size of the asynchronous log queue in events
+     */
+    static final int QUEUE_SIZE = 10000;
+
+    /**
+     * The maximum number of events written by the asynchronous writer
+     * before the log is flushed
+     */
+    static final int MAX_BATCH_SIZE = 1000;
+
     /**
      * The log file
      */
@@ -156,6 +193,11 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     protected BufferedWriter mLogWriter = null;
 
+    /**
+     * The log file descriptor
+     */
+    private FileDescriptor mFileDescriptor = null;
+
     /**
      * The log date entry format pattern
      */
@@ -196,6 +238,36 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     private Thread mFlushThread = null;
 
+    /**
+     * Write the events in a separate thread
+     */
+    protected boolean mAsync = false;
+
+    /**
+     * The maximum number of events waiting to be written
+     */
+    protected int mQueueSize = QUEUE_SIZE;
+
+    /**
+     * What to do when the queue is full: block or fail
+     */
+    protected String mQueueFullPolicy = QUEUE_FULL_BLOCK;
+
+    /**
+     * Sync the log file to the disk on every flush
+     */
+    protected boolean mFsync = false;
+
+    /**
+     * The events waiting to be written
+     */
+    private BlockingQueue<QueuedEntry> mQueue = null;
+
+    /**
+     * The asynchronous writer thread
+     */
+    private volatile AsyncWriter mWriter = null;
+
     /**
      * The mandatory log event types
      */
@@ -349,6 +421,12 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                 throw e;
             }
         }
+
+        // start writing asynchronously after the signing has been set up
+        // so the first events are covered by the initial signature
+        if (mOn && mAsync) {
+            startWriter();
+        }
     }
 
     /**
@@ -451,6 +529,16 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
 
         mLevel = config.getInteger(PROP_LEVEL, 3);
 
+        mAsync = config.getBoolean(PROP_ASYNC, false);
+        mQueueSize = config.getInteger(PROP_QUEUE_SIZE, QUEUE_SIZE);
+        mFsync = config.getBoolean(PROP_FSYNC, false);
+
+        mQueueFullPolicy = config.getString(PROP_QUEUE_FULL_POLICY, QUEUE_FULL_BLOCK);
+        if (!QUEUE_FULL_BLOCK.equals(mQueueFullPolicy) && !QUEUE_FULL_FAIL.equals(mQueueFullPolicy)) {
+            throw new ELogException(CMS.getUserMessage("CMS_BASE_GET_PROPERTY_FAILED",
+                    config.getName() + "." + PROP_QUEUE_FULL_POLICY));
+        }
+
         try {
             String subsystem = cs.getType().toLowerCase();
             String instID = cs.getInstanceID();
@@ -737,8 +825,9 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                     logger.warn(message, e);
                 }
             }
+            mFileDescriptor = out.getFD();
             mLogWriter = new BufferedWriter(
-                        new FileWriter(out.getFD()), mBufferSize);
+                        new FileWriter(mFileDescriptor), mBufferSize);
 
             // The first time we open, mSignature will not have been
             // initialized yet. That's ok, we will push our first signature
@@ -781,6 +870,10 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
 
             if (mLogWriter != null) {
                 mLogWriter.flush();
+
+                if (mFsync) {
+                    mFileDescriptor.sync();
+                }
             }
 
         } catch (Exception e) {
@@ -810,6 +903,7 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
             System.err.println(CMS.getUserMessage("CMS_LOG_CLOSE_FAILED", mFileName, e.toString()));
         }
         mLogWriter = null;
+        mFileDescriptor = null;
     }
 
     /**
@@ -828,6 +922,10 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
 
         setFlushInterval(0);
 
+        // stop the writer first so the shutdown event is written
+        // synchronously instead of waiting for space in the queue
+        stopWriter();
+
         // log signed audit shutdown success
         auditMessage = CMS.getLogMessage(
                            AuditEvent.AUDIT_LOG_SHUTDOWN,
@@ -900,12 +998,36 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     }
 
     /**
-     * Synchronized method to write an event to the log file.
+     * Method to write an event to the log file. In asynchronous mode
+     * the event is formatted in the caller's thread and queued for the
+     * writer thread.
      *
      * @param event The log event
      */
-    protected synchronized void doLog(ILogEvent event) throws ELogException {
-        doLog(event, false);
+    protected void doLog(ILogEvent event) throws ELogException {
+
+        AsyncWriter writer = mWriter;
+
+        if (writer == null) {
+            synchronized (this) {
+                doLog(event, false);
+                postWrite();
+            }
+            return;
+        }
+
+        QueuedEntry entry = new QueuedEntry();
+        entry.text = logEvt2String(event);
+        entry.trace = mTrace ? getTrace() : null;
+
+        enqueue(entry);
+    }
+
+    /**
+     * Called after events are written to the log file while the log
+     * file is locked.
+     */
+    protected void postWrite() throws ELogException {
     }
 
     // Standard line separator byte. We always sign this line separator,
@@ -922,6 +1044,58 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
             throws ELogException {
 
         String entry = logEvt2String(event);
+        String trace = mTrace ? getTrace() : null;
+
+        write(entry, trace, noFlush);
+    }
+
+    /**
+     * Returns the file, line and method that logged the event in the
+     * current thread.
+     */
+    private String getTrace() {
+
+        try {
+            CharArrayWriter cw = new CharArrayWriter(200);
+            PrintWriter pw = new PrintWriter(cw);
+            Exception e = new Exception();
+            e.printStackTrace(pw);
+            char[] c = cw.toCharArray();
+            cw.close();
+            pw.close();
+
+            CharArrayReader cr = new CharArrayReader(c);
+            LineNumberReader lr = new LineNumberReader(cr);
+
+            String text = null;
+            String method = null;
+            String fileAndLine = null;
+            if (lr.ready()) {
+                text = lr.readLine();
+                do {
+                    text = lr.readLine();
+                } while (text.indexOf("logging") != -1);
+                int p = text.indexOf("(");
+                fileAndLine = text.substring(p);
+
+                String classandmethod = text.substring(0, p);
+                int q = classandmethod.lastIndexOf(".");
+                method = classandmethod.substring(q + 1);
+                return fileAndLine + " " + method;
+            }
+
+        } catch (IOException e) {
+            logger.warn("LogFile: Unable to get trace: " + e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes a formatted entry to the log file and updates the signature.
+     */
+    private synchronized void write(String entry, String trace, boolean noFlush)
+            throws ELogException {
 
         if (mLogWriter == null) {
             String[] params = { mFileName, entry };
@@ -947,36 +1121,8 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                         logger.warn("LogFile: missing audit log signature");
                     }
                 }
-                if (mTrace) {
-                    CharArrayWriter cw = new CharArrayWriter(200);
-                    PrintWriter pw = new PrintWriter(cw);
-                    Exception e = new Exception();
-                    e.printStackTrace(pw);
-                    char[] c = cw.toCharArray();
-                    cw.close();
-                    pw.close();
-
-                    CharArrayReader cr = new CharArrayReader(c);
-                    LineNumberReader lr = new LineNumberReader(cr);
-
-                    String text = null;
-                    String method = null;
-                    String fileAndLine = null;
-                    if (lr.ready()) {
-                        text = lr.readLine();
-                        do {
-                            text = lr.readLine();
-                        } while (text.indexOf("logging") != -1);
-                        int p = text.indexOf("(");
-                        fileAndLine = text.substring(p);
-
-                        String classandmethod = text.substring(0, p);
-                        int q = classandmethod.lastIndexOf(".");
-                        method = classandmethod.substring(q + 1);
-                        mLogWriter.write(fileAndLine, 0/*offset*/, fileAndLine.length());
-                        mLogWriter.write(" ", 0/*offset*/, " ".length());
-                        mLogWriter.write(method, 0/*offset*/, method.length());
-                    }
+                if (trace != null) {
+                    mLogWriter.write(trace, 0/*offset*/, trace.length());
                 }
                 mLogWriter.newLine();
 
@@ -1037,6 +1183,171 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         }
     }
 
+    /**
+     * A formatted log entry waiting to be written.
+     */
+    static class QueuedEntry {
+        String text;
+        String trace;
+    }
+
+    /**
+     * Queues an entry for the writer thread. If the queue is full the
+     * caller either waits for the writer (back-pressure) or the event
+     * is rejected. A rejected signed audit event disables the subsystem
+     * just like a failed write.
+     */
+    private void enqueue(QueuedEntry entry) throws ELogException {
+
+        if (QUEUE_FULL_FAIL.equals(mQueueFullPolicy)) {
+            if (!mQueue.offer(entry)) {
+                rejectEntry(entry);
+            }
+            return;
+        }
+
+        try {
+            while (!mQueue.offer(entry, 1, TimeUnit.SECONDS)) {
+                if (mWriter == null) {
+                    // writer has been stopped, report the closed log file
+                    write(entry.text, entry.trace, false);
+                    return;
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectEntry(entry);
+        }
+    }
+
+    private void rejectEntry(QueuedEntry entry) throws ELogException {
+
+        String message = "Unable to write to " + mFileName + ": Log queue is full: " + entry.text;
+        logger.error("LogFile: " + message);
+        System.err.println(message);
+
+        if (mLogSigning) {
+            // Failed to write to audit log, shut down CMS
+            shutdownCMS();
+        }
+
+        throw new ELogException(message);
+    }
+
+    private synchronized void startWriter() {
+
+        logger.info("LogFile: Writing " + mFileName + " asynchronously");
+        logger.info("LogFile: - queue size: " + mQueueSize);
+        logger.info("LogFile: - queue full policy: " + mQueueFullPolicy);
+        logger.info("LogFile: - fsync: " + mFsync);
+
+        mQueue = new ArrayBlockingQueue<>(mQueueSize);
+
+        mWriter = new AsyncWriter();
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    /**
+     * Stops the writer thread after it has written the queued entries.
+     * Must be called with the log file locked.
+     */
+    private void stopWriter() {
+
+        AsyncWriter writer = mWriter;
+        if (writer == null) {
+            return;
+        }
+
+        writer.stopped = true;
+        writer.interrupt();
+
+        try {
+            // release the lock so the writer can finish
+            while (writer.isAlive()) {
+                wait(100);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mWriter = null;
+    }
+
+    /**
+     * Asynchronous writer thread. Takes the queued entries in batches,
+     * writes them and updates the signature with the log file locked,
+     * then flushes the log if the buffer is full or fsync is enabled.
+     * The signatures therefore cover the entries in the same order
+     * as they appear in the file.
+     */
+    final class AsyncWriter extends Thread {
+
+        volatile boolean stopped;
+
+        public AsyncWriter() {
+            super();
+            super.setName(mFileName + ".writer-" + (Thread.activeCount() + 1));
+        }
+
+        public void run() {
+
+            List<QueuedEntry> batch = new ArrayList<>();
+
+            while (true) {
+
+                QueuedEntry entry;
+                try {
+                    entry = stopped ? mQueue.poll() : mQueue.take();
+
+                } catch (InterruptedException e) {
+                    // shutdown
+                    continue;
+                }
+
+                if (entry == null) {
+                    break;
+                }
+
+                batch.add(entry);
+                mQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+                writeBatch(batch);
+                batch.clear();
+            }
+
+            logger.debug("LogFile: Writer for " + mFileName + " stopped");
+        }
+
+        void writeBatch(List<QueuedEntry> batch) {
+
+            synchronized (LogFile.this) {
+
+                for (QueuedEntry entry : batch) {
+                    try {
+                        write(entry.text, entry.trace, true);
+
+                    } catch (ELogException e) {
+                        // already reported
+                    }
+                }
+
+                if (mFsync || mBufferSize > 0 && mBytesUnflushed > mBufferSize) {
+                    flush();
+                }
+
+                try {
+                    postWrite();
+
+                } catch (ELogException e) {
+                    logger.error("LogFile: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
     /**
      * Write an event to the log file
      *
@@ -1224,9 +1535,13 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     public String logEvt2String(ILogEvent ev) {
         String entry = null;
 
-        // Hmm.. multiple threads could hit this and reset the time.
-        // Do we care?
-        mDate.setTime(ev.getTimeStamp());
+        // In asynchronous mode the events are formatted in the
+        // callers' threads, so the shared date format is locked.
+        String date;
+        synchronized (mLogDateFormat) {
+            mDate.setTime(ev.getTimeStamp());
+            date = mLogDateFormat.format(mDate);
+        }
 
         CMSEngine engine = CMS.getCMSEngine();
 
@@ -1235,12 +1550,12 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         // some work.
         if (ev.getMultiline() == ILogger.L_MULTILINE) {
             entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
-                    + mLogDateFormat.format(mDate) + "] [" +
+                    + date + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + prepareMultiline(ev.toString());
         } else {
             entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
-                    + mLogDateFormat.format(mDate) + "] [" +
+                    + date + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + ev.toString();
         }
@@ -1501,6 +1816,10 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         v.addElement(PROP_FILE_NAME + "=");
         v.addElement(PROP_BUFFER_SIZE + "=");
         v.addElement(PROP_FLUSH_INTERVAL + "=");
+        v.addElement(PROP_ASYNC + "=");
+        v.addElement(PROP_QUEUE_SIZE + "=");
+        v.addElement(PROP_QUEUE_FULL_POLICY + "=");
+        v.addElement(PROP_FSYNC + "=");
 
         // needs to find a way to determine what type you want. if this
         // is not for the signed audit type, then we should not show the
@@ -1550,6 +1869,10 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
             }
             v.addElement(PROP_BUFFER_SIZE + "=" + mBufferSize);
             v.addElement(PROP_FLUSH_INTERVAL + "=" + mFlushInterval / 1000);
+            v.addElement(PROP_ASYNC + "=" + mAsync);
+            v.addElement(PROP_QUEUE_SIZE + "=" + mQueueSize);
+            v.addElement(PROP_QUEUE_FULL_POLICY + "=" + mQueueFullPolicy);
+            v.addElement(PROP_FSYNC + "=" + mFsync);
 
             if ((mType != null) && mType.equals(ILogger.PROP_SIGNED_AUDIT)) {
                 v.addElement(PROP_SIGNED_AUDIT_LOG_SIGNING + "="
@@ -1588,6 +1911,11 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                     PROP_BUFFER_SIZE + ";integer;The size of the buffer to receive log messages in kilobytes(KB)",
                     PROP_FLUSH_INTERVAL
                             + ";integer;The maximum time in seconds before the buffer is flushed to the file",
+                    PROP_ASYNC + ";boolean;Write the log messages to the file in a separate thread",
+                    PROP_QUEUE_SIZE + ";integer;The maximum number of log messages waiting to be written",
+                    PROP_QUEUE_FULL_POLICY + ";choice(" + QUEUE_FULL_BLOCK + "," + QUEUE_FULL_FAIL
+                            + ");Wait or fail when the queue is full",
+                    PROP_FSYNC + ";boolean;Sync the file to the disk on every flush",
                     IExtendedPluginInfo.HELP_TOKEN +
                             ";configuration-logrules-logfile",
                     IExtendedPluginInfo.HELP_TEXT +
@@ -1622,6 +1950,11 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                     PROP_BUFFER_SIZE + ";integer;The size of the buffer to receive log messages in kilobytes(KB)",
                     PROP_FLUSH_INTERVAL
                             + ";integer;The maximum time in seconds before the buffer is flushed to the file",
+                    PROP_ASYNC + ";boolean;Write the log messages to the file in a separate thread",
+                    PROP_QUEUE_SIZE + ";integer;The maximum number of log messages waiting to be written",
+                    PROP_QUEUE_FULL_POLICY + ";choice(" + QUEUE_FULL_BLOCK + "," + QUEUE_FULL_FAIL
+                            + ");Wait or fail when the queue is full",
+                    PROP_FSYNC + ";boolean;Sync the file to the disk on every flush",
                     IExtendedPluginInfo.HELP_TOKEN +
                             ";configuration-logrules-logfile",
                     IExtendedPluginInfo.HELP_TEXT +
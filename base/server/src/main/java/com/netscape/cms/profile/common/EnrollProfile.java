@@ -126,6 +126,7 @@ import com.netscape.certsrv.profile.EProfileException;
 import com.netscape.certsrv.profile.ERejectException;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.RequestId;
+import com.netscape.certsrv.util.IStatsSubsystem;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
@@ -299,6 +300,9 @@ public abstract class EnrollProfile extends Profile {
         if (cert_request_type != null && cert_request_type.startsWith("crmf")) {
             CertReqMsg[] msgs = CertUtils.parseCRMF(locale, cert_request);
             num_requests = msgs.length;
+
+            // verify the POPs of all requests before populating them
+            RequestVerifier.verify(msgs);
         }
 
         TaggedRequest[] cmc_msgs = null;
@@ -333,6 +337,9 @@ public abstract class EnrollProfile extends Profile {
                 num_requests = cmc_msgs.length;
                 logger.debug(method + "parseCMC returns cmc_msgs num_requests=" +
                         num_requests);
+
+                // verify the signatures of all requests before populating them
+                RequestVerifier.verify(cmc_msgs);
             }
         }
 
@@ -2087,7 +2094,22 @@ public abstract class EnrollProfile extends Profile {
                 ByteArrayOutputStream ostream = new ByteArrayOutputStream();
 
                 p10.encode(ostream);
-                PKCS10 pkcs10 = new PKCS10(ostream.toByteArray(), sigver);
+                byte[] p10Bytes = ostream.toByteArray();
+
+                PKCS10 pkcs10;
+                RequestVerifier.Result result = sigver ? RequestVerifier.getResult(p10Bytes) : null;
+
+                if (result == null) {
+                    pkcs10 = new PKCS10(p10Bytes, sigver);
+
+                } else if (result.isVerified()) {
+                    logger.debug(methodPos + "signature already verified");
+                    pkcs10 = new PKCS10(p10Bytes, false);
+
+                } else {
+                    throw result.getException();
+                }
+
                 if (sigver) {
                     auditMessage = CMS.getLogMessage(
                             AuditEvent.PROOF_OF_POSSESSION,
@@ -2738,7 +2760,14 @@ public abstract class EnrollProfile extends Profile {
             signedAuditLogger.log(auditMessage);
         }
 
+        long startTime = System.currentTimeMillis();
         super.validate(request);
+
+        IStatsSubsystem statsSub = (IStatsSubsystem) CMS.getCMSEngine().getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.recordStage(getId(), "profile_validation", startTime);
+        }
+
         Object key = null;
 
         try {
@@ -2842,7 +2871,14 @@ public abstract class EnrollProfile extends Profile {
         try {
             CryptoToken verifyToken = null;
             String tokenName = cs.getString("ca.requestVerify.token", CryptoUtil.INTERNAL_TOKEN_NAME);
-            if (CryptoUtil.isInternalToken(tokenName)) {
+            RequestVerifier.Result result = RequestVerifier.getResult(certReqMsg);
+
+            if (result != null) {
+                logger.debug(method + "POP already verified");
+                if (!result.isVerified()) {
+                    throw result.getException();
+                }
+            } else if (CryptoUtil.isInternalToken(tokenName)) {
                 logger.debug(method + "POP verification using internal token");
                 certReqMsg.verify();
             } else {
@@ -113,6 +113,9 @@ public abstract class Profile {
 
     protected Hashtable<String, Vector<ProfilePolicy>> mPolicySet = new Hashtable<String, Vector<ProfilePolicy>>();
 
+    // snapshot of mPolicySet, rebuilt when the policies change
+    private volatile ProfileEvaluationPlan mPlan;
+
     public Profile() {
     }
 
@@ -379,9 +382,50 @@ public abstract class Profile {
                         constraintClassId, false);
             }
         }
+
+        mPlan = createPlan();
+
         logger.debug("Profile: done init");
     }
 
+    /**
+     * Returns the evaluation plan of this profile.
+     *
+     * @return evaluation plan
+     */
+    public ProfileEvaluationPlan getPlan() {
+
+        ProfileEvaluationPlan plan = mPlan;
+        if (plan != null) {
+            return plan;
+        }
+
+        // build under the lock taken by clearPlan() so a plan built
+        // before a policy change is not cached after it
+        synchronized (mPolicySet) {
+            if (mPlan == null) {
+                mPlan = createPlan();
+            }
+            return mPlan;
+        }
+    }
+
+    /**
+     * Discards the evaluation plan. This must be called when the
+     * policies are modified.
+     */
+    private void clearPlan() {
+        synchronized (mPolicySet) {
+            mPlan = null;
+        }
+    }
+
+    private ProfileEvaluationPlan createPlan() {
+        synchronized (mPolicySet) {
+            return new ProfileEvaluationPlan(mPolicySet);
+        }
+    }
+
     /**
      * Retrieves the configuration store of this profile.
      *
@@ -541,6 +585,7 @@ public abstract class Profile {
         } catch (Exception e) {
         }
 
+        clearPlan();
     }
 
     /**
@@ -557,6 +602,7 @@ public abstract class Profile {
         }
 
         mPolicySet.clear();
+        clearPlan();
     }
 
     /**
@@ -1089,6 +1135,7 @@ public abstract class Profile {
             constraint.init(conStore);
             policy = new ProfilePolicy(id, def, constraint);
             policies.addElement(policy);
+            clearPlan();
             logger.debug(method + " constraint class initialized.");
         }
 
@@ -1280,12 +1327,14 @@ public abstract class Profile {
             throws EProfileException {
         String method = "Profile: populate: ";
         String setId = getPolicySetId(request);
-        Vector<ProfilePolicy> policies = getPolicies(setId);
+        ProfilePolicy[] policies = getPlan().getPolicies(setId);
         logger.debug(method + "policy setid =" + setId);
 
-        for (int i = 0; i < policies.size(); i++) {
-            ProfilePolicy policy = policies.elementAt(i);
+        if (policies == null) {
+            throw new EProfileException("Policy set not found: " + setId);
+        }
 
+        for (ProfilePolicy policy : policies) {
             policy.getDefault().populate(request);
         }
     }
@@ -1301,11 +1350,13 @@ public abstract class Profile {
             throws ERejectException {
         String setId = getPolicySetId(request);
         logger.debug("Profile: validate start on setId=" + setId);
-        Vector<ProfilePolicy> policies = getPolicies(setId);
+        ProfilePolicy[] policies = getPlan().getPolicies(setId);
 
-        for (int i = 0; i < policies.size(); i++) {
-            ProfilePolicy policy = policies.elementAt(i);
+        if (policies == null) {
+            throw new ERejectException("Policy set not found: " + setId);
+        }
 
+        for (ProfilePolicy policy : policies) {
             policy.getConstraint().validate(request);
         }
         logger.debug("Profile: change to pending state");
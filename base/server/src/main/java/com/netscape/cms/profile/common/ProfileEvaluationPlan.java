@@ -0,0 +1,51 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.profile.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * This class represents an immutable snapshot of the policy
+ * sets of a profile. It is built when the profile is loaded
+ * or its policies are changed, and used to populate and
+ * validate requests without walking the policy set tables.
+ */
+public class ProfileEvaluationPlan {
+
+    private Map<String, ProfilePolicy[]> mPolicySets = new HashMap<String, ProfilePolicy[]>();
+
+    public ProfileEvaluationPlan(Map<String, Vector<ProfilePolicy>> policySets) {
+        for (Map.Entry<String, Vector<ProfilePolicy>> entry : policySets.entrySet()) {
+            ProfilePolicy[] policies = entry.getValue().toArray(new ProfilePolicy[0]);
+            mPolicySets.put(entry.getKey(), policies);
+        }
+    }
+
+    /**
+     * Returns the policies of a policy set in evaluation order,
+     * or null if the set does not exist.
+     *
+     * @param setId policy set id
+     * @return policies
+     */
+    public ProfilePolicy[] getPolicies(String setId) {
+        return mPolicySets.get(setId);
+    }
+}
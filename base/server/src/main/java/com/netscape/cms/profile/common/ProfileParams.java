@@ -0,0 +1,98 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.profile.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
+
+/**
+ * Holds the parameter values of a profile component (e.g. a default
+ * or a constraint). The values are read once from the "params" substore
+ * of the component configuration and reused until they are cleared.
+ */
+public class ProfileParams {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ProfileParams.class);
+
+    public static final String CONFIG_PARAMS = "params";
+
+    private volatile Map<String, String> params;
+
+    /**
+     * Returns the parameter values in the component configuration.
+     *
+     * @param config component configuration
+     * @return parameter values, or null if they cannot be read
+     */
+    public Map<String, String> get(IConfigStore config) {
+
+        Map<String, String> params = this.params;
+        if (params != null) {
+            return params;
+        }
+
+        // load under the lock taken by clear() so the values read
+        // before a modification are not cached after it
+        synchronized (this) {
+            if (this.params == null) {
+                this.params = load(config);
+            }
+            return this.params;
+        }
+    }
+
+    private Map<String, String> load(IConfigStore config) {
+
+        if (config == null) {
+            logger.warn("ProfileParams: Missing profile configuration");
+            return null;
+        }
+
+        IConfigStore store = config.getSubStore(CONFIG_PARAMS);
+        if (store == null) {
+            logger.warn("ProfileParams: Missing profile parameters");
+            return null;
+        }
+
+        Map<String, String> params = new HashMap<>();
+
+        try {
+            for (String key : store.getProperties().keySet()) {
+                params.put(key, store.getString(key));
+            }
+
+        } catch (EBaseException e) {
+            logger.warn("ProfileParams: " + e.getMessage(), e);
+            return null;
+        }
+
+        return Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * Discards the parameter values read from the configuration.
+     * This must be called when the parameters are modified.
+     */
+    public synchronized void clear() {
+        params = null;
+    }
+}
@@ -0,0 +1,318 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.profile.common;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.netscape.security.pkcs.PKCS10;
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.pkcs10.CertificationRequest;
+import org.mozilla.jss.pkix.cmc.TaggedRequest;
+import org.mozilla.jss.pkix.crmf.CertReqMsg;
+import org.mozilla.jss.pkix.crmf.ProofOfPossession;
+
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+import com.netscape.cmscore.apps.EngineConfig;
+import com.netscape.cmsutil.crypto.CryptoUtil;
+
+/**
+ * This class verifies the signatures (proof of possession) of the
+ * certificate requests in a CRMF or CMC batch in parallel, e.g.:
+ *
+ * <pre>
+ * ca.requestVerify.threads=8
+ * </pre>
+ *
+ * The number of threads defaults to the number of processors. The
+ * results are stored in the session context by the digest of the
+ * verified request, so the profile inputs can use them instead of
+ * verifying each request again on the request thread.
+ */
+public class RequestVerifier {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestVerifier.class);
+
+    public final static String VERIFIED_REQUESTS = "verifiedRequests";
+
+    public static class Result {
+
+        Exception exception;
+
+        public boolean isVerified() {
+            return exception == null;
+        }
+
+        public Exception getException() {
+            return exception;
+        }
+    }
+
+    private static ThreadPoolExecutor executor;
+
+    private static synchronized ThreadPoolExecutor getExecutor() throws Exception {
+
+        if (executor != null) {
+            return executor;
+        }
+
+        CMSEngine engine = CMS.getCMSEngine();
+        EngineConfig cs = engine.getConfig();
+
+        int threads = cs.getInteger("ca.requestVerify.threads", Runtime.getRuntime().availableProcessors());
+        logger.info("RequestVerifier: Creating " + threads + " verification threads");
+
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "RequestVerifier");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Verifies the POP of the CRMF requests that have a signature POP.
+     */
+    public static void verify(CertReqMsg[] msgs) throws Exception {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        EngineConfig cs = engine.getConfig();
+
+        if (cs.getBoolean("cms.skipPOPVerify", false)) {
+            return;
+        }
+
+        String tokenName = cs.getString("ca.requestVerify.token", CryptoUtil.INTERNAL_TOKEN_NAME);
+
+        List<Task> tasks = new ArrayList<>();
+
+        for (CertReqMsg msg : msgs) {
+            if (hasSignaturePOP(msg)) {
+                tasks.add(new Task(ASN1Util.encode(msg), () -> verifyPOP(msg, tokenName)));
+            }
+        }
+
+        run(tasks);
+    }
+
+    /**
+     * Verifies the signature of the PKCS #10 requests and the POP of
+     * the CRMF requests that have a signature POP in a CMC request.
+     */
+    public static void verify(TaggedRequest[] msgs) throws Exception {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        EngineConfig cs = engine.getConfig();
+
+        boolean sigver = cs.getBoolean("ca.requestVerify.enabled", true);
+        String tokenName = cs.getString("ca.requestVerify.token", CryptoUtil.INTERNAL_TOKEN_NAME);
+
+        List<Task> tasks = new ArrayList<>();
+
+        for (TaggedRequest msg : msgs) {
+
+            if (msg.getType().equals(TaggedRequest.PKCS10)) {
+
+                if (!sigver) {
+                    continue;
+                }
+
+                CertificationRequest p10 = msg.getTcr().getCertificationRequest();
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                p10.encode(os);
+                byte[] bytes = os.toByteArray();
+
+                tasks.add(new Task(bytes, () -> verifyPKCS10(bytes, tokenName)));
+
+            } else if (msg.getType().equals(TaggedRequest.CRMF)) {
+
+                CertReqMsg crm = msg.getCrm();
+                if (hasSignaturePOP(crm)) {
+                    tasks.add(new Task(ASN1Util.encode(crm), () -> verifyPOP(crm, tokenName)));
+                }
+            }
+        }
+
+        run(tasks);
+    }
+
+    /**
+     * Returns the result of a previous verification of a CRMF request
+     * in the current session, or null if it has not been verified.
+     */
+    public static Result getResult(CertReqMsg msg) {
+        return getResult(ASN1Util.encode(msg));
+    }
+
+    /**
+     * Returns the result of a previous verification of a request
+     * in the current session, or null if it has not been verified.
+     *
+     * @param bytes DER encoding of the request
+     */
+    @SuppressWarnings("unchecked")
+    public static Result getResult(byte[] bytes) {
+
+        SessionContext context = SessionContext.getExistingContext();
+        if (context == null) {
+            return null;
+        }
+
+        Map<String, Result> results = (Map<String, Result>) context.get(VERIFIED_REQUESTS);
+        if (results == null) {
+            return null;
+        }
+
+        try {
+            return results.get(digest(bytes));
+
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static boolean hasSignaturePOP(CertReqMsg msg) {
+        return msg.hasPop() && msg.getPop().getType() == ProofOfPossession.SIGNATURE;
+    }
+
+    static void verifyPOP(CertReqMsg msg, String tokenName) throws Exception {
+
+        if (CryptoUtil.isInternalToken(tokenName)) {
+            msg.verify();
+        } else {
+            msg.verify(CryptoUtil.getCryptoToken(tokenName));
+        }
+    }
+
+    static void verifyPKCS10(byte[] bytes, String tokenName) throws Exception {
+
+        CryptoManager cm = CryptoManager.getInstance();
+        CryptoToken savedToken = cm.getThreadToken();
+        CryptoToken signToken = CryptoUtil.getCryptoToken(tokenName);
+
+        boolean tokenSwitched = false;
+        if (!savedToken.getName().equals(signToken.getName())) {
+            cm.setThreadToken(signToken);
+            tokenSwitched = true;
+        }
+
+        try {
+            new PKCS10(bytes, true);
+
+        } finally {
+            if (tokenSwitched) {
+                cm.setThreadToken(savedToken);
+            }
+        }
+    }
+
+    static String digest(byte[] bytes) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        return Utils.base64encodeSingleLine(md.digest(bytes));
+    }
+
+    interface Verification {
+        void verify() throws Exception;
+    }
+
+    static class Task {
+
+        String key;
+        Verification verification;
+        Future<?> future;
+
+        Task(byte[] bytes, Verification verification) throws Exception {
+            this.key = digest(bytes);
+            this.verification = verification;
+        }
+    }
+
+    /**
+     * Runs the verifications in the thread pool, waits for all of
+     * them, and stores the results in the session context.
+     */
+    @SuppressWarnings("unchecked")
+    static void run(List<Task> tasks) throws Exception {
+
+        // verifying a single request in another thread does not help
+        if (tasks.size() < 2) {
+            return;
+        }
+
+        logger.info("RequestVerifier: Verifying " + tasks.size() + " requests");
+        long startTime = System.currentTimeMillis();
+
+        ThreadPoolExecutor executor = getExecutor();
+
+        for (Task task : tasks) {
+            task.future = executor.submit(() -> {
+                task.verification.verify();
+                return null;
+            });
+        }
+
+        SessionContext context = SessionContext.getContext();
+
+        Map<String, Result> results = (Map<String, Result>) context.get(VERIFIED_REQUESTS);
+        if (results == null) {
+            results = new ConcurrentHashMap<>();
+            context.put(VERIFIED_REQUESTS, results);
+        }
+
+        for (Task task : tasks) {
+
+            Result result = new Result();
+
+            try {
+                task.future.get();
+
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                result.exception = cause instanceof Exception ? (Exception) cause : e;
+                logger.debug("RequestVerifier: Unable to verify request: " + cause);
+            }
+
+            results.put(task.key, result);
+        }
+
+        long time = System.currentTimeMillis() - startTime;
+        logger.info("RequestVerifier: Verified " + tasks.size() + " requests in " + time + " ms");
+    }
+}
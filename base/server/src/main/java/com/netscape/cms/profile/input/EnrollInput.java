@@ -41,6 +41,7 @@ import com.netscape.cms.logging.SignedAuditLogger;
 import com.netscape.cms.profile.common.EnrollProfile;
 import com.netscape.cms.profile.common.Profile;
 import com.netscape.cms.profile.common.ProfileInput;
+import com.netscape.cms.profile.common.RequestVerifier;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
@@ -214,7 +215,14 @@ public abstract class EnrollInput extends ProfileInput {
 
             CryptoToken verifyToken = null;
             String tokenName = cs.getString("ca.requestVerify.token", CryptoUtil.INTERNAL_TOKEN_NAME);
-            if (CryptoUtil.isInternalToken(tokenName)) {
+            RequestVerifier.Result result = RequestVerifier.getResult(certReqMsg);
+
+            if (result != null) {
+                logger.debug(method + "POP already verified");
+                if (!result.isVerified()) {
+                    throw result.getException();
+                }
+            } else if (CryptoUtil.isInternalToken(tokenName)) {
                 logger.debug(method + "POP verification using internal token");
                 certReqMsg.verify();
             } else {
@@ -0,0 +1,152 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.realm;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.dogtagpki.server.authentication.AuthToken;
+
+import com.netscape.certsrv.authentication.IAuthToken;
+
+/**
+ * A bounded cache of principals authenticated with a client
+ * certificate, keyed by the certificate fingerprint.
+ *
+ * Entries expire after a fixed time or when the certificate expires,
+ * and are discarded when the user database has been modified since the
+ * principal was created.
+ *
+ * The principal is shared by concurrent requests, so each request gets
+ * a copy of the principal with its own authentication token.
+ */
+public class PKIPrincipalCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PKIPrincipalCache.class);
+
+    class Entry {
+        PKIPrincipal principal;
+        long notBefore;
+        long expirationTime;
+        long modificationCount;
+    }
+
+    private int size;
+    private long timeout;
+    private Map<String, Entry> entries;
+
+    /**
+     * @param size maximum number of principals
+     * @param timeout lifetime of a principal in milliseconds
+     */
+    public PKIPrincipalCache(int size, long timeout) {
+
+        this.size = size;
+        this.timeout = timeout;
+
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PKIPrincipalCache.this.size;
+            }
+        };
+    }
+
+    public static String getFingerprint(X509Certificate cert) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] digest = md.digest(cert.getEncoded());
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    /**
+     * Returns a copy of the cached principal, or null if there is no valid entry.
+     *
+     * @param fingerprint certificate fingerprint
+     * @param modificationCount current user database modification count
+     */
+    public synchronized PKIPrincipal get(String fingerprint, long modificationCount) {
+
+        Entry entry = entries.get(fingerprint);
+        if (entry == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (entry.modificationCount != modificationCount
+                || entry.notBefore > now
+                || entry.expirationTime < now) {
+            entries.remove(fingerprint);
+            return null;
+        }
+
+        return copy(entry.principal);
+    }
+
+    private PKIPrincipal copy(PKIPrincipal principal) {
+
+        IAuthToken authToken = principal.getAuthToken();
+        if (authToken instanceof AuthToken) {
+            authToken = ((AuthToken) authToken).copy();
+        }
+
+        return new PKIPrincipal(
+                principal.getUser(),
+                principal.getPassword(),
+                Arrays.asList(principal.getRoles()),
+                authToken);
+    }
+
+    /**
+     * Stores a principal.
+     *
+     * @param fingerprint certificate fingerprint
+     * @param cert client certificate
+     * @param principal authenticated principal
+     * @param modificationCount user database modification count read
+     *        before the principal was created
+     */
+    public synchronized void put(
+            String fingerprint,
+            X509Certificate cert,
+            PKIPrincipal principal,
+            long modificationCount) {
+
+        Entry entry = new Entry();
+        entry.principal = copy(principal);
+        entry.notBefore = cert.getNotBefore().getTime();
+        entry.expirationTime = Math.min(
+                System.currentTimeMillis() + timeout,
+                cert.getNotAfter().getTime());
+        entry.modificationCount = modificationCount;
+
+        entries.put(fingerprint, entry);
+    }
+
+    public synchronized void remove(String fingerprint) {
+        entries.remove(fingerprint);
+    }
+
+    public synchronized void clear() {
+        logger.debug("PKIPrincipalCache: Removing all principals");
+        entries.clear();
+    }
+}
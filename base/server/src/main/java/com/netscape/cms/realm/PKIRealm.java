@@ -22,8 +22,10 @@ import com.netscape.certsrv.usrgrp.EUsrGrpException;
 import com.netscape.cms.logging.Logger;
 import com.netscape.cms.logging.SignedAuditLogger;
 import com.netscape.cms.servlet.common.AuthCredentials;
+import com.netscape.cms.tomcat.SSLSessionPrincipalValidator;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
+import com.netscape.cmscore.apps.EngineConfig;
 import com.netscape.cmscore.authentication.AuthSubsystem;
 import com.netscape.cmscore.authentication.CertUserDBAuthentication;
 import com.netscape.cmscore.usrgrp.Group;
@@ -38,16 +40,42 @@ import com.netscape.cmscore.usrgrp.User;
  *  URL's against the access control list defined in the internal database.
  */
 
-public class PKIRealm extends RealmBase {
+public class PKIRealm extends RealmBase implements SSLSessionPrincipalValidator {
 
     private static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PKIRealm.class);
 
     private static Logger signedAuditLogger = SignedAuditLogger.getLogger();
 
+    // principals authenticated with client certificates
+    protected PKIPrincipalCache principalCache;
+
+    public PKIRealm() {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        EngineConfig cs = engine.getConfig();
+
+        try {
+            int size = cs.getInteger("realm.principalCache.size", 1000);
+            int timeout = cs.getInteger("realm.principalCache.timeout", 60);
+
+            if (size > 0 && timeout > 0) {
+                logger.info("PKIRealm: Principal cache size: " + size + ", timeout: " + timeout + "s");
+                principalCache = new PKIPrincipalCache(size, timeout * 1000L);
+            }
+
+        } catch (Exception e) {
+            logger.warn("PKIRealm: Unable to configure principal cache: " + e.getMessage(), e);
+        }
+    }
+
     protected String getName() {
         return "PKIRealm";
     }
 
+    public PKIPrincipalCache getPrincipalCache() {
+        return principalCache;
+    }
+
     @Override
     public Principal authenticate(String username, String password) {
 
@@ -118,15 +146,24 @@ public class PKIRealm extends RealmBase {
         String attemptedAuditUID = auditSubjectID;
 
         try {
-            X509CertImpl certImpls[] = new X509CertImpl[certs.length];
-            for (int i=0; i<certs.length; i++) {
-                X509Certificate cert = certs[i];
-                certImpls[i] = new X509CertImpl(cert.getEncoded());
-            }
-
             AuthSubsystem authSub = engine.getAuthSubsystem();
             AuthManager authMgr = authSub.getAuthManager(AuthSubsystem.CERTUSERDB_AUTHMGR_ID);
 
+            UGSubsystem ugSub = engine.getUGSubsystem();
+            long modificationCount = ugSub.getModificationCount();
+
+            String fingerprint = null;
+            if (principalCache != null) {
+                fingerprint = PKIPrincipalCache.getFingerprint(certs[0]);
+                PKIPrincipal principal = principalCache.get(fingerprint, modificationCount);
+
+                if (principal != null) {
+                    return getCachedPrincipal(principal, fingerprint, certs, authMgr);
+                }
+            }
+
+            X509CertImpl certImpls[] = toCertImpls(certs);
+
             AuthCredentials creds = new AuthCredentials();
             creds.set(CertUserDBAuthentication.CRED_CERT, certImpls);
 
@@ -143,7 +180,13 @@ public class PKIRealm extends RealmBase {
                         auditSubjectID,
                         AuthSubsystem.CERTUSERDB_AUTHMGR_ID));
 
-            return getPrincipal(username, authToken);
+            PKIPrincipal principal = (PKIPrincipal) getPrincipal(username, authToken);
+
+            if (principalCache != null) {
+                principalCache.put(fingerprint, certs[0], principal, modificationCount);
+            }
+
+            return principal;
 
         } catch (EMissingCredential | EInvalidCredentials e) { // authentication failure
 
@@ -169,6 +212,86 @@ public class PKIRealm extends RealmBase {
         }
     }
 
+    /**
+     * Returns a principal from the cache after checking the revocation
+     * status of the certificate if revocation checking is enabled for
+     * certificate authentication.
+     */
+    private Principal getCachedPrincipal(
+            PKIPrincipal principal,
+            String fingerprint,
+            X509Certificate[] certs,
+            AuthManager authMgr) throws Exception {
+
+        CMSEngine engine = CMS.getCMSEngine();
+
+        if (isRevocationCheckingEnabled(authMgr) && engine.isRevoked(toCertImpls(certs))) {
+
+            logger.warn("Unable to authenticate cert chain: certificate has been revoked");
+            principalCache.remove(fingerprint);
+
+            signedAuditLogger.log(AuthEvent.createFailureEvent(
+                    getAuditUserfromCert(certs[0]),
+                    AuthSubsystem.CERTUSERDB_AUTHMGR_ID,
+                    getAuditUserfromCert(certs[0])));
+
+            return null;
+        }
+
+        logger.info("PKIRealm: User ID: " + principal.getName() + " (cached)");
+
+        signedAuditLogger.log(AuthEvent.createSuccessEvent(
+                    principal.getAuthToken().getInString(IAuthToken.USER_ID),
+                    AuthSubsystem.CERTUSERDB_AUTHMGR_ID));
+
+        return principal;
+    }
+
+    @Override
+    public long getModificationCount() {
+        CMSEngine engine = CMS.getCMSEngine();
+        return engine.getUGSubsystem().getModificationCount();
+    }
+
+    @Override
+    public boolean isRevoked(X509Certificate[] certs) {
+
+        CMSEngine engine = CMS.getCMSEngine();
+
+        try {
+            // same check as certificate authentication, which might
+            // otherwise send a request to the CA for every TLS session
+            AuthSubsystem authSub = engine.getAuthSubsystem();
+            AuthManager authMgr = authSub.getAuthManager(AuthSubsystem.CERTUSERDB_AUTHMGR_ID);
+
+            if (!isRevocationCheckingEnabled(authMgr)) {
+                return false;
+            }
+
+            return engine.isRevoked(toCertImpls(certs));
+
+        } catch (Exception e) {
+            logger.warn("PKIRealm: Unable to check revocation status: " + e.getMessage(), e);
+            return true;
+        }
+    }
+
+    private boolean isRevocationCheckingEnabled(AuthManager authMgr) {
+        return authMgr instanceof CertUserDBAuthentication
+                && ((CertUserDBAuthentication) authMgr).isRevocationCheckingEnabled();
+    }
+
+    private X509CertImpl[] toCertImpls(X509Certificate[] certs) throws Exception {
+
+        X509CertImpl certImpls[] = new X509CertImpl[certs.length];
+        for (int i=0; i<certs.length; i++) {
+            X509Certificate cert = certs[i];
+            certImpls[i] = new X509CertImpl(cert.getEncoded());
+        }
+
+        return certImpls;
+    }
+
     private String getAuditUserfromCert(X509Certificate clientCert) {
         String certUID = clientCert.getSubjectDN().getName();
         return StringUtils.stripToNull(certUID);
@@ -17,34 +17,190 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.request;
 
-import java.util.Vector;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
+import com.netscape.certsrv.base.ServiceUnavailableException;
+import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IRequestScheduler;
 
 /**
- * This class represents a request scheduler that prioritizes
- * the threads based on the request processing order.
- * The request that enters the request queue first should
- * be processed first.
+ * This class represents a request scheduler that limits the
+ * number of requests processed concurrently.
+ *
+ * Requests that cannot be processed right away are queued per
+ * tenant (the lightweight CA or the user that submitted the request)
+ * and admitted from the tenant queues in turn, so a tenant with many
+ * requests cannot starve the others. The number of concurrent requests
+ * can also be limited per profile or request type, e.g.:
+ *
+ * <pre>
+ * ca.requestSchedulerClass=com.netscape.cms.request.RequestScheduler
+ * ca.requestScheduler.maxConcurrent=20
+ * ca.requestScheduler.maxQueueSize=200
+ * ca.requestScheduler.maxWaitTime=30000
+ * ca.requestScheduler.tenant=authority
+ * ca.requestScheduler.profile.caManualRenewal.maxConcurrent=2
+ * ca.requestScheduler.type.renewal.maxConcurrent=4
+ * </pre>
+ *
+ * The tenant can be "authority" (default), "user" or "none". Requests
+ * that do not fit into the queue or are not admitted within the maximum
+ * wait time are rejected with ServiceUnavailableException (HTTP 503).
  *
  * @version $Revision$, $Date$
  */
 public class RequestScheduler implements IRequestScheduler {
-    private Vector<Thread> mRequestThreads = new Vector<Thread>();
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestScheduler.class);
+
+    public final static String PROP_MAX_CONCURRENT = "maxConcurrent";
+    public final static String PROP_MAX_QUEUE_SIZE = "maxQueueSize";
+    public final static String PROP_MAX_WAIT_TIME = "maxWaitTime";
+    public final static String PROP_TENANT = "tenant";
+
+    public final static int DEFAULT_MAX_CONCURRENT = 20;
+    public final static int DEFAULT_MAX_QUEUE_SIZE = 200;
+    public final static int DEFAULT_MAX_WAIT_TIME = 30000; // milliseconds
+
+    public final static String TENANT_AUTHORITY = "authority";
+    public final static String TENANT_USER = "user";
+    public final static String TENANT_NONE = "none";
+
+    class Ticket {
+        String tenant;
+        String profile;
+        String type;
+        long queueTime;
+        boolean admitted;
+        int depth = 1;
+    }
+
+    private int mMaxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private int mMaxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    private long mMaxWaitTime = DEFAULT_MAX_WAIT_TIME;
+    private String mTenant = TENANT_AUTHORITY;
+
+    private Map<String, Integer> mProfileLimits = new HashMap<>();
+    private Map<String, Integer> mTypeLimits = new HashMap<>();
+
+    // admitted requests
+    private int mActive;
+
+    // requests being processed
+    private Map<IRequest, Ticket> mRunning = new IdentityHashMap<>();
+    private Map<String, Integer> mRunningProfiles = new HashMap<>();
+    private Map<String, Integer> mRunningTypes = new HashMap<>();
+
+    // waiting requests per tenant, the tenant that was served last
+    // is moved to the end
+    private LinkedHashMap<String, Deque<Ticket>> mQueues = new LinkedHashMap<>();
+    private int mQueueSize;
+
+    private long mAdmitted;
+    private long mRejected;
+    private long mTotalQueueTime;
+    private long mMaxQueueTime;
+
+    public synchronized void init(IConfigStore config) throws EBaseException {
+
+        mMaxConcurrent = config.getInteger(PROP_MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT);
+        logger.info("RequestScheduler: - max concurrent: " + mMaxConcurrent);
+
+        mMaxQueueSize = config.getInteger(PROP_MAX_QUEUE_SIZE, DEFAULT_MAX_QUEUE_SIZE);
+        logger.info("RequestScheduler: - max queue size: " + mMaxQueueSize);
+
+        mMaxWaitTime = config.getInteger(PROP_MAX_WAIT_TIME, DEFAULT_MAX_WAIT_TIME);
+        logger.info("RequestScheduler: - max wait time: " + mMaxWaitTime);
+
+        mTenant = config.getString(PROP_TENANT, TENANT_AUTHORITY);
+        logger.info("RequestScheduler: - tenant: " + mTenant);
+
+        loadLimits(config.getSubStore("profile"), mProfileLimits);
+        loadLimits(config.getSubStore("type"), mTypeLimits);
+    }
+
+    private void loadLimits(IConfigStore config, Map<String, Integer> limits) throws EBaseException {
+
+        limits.clear();
+
+        Enumeration<String> names = config.getSubStoreNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            int limit = config.getSubStore(name).getInteger(PROP_MAX_CONCURRENT, 0);
+            logger.info("RequestScheduler: - " + config.getName() + "." + name + ": " + limit);
+            limits.put(name, limit);
+        }
+    }
 
     /**
-     * Request entered the request queue processing.
+     * Request entered the request queue processing. The calling
+     * thread waits until the request is admitted.
      *
      * @param r request
+     * @exception ServiceUnavailableException the request was rejected
      */
     public synchronized void requestIn(IRequest r) {
-        Thread current = Thread.currentThread();
 
-        if (mRequestThreads.size() == 0) {
-            current.setPriority(Thread.MAX_PRIORITY);
+        Ticket ticket = mRunning.get(r);
+        if (ticket != null) {
+            // request is already being processed by this thread
+            ticket.depth++;
+            return;
         }
-        mRequestThreads.addElement(current);
+
+        ticket = new Ticket();
+        ticket.tenant = getTenant(r);
+        ticket.profile = r.getExtDataInString(IRequest.PROFILE_ID);
+        ticket.type = r.getRequestType();
+        ticket.queueTime = System.currentTimeMillis();
+
+        if (mQueueSize >= mMaxQueueSize) {
+            reject(r, "Too many requests");
+        }
+
+        mQueues.computeIfAbsent(ticket.tenant, k -> new ArrayDeque<>()).add(ticket);
+        mQueueSize++;
+
+        dispatch();
+
+        long deadline = ticket.queueTime + mMaxWaitTime;
+
+        try {
+            while (!ticket.admitted) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(remaining);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!ticket.admitted) {
+            dequeue(ticket);
+            reject(r, "Request was not processed within " + mMaxWaitTime + " ms");
+        }
+
+        long queueTime = System.currentTimeMillis() - ticket.queueTime;
+
+        mAdmitted++;
+        mTotalQueueTime += queueTime;
+        mMaxQueueTime = Math.max(mMaxQueueTime, queueTime);
+
+        mRunning.put(r, ticket);
+
+        logger.debug("RequestScheduler: Request " + r.getRequestId() + " admitted after " + queueTime + " ms");
     }
 
     /**
@@ -53,19 +209,164 @@ public class RequestScheduler implements IRequestScheduler {
      * @param r request
      */
     public synchronized void requestOut(IRequest r) {
-        Thread current = Thread.currentThread();
-        Thread first = mRequestThreads.elementAt(0);
 
-        if (current.equals(first)) {
-            // reprioritize
-            try {
-                Thread second = mRequestThreads.elementAt(1);
+        Ticket ticket = mRunning.get(r);
+        if (ticket == null || --ticket.depth > 0) {
+            return;
+        }
+
+        mRunning.remove(r);
+        mActive--;
+
+        decrement(mRunningProfiles, ticket.profile);
+        decrement(mRunningTypes, ticket.type);
+
+        dispatch();
+    }
+
+    /**
+     * Admits the waiting requests while there is capacity, taking
+     * the first admissible request of each tenant in turn.
+     */
+    private void dispatch() {
+
+        boolean admitted = false;
+
+        while (mActive < mMaxConcurrent) {
+
+            Ticket ticket = null;
+            String tenant = null;
+
+            for (Map.Entry<String, Deque<Ticket>> entry : mQueues.entrySet()) {
+                Ticket head = entry.getValue().peek();
+                if (isAdmissible(head)) {
+                    tenant = entry.getKey();
+                    ticket = head;
+                    break;
+                }
+            }
+
+            if (ticket == null) {
+                break;
+            }
+
+            // move the tenant to the end of the queues
+            Deque<Ticket> queue = mQueues.remove(tenant);
+            queue.poll();
+            mQueueSize--;
+
+            if (!queue.isEmpty()) {
+                mQueues.put(tenant, queue);
+            }
+
+            ticket.admitted = true;
+            increment(mRunningProfiles, ticket.profile);
+            increment(mRunningTypes, ticket.type);
+
+            mActive++;
+            admitted = true;
+        }
+
+        if (admitted) {
+            notifyAll();
+        }
+    }
+
+    private boolean isAdmissible(Ticket ticket) {
+        return isBelowLimit(mProfileLimits, mRunningProfiles, ticket.profile)
+                && isBelowLimit(mTypeLimits, mRunningTypes, ticket.type);
+    }
+
+    private boolean isBelowLimit(Map<String, Integer> limits, Map<String, Integer> running, String key) {
+
+        if (key == null) {
+            return true;
+        }
+
+        Integer limit = limits.get(key);
+        if (limit == null || limit <= 0) {
+            return true;
+        }
+
+        Integer count = running.get(key);
+        return count == null || count < limit;
+    }
+
+    private void increment(Map<String, Integer> counts, String key) {
+        if (key != null) {
+            counts.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private void decrement(Map<String, Integer> counts, String key) {
+        if (key != null) {
+            counts.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null);
+        }
+    }
+
+    private void dequeue(Ticket ticket) {
 
-                second.setPriority(Thread.MAX_PRIORITY);
-            } catch (Exception e) {
-                // no second element; nothing to do
+        Deque<Ticket> queue = mQueues.get(ticket.tenant);
+        if (queue != null && queue.remove(ticket)) {
+            mQueueSize--;
+            if (queue.isEmpty()) {
+                mQueues.remove(ticket.tenant);
             }
         }
-        mRequestThreads.removeElement(current);
+    }
+
+    private void reject(IRequest r, String reason) {
+
+        mRejected++;
+
+        logger.warn("RequestScheduler: Rejecting request " + r.getRequestId() + ": " + reason
+                + " (running: " + mActive + ", queued: " + mQueueSize + ")");
+
+        throw new ServiceUnavailableException("Server is busy, please try again later");
+    }
+
+    private String getTenant(IRequest r) {
+
+        String tenant = null;
+
+        if (TENANT_AUTHORITY.equals(mTenant)) {
+            tenant = r.getExtDataInString(IRequest.AUTHORITY_ID);
+
+        } else if (TENANT_USER.equals(mTenant)) {
+            SessionContext context = SessionContext.getExistingContext();
+            if (context != null) {
+                tenant = (String) context.get(SessionContext.USER_ID);
+            }
+        }
+
+        return tenant == null ? "" : tenant;
+    }
+
+    public synchronized int getRunningRequests() {
+        return mActive;
+    }
+
+    public synchronized int getQueuedRequests() {
+        return mQueueSize;
+    }
+
+    public synchronized long getAdmittedRequests() {
+        return mAdmitted;
+    }
+
+    public synchronized long getRejectedRequests() {
+        return mRejected;
+    }
+
+    /**
+     * Returns the average time the admitted requests spent in the queue
+     * in milliseconds.
+     */
+    public synchronized long getAverageQueueTime() {
+        return mAdmitted == 0 ? 0 : mTotalQueueTime / mAdmitted;
+    }
+
+    public synchronized long getMaxQueueTime() {
+        return mMaxQueueTime;
     }
 }
@@ -45,7 +45,6 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.common.ICMSRequest;
 import com.netscape.certsrv.connector.IPKIMessage;
-import com.netscape.certsrv.connector.IRequestEncoder;
 import com.netscape.certsrv.logging.AuditFormat;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.RequestId;
@@ -77,7 +76,7 @@ public class CloneServlet extends CMSServlet {
     public final static String PROP_AUTHORITY = "authority";
     protected ServletConfig mConfig = null;
     protected IAuthority mAuthority = null;
-    protected IRequestEncoder mReqEncoder = null;
+    protected HttpRequestEncoder mReqEncoder = null;
     protected AuthSubsystem mAuthSubsystem;
 
     public CloneServlet() {
@@ -249,8 +248,8 @@ public class CloneServlet extends CMSServlet {
             return;
         }
 
-        // encode reply
-        String encodedrep = mReqEncoder.encode(replymsg);
+        // encode reply in the same encoding as the request
+        String encodedrep = mReqEncoder.encode(replymsg, HttpRequestEncoder.isCompact(encodedreq));
 
         resp.setStatus(HttpServletResponse.SC_OK);
         resp.setContentType("text/html");
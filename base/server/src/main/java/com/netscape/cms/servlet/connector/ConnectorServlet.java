@@ -57,7 +57,6 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.common.ICMSRequest;
 import com.netscape.certsrv.connector.IPKIMessage;
-import com.netscape.certsrv.connector.IRequestEncoder;
 import com.netscape.certsrv.logging.AuditEvent;
 import com.netscape.certsrv.logging.AuditFormat;
 import com.netscape.certsrv.logging.ILogger;
@@ -93,7 +92,7 @@ public class ConnectorServlet extends CMSServlet {
     public final static String PROP_AUTHORITY = "authority";
     protected ServletConfig mConfig = null;
     protected IAuthority mAuthority = null;
-    protected IRequestEncoder mReqEncoder = null;
+    protected HttpRequestEncoder mReqEncoder = null;
     protected AuthSubsystem mAuthSubsystem;
 
     private final static String SIGNED_AUDIT_PROTECTION_METHOD_SSL = "ssl";
@@ -273,7 +272,8 @@ public class ConnectorServlet extends CMSServlet {
 
         // encode reply
         try {
-            String encodedrep = mReqEncoder.encode(replymsg);
+            // reply in the same encoding as the request
+            String encodedrep = mReqEncoder.encode(replymsg, HttpRequestEncoder.isCompact(encodedreq));
 
             resp.setStatus(HttpServletResponse.SC_OK);
             resp.setContentType("text/html");
@@ -21,6 +21,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.security.Provider;
 import java.security.Security;
 import java.security.SignatureException;
@@ -29,10 +30,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 
 import javax.servlet.ServletContextEvent;
@@ -67,6 +70,7 @@ import com.netscape.cms.realm.PKIRealm;
 import com.netscape.cms.servlet.csadmin.Configurator;
 import com.netscape.cms.tomcat.ProxyRealm;
 import com.netscape.cmscore.authentication.AuthSubsystem;
+import com.netscape.cmscore.authentication.RevocationCache;
 import com.netscape.cmscore.authentication.VerifiedCert;
 import com.netscape.cmscore.authentication.VerifiedCerts;
 import com.netscape.cmscore.authorization.AuthzSubsystem;
@@ -620,6 +624,7 @@ public class CMSEngine implements ServletContextListener {
         IPasswordStore passwordStore = getPasswordStore();
 
         ugSubsystem.init(socketConfig, ugConfig, passwordStore);
+        ugSubsystem.startGroupMonitor();
     }
 
     public void initOIDLoaderSubsystem() throws Exception {
@@ -1565,6 +1570,40 @@ public class CMSEngine implements ServletContextListener {
         }
     }
 
+    private RevocationCache mRevocationCache;
+
+    /**
+     * Enables the cache of revocation statuses obtained from the CA.
+     *
+     * @param size maximum number of statuses
+     * @param maxAge maximum age of a status in seconds
+     */
+    public void setRevocationCache(int size, long maxAge) {
+        if (size > 0 && maxAge > 0 && mRevocationCache == null) {
+            mRevocationCache = new RevocationCache(size, maxAge);
+        }
+    }
+
+    /**
+     * Discards the cached revocation status of a certificate
+     * whose revocation status has changed.
+     */
+    public void clearRevocationStatus(BigInteger serialNumber) {
+        if (mVCList != null) {
+            mVCList.remove(serialNumber);
+        }
+    }
+
+    /**
+     * Discards the cached revocation status of certificates that
+     * appear in a new revocation list.
+     */
+    public void updateRevocationStatus(Set<BigInteger> revokedSerialNumbers) {
+        if (mVCList != null) {
+            mVCList.removeRevoked(revokedSerialNumbers);
+        }
+    }
+
     public boolean isRevoked(X509Certificate[] certificates) {
 
         if (certificates == null) {
@@ -1573,8 +1612,10 @@ public class CMSEngine implements ServletContextListener {
 
         X509CertImpl cert = (X509CertImpl) certificates[0];
         int result = VerifiedCert.UNKNOWN;
+        long generation = 0;
 
         if (mVCList != null) {
+            generation = mVCList.getGeneration();
             result = mVCList.check(cert);
         }
 
@@ -1586,6 +1627,15 @@ public class CMSEngine implements ServletContextListener {
             return false;
         }
 
+        if (mRevocationCache != null) {
+            Boolean revoked = mRevocationCache.get(cert.getSerialNumber());
+            if (revoked != null) {
+                logger.debug("CMSEngine: Using cached revocation status of certificate 0x"
+                        + cert.getSerialNumber().toString(16));
+                return revoked;
+            }
+        }
+
         boolean revoked = false;
 
         if (requestQueue != null) {
@@ -1615,20 +1665,24 @@ public class CMSEngine implements ServletContextListener {
                         if (name.equals(IRequest.REVOKED_CERTS)) {
                             revoked = true;
                             if (mVCList != null) {
-                                mVCList.update(cert, VerifiedCert.REVOKED);
+                                mVCList.update(cert, VerifiedCert.REVOKED, generation);
                             }
                         }
                     }
 
                     if (revoked == false) {
                         if (mVCList != null) {
-                            mVCList.update(cert, VerifiedCert.NOT_REVOKED);
+                            mVCList.update(cert, VerifiedCert.NOT_REVOKED, generation);
                         }
                     }
 
+                    if (mRevocationCache != null) {
+                        mRevocationCache.put(cert.getSerialNumber(), revoked, getNextUpdate(checkRevReq));
+                    }
+
                 } else {
                     if (mVCList != null) {
-                        mVCList.update(cert, VerifiedCert.CHECKED);
+                        mVCList.update(cert, VerifiedCert.CHECKED, generation);
                     }
                 }
 
@@ -1640,6 +1694,24 @@ public class CMSEngine implements ServletContextListener {
         return revoked;
     }
 
+    /**
+     * Returns the next CRL update reported by the CA, if any.
+     */
+    private Date getNextUpdate(IRequest request) {
+
+        String nextUpdate = request.getExtDataInString(IRequest.CRL_NEXT_UPDATE);
+        if (nextUpdate == null) {
+            return null;
+        }
+
+        try {
+            return new Date(Long.parseLong(nextUpdate));
+        } catch (NumberFormatException e) {
+            logger.warn("CMSEngine: Invalid CRL next update: " + nextUpdate);
+            return null;
+        }
+    }
+
     public boolean isReady() {
         return ready;
     }
@@ -118,12 +118,22 @@ public class CertUserDBAuthentication implements AuthManager {
 
                 if (size > 0)
                     engine.setListOfVerifiedCerts(size, interval, unknownStateInterval);
+
+                // statuses obtained from a remote CA are kept until its next CRL update
+                int cacheSize = mRevocationChecking.getInteger("cacheSize", 1000);
+                long cacheMaxAge = mRevocationChecking.getInteger("cacheMaxAge", 3600);
+
+                engine.setRevocationCache(cacheSize, cacheMaxAge);
             }
         }
 
         mCULocator = new ExactMatchCertUserLocator();
     }
 
+    public boolean isRevocationCheckingEnabled() {
+        return mRevocationCheckingEnabled;
+    }
+
     /**
      * Gets the name of this authentication manager.
      */
@@ -0,0 +1,122 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.authentication;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of revocation statuses obtained from a remote CA.
+ *
+ * The statuses are indexed by serial number. A status is kept until
+ * the next update of the CA's revocation list, since relying parties
+ * of that list accept the same delay, but not longer than the maximum
+ * age. A status without a next update time is not cached.
+ */
+public class RevocationCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RevocationCache.class);
+
+    private int mSize;
+    private long mMaxAge; // milliseconds
+
+    private Map<BigInteger, Status> mStatuses = new ConcurrentHashMap<>();
+
+    static class Status {
+        boolean revoked;
+        long expirationTime;
+    }
+
+    /**
+     * @param size maximum number of statuses
+     * @param maxAge maximum age of a status in seconds
+     */
+    public RevocationCache(int size, long maxAge) {
+        mSize = size;
+        mMaxAge = maxAge * 1000;
+    }
+
+    /**
+     * Returns the cached revocation status of a certificate.
+     *
+     * @return true if revoked, false if not revoked, null if unknown
+     */
+    public Boolean get(BigInteger serialNumber) {
+
+        Status status = mStatuses.get(serialNumber);
+        if (status == null) {
+            return null;
+        }
+
+        if (status.expirationTime <= System.currentTimeMillis()) {
+            mStatuses.remove(serialNumber, status);
+            return null;
+        }
+
+        return status.revoked;
+    }
+
+    /**
+     * Stores the revocation status of a certificate.
+     *
+     * @param nextUpdate next update of the revocation list the status
+     *            is based on, or null if not known
+     */
+    public void put(BigInteger serialNumber, boolean revoked, Date nextUpdate) {
+
+        if (nextUpdate == null || mSize <= 0 || mMaxAge <= 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expirationTime = Math.min(nextUpdate.getTime(), now + mMaxAge);
+
+        if (expirationTime <= now) {
+            return;
+        }
+
+        Status status = new Status();
+        status.revoked = revoked;
+        status.expirationTime = expirationTime;
+
+        mStatuses.put(serialNumber, status);
+
+        if (mStatuses.size() > mSize) {
+            evict(now);
+        }
+    }
+
+    /**
+     * Removes expired statuses, or all statuses if none has expired.
+     */
+    private synchronized void evict(long now) {
+
+        if (mStatuses.size() <= mSize) {
+            return;
+        }
+
+        mStatuses.values().removeIf(status -> status.expirationTime <= now);
+
+        if (mStatuses.size() > mSize) {
+            logger.debug("RevocationCache: Removing all " + mStatuses.size() + " statuses");
+            mStatuses.clear();
+        }
+    }
+}
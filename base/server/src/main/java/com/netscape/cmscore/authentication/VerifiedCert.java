@@ -18,7 +18,7 @@
 package com.netscape.cmscore.authentication;
 
 import java.math.BigInteger;
-import java.util.Date;
+import java.util.Arrays;
 
 /**
  * class storing verified certificate.
@@ -33,10 +33,10 @@ public class VerifiedCert {
     public static final int REVOKED = 1;
     public static final int UNKNOWN = 0;
 
-    private int mStatus = UNKNOWN;
-    private Date mCreated = null;
-    private BigInteger mSerialNumber = null;
-    private byte[] mCertEncoded = null;
+    private final int mStatus;
+    private final long mCreated;
+    private final BigInteger mSerialNumber;
+    private final byte[] mCertEncoded;
 
     /**
      * Constructs verified certiificate record
@@ -47,42 +47,51 @@ public class VerifiedCert {
         mStatus = status;
         mSerialNumber = serialNumber;
         mCertEncoded = certEncoded;
-        mCreated = new Date();
+        mCreated = System.currentTimeMillis();
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public long getCreated() {
+        return mCreated;
+    }
+
+    public BigInteger getSerialNumber() {
+        return mSerialNumber;
+    }
+
+    /**
+     * Returns true if the record has been kept longer than the interval
+     * (in seconds) that applies to it: records with an encoded certificate
+     * use the interval, records without one use the unknown state interval.
+     */
+    public boolean isExpired(long interval, long unknownStateInterval) {
+        long lifetime = mCertEncoded != null ? interval : unknownStateInterval;
+        return System.currentTimeMillis() > mCreated + lifetime * 1000;
     }
 
     public int check(BigInteger serialNumber, byte[] certEncoded,
             long interval, long unknownStateInterval) {
-        int status = UNKNOWN;
-
-        if (mSerialNumber.equals(serialNumber)) {
-            if (mCertEncoded != null) {
-                if (certEncoded != null &&
-                        mCertEncoded.length == certEncoded.length) {
-                    int i;
-
-                    for (i = 0; i < mCertEncoded.length; i++) {
-                        if (mCertEncoded[i] != certEncoded[i])
-                            break;
-                    }
-                    if (i >= mCertEncoded.length) {
-                        Date expires = new Date(mCreated.getTime() + (interval * 1000));
-                        Date now = new Date();
-
-                        if (now.after(expires))
-                            mStatus = EXPIRED;
-                        status = mStatus;
-                    }
-                }
-            } else if (unknownStateInterval > 0) {
-                Date expires = new Date(mCreated.getTime() + (unknownStateInterval * 1000));
-                Date now = new Date();
-
-                if (now.after(expires))
-                    mStatus = EXPIRED;
-                status = mStatus; // CHECKED
+
+        if (!mSerialNumber.equals(serialNumber)) {
+            return UNKNOWN;
+        }
+
+        if (mCertEncoded != null) {
+            if (certEncoded == null || !Arrays.equals(mCertEncoded, certEncoded)) {
+                return UNKNOWN;
             }
+
+        } else if (unknownStateInterval <= 0) {
+            return UNKNOWN;
+        }
+
+        if (isExpired(interval, unknownStateInterval)) {
+            return EXPIRED;
         }
 
-        return status;
+        return mStatus;
     }
 }
@@ -18,42 +18,94 @@
 package com.netscape.cmscore.authentication;
 
 import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
 /**
  * class storing verified certificates.
  *
+ * The records are indexed by certificate fingerprint so lookups do not
+ * depend on the number of records, and can be done without locking.
+ * Records without an encoded certificate (i.e. checked certificates
+ * in unknown state) are indexed by serial number. When the list is full
+ * the expired records are removed first, then the oldest records.
+ *
+ * Removing the records of a certificate stamps its serial number with a
+ * new generation number. A status of that certificate that was looked up
+ * before the removal is discarded, so a concurrent lookup cannot restore
+ * the status that was just invalidated. Lookups of other certificates
+ * are not affected.
+ *
  * @version $Revision$, $Date$
  */
 
 public class VerifiedCerts {
 
-    /* the value type of the dn component */
-    private int mFirst = 0;
-    private int mLast = 0;
-    private int mNext = 0;
-    private VerifiedCert[] mVCerts = null;
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(VerifiedCerts.class);
+
+    private int mSize = 0;
+    private Map<String, VerifiedCert> mVCerts = new ConcurrentHashMap<>();
     private long mInterval = 0;
     private long mUnknownStateInterval = 0;
+    private AtomicLong mGeneration = new AtomicLong();
+
+    // how long removals are remembered, longer than any status lookup
+    static final long REMOVAL_RETENTION = 5 * 60 * 1000;
+
+    // serial numbers whose records were removed, with the generation
+    // and time of the removal
+    private Map<BigInteger, Removal> mRemovals = new ConcurrentHashMap<>();
+
+    static class Removal {
+
+        final long generation;
+        final long time = System.currentTimeMillis();
+
+        Removal(long generation) {
+            this.generation = generation;
+        }
+    }
 
     /**
      * Constructs verified certiificates list
      */
 
     public VerifiedCerts(int size, long interval) {
-        mVCerts = new VerifiedCert[size];
+        mSize = size;
         mInterval = interval;
         mUnknownStateInterval = interval;
     }
 
     public VerifiedCerts(int size, long interval, long unknownStateInterval) {
-        mVCerts = new VerifiedCert[size];
+        mSize = size;
         mInterval = interval;
         mUnknownStateInterval = unknownStateInterval;
     }
 
-    public synchronized void update(X509CertImpl cert, int status) {
+    /**
+     * Returns the generation number to pass to update() for a status
+     * that is about to be looked up.
+     */
+    public long getGeneration() {
+        return mGeneration.get();
+    }
+
+    public void update(X509CertImpl cert, int status) {
+        update(cert, status, mGeneration.get());
+    }
+
+    public void update(X509CertImpl cert, int status, long generation) {
         if (cert != null) {
             byte[] certEncoded = null;
 
@@ -64,36 +116,44 @@ public class VerifiedCerts {
             if ((certEncoded != null ||
                     (status == VerifiedCert.CHECKED && mUnknownStateInterval > 0))
                     && mInterval > 0) {
-                update(cert.getSerialNumber(), certEncoded, status);
+                update(cert.getSerialNumber(), certEncoded, status, generation);
             }
         }
     }
 
-    public synchronized void update(BigInteger serialNumber, byte[] certEncoded, int status) {
+    public void update(BigInteger serialNumber, byte[] certEncoded, int status) {
+        update(serialNumber, certEncoded, status, mGeneration.get());
+    }
+
+    public void update(BigInteger serialNumber, byte[] certEncoded, int status, long generation) {
         if ((status == VerifiedCert.NOT_REVOKED ||
                 status == VerifiedCert.REVOKED ||
                 (status == VerifiedCert.CHECKED && mUnknownStateInterval > 0))
-                && mInterval > 0) {
-            if (mLast == mNext && mFirst == mNext) { // empty
-                mVCerts[mNext] = new VerifiedCert(serialNumber, certEncoded, status);
-                mNext = next(mNext);
-            } else if (mFirst == mNext) { // full
-                mFirst = next(mFirst);
-                mVCerts[mNext] = new VerifiedCert(serialNumber, certEncoded, status);
-                mLast = mNext;
-                mNext = next(mNext);
-            } else {
-                mVCerts[mNext] = new VerifiedCert(serialNumber, certEncoded, status);
-                mLast = mNext;
-                mNext = next(mNext);
+                && mInterval > 0 && mSize > 0) {
+
+            String key = getKey(serialNumber, certEncoded);
+            VerifiedCert vc = new VerifiedCert(serialNumber, certEncoded, status);
+
+            mVCerts.put(key, vc);
+
+            Removal removal = mRemovals.get(serialNumber);
+            if (removal != null && removal.generation > generation) {
+                // the records of the certificate were removed
+                // since the status was looked up
+                mVCerts.remove(key, vc);
+                return;
+            }
+
+            if (mVCerts.size() > mSize) {
+                evict();
             }
         }
     }
 
-    public synchronized int check(X509CertImpl cert) {
+    public int check(X509CertImpl cert) {
         int status = VerifiedCert.UNKNOWN;
 
-        if (mLast != mNext && mInterval > 0) { // if not empty and
+        if (!mVCerts.isEmpty() && mInterval > 0) { // if not empty and
             if (cert != null) {
                 byte[] certEncoded = null;
 
@@ -110,49 +170,142 @@ public class VerifiedCerts {
         return status;
     }
 
-    public synchronized int check(BigInteger serialNumber, byte[] certEncoded) {
-        int status = VerifiedCert.UNKNOWN;
-        int i = mLast;
-
-        if (mVCerts != null && mLast != mNext && mInterval > 0) { // if not empty and
-            while (status == VerifiedCert.UNKNOWN) {
-                if (mVCerts[i] == null)
-                    return status;
-                status = mVCerts[i].check(serialNumber, certEncoded,
-                            mInterval, mUnknownStateInterval);
-                if (status == VerifiedCert.EXPIRED) {
-                    if (mFirst == mLast)
-                        mNext = mLast;
-                    else
-                        mFirst = next(i);
-                    break;
-                } else if (mFirst == i) {
-                    break;
-                } else {
-                    i = previous(i);
-                }
-            }
-            if (status == VerifiedCert.UNKNOWN)
-                status = mVCerts[i].check(serialNumber, certEncoded,
-                            mInterval, mUnknownStateInterval);
+    public int check(BigInteger serialNumber, byte[] certEncoded) {
+
+        if (mVCerts.isEmpty() || mInterval <= 0) {
+            return VerifiedCert.UNKNOWN;
+        }
+
+        // find the most recent record for the certificate itself
+        // or for its serial number
+        String key = null;
+        VerifiedCert vc = null;
+
+        if (certEncoded != null) {
+            key = getKey(serialNumber, certEncoded);
+            vc = mVCerts.get(key);
+        }
+
+        String serialKey = getKey(serialNumber, null);
+        VerifiedCert serialVC = mVCerts.get(serialKey);
+
+        if (serialVC != null && (vc == null || serialVC.getCreated() > vc.getCreated())) {
+            key = serialKey;
+            vc = serialVC;
+        }
+
+        if (vc == null) {
+            return VerifiedCert.UNKNOWN;
+        }
+
+        int status = vc.check(serialNumber, certEncoded, mInterval, mUnknownStateInterval);
+
+        if (status == VerifiedCert.EXPIRED) {
+            // remove the record unless it has been replaced
+            mVCerts.remove(key, vc);
         }
 
         return status;
     }
 
-    private int next(int i) {
-        i++;
-        if (i >= mVCerts.length)
-            i = 0;
+    /**
+     * Removes the records of a certificate, e.g. when the certificate
+     * has been revoked or taken off hold.
+     */
+    public void remove(BigInteger serialNumber) {
+
+        pruneRemovals();
+
+        // stamp the serial number before removing the records so that
+        // a concurrent update either sees the stamp or gets removed
+        mRemovals.put(serialNumber, new Removal(mGeneration.incrementAndGet()));
+        mVCerts.values().removeIf(vc -> vc.getSerialNumber().equals(serialNumber));
+    }
+
+    /**
+     * Removes the records of certificates that are not known to be
+     * revoked but appear in a new revocation list (e.g. a CRL).
+     *
+     * Only the certificates that have records are stamped. A lookup
+     * that is in progress for another certificate is protected by the
+     * remove() call made when the certificate was revoked.
+     */
+    public void removeRevoked(Set<BigInteger> revokedSerialNumbers) {
+
+        pruneRemovals();
+
+        Set<BigInteger> serialNumbers = new HashSet<>();
 
-        return i;
+        for (VerifiedCert vc : mVCerts.values()) {
+            if (vc.getStatus() != VerifiedCert.REVOKED
+                    && revokedSerialNumbers.contains(vc.getSerialNumber())) {
+                serialNumbers.add(vc.getSerialNumber());
+            }
+        }
+
+        for (BigInteger serialNumber : serialNumbers) {
+            mRemovals.put(serialNumber, new Removal(mGeneration.incrementAndGet()));
+        }
+
+        mVCerts.values().removeIf(vc -> vc.getStatus() != VerifiedCert.REVOKED
+                && serialNumbers.contains(vc.getSerialNumber()));
     }
 
-    private int previous(int i) {
-        if (i <= 0)
-            i = mVCerts.length;
-        i--;
+    private void pruneRemovals() {
+        long time = System.currentTimeMillis() - REMOVAL_RETENTION;
+        mRemovals.values().removeIf(removal -> removal.time < time);
+    }
 
-        return i;
+    /**
+     * Removes expired records, then the oldest records until
+     * the list is 10% below its size limit.
+     */
+    private synchronized void evict() {
+
+        if (mVCerts.size() <= mSize) {
+            return;
+        }
+
+        List<Map.Entry<String, VerifiedCert>> entries = new ArrayList<>();
+
+        for (Map.Entry<String, VerifiedCert> entry : mVCerts.entrySet()) {
+            VerifiedCert vc = entry.getValue();
+            if (vc.isExpired(mInterval, mUnknownStateInterval)) {
+                mVCerts.remove(entry.getKey(), vc);
+            } else {
+                entries.add(entry);
+            }
+        }
+
+        int limit = mSize - mSize / 10;
+        int excess = mVCerts.size() - limit;
+
+        if (excess <= 0) {
+            return;
+        }
+
+        logger.debug("VerifiedCerts: Removing " + excess + " oldest records");
+
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().getCreated()));
+
+        for (int i = 0; i < excess && i < entries.size(); i++) {
+            Map.Entry<String, VerifiedCert> entry = entries.get(i);
+            mVCerts.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private String getKey(BigInteger serialNumber, byte[] certEncoded) {
+
+        if (certEncoded == null) {
+            return "serial:" + serialNumber.toString(16);
+        }
+
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(md.digest(certEncoded));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
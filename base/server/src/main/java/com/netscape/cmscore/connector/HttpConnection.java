@@ -67,7 +67,7 @@ public class HttpConnection implements IHttpConnection {
         }
 
         mDest = dest;
-        mReqEncoder = new HttpRequestEncoder();
+        mReqEncoder = new HttpRequestEncoder(dest.isCompactEncoding());
         mHttpClient = new HttpClient(factory);
 
         this.timeout = timeout;
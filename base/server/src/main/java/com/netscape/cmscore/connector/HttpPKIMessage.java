@@ -18,11 +18,15 @@
 package com.netscape.cmscore.connector;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 
@@ -36,6 +40,10 @@ public class HttpPKIMessage implements IHttpPKIMessage {
 
     private static final long serialVersionUID = -3378261119472034953L;
 
+    // value tags used by the compact encoding
+    private static final int TAG_STRING = 1;
+    private static final int TAG_HASHTABLE = 2;
+
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpPKIMessage.class);
 
     // initialized to "" because nulls don't serialize well.
@@ -227,4 +235,125 @@ public class HttpPKIMessage implements IHttpPKIMessage {
             }
         }
     }
+
+    /**
+     * Writes this message in the compact encoding used by
+     * HttpRequestEncoder. Unlike Java serialization, only strings
+     * and string hashtables are supported, which covers all the
+     * values produced by fromRequest().
+     */
+    void writeCompact(DataOutputStream out) throws IOException {
+
+        writeString(out, reqType);
+        writeString(out, reqId);
+        writeString(out, reqStatus);
+        writeString(out, reqRealm);
+
+        Vector<Object> pairs = new Vector<Object>();
+        Enumeration<Object> enum1 = mNameVals.elements();
+
+        while (enum1.hasMoreElements()) {
+            Object key = enum1.nextElement();
+            if (!enum1.hasMoreElements()) {
+                logger.warn("HttpPKIMessage: incorrect pairing of name/value for " + key);
+                break;
+            }
+
+            Object val = enum1.nextElement();
+            if (!(key instanceof String) || !(val instanceof String || val instanceof Hashtable)) {
+                logger.warn("HttpPKIMessage: skipped key=" + key + " with unsupported value type");
+                continue;
+            }
+
+            pairs.addElement(key);
+            pairs.addElement(val);
+        }
+
+        out.writeInt(pairs.size() / 2);
+
+        enum1 = pairs.elements();
+        while (enum1.hasMoreElements()) {
+            writeString(out, (String) enum1.nextElement());
+            Object val = enum1.nextElement();
+
+            if (val instanceof String) {
+                out.writeByte(TAG_STRING);
+                writeString(out, (String) val);
+                continue;
+            }
+
+            @SuppressWarnings("unchecked")
+            Hashtable<String, String> table = (Hashtable<String, String>) val;
+            out.writeByte(TAG_HASHTABLE);
+            out.writeInt(table.size());
+
+            for (Map.Entry<String, String> entry : table.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a message written by writeCompact().
+     */
+    void readCompact(DataInputStream in) throws IOException {
+
+        reqType = readString(in);
+        reqId = readString(in);
+        reqStatus = readString(in);
+        reqRealm = readString(in);
+        mNameVals = new Vector<Object>();
+
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            int tag = in.readByte();
+
+            if (tag == TAG_STRING) {
+                mNameVals.addElement(key);
+                mNameVals.addElement(readString(in));
+
+            } else if (tag == TAG_HASHTABLE) {
+                int size = in.readInt();
+                Hashtable<String, String> table = new Hashtable<String, String>();
+
+                for (int j = 0; j < size; j++) {
+                    String name = readString(in);
+                    String value = readString(in);
+                    table.put(name, value);
+                }
+
+                mNameVals.addElement(key);
+                mNameVals.addElement(table);
+
+            } else {
+                throw new IOException("Invalid value tag for " + key + ": " + tag);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+
+        // nulls are encoded with a negative length
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
 }
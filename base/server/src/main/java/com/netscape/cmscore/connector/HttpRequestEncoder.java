@@ -19,6 +19,8 @@ package com.netscape.cmscore.connector;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -30,13 +32,51 @@ import com.netscape.certsrv.connector.IRequestEncoder;
 
 /**
  * encodes a request by serializing it.
+ *
+ * By default requests are encoded with Java serialization. If compact
+ * encoding is enabled, HttpPKIMessage objects are encoded with a
+ * versioned binary format instead:
+ *
+ * <pre>
+ *   "PKIM" | version (1 byte) | message fields
+ * </pre>
+ *
+ * Decoding detects the format automatically, so either side of a
+ * connector can read messages produced by older servers.
  */
 public class HttpRequestEncoder implements IRequestEncoder {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpRequestEncoder.class);
 
+    public final static byte[] COMPACT_MAGIC = { 'P', 'K', 'I', 'M' };
+    public final static int COMPACT_VERSION = 1;
+
+    boolean compact;
+
+    public HttpRequestEncoder() {
+        this(false);
+    }
+
+    public HttpRequestEncoder(boolean compact) {
+        this.compact = compact;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
     public String encode(Object r)
             throws IOException {
+        return encode(r, compact);
+    }
+
+    public String encode(Object r, boolean compact)
+            throws IOException {
+
+        if (compact && r instanceof HttpPKIMessage) {
+            return Utils.base64encode(encodeCompact((HttpPKIMessage) r), true);
+        }
+
         String s = null;
         byte[] serial;
         ByteArrayOutputStream ba = new ByteArrayOutputStream();
@@ -56,6 +96,11 @@ public class HttpRequestEncoder implements IRequestEncoder {
         try {
 
             serial = Utils.base64decode(s);
+
+            if (isCompact(serial)) {
+                return decodeCompact(serial);
+            }
+
             ByteArrayInputStream ba = new ByteArrayInputStream(serial);
             ObjectInputStream is = new ObjectInputStream(ba);
 
@@ -75,4 +120,63 @@ public class HttpRequestEncoder implements IRequestEncoder {
         }
         return result;
     }
+
+    /**
+     * Checks whether an encoded message uses the compact encoding.
+     *
+     * @param s base64-encoded message
+     * @return true if the message uses the compact encoding
+     */
+    public static boolean isCompact(String s) {
+
+        if (s == null) return false;
+
+        // the first 8 base64 characters cover the magic and version bytes
+        s = s.trim();
+        if (s.length() < 8) return false;
+
+        return isCompact(Utils.base64decode(s.substring(0, 8)));
+    }
+
+    static boolean isCompact(byte[] data) {
+
+        if (data == null || data.length <= COMPACT_MAGIC.length) {
+            return false;
+        }
+
+        for (int i = 0; i < COMPACT_MAGIC.length; i++) {
+            if (data[i] != COMPACT_MAGIC[i]) return false;
+        }
+
+        return true;
+    }
+
+    byte[] encodeCompact(HttpPKIMessage msg) throws IOException {
+
+        ByteArrayOutputStream ba = new ByteArrayOutputStream();
+        DataOutputStream os = new DataOutputStream(ba);
+
+        os.write(COMPACT_MAGIC);
+        os.writeByte(COMPACT_VERSION);
+        msg.writeCompact(os);
+        os.flush();
+
+        return ba.toByteArray();
+    }
+
+    HttpPKIMessage decodeCompact(byte[] data) throws IOException {
+
+        DataInputStream is = new DataInputStream(new ByteArrayInputStream(data));
+        is.skipBytes(COMPACT_MAGIC.length);
+
+        int version = is.readByte();
+        if (version != COMPACT_VERSION) {
+            throw new IOException("Unsupported request encoding version: " + version);
+        }
+
+        HttpPKIMessage msg = new HttpPKIMessage();
+        msg.readCompact(is);
+
+        return msg;
+    }
 }
@@ -30,6 +30,7 @@ public class RemoteAuthority implements IRemoteAuthority {
     Hashtable<String, String> mURIs = new Hashtable<String, String>();
     String mContentType = null;
     int mTimeout = 0;
+    boolean mCompactEncoding = false;
 
     /**
      * host parameter can be:
@@ -101,4 +102,12 @@ public class RemoteAuthority implements IRemoteAuthority {
     public String getContentType() {
         return mContentType;
     }
+
+    public boolean isCompactEncoding() {
+        return mCompactEncoding;
+    }
+
+    public void setCompactEncoding(boolean compactEncoding) {
+        mCompactEncoding = compactEncoding;
+    }
 }
@@ -35,6 +35,7 @@ public class RequestTransfer {
             IRequest.OLD_CERTS,
             IRequest.OLD_SERIALS,
             IRequest.REVOKED_CERTS,
+            IRequest.CRL_NEXT_UPDATE,
             IRequest.CACERTCHAIN,
             IRequest.CRL,
             IRequest.ERRORS,
@@ -19,11 +19,20 @@ package com.netscape.cmscore.dbs;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.mozilla.jss.netscape.security.x509.CertificateValidity;
 import org.mozilla.jss.netscape.security.x509.X500Name;
@@ -79,6 +88,8 @@ public class CertificateRepository extends Repository {
     private static final String PROP_COLLISION_RECOVERY_STEPS = "collisionRecoverySteps";
     private static final String PROP_COLLISION_RECOVERY_REGENERATIONS = "collisionRecoveryRegenerations";
     private static final String PROP_MINIMUM_RANDOM_BITS = "minimumRandomBits";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_POOL_SIZE = "randomSerialNumberPoolSize";
+    private static final String PROP_SERIAL_NUMBER_BLOCK_SIZE = "serialNumberBlockSize";
     private static final BigInteger BI_MINUS_ONE = (BigInteger.ZERO).subtract(BigInteger.ONE);
 
     private boolean mConsistencyCheck = false;
@@ -91,6 +102,20 @@ public class CertificateRepository extends Repository {
     private DatabaseConfig mDBConfig = null;
     private boolean mForceModeChange = false;
 
+    // Random serial numbers that have already been checked against the
+    // database, so that issuance does not need an LDAP lookup per
+    // candidate while holding the repository lock.
+    private RandomSerialNumberPool mRandomSerialPool;
+    private final Object mRandomSerialPoolLock = new Object();
+    private ExecutorService mRandomSerialExecutor;
+    private AtomicBoolean mRandomSerialRefilling = new AtomicBoolean();
+
+    // serial numbers tracked by the filter before it is recreated
+    private static final int RESERVED_SERIAL_FILTER_CAPACITY = 1 << 20;
+
+    // maximum number of status updates sent without waiting for the results
+    private static final int STATUS_UPDATE_BATCH_SIZE = 100;
+
     /**
      * Constructs a certificate repository.
      */
@@ -149,6 +174,24 @@ public class CertificateRepository extends Repository {
         if (incrementNo != null) {
             mIncrementNo = new BigInteger(incrementNo, mRadix);
         }
+
+        int serialNumberBlockSize = mDBConfig.getInteger(PROP_SERIAL_NUMBER_BLOCK_SIZE, 0);
+        initSerialNumberBlocks(Runtime.getRuntime().availableProcessors(), serialNumberBlockSize);
+
+        // disabled by default
+        int randomSerialPoolSize = mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_POOL_SIZE, 0);
+        logger.info("CertificateRepository: - random serial number pool size: " + randomSerialPoolSize);
+
+        if (randomSerialPoolSize > 0) {
+            mRandomSerialPool = new RandomSerialNumberPool(randomSerialPoolSize, RESERVED_SERIAL_FILTER_CAPACITY);
+            mRandomSerialExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RandomSerialNumberPool");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
     }
 
     /**
@@ -177,6 +220,9 @@ public class CertificateRepository extends Repository {
 
         if (mEnableRandomSerialNumbers ^ random || forceModeChange) {
             mEnableRandomSerialNumbers = random;
+            if (mRandomSerialPool != null) {
+                mRandomSerialPool.clear();
+            }
             logger.debug("CertificateRepository:  setEnableRandomSerialNumbers   switching to " +
                       ((random)?PROP_RANDOM_MODE:PROP_SEQUENTIAL_MODE) + " mode");
             if (updateMode) {
@@ -298,53 +344,208 @@ public class CertificateRepository extends Repository {
      * Retrieves the next certificate serial number, and also increases
      * the serial number by one.
      *
+     * In random mode with a serial number pool the candidates are
+     * checked against the database in batches by a background thread,
+     * so the repository lock is only held to update the counter and
+     * the range.
+     *
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
-    public synchronized BigInteger getNextSerialNumber()
+    public BigInteger getNextSerialNumber()
             throws EBaseException {
 
-        BigInteger nextSerialNumber = null;
-        BigInteger randomNumber = null;
+        if (!super.isCacheInitialized()) {
+            synchronized (this) {
+                // this may also switch the serial number mode
+                super.initCacheIfNeeded();
+            }
+        }
 
-        super.initCacheIfNeeded();
         logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
 
-        if (mEnableRandomSerialNumbers) {
-            int i = 0;
-            do {
-                if (i > 0) {
-                    logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
-                }
-                randomNumber = getRandomNumber();
-                nextSerialNumber = getRandomSerialNumber(randomNumber);
-                nextSerialNumber = checkSerialNumbers(randomNumber, nextSerialNumber);
-                i++;
-            } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
+        if (!mEnableRandomSerialNumbers) {
+            // sequential serial numbers may be allocated in blocks
+            return super.getNextSerialNumber();
+        }
 
-            if (nextSerialNumber == null) {
-                logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
-                throw new EBaseException( "nextSerialNumber is null" );
-            }
+        synchronized (this) {
 
-            if (mCounter.compareTo(BigInteger.ZERO) >= 0 &&
-                mMinSerialNo != null && mMaxSerialNo != null &&
-                nextSerialNumber != null &&
-                nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
-                nextSerialNumber.compareTo(mMaxSerialNo) <= 0) {
-                mCounter = mCounter.add(BigInteger.ONE);
+            if (mRandomSerialPool == null) {
+                return getNextRandomSerialNumber();
             }
-            logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
-                      nextSerialNumber+"  mCounter="+mCounter);
 
+            // the pooled serial numbers must belong to the current range
+            mRandomSerialPool.setRange(mMinSerialNo, mMaxSerialNo);
+        }
+
+        BigInteger nextSerialNumber = takeRandomSerialNumber();
+
+        synchronized (this) {
+            updateRandomCounter(nextSerialNumber);
+
+            BigInteger minSerialNo = mMinSerialNo;
             super.checkRange();
-        } else {
-            nextSerialNumber = super.getNextSerialNumber();
+
+            if (mMinSerialNo != minSerialNo) {
+                // the pooled serial numbers belong to the previous range
+                logger.debug("CertificateRepository: getNextSerialNumber  range changed, clearing serial number pool");
+                mRandomSerialPool.setRange(mMinSerialNo, mMaxSerialNo);
+                mRangeSize = null;
+            }
         }
 
         return nextSerialNumber;
     }
 
+    private BigInteger getNextRandomSerialNumber() throws EBaseException {
+
+        BigInteger nextSerialNumber = null;
+        BigInteger randomNumber = null;
+
+        int i = 0;
+        do {
+            if (i > 0) {
+                logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
+            }
+            randomNumber = getRandomNumber();
+            nextSerialNumber = getRandomSerialNumber(randomNumber);
+            nextSerialNumber = checkSerialNumbers(randomNumber, nextSerialNumber);
+            i++;
+        } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
+
+        if (nextSerialNumber == null) {
+            logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
+            throw new EBaseException( "nextSerialNumber is null" );
+        }
+
+        updateRandomCounter(nextSerialNumber);
+
+        super.checkRange();
+
+        return nextSerialNumber;
+    }
+
+    private void updateRandomCounter(BigInteger nextSerialNumber) {
+
+        if (mCounter.compareTo(BigInteger.ZERO) >= 0 &&
+            mMinSerialNo != null && mMaxSerialNo != null &&
+            nextSerialNumber != null &&
+            nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
+            nextSerialNumber.compareTo(mMaxSerialNo) <= 0) {
+            mCounter = mCounter.add(BigInteger.ONE);
+        }
+        logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
+                  nextSerialNumber+"  mCounter="+mCounter);
+    }
+
+    /**
+     * Takes a serial number from the pool of verified random serial
+     * numbers, refilling the pool in the calling thread if it is empty.
+     */
+    private BigInteger takeRandomSerialNumber() throws EBaseException {
+
+        for (int i = 0; i <= mMaxCollisionRecoveryRegenerations; i++) {
+
+            BigInteger serialNumber = mRandomSerialPool.poll();
+
+            if (mRandomSerialPool.size() < mRandomSerialPool.getCapacity() / 2) {
+                scheduleRandomSerialPoolRefill();
+            }
+
+            if (serialNumber != null) {
+                return serialNumber;
+            }
+
+            logger.debug("CertificateRepository: takeRandomSerialNumber  serial number pool is empty");
+            fillRandomSerialPool();
+        }
+
+        logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
+        throw new EBaseException("nextSerialNumber is null");
+    }
+
+    private void scheduleRandomSerialPoolRefill() {
+
+        if (!mRandomSerialRefilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        mRandomSerialExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    fillRandomSerialPool();
+                } catch (Exception e) {
+                    logger.warn("CertificateRepository: Unable to refill serial number pool: " + e.getMessage(), e);
+                } finally {
+                    mRandomSerialRefilling.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Generates random serial numbers and checks them against the
+     * database with a single search. Serial numbers that are not in
+     * use are reserved in the local filter and added to the pool.
+     * A collision with a certificate added concurrently by a clone
+     * is still caught by the LDAP add of the certificate record.
+     */
+    private void fillRandomSerialPool() throws EBaseException {
+        synchronized (mRandomSerialPoolLock) {
+            fillRandomSerialPoolLocked();
+        }
+    }
+
+    private void fillRandomSerialPoolLocked() throws EBaseException {
+
+        int count = mRandomSerialPool.getCapacity() - mRandomSerialPool.size();
+        if (count <= 0) {
+            return;
+        }
+
+        mRandomSerialPool.resetFilterIfFull();
+
+        Set<BigInteger> candidates = new LinkedHashSet<>();
+        int attempts = count * mMaxCollisionRecoverySteps;
+
+        synchronized (this) {
+            // the random number generation depends on the current range
+            for (int i = 0; i < attempts && candidates.size() < count; i++) {
+                BigInteger serialNumber = getRandomSerialNumber(getRandomNumber());
+                if (mRandomSerialPool.isReserved(serialNumber)) {
+                    logger.debug("CertificateRepository: fillRandomSerialPool  skipping reserved serial number " + serialNumber);
+                    continue;
+                }
+                candidates.add(serialNumber);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        StringBuilder filter = new StringBuilder("(|");
+        for (BigInteger serialNumber : candidates) {
+            filter.append("(" + CertRecord.ATTR_ID + "=" + serialNumber + ")");
+        }
+        filter.append(")");
+
+        Enumeration<CertRecord> e = searchCertificates(filter.toString(), candidates.size(), 0);
+        while (e.hasMoreElements()) {
+            BigInteger serialNumber = e.nextElement().getSerialNumber();
+            logger.debug("CertificateRepository: fillRandomSerialPool  collision detected for serialNumber=" + serialNumber);
+            candidates.remove(serialNumber);
+            mRandomSerialPool.reserve(serialNumber);
+        }
+
+        for (BigInteger serialNumber : candidates) {
+            mRandomSerialPool.offer(serialNumber);
+        }
+
+        logger.debug("CertificateRepository: fillRandomSerialPool  pool size=" + mRandomSerialPool.size());
+    }
+
     public void updateCounter() {
         logger.debug("CertificateRepository: updateCounter  mEnableRandomSerialNumbers="+
                   mEnableRandomSerialNumbers+"  mCounter="+mCounter);
@@ -720,9 +921,59 @@ public class CertificateRepository extends Repository {
 
         logger.debug("transitCertList " + status);
 
-        for (int i = 0; i < list.size(); i++) {
-            BigInteger serialNumber = list.elementAt(i);
-            updateStatus(serialNumber, status);
+        // send the modifications in batches without waiting
+        // for the result of each one
+        DBSSession s = dbSubsystem.createSession();
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+
+            for (BigInteger serialNumber : list) {
+
+                logger.info("CertificateRepository: Updating the status of cert " + serialNumber + " to " + status);
+
+                ModificationSet mods = new ModificationSet();
+                mods.add(CertRecord.ATTR_CERT_STATUS, Modification.MOD_REPLACE, status);
+                mods.add(CertRecord.ATTR_MODIFY_TIME, Modification.MOD_REPLACE, new Date());
+
+                String name = "cn=" + serialNumber + "," + mBaseDN;
+                futures.add(s.modifyAsync(name, mods));
+
+                if (futures.size() >= STATUS_UPDATE_BATCH_SIZE) {
+                    waitForAll(s, futures);
+                }
+            }
+
+            waitForAll(s, futures);
+
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Waits for all operations to complete before the session can be
+     * closed, then throws the first error.
+     */
+    private void waitForAll(DBSSession s, List<Future<Void>> futures) throws EBaseException {
+
+        EBaseException exception = null;
+
+        for (Future<Void> future : futures) {
+            try {
+                s.waitFor(future);
+
+            } catch (EBaseException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+
+        futures.clear();
+
+        if (exception != null) {
+            throw exception;
         }
     }
 
@@ -933,6 +1184,9 @@ public class CertificateRepository extends Repository {
         }
 
         modifyCertificateRecord(id, mods);
+
+        CMSEngine engine = CMS.getCMSEngine();
+        engine.clearRevocationStatus(id);
     }
 
     /**
@@ -955,6 +1209,9 @@ public class CertificateRepository extends Repository {
         mods.add(CertRecord.ATTR_CERT_STATUS, Modification.MOD_REPLACE,
                 CertRecord.STATUS_VALID);
         modifyCertificateRecord(id, mods);
+
+        CMSEngine engine = CMS.getCMSEngine();
+        engine.clearRevocationStatus(id);
     }
 
     /**
@@ -1101,6 +1358,34 @@ public class CertificateRepository extends Repository {
 
     }
 
+    /**
+     * Finds the next page of certificate records that satisfy the
+     * filter and whose serial numbers are greater than the given
+     * serial number, sorted by serial number.
+     *
+     * This can be used to walk through a large result set one page
+     * at a time: each call only holds a single page in memory and
+     * does not keep an LDAP connection across pages.
+     *
+     * @param filter search filter
+     * @param after last serial number of the previous page, or null to start from the beginning
+     * @param pageSize max number of records to return
+     * @return a page of certificate records
+     * @exception EBaseException failed to search
+     */
+    public Enumeration<CertRecord> findCertRecordsAfter(String filter, BigInteger after, int pageSize)
+            throws EBaseException {
+
+        String pageFilter = filter;
+
+        if (after != null) {
+            pageFilter = "(&" + filter + "(" + CertRecord.ATTR_ID + ">=" + after.add(BigInteger.ONE) + "))";
+        }
+
+        logger.debug("CertificateRepository: findCertRecordsAfter(" + pageFilter + ", " + pageSize + ")");
+
+        return searchCertificates(pageFilter, pageSize, 0, "serialno");
+    }
 
     /**
      * Finds certificate records.
@@ -2278,5 +2563,8 @@ public class CertificateRepository extends Repository {
     }
 
     public void shutdown() {
+        if (mRandomSerialExecutor != null) {
+            mRandomSerialExecutor.shutdownNow();
+        }
     }
 }
@@ -17,6 +17,10 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.dbs;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.EDBException;
 import com.netscape.certsrv.dbs.IDBObj;
@@ -100,6 +104,85 @@ public class DBSSession implements AutoCloseable {
     public void modify(String name, ModificationSet mods) throws EBaseException {
     }
 
+    /**
+     * Adds object to backend database without waiting for the
+     * result. Independent operations can be sent on the same session
+     * and awaited together. The session must not be closed before
+     * the returned future has completed.
+     *
+     * @param name name of the object
+     * @param obj object to be added
+     * @return future of the operation
+     * @exception EBaseException failed to send the operation
+     */
+    public Future<Void> addAsync(String name, IDBObj obj) throws EBaseException {
+        add(name, obj);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Reads an object from the database without waiting for the
+     * result.
+     *
+     * @param name name of the object that is to be read
+     * @param attrs selected attributes
+     * @return future of the database object
+     * @exception EBaseException failed to send the operation
+     */
+    public Future<IDBObj> readAsync(String name, String[] attrs) throws EBaseException {
+        return CompletableFuture.completedFuture(read(name, attrs));
+    }
+
+    /**
+     * Deletes object from database without waiting for the result.
+     *
+     * @param name name of the object that is to be deleted
+     * @return future of the operation
+     * @exception EBaseException failed to send the operation
+     */
+    public Future<Void> deleteAsync(String name) throws EBaseException {
+        delete(name);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Modify an object in the database without waiting for the result.
+     *
+     * @param name name of the object that is to be modified
+     * @param mods modifications
+     * @return future of the operation
+     * @exception EBaseException failed to send the operation
+     */
+    public Future<Void> modifyAsync(String name, ModificationSet mods) throws EBaseException {
+        modify(name, mods);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Waits for an asynchronous operation to complete.
+     *
+     * @param future future of the operation
+     * @return result of the operation
+     * @exception EBaseException the operation failed
+     */
+    public <T> T waitFor(Future<T> future) throws EBaseException {
+
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EDBException("Interrupted while waiting for database operation", e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EBaseException) {
+                throw (EBaseException) cause;
+            }
+            throw new EDBException("Database operation failed: " + cause.getMessage(), cause);
+        }
+    }
+
     /**
      * Searchs for a list of objects that match the
      * filter.
@@ -0,0 +1,190 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.EDBException;
+import com.netscape.certsrv.dbs.EDBNotAvailException;
+import com.netscape.certsrv.dbs.EDBRecordNotFoundException;
+import com.netscape.cmscore.apps.CMS;
+
+import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPException;
+import netscape.ldap.LDAPMessageQueue;
+import netscape.ldap.LDAPResponse;
+
+/**
+ * A future for an LDAP operation that has been sent to the server
+ * without waiting for the result. The response is read from the
+ * operation's message queue when the result is requested.
+ *
+ * The message queue notifies the threads waiting on it when a message
+ * arrives, so a timed get() waits on the queue until the response
+ * has been received.
+ *
+ * @param <T> result type
+ */
+public abstract class LDAPOperationFuture<T> implements Future<T> {
+
+    public final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LDAPOperationFuture.class);
+
+    protected LDAPConnection conn;
+    protected LDAPMessageQueue queue;
+    protected String description;
+
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private T result;
+    private EBaseException exception;
+
+    public LDAPOperationFuture(LDAPConnection conn, LDAPMessageQueue queue, String description) {
+        this.conn = conn;
+        this.queue = queue;
+        this.description = description;
+    }
+
+    /**
+     * Reads the operation's responses from the message queue.
+     */
+    protected abstract T processResponse() throws LDAPException, EBaseException;
+
+    /**
+     * Checks the final response of the operation.
+     */
+    protected void checkResponse(LDAPResponse response) throws LDAPException {
+
+        int resultCode = response.getResultCode();
+        if (resultCode == LDAPException.SUCCESS) {
+            return;
+        }
+
+        throw new LDAPException(response.getErrorMessage(), resultCode, response.getErrorMessage(),
+                response.getMatchedDN());
+    }
+
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+
+        if (done) {
+            return false;
+        }
+
+        logger.debug("LDAPOperationFuture: Abandoning " + description);
+
+        try {
+            for (int id : queue.getMessageIDs()) {
+                conn.abandon(id);
+            }
+        } catch (LDAPException e) {
+            logger.warn("LDAPOperationFuture: Unable to abandon " + description + ": " + e.getMessage(), e);
+            return false;
+        }
+
+        done = true;
+        cancelled = true;
+
+        // wake up the threads waiting for the response
+        synchronized (queue) {
+            queue.notifyAll();
+        }
+
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return done || queue.isMessageReceived();
+    }
+
+    public synchronized T get() throws InterruptedException, ExecutionException {
+
+        if (!done) {
+            complete();
+        }
+
+        if (cancelled) {
+            throw new CancellationException(description + " has been abandoned");
+        }
+
+        if (exception != null) {
+            throw new ExecutionException(exception.getMessage(), exception);
+        }
+
+        return result;
+    }
+
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+
+        // the future lock is not held while waiting so the operation
+        // can be cancelled
+        synchronized (queue) {
+            while (!isDone()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException(description + " has not completed");
+                }
+                queue.wait(remaining);
+            }
+        }
+
+        return get();
+    }
+
+    private void complete() {
+
+        try {
+            result = processResponse();
+
+        } catch (LDAPException e) {
+            exception = toDBException(e);
+
+        } catch (EBaseException e) {
+            exception = e;
+
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Maps an LDAP error of the operation to a database exception.
+     */
+    protected EBaseException toDBException(LDAPException e) {
+
+        if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE) {
+            return new EDBNotAvailException(CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"), e);
+        }
+
+        if (e.getLDAPResultCode() == LDAPException.NO_SUCH_OBJECT) {
+            return new EDBRecordNotFoundException(CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"), e);
+        }
+
+        return new EDBException("Unable to " + description + ": " + e.getMessage(), e);
+    }
+}
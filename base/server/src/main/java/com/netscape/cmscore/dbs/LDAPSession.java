@@ -18,6 +18,7 @@
 package com.netscape.cmscore.dbs;
 
 import java.util.Enumeration;
+import java.util.concurrent.Future;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.EDBException;
@@ -36,8 +37,13 @@ import netscape.ldap.LDAPConnection;
 import netscape.ldap.LDAPEntry;
 import netscape.ldap.LDAPException;
 import netscape.ldap.LDAPModification;
+import netscape.ldap.LDAPMessage;
 import netscape.ldap.LDAPModificationSet;
+import netscape.ldap.LDAPResponse;
+import netscape.ldap.LDAPResponseListener;
 import netscape.ldap.LDAPSearchConstraints;
+import netscape.ldap.LDAPSearchListener;
+import netscape.ldap.LDAPSearchResult;
 import netscape.ldap.LDAPSearchResults;
 import netscape.ldap.LDAPSortKey;
 import netscape.ldap.LDAPv2;
@@ -58,6 +64,11 @@ public class LDAPSession extends DBSSession {
 
     public final static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LDAPSession.class);
 
+    private final static String ADD_ERROR = "Unable to add LDAP entry";
+    private final static String READ_ERROR = "Unable to read LDAP record";
+    private final static String DELETE_ERROR = "Unable to delete LDAP record";
+    private final static String MODIFY_ERROR = "Unable to modify LDAP record";
+
     private DBSubsystem dbSubsystem;
     private LDAPConnection mConn = null;
 
@@ -125,10 +136,7 @@ public class LDAPSession extends DBSSession {
             mConn.add(e);
 
         } catch (LDAPException e) {
-            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE) {
-                throw new EDBNotAvailException(CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"), e);
-            }
-            throw new EDBException("Unable to add LDAP entry: " + e.getMessage(), e);
+            throw toDBException(ADD_ERROR, e, false);
         }
     }
 
@@ -183,16 +191,7 @@ public class LDAPSession extends DBSSession {
             return dbSubsystem.getRegistry().createObject(attrSet);
 
         } catch (LDAPException e) {
-
-            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE) {
-                throw new EDBNotAvailException(CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"), e);
-            }
-
-            if (e.getLDAPResultCode() == LDAPException.NO_SUCH_OBJECT) {
-                throw new EDBRecordNotFoundException(CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"), e);
-            }
-
-            throw new EDBException("Unable to read LDAP record: " + e.getMessage(), e);
+            throw toDBException(READ_ERROR, e, true);
         }
     }
 
@@ -206,10 +205,7 @@ public class LDAPSession extends DBSSession {
         try {
             mConn.delete(name);
         } catch (LDAPException e) {
-            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE)
-                throw new EDBNotAvailException(
-                        CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
-            throw new EDBException("Unable to delete LDAP record: " + e.getMessage(), e);
+            throw toDBException(DELETE_ERROR, e, false);
         }
     }
 
@@ -221,20 +217,7 @@ public class LDAPSession extends DBSSession {
         logger.info("LDAPSession: Modifying LDAP entry " + name);
 
         try {
-            LDAPModificationSet ldapMods = new LDAPModificationSet();
-            Enumeration<?> e = mods.getModifications();
-
-            while (e.hasMoreElements()) {
-                Modification mod = (Modification) e.nextElement();
-                LDAPAttributeSet attrs = new LDAPAttributeSet();
-
-                dbSubsystem.getRegistry().mapObject(null, mod.getName(), mod.getValue(), attrs);
-                Enumeration<LDAPAttribute> e0 = attrs.getAttributes();
-
-                while (e0.hasMoreElements()) {
-                    ldapMods.add(toLdapModOp(mod.getOp()), e0.nextElement());
-                }
-            }
+            LDAPModificationSet ldapMods = createLDAPModificationSet(mods);
 
             /*LogDoc
              *
@@ -244,16 +227,188 @@ public class LDAPSession extends DBSSession {
             mConn.modify(name, ldapMods);
 
         } catch (LDAPException e) {
+            throw toDBException(MODIFY_ERROR, e, true);
+        }
+    }
 
-            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE) {
-                throw new EDBNotAvailException(CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
-            }
+    private LDAPModificationSet createLDAPModificationSet(ModificationSet mods) throws EBaseException {
+
+        LDAPModificationSet ldapMods = new LDAPModificationSet();
+        Enumeration<?> e = mods.getModifications();
 
-            if (e.getLDAPResultCode() == LDAPException.NO_SUCH_OBJECT) {
-                throw new EDBRecordNotFoundException(CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"));
+        while (e.hasMoreElements()) {
+            Modification mod = (Modification) e.nextElement();
+            LDAPAttributeSet attrs = new LDAPAttributeSet();
+
+            dbSubsystem.getRegistry().mapObject(null, mod.getName(), mod.getValue(), attrs);
+            Enumeration<LDAPAttribute> e0 = attrs.getAttributes();
+
+            while (e0.hasMoreElements()) {
+                ldapMods.add(toLdapModOp(mod.getOp()), e0.nextElement());
             }
+        }
+
+        return ldapMods;
+    }
+
+    /**
+     * Sends an add operation without waiting for the result.
+     */
+    public Future<Void> addAsync(String name, IDBObj obj) throws EBaseException {
+
+        logger.info("LDAPSession: Adding LDAP entry " + name + " asynchronously");
+
+        LDAPAttributeSet attrs = dbSubsystem.getRegistry().createLDAPAttributeSet(obj);
+        LDAPEntry entry = new LDAPEntry(name, attrs);
+
+        try {
+            LDAPResponseListener listener = mConn.add(entry, null);
+            return new LDAPResponseFuture(listener, "add LDAP entry " + name, ADD_ERROR, false);
+
+        } catch (LDAPException e) {
+            throw toDBException(ADD_ERROR, e, false);
+        }
+    }
+
+    /**
+     * Sends a read operation without waiting for the result.
+     */
+    public Future<IDBObj> readAsync(String name, String[] attrs) throws EBaseException {
+
+        logger.info("LDAPSession: Reading LDAP entry " + name + " asynchronously");
+
+        String ldapattrs[] = null;
+        if (attrs != null) {
+            ldapattrs = dbSubsystem.getRegistry().getLDAPAttributes(attrs);
+        }
+
+        try {
+            final LDAPSearchListener listener = mConn.search(name,
+                    LDAPv2.SCOPE_BASE, "(objectclass=*)",
+                    ldapattrs, false, (LDAPSearchListener) null, mConn.getSearchConstraints());
+
+            return new LDAPOperationFuture<IDBObj>(mConn, listener, "read LDAP entry " + name) {
+
+                protected EBaseException toDBException(LDAPException e) {
+                    return LDAPSession.this.toDBException(READ_ERROR, e, true);
+                }
+
+                protected IDBObj processResponse() throws LDAPException, EBaseException {
+
+                    LDAPEntry entry = null;
+
+                    while (true) {
+                        LDAPMessage message = listener.getResponse();
+
+                        if (message == null) {
+                            throw new LDAPException("Connection closed", LDAPException.SERVER_DOWN);
+
+                        } else if (message instanceof LDAPSearchResult) {
+                            entry = ((LDAPSearchResult) message).getEntry();
+
+                        } else if (message instanceof LDAPResponse) {
+                            checkResponse((LDAPResponse) message);
+                            break;
+                        }
+                    }
+
+                    if (entry == null) {
+                        throw new EDBRecordNotFoundException(CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"));
+                    }
+
+                    return dbSubsystem.getRegistry().createObject(entry.getAttributeSet());
+                }
+            };
+
+        } catch (LDAPException e) {
+            throw toDBException(READ_ERROR, e, true);
+        }
+    }
+
+    /**
+     * Sends a delete operation without waiting for the result.
+     */
+    public Future<Void> deleteAsync(String name) throws EBaseException {
+
+        logger.debug("LDAPSession: deleteAsync(" + name + ")");
+
+        try {
+            LDAPResponseListener listener = mConn.delete(name, null);
+            return new LDAPResponseFuture(listener, "delete LDAP record " + name, DELETE_ERROR, false);
+
+        } catch (LDAPException e) {
+            throw toDBException(DELETE_ERROR, e, false);
+        }
+    }
+
+    /**
+     * Sends a modify operation without waiting for the result.
+     */
+    public Future<Void> modifyAsync(String name, ModificationSet mods) throws EBaseException {
+
+        logger.info("LDAPSession: Modifying LDAP entry " + name + " asynchronously");
+
+        LDAPModificationSet ldapMods = createLDAPModificationSet(mods);
+
+        try {
+            LDAPResponseListener listener = mConn.modify(name, ldapMods, null);
+            return new LDAPResponseFuture(listener, "modify LDAP record " + name, MODIFY_ERROR, true);
+
+        } catch (LDAPException e) {
+            throw toDBException(MODIFY_ERROR, e, true);
+        }
+    }
+
+    /**
+     * Maps an LDAP error to a database exception. The blocking and the
+     * asynchronous version of an operation use the same mapping.
+     *
+     * @param message error message
+     * @param e LDAP error
+     * @param recordNotFound true to report a missing entry as
+     * EDBRecordNotFoundException
+     */
+    private EBaseException toDBException(String message, LDAPException e, boolean recordNotFound) {
+
+        if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE) {
+            return new EDBNotAvailException(CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"), e);
+        }
+
+        if (recordNotFound && e.getLDAPResultCode() == LDAPException.NO_SUCH_OBJECT) {
+            return new EDBRecordNotFoundException(CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"), e);
+        }
+
+        return new EDBException(message + ": " + e.getMessage(), e);
+    }
+
+    /**
+     * Future for operations that only return a result code.
+     */
+    class LDAPResponseFuture extends LDAPOperationFuture<Void> {
+
+        LDAPResponseListener listener;
+        String message;
+        boolean recordNotFound;
+
+        LDAPResponseFuture(
+                LDAPResponseListener listener,
+                String description,
+                String message,
+                boolean recordNotFound) {
+
+            super(mConn, listener, description);
+            this.listener = listener;
+            this.message = message;
+            this.recordNotFound = recordNotFound;
+        }
+
+        protected EBaseException toDBException(LDAPException e) {
+            return LDAPSession.this.toDBException(message, e, recordNotFound);
+        }
 
-            throw new EDBException("Unable to modify LDAP record: " + e.getMessage(), e);
+        protected Void processResponse() throws LDAPException {
+            checkResponse(listener.getResponse());
+            return null;
         }
     }
 
@@ -0,0 +1,162 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A pool of random serial numbers that have already been checked
+ * against the database.
+ *
+ * The serial numbers reserved by the pool are tracked in a filter
+ * so they are not generated again. The pool only holds serial numbers
+ * within the current serial number range; changing the range discards
+ * the pooled serial numbers.
+ */
+public class RandomSerialNumberPool {
+
+    private final int capacity;
+    private final int filterCapacity;
+
+    private final LinkedBlockingQueue<BigInteger> queue;
+    private volatile SerialNumberFilter filter;
+
+    private BigInteger minSerialNo;
+    private BigInteger maxSerialNo;
+
+    /**
+     * Constructs a pool.
+     *
+     * @param capacity maximum number of pooled serial numbers
+     * @param filterCapacity serial numbers tracked by the filter before it is recreated
+     */
+    public RandomSerialNumberPool(int capacity, int filterCapacity) {
+        this.capacity = capacity;
+        this.filterCapacity = filterCapacity;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.filter = createFilter();
+    }
+
+    private SerialNumberFilter createFilter() {
+        // about 1% false positives at full capacity
+        return new SerialNumberFilter(filterCapacity * 10, 7);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Sets the serial number range. If the range is different from the
+     * current range the pooled serial numbers are discarded.
+     */
+    public synchronized void setRange(BigInteger minSerialNo, BigInteger maxSerialNo) {
+
+        if (minSerialNo != null && minSerialNo.equals(this.minSerialNo)
+                && maxSerialNo != null && maxSerialNo.equals(this.maxSerialNo)) {
+            return;
+        }
+
+        this.minSerialNo = minSerialNo;
+        this.maxSerialNo = maxSerialNo;
+
+        queue.clear();
+    }
+
+    private synchronized boolean isInRange(BigInteger serialNumber) {
+        return (minSerialNo == null || serialNumber.compareTo(minSerialNo) >= 0)
+                && (maxSerialNo == null || serialNumber.compareTo(maxSerialNo) <= 0);
+    }
+
+    /**
+     * Returns true if the serial number might have been reserved.
+     */
+    public boolean isReserved(BigInteger serialNumber) {
+        return filter.mightContain(serialNumber);
+    }
+
+    /**
+     * Marks the serial number as reserved, e.g. because it is already
+     * used in the database.
+     */
+    public void reserve(BigInteger serialNumber) {
+        filter.add(serialNumber);
+    }
+
+    /**
+     * Recreates the filter with the pooled serial numbers if it tracks
+     * too many serial numbers to be accurate.
+     */
+    public synchronized void resetFilterIfFull() {
+
+        if (filter.getCount() <= filterCapacity) {
+            return;
+        }
+
+        SerialNumberFilter newFilter = createFilter();
+        for (BigInteger serialNumber : queue) {
+            newFilter.add(serialNumber);
+        }
+
+        filter = newFilter;
+    }
+
+    /**
+     * Reserves the serial number and adds it to the pool.
+     *
+     * @return false if the pool is full or the serial number
+     * is outside the current range
+     */
+    public boolean offer(BigInteger serialNumber) {
+
+        reserve(serialNumber);
+
+        // the serial number may have been generated before a range change
+        if (!isInRange(serialNumber)) {
+            return false;
+        }
+
+        return queue.offer(serialNumber);
+    }
+
+    /**
+     * Takes a serial number in the current range from the pool.
+     *
+     * @return serial number, or null if the pool is empty
+     */
+    public BigInteger poll() {
+
+        BigInteger serialNumber;
+        while ((serialNumber = queue.poll()) != null) {
+            if (isInRange(serialNumber)) {
+                return serialNumber;
+            }
+        }
+
+        return null;
+    }
+
+    public void clear() {
+        queue.clear();
+    }
+}
@@ -69,7 +69,7 @@ public abstract class Repository implements IRepository {
     protected String nextMaxSerialName;
     protected BigInteger mNextMaxSerialNo;
 
-    protected boolean mEnableRandomSerialNumbers = false;
+    protected volatile boolean mEnableRandomSerialNumbers = false;
     protected BigInteger mCounter = null;
 
     protected BigInteger mIncrementNo;
@@ -82,7 +82,23 @@ public abstract class Repository implements IRepository {
     protected int mRadix;
     protected Hashtable<String, String> repositoryConfig = new Hashtable<>();
 
-    private BigInteger mLastSerialNo = null;
+    // modified under the repository lock, volatile so that
+    // isCacheInitialized() can be called without the lock
+    private volatile BigInteger mLastSerialNo = null;
+
+    // Blocks of serial numbers reserved from the current range for
+    // concurrent allocation. Serial numbers are handed out from the
+    // block of the calling thread's stripe, so the repository monitor
+    // is only taken to reserve a new block.
+    private SerialNumberBlock[] mSerialNumberBlocks;
+    private int mSerialNumberBlockSize;
+    private volatile int mSerialNumberBlockGeneration;
+
+    private static class SerialNumberBlock {
+        BigInteger next;
+        BigInteger end;
+        int generation;
+    }
 
     /**
      * Constructs a repository.
@@ -158,8 +174,53 @@ public abstract class Repository implements IRepository {
         return mMinSerialNo;
     }
 
-    protected void setLastSerialNo(BigInteger lastSN) {
+    protected synchronized void setLastSerialNo(BigInteger lastSN) {
         mLastSerialNo = lastSN;
+        discardSerialNumberBlocks();
+    }
+
+    /**
+     * Enables allocation of sequential serial numbers in blocks.
+     *
+     * Each stripe reserves blocks of the given size from the current
+     * range. Serial numbers left in a block when the server stops are
+     * not reused, so they become gaps in the sequence; the last serial
+     * number is recalculated from the database on startup.
+     *
+     * @param stripes number of allocation stripes
+     * @param blockSize number of serial numbers reserved per block,
+     *        1 or less disables block allocation
+     */
+    protected void initSerialNumberBlocks(int stripes, int blockSize) {
+
+        if (stripes < 1 || blockSize <= 1) {
+            mSerialNumberBlocks = null;
+            return;
+        }
+
+        logger.info("Repository: - serial number blocks: " + stripes + " x " + blockSize);
+
+        SerialNumberBlock[] blocks = new SerialNumberBlock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            blocks[i] = new SerialNumberBlock();
+        }
+
+        mSerialNumberBlockSize = blockSize;
+        mSerialNumberBlocks = blocks;
+    }
+
+    /**
+     * Discards the serial numbers reserved by the allocation stripes,
+     * e.g. after the last serial number has been reset. The generation
+     * is only modified under the repository lock, which is also held
+     * when the blocks are reserved.
+     */
+    protected synchronized void discardSerialNumberBlocks() {
+        mSerialNumberBlockGeneration++;
+    }
+
+    protected boolean isCacheInitialized() {
+        return mLastSerialNo != null;
     }
 
     /**
@@ -259,9 +320,60 @@ public abstract class Repository implements IRepository {
      *
      * @return serial number
      */
-    public synchronized BigInteger getNextSerialNumber() throws
+    public BigInteger getNextSerialNumber() throws
             EBaseException {
 
+        SerialNumberBlock[] blocks = mSerialNumberBlocks;
+        if (blocks == null) {
+            synchronized (this) {
+                return allocateSerialNumber();
+            }
+        }
+
+        SerialNumberBlock block = blocks[(int) (Thread.currentThread().getId() % blocks.length)];
+
+        synchronized (block) {
+            if (block.next == null ||
+                    block.next.compareTo(block.end) > 0 ||
+                    block.generation != mSerialNumberBlockGeneration) {
+                reserveSerialNumberBlock(block);
+            }
+
+            BigInteger serialNo = block.next;
+            block.next = serialNo.add(BigInteger.ONE);
+
+            logger.debug("Repository: getNextSerialNumber: returning " + serialNo);
+            return serialNo;
+        }
+    }
+
+    /**
+     * Reserves a block of serial numbers in the current range.
+     * The block never crosses the end of the range, so a range
+     * switch and the range transfers to clones, which start after
+     * the last reserved serial number, work the same way as with
+     * single serial numbers.
+     */
+    private synchronized void reserveSerialNumberBlock(SerialNumberBlock block) throws EBaseException {
+
+        block.generation = mSerialNumberBlockGeneration;
+
+        BigInteger first = allocateSerialNumber();
+        BigInteger last = first.add(BigInteger.valueOf(mSerialNumberBlockSize - 1));
+
+        if (mMaxSerialNo != null && last.compareTo(mMaxSerialNo) > 0) {
+            last = mMaxSerialNo.max(first);
+        }
+
+        mLastSerialNo = last;
+
+        logger.debug("Repository: Reserved serial number block " + first + ".." + last);
+        block.next = first;
+        block.end = last;
+    }
+
+    private BigInteger allocateSerialNumber() throws EBaseException {
+
         logger.debug("Repository: in getNextSerialNumber. ");
 
         if (mLastSerialNo == null) {
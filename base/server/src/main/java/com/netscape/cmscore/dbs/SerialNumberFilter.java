@@ -0,0 +1,118 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free Bloom filter of serial numbers.
+ *
+ * The filter may report false positives (a serial number that was
+ * never added is reported as present) but never false negatives,
+ * so it can be used to skip candidate serial numbers that are known
+ * to be in use without going to the database.
+ */
+public class SerialNumberFilter {
+
+    private final AtomicLongArray bits;
+    private final int size;
+    private final int hashes;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Constructs a filter.
+     *
+     * @param size number of bits in the filter
+     * @param hashes number of hash functions per serial number
+     */
+    public SerialNumberFilter(int size, int hashes) {
+        this.bits = new AtomicLongArray((size + 63) / 64);
+        this.size = bits.length() * 64;
+        this.hashes = hashes;
+    }
+
+    public void add(BigInteger serialNumber) {
+
+        long h = hash(serialNumber);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+
+        boolean added = false;
+
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            int word = bit >>> 6;
+            long mask = 1L << (bit & 63);
+
+            long value;
+            do {
+                value = bits.get(word);
+                if ((value & mask) != 0) break;
+            } while (!bits.compareAndSet(word, value, value | mask));
+
+            if ((value & mask) == 0) {
+                added = true;
+            }
+        }
+
+        if (added) {
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the approximate number of serial numbers in the filter.
+     */
+    public int getCount() {
+        return count.get();
+    }
+
+    public boolean mightContain(BigInteger serialNumber) {
+
+        long h = hash(serialNumber);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits.get(bit >>> 6) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % size;
+    }
+
+    private static long hash(BigInteger serialNumber) {
+
+        // 64-bit FNV-1a over the two's complement bytes
+        long h = 0xcbf29ce484222325L;
+        for (byte b : serialNumber.toByteArray()) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+
+        return h;
+    }
+}
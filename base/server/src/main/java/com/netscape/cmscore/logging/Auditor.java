@@ -18,7 +18,7 @@
 
 package com.netscape.cmscore.logging;
 
-import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
 
 import com.netscape.certsrv.base.SessionContext;
@@ -27,7 +27,6 @@ import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.logging.SignedAuditEvent;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
-import com.netscape.cmscore.usrgrp.Group;
 import com.netscape.cmscore.usrgrp.UGSubsystem;
 
 /**
@@ -62,32 +61,22 @@ public class Auditor implements IAuditor {
         }
 
         CMSEngine engine = CMS.getCMSEngine();
-        Enumeration<Group> groups;
+        List<String> groupIDs;
 
         try {
+            // use the cached memberships instead of fetching all groups
             UGSubsystem userGroupSubsystem = engine.getUGSubsystem();
-            groups = userGroupSubsystem.findGroups("*");
+            groupIDs = userGroupSubsystem.getGroupIDs(subjectID);
 
         } catch (Exception e) {
             return null;
         }
 
-        StringBuilder sb = new StringBuilder();
-
-        while (groups.hasMoreElements()) {
-            Group group = groups.nextElement();
-
-            if (group.isMember(subjectID) == true) {
-                if (sb.length() != 0) sb.append(", ");
-                sb.append(group.getGroupID());
-            }
-        }
-
-        if (sb.length() == 0) {
+        if (groupIDs == null || groupIDs.isEmpty()) {
             return null;
         }
 
-        return sb.toString();
+        return String.join(", ", groupIDs);
     }
 
     @Override
@@ -31,6 +31,7 @@ import com.netscape.certsrv.request.IService;
 import com.netscape.certsrv.request.PolicyResult;
 import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
+import com.netscape.certsrv.util.IStatsSubsystem;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 
@@ -387,6 +388,30 @@ public abstract class ARequestQueue {
 
     protected final void stateEngine(IRequest r)
             throws EBaseException {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+
+        // record the stage timings of the request for its profile
+        String profileID = r.getExtDataInString(IRequest.PROFILE_ID);
+        String previousProfileID = null;
+
+        if (statsSub != null) {
+            previousProfileID = statsSub.setProfile(profileID);
+        }
+
+        try {
+            stateEngine(r, statsSub);
+
+        } finally {
+            if (statsSub != null) {
+                statsSub.setProfile(previousProfileID);
+            }
+        }
+    }
+
+    private void stateEngine(IRequest r, IStatsSubsystem statsSub)
+            throws EBaseException {
         boolean complete = false;
 
         while (!complete) {
@@ -395,8 +420,13 @@ public abstract class ARequestQueue {
             if (rs == RequestStatus.BEGIN) {
                 PolicyResult pr = PolicyResult.ACCEPTED;
 
-                if (mPolicy != null)
+                if (mPolicy != null) {
+                    long startTime = System.currentTimeMillis();
                     pr = mPolicy.apply(r);
+                    if (statsSub != null) {
+                        statsSub.recordStage("policy", startTime);
+                    }
+                }
 
                 if (pr == PolicyResult.ACCEPTED) {
                     r.setRequestStatus(RequestStatus.APPROVED);
@@ -431,7 +461,11 @@ public abstract class ARequestQueue {
                     r.setRequestStatus(RequestStatus.SVC_PENDING);
                 }
 
+                long startTime = System.currentTimeMillis();
                 updateRequest(r);
+                if (statsSub != null) {
+                    statsSub.recordStage("request_update", startTime);
+                }
             } else if (rs == RequestStatus.SVC_PENDING) {
                 complete = true;
             } else if (rs == RequestStatus.CANCELED) {
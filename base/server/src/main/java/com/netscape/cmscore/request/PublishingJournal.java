@@ -0,0 +1,457 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.request;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.netscape.certsrv.request.RequestId;
+
+/**
+ * An append-only journal of the requests in the publishing queue.
+ *
+ * The journal records when a request is queued, when a listener has
+ * processed it, and when all listeners have processed it:
+ *
+ * <pre>
+ * Q &lt;request ID&gt; &lt;queue time&gt;
+ * D &lt;request ID&gt; &lt;listener&gt;
+ * C &lt;request ID&gt;
+ * P &lt;cursor&gt;
+ * </pre>
+ *
+ * After a restart the pending requests are processed again, skipping
+ * the listeners that have already processed them. The cursor is the
+ * highest request ID such that all queued requests up to it have been
+ * processed. The journal is rewritten with only the pending requests
+ * when it grows too large.
+ */
+public class PublishingJournal {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PublishingJournal.class);
+
+    public final static int MIN_COMPACTION_SIZE = 10000;
+
+    class Entry {
+        long queueTime;
+        Set<String> listeners = new HashSet<>();
+        boolean complete;
+    }
+
+    private Path path;
+    private boolean sync;
+    private FileChannel channel;
+    private int records;
+
+    private TreeMap<BigInteger, Entry> entries = new TreeMap<>();
+
+    // pending requests that are not being processed
+    private TreeSet<BigInteger> available = new TreeSet<>();
+
+    private int pending;
+    private BigInteger cursor;
+
+    /**
+     * @param filename journal file, or null to keep the queue in memory only
+     * @param sync true to flush each update to the disk
+     */
+    public PublishingJournal(String filename, boolean sync) {
+        this.path = filename == null ? null : Paths.get(filename);
+        this.sync = sync;
+    }
+
+    /**
+     * Loads the queue from the journal file, and opens the file for
+     * appending.
+     */
+    public synchronized void open() throws IOException {
+
+        if (path == null) {
+            return;
+        }
+
+        logger.info("PublishingJournal: Opening " + path);
+
+        if (Files.exists(path)) {
+            load();
+            compact();
+
+        } else {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            channel = openChannel(path);
+        }
+
+        logger.info("PublishingJournal: - pending requests: " + pending);
+        logger.info("PublishingJournal: - cursor: " + cursor);
+    }
+
+    private FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void load() throws IOException {
+
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+
+            String line;
+            while ((line = in.readLine()) != null) {
+
+                String[] fields = line.split(" ", 3);
+
+                try {
+                    if (fields.length < 2) {
+                        throw new IllegalArgumentException();
+                    }
+
+                    BigInteger id = new BigInteger(fields[1]);
+
+                    switch (fields[0]) {
+                    case "Q":
+                        queue(id, Long.parseLong(fields[2]));
+                        break;
+                    case "D":
+                        Entry entry = entries.get(id);
+                        if (entry != null) {
+                            entry.listeners.add(fields[2]);
+                        }
+                        break;
+                    case "C":
+                        markComplete(id);
+                        break;
+                    case "P":
+                        advanceCursor(id);
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                    }
+
+                } catch (RuntimeException e) {
+                    // the last record may be truncated
+                    logger.warn("PublishingJournal: Invalid record: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with the cursor and the pending requests.
+     */
+    private void compact() throws IOException {
+
+        logger.debug("PublishingJournal: Compacting " + path);
+
+        Path tmp = Paths.get(path + ".tmp");
+        records = 0;
+
+        try (FileChannel tmpChannel = FileChannel.open(tmp,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                Writer out = new BufferedWriter(Channels.newWriter(tmpChannel, StandardCharsets.UTF_8.name()))) {
+
+            if (cursor != null) {
+                out.write("P " + cursor + "\n");
+                records++;
+            }
+
+            for (Map.Entry<BigInteger, Entry> e : entries.entrySet()) {
+                BigInteger id = e.getKey();
+                Entry entry = e.getValue();
+
+                out.write("Q " + id + " " + entry.queueTime + "\n");
+                records++;
+
+                for (String listener : entry.listeners) {
+                    out.write("D " + id + " " + listener + "\n");
+                    records++;
+                }
+
+                if (entry.complete) {
+                    out.write("C " + id + "\n");
+                    records++;
+                }
+            }
+
+            // the new journal must be on the disk before it replaces
+            // the old one, otherwise a crash could leave it truncated
+            out.flush();
+            tmpChannel.force(true);
+        }
+
+        if (channel != null) {
+            channel.close();
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(path.toAbsolutePath().getParent());
+
+        channel = openChannel(path);
+    }
+
+    /**
+     * Flushes the directory entries, e.g. after a rename.
+     */
+    private void syncDirectory(Path dir) {
+
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+
+        } catch (IOException e) {
+            // not supported on all platforms
+            logger.debug("PublishingJournal: Unable to sync " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void append(StringBuilder sb, int count) throws IOException {
+
+        if (channel == null || count == 0) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        if (sync) {
+            channel.force(false);
+        }
+
+        records += count;
+
+        if (records > Math.max(MIN_COMPACTION_SIZE, 4 * entries.size())) {
+            compact();
+        }
+    }
+
+    private boolean queue(BigInteger id, long queueTime) {
+
+        if (entries.containsKey(id)) {
+            return false;
+        }
+
+        Entry entry = new Entry();
+        entry.queueTime = queueTime;
+        entries.put(id, entry);
+        available.add(id);
+        pending++;
+
+        return true;
+    }
+
+    private void markComplete(BigInteger id) {
+
+        Entry entry = entries.get(id);
+        if (entry == null || entry.complete) {
+            return;
+        }
+
+        entry.complete = true;
+        available.remove(id);
+        pending--;
+
+        // remove the processed requests at the beginning of the queue
+        while (!entries.isEmpty() && entries.firstEntry().getValue().complete) {
+            advanceCursor(entries.pollFirstEntry().getKey());
+        }
+    }
+
+    private void advanceCursor(BigInteger id) {
+        if (cursor == null || id.compareTo(cursor) > 0) {
+            cursor = id;
+        }
+    }
+
+    /**
+     * Adds a request to the queue.
+     *
+     * @return false if the request is already in the queue
+     */
+    public synchronized boolean add(RequestId id, long queueTime) throws IOException {
+
+        BigInteger key = id.toBigInteger();
+
+        if (!queue(key, queueTime)) {
+            return false;
+        }
+
+        append(new StringBuilder("Q " + key + " " + queueTime + "\n"), 1);
+        return true;
+    }
+
+    /**
+     * Returns whether a request is in the queue or has been processed
+     * after the cursor.
+     */
+    public synchronized boolean contains(RequestId id) {
+        return entries.containsKey(id.toBigInteger());
+    }
+
+    /**
+     * Takes the next pending request that is not being processed.
+     *
+     * @return request ID, or null if there is none
+     */
+    public synchronized RequestId next() {
+        BigInteger id = available.pollFirst();
+        return id == null ? null : new RequestId(id);
+    }
+
+    /**
+     * Returns a request that could not be processed to the queue.
+     */
+    public synchronized void release(RequestId id) {
+
+        BigInteger key = id.toBigInteger();
+        Entry entry = entries.get(key);
+
+        if (entry != null && !entry.complete) {
+            available.add(key);
+        }
+    }
+
+    /**
+     * Returns whether a listener has already processed a request.
+     */
+    public synchronized boolean isDone(RequestId id, String listener) {
+        Entry entry = entries.get(id.toBigInteger());
+        return entry == null || entry.complete || entry.listeners.contains(listener);
+    }
+
+    /**
+     * Records that a listener has processed the requests.
+     */
+    public synchronized void markDone(Collection<RequestId> ids, String listener) throws IOException {
+
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+
+        for (RequestId id : ids) {
+            BigInteger key = id.toBigInteger();
+            Entry entry = entries.get(key);
+
+            if (entry == null || !entry.listeners.add(listener)) {
+                continue;
+            }
+
+            sb.append("D " + key + " " + listener + "\n");
+            count++;
+        }
+
+        append(sb, count);
+    }
+
+    /**
+     * Records that all listeners have processed the requests.
+     */
+    public synchronized void complete(Collection<RequestId> ids) throws IOException {
+
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+
+        for (RequestId id : ids) {
+            BigInteger key = id.toBigInteger();
+            Entry entry = entries.get(key);
+
+            if (entry == null || entry.complete) {
+                continue;
+            }
+
+            markComplete(key);
+            sb.append("C " + key + "\n");
+            count++;
+        }
+
+        append(sb, count);
+    }
+
+    /**
+     * Moves the cursor past requests that did not need to be queued.
+     */
+    public synchronized void skip(RequestId id) throws IOException {
+
+        BigInteger key = id.toBigInteger();
+
+        if (!entries.isEmpty() && entries.firstKey().compareTo(key) < 0) {
+            // there are pending requests before this one
+            return;
+        }
+
+        if (cursor != null && cursor.compareTo(key) >= 0) {
+            return;
+        }
+
+        advanceCursor(key);
+        append(new StringBuilder("P " + key + "\n"), 1);
+    }
+
+    public synchronized BigInteger getCursor() {
+        return cursor;
+    }
+
+    public synchronized int getPendingRequests() {
+        return pending;
+    }
+
+    /**
+     * Returns the queue time of the first pending request, or 0 if
+     * there are no pending requests.
+     */
+    public synchronized long getOldestQueueTime() {
+        // processed requests are removed from the beginning of the queue
+        return entries.isEmpty() ? 0 : entries.firstEntry().getValue().queueTime;
+    }
+
+    public synchronized void close() {
+
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            compact();
+            channel.close();
+
+        } catch (IOException e) {
+            logger.warn("PublishingJournal: Unable to close " + path + ": " + e.getMessage(), e);
+        }
+
+        channel = null;
+    }
+}
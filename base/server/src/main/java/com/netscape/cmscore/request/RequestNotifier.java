@@ -17,12 +17,29 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.request;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.Vector;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.request.IBatchRequestListener;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IRequestListener;
 import com.netscape.certsrv.request.IRequestNotifier;
@@ -35,26 +52,125 @@ import com.netscape.cmscore.apps.CMSEngine;
  * The ARequestNotifier class implements the IRequestNotifier interface,
  * which notifies all registered request listeners.
  *
+ * The listeners are run by a pool of at most maxNumberOfThreads worker
+ * threads. Without the publishing queue each listener has its own queue
+ * of requests, which is processed by at most maxThreadsPerListener workers
+ * at a time. Batch listeners receive up to batchSize consecutive requests
+ * at once.
+ *
  * @version $Revision$, $Date$
  */
 public class RequestNotifier implements IRequestNotifier {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestNotifier.class);
 
+    public final static int DEFAULT_MAX_THREADS_PER_LISTENER = 1;
+    public final static int DEFAULT_BATCH_SIZE = 10;
+
+    public final static long MIN_RETRY_DELAY = 1000; // 1 second
+    public final static long MAX_RETRY_DELAY = 5 * 60 * 1000; // 5 minutes
+
+    class QueuedRequest {
+        IRequest request;
+        long queueTime = System.currentTimeMillis();
+    }
+
+    /**
+     * The requests waiting for a listener.
+     */
+    class ListenerQueue implements Runnable {
+
+        String name;
+        IRequestListener listener;
+        Deque<QueuedRequest> requests = new ArrayDeque<>();
+        int workers;
+
+        void add(IRequest r) {
+
+            synchronized (this) {
+                QueuedRequest entry = new QueuedRequest();
+                entry.request = r;
+                requests.add(entry);
+
+                if (workers >= mMaxThreadsPerListener) {
+                    return;
+                }
+
+                workers++;
+            }
+
+            try {
+                getExecutor().execute(this);
+
+            } catch (RejectedExecutionException e) {
+                logger.warn("RequestNotifier: Running " + name + " listener in calling thread");
+                run();
+            }
+        }
+
+        synchronized List<IRequest> next() {
+
+            if (requests.isEmpty()) {
+                workers--;
+                return null;
+            }
+
+            List<IRequest> batch = new ArrayList<>();
+            while (batch.size() < mBatchSize && !requests.isEmpty()) {
+                batch.add(requests.poll().request);
+            }
+
+            return batch;
+        }
+
+        synchronized int size() {
+            return requests.size();
+        }
+
+        synchronized long getQueueTime() {
+            QueuedRequest entry = requests.peek();
+            return entry == null ? 0 : entry.queueTime;
+        }
+
+        public void run() {
+
+            List<IRequest> batch;
+            while ((batch = next()) != null) {
+                try {
+                    accept(listener, batch);
+
+                } catch (Throwable e) {
+                    logger.warn("RequestNotifier: Unable to run " + name + " listener: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
     private Hashtable<String, IRequestListener> mListeners = new Hashtable<String, IRequestListener>();
-    private Vector<Thread> mNotifierThreads = new Vector<Thread>();
-    private Vector<String> mRequests = new Vector<String>();
+    private Map<String, ListenerQueue> mListenerQueues = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor mExecutor;
+    private int mNotifierThreads;
+    private volatile PublishingJournal mJournal = new PublishingJournal(null, false);
+    private String mJournalFile;
+    private boolean mJournalSync = true;
     private int mMaxRequests = 100;
-    private boolean mSearchForRequests = false;
     private int mMaxThreads = 1;
+    private int mMaxThreadsPerListener = DEFAULT_MAX_THREADS_PER_LISTENER;
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
 
     private boolean mIsPublishingQueueEnabled = false;
     private int mPublishingQueuePriority = 0;
 
-    private String mPublishingStatus = null;
     private int mSavePublishingStatus = 0;
     private int mSavePublishingCounter = 0;
 
+    // the request DB was not accessible, wait for the next notification
+    private volatile boolean mRetryLater;
+
+    // delay before the failed requests are published again
+    private volatile long mRetryDelay;
+    private ScheduledExecutorService mRetryExecutor;
+
     public RequestNotifier() {
         mPublishingQueuePriority = Thread.currentThread().getPriority();
     }
@@ -69,7 +185,7 @@ public class RequestNotifier implements IRequestNotifier {
                   "  Maximum Number of Threads: " + maxNumberOfPublishingThreads +
                   "  Page Size: " + publishingQueuePageSize);
         mIsPublishingQueueEnabled = isPublishingQueueEnabled;
-        mMaxThreads = maxNumberOfPublishingThreads;
+        setMaxThreads(maxNumberOfPublishingThreads);
         mMaxRequests = publishingQueuePageSize;
         mSavePublishingStatus = savePublishingStatus;
 
@@ -86,21 +202,242 @@ public class RequestNotifier implements IRequestNotifier {
             mPublishingQueuePriority = Thread.currentThread().getPriority();
         }
 
+        if (mIsPublishingQueueEnabled) {
+            openPublishingQueue();
+        }
+    }
+
+    /**
+     * Sets the journal file of the publishing queue. Without a journal
+     * the publishing queue is only kept in memory.
+     *
+     * @param filename journal file
+     * @param sync true to flush each update to the disk
+     */
+    public void setPublishingJournal(String filename, boolean sync) {
+        logger.debug("setPublishingJournal:  Journal: " + filename + "  Sync: " + sync);
+        mJournalFile = filename;
+        mJournalSync = sync;
+    }
+
+    /**
+     * Loads the publishing queue from the journal, and queues the
+     * completed requests after the cursor that are not in the journal.
+     */
+    private void openPublishingQueue() {
+
+        PublishingJournal journal = new PublishingJournal(mJournalFile, mJournalSync);
+
+        try {
+            journal.open();
+            mJournal = journal;
+
+        } catch (IOException e) {
+            logger.error("setPublishingQueue:  Unable to open publishing journal: " + e.getMessage(), e);
+        }
+
         CMSEngine engine = CMS.getCMSEngine();
         RequestRepository requestRepository = engine.getRequestRepository();
 
-        if (mIsPublishingQueueEnabled && mSavePublishingStatus > 0 && requestRepository != null) {
-            mPublishingStatus = requestRepository.getPublishingStatus();
-            try {
-                BigInteger status = new BigInteger(mPublishingStatus);
-                if (status.compareTo(BigInteger.ZERO) > -1) {
-                    recoverPublishingQueue(mPublishingStatus);
+        if (requestRepository == null) {
+            return;
+        }
+
+        // the cursor in the request DB may be older than the journal
+        BigInteger cursor = mJournal.getCursor();
+        String status = requestRepository.getPublishingStatus();
+
+        try {
+            if (status != null) {
+                BigInteger value = new BigInteger(status);
+                if (value.signum() >= 0 && (cursor == null || value.compareTo(cursor) > 0)) {
+                    cursor = value;
+                }
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("setPublishingQueue:  Invalid publishing status: " + status);
+        }
+
+        if (cursor != null) {
+            recoverPublishingQueue(cursor.toString());
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < Math.max(1, mMaxThreads); i++) {
+                if (mJournal.getPendingRequests() == 0 || !morePublishingThreads()) {
+                    break;
                 }
-            } catch (Exception e) {
-                logger.warn("setPublishingQueue:  Exception: " + e.getMessage(), e);
+                startNotifierThread();
+            }
+        }
+    }
+
+    public void setListenerLimits(int maxThreadsPerListener, int batchSize) {
+        logger.debug("setListenerLimits:  Maximum Threads per Listener: " + maxThreadsPerListener +
+                  "  Batch Size: " + batchSize);
+        mMaxThreadsPerListener = Math.max(1, maxThreadsPerListener);
+        mBatchSize = Math.max(1, batchSize);
+        resizeExecutor();
+    }
+
+    private synchronized void setMaxThreads(int maxThreads) {
+        mMaxThreads = maxThreads;
+        resizeExecutor();
+    }
+
+    /**
+     * Returns the number of threads needed to run each listener queue
+     * with its maximum number of workers, plus the publishing queue
+     * workers if the publishing queue is enabled.
+     */
+    private int getPoolSize() {
+
+        int threads = mListenerQueues.size() * mMaxThreadsPerListener;
+
+        if (mIsPublishingQueueEnabled) {
+            threads += mMaxThreads;
+        }
+
+        return Math.max(1, threads);
+    }
+
+    private synchronized void resizeExecutor() {
+
+        if (mExecutor == null) {
+            return;
+        }
+
+        int threads = getPoolSize();
+
+        if (threads == mExecutor.getMaximumPoolSize()) {
+            return;
+        }
+
+        logger.debug("RequestNotifier: Number of listener threads: " + threads);
+
+        if (threads > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(threads);
+            mExecutor.setCorePoolSize(threads);
+        } else {
+            mExecutor.setCorePoolSize(threads);
+            mExecutor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Returns the pool of threads running the listeners. The pool is
+     * sized so a slow listener does not hold back the other listeners.
+     * The number of queued tasks is limited by the number of listeners
+     * and publishing queue workers, the requests themselves wait in the
+     * listener queues or in the publishing queue.
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+
+        if (mExecutor == null) {
+            int threads = getPoolSize();
+            mExecutor = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    60,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread thread = new Thread(r, "RequestNotifier");
+                        thread.setDaemon(true);
+                        if (mPublishingQueuePriority > 0) {
+                            thread.setPriority(mPublishingQueuePriority);
+                        }
+                        return thread;
+                    });
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return mExecutor;
+    }
+
+    /**
+     * Passes requests to a listener, in a single call if the listener
+     * supports batches.
+     *
+     * @param listener listener
+     * @param requests requests
+     */
+    public static void accept(IRequestListener listener, List<IRequest> requests) {
+
+        logger.debug("RequestNotifier: IRequestListener = " + listener.getClass().getName());
+
+        if (listener instanceof IBatchRequestListener && requests.size() > 1) {
+            ((IBatchRequestListener) listener).acceptAll(requests);
+            return;
+        }
+
+        for (IRequest r : requests) {
+            listener.accept(r);
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for the listeners.
+     */
+    public int getBacklogSize() {
+
+        int size = mJournal.getPendingRequests();
+
+        for (ListenerQueue queue : mListenerQueues.values()) {
+            size += queue.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns how long the oldest waiting request has been waiting
+     * in milliseconds.
+     */
+    public long getBacklogAge() {
+
+        long oldest = mJournal.getOldestQueueTime();
+
+        for (ListenerQueue queue : mListenerQueues.values()) {
+            long queueTime = queue.getQueueTime();
+            if (queueTime > 0 && (oldest == 0 || queueTime < oldest)) {
+                oldest = queueTime;
+            }
+        }
+
+        return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /**
+     * Stops the listener threads after the queued requests are processed.
+     */
+    public void shutdown() {
+
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = mExecutor;
+        }
+
+        if (executor == null) {
+            mJournal.close();
+            return;
+        }
+
+        logger.info("RequestNotifier: Shutting down (backlog: " + getBacklogSize() + ")");
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("RequestNotifier: " + getBacklogSize() + " requests not processed");
+                executor.shutdownNow();
             }
+
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
 
+        mJournal.close();
     }
 
     /**
@@ -181,9 +518,10 @@ public class RequestNotifier implements IRequestNotifier {
 
         if (requestRepository != null) {
             synchronized (publishingCounterMonitor) {
-                if (mSavePublishingCounter == 0) {
-                    logger.debug("updatePublishingStatus  requestId: " + id);
-                    requestRepository.setPublishingStatus(id);
+                String cursor = getPublishingCursor();
+                if (mSavePublishingCounter == 0 && cursor != null) {
+                    logger.debug("updatePublishingStatus  requestId: " + id + "  cursor: " + cursor);
+                    requestRepository.setPublishingStatus(cursor);
                 }
                 mSavePublishingCounter++;
                 logger.debug("updatePublishingStatus  mSavePublishingCounter: " + mSavePublishingCounter +
@@ -202,104 +540,41 @@ public class RequestNotifier implements IRequestNotifier {
      *
      * @return request
      */
-    public synchronized IRequest getRequest() {
-        IRequest r = null;
-        String id = null;
+    public IRequest getRequest() {
 
         CMSEngine engine = CMS.getCMSEngine();
+        RequestRepository requestRepository = engine.getRequestRepository();
 
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests);
-        if (mSearchForRequests && mRequests.size() == 1) {
+        if (requestRepository == null) {
+            logger.warn("getRequest  has no access to the request queue");
+            return null;
+        }
 
-            id = mRequests.elementAt(0);
-            RequestRepository requestRepository = engine.getRequestRepository();
+        RequestId id;
+        while ((id = mJournal.next()) != null) {
 
-            if (id != null && requestRepository != null) {
-                logger.debug("getRequest  request id=" + id);
+            logger.debug("getRequest  getting request: " + id);
 
-                IRequestVirtualList list;
-                try {
-                    list = requestRepository.getPagedRequestsByFilter(
-                            new RequestId(id),
-                            false,
-                            "(requeststate=complete)",
-                            mMaxRequests,
-                            "requestId");
-
-                } catch (EBaseException e) {
-                    throw new RuntimeException(e);
-                }
+            try {
+                IRequest r = requestRepository.readRequest(id);
+                mRetryLater = false;
 
-                int s = list.getSize() - list.getCurrentIndex();
-                logger.debug("getRequest  list size: " + s);
-                for (int i = 0; i < s; i++) {
-                    r = null;
-                    try {
-                        r = list.getElementAt(i);
-                    } catch (Exception e) {
-                        // handled below
-                    }
-                    if (r == null) {
-                        continue;
-                    }
-                    String requestType = r.getRequestType();
-                    if (requestType == null) {
-                        continue;
-                    }
-                    if (!(requestType.equals(IRequest.ENROLLMENT_REQUEST) ||
-                            requestType.equals(IRequest.RENEWAL_REQUEST) ||
-                            requestType.equals(IRequest.REVOCATION_REQUEST) ||
-                            requestType.equals(IRequest.CMCREVOKE_REQUEST) ||
-                            requestType.equals(IRequest.UNREVOCATION_REQUEST))) {
-                        continue;
-                    }
-                    if (i == 0 && id.equals(r.getRequestId().toString())) {
-                        if (s == 1) {
-                            break;
-                        } else {
-                            continue;
-                        }
-                    }
-                    if (mRequests.size() < mMaxRequests) {
-                        mRequests.addElement(r.getRequestId().toString());
-                        logger.debug("getRequest  added "
-                                + r.getRequestType() + " request " + r.getRequestId().toString() +
-                                  " to mRequests: " + mRequests.size() + " (" + mMaxRequests + ")");
-                    } else {
-                        break;
-                    }
+                if (r != null) {
+                    return r;
                 }
-                logger.debug("getRequest  done with adding requests to mRequests: " + mRequests.size());
-            } else {
-                logger.warn("getRequest  has no access to the request queue");
-            }
-        }
-        if (mRequests.size() > 0) {
-            id = mRequests.elementAt(0);
-            if (id != null) {
-                logger.debug("getRequest  getting request: " + id);
-                RequestRepository requestRepository = engine.getRequestRepository();
-
-                if (requestRepository != null) {
-                    try {
-                        r = requestRepository.readRequest(new RequestId(id));
-                        mRequests.remove(0);
-                        logger.debug("getRequest  request " + id + ((r != null) ? " found" : " not found"));
-                        //updatePublishingStatus(id);
-                    } catch (EBaseException e) {
-                        logger.warn("getRequest  Exception: " + e.getMessage(), e);
-                    }
-                } else {
-                    logger.warn("getRequest  has no access to the request queue");
-                }
-            }
-            if (mRequests.size() == 0) {
-                mSearchForRequests = false;
+
+                logger.warn("getRequest  request " + id + " not found");
+                mJournal.complete(Collections.singletonList(id));
+
+            } catch (EBaseException | IOException e) {
+                logger.warn("getRequest  Exception: " + e.getMessage(), e);
+                mJournal.release(id);
+                mRetryLater = true;
+                return null;
             }
         }
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests + " done");
 
-        return r;
+        return null;
     }
 
     /**
@@ -308,7 +583,16 @@ public class RequestNotifier implements IRequestNotifier {
      * @return number of requests in publishing queue
      */
     public int getNumberOfRequests() {
-        return mRequests.size();
+        return mJournal.getPendingRequests();
+    }
+
+    /**
+     * Returns the request ID up to which all queued requests have
+     * been published, or null if unknown.
+     */
+    public String getPublishingCursor() {
+        BigInteger cursor = mJournal.getCursor();
+        return cursor == null ? null : cursor.toString();
     }
 
     /**
@@ -325,18 +609,41 @@ public class RequestNotifier implements IRequestNotifier {
      *
      * @param notifierThread Thread
      */
-    public void removeNotifierThread(Thread notifierThread) {
-        if (mNotifierThreads.size() > 0) {
-            mNotifierThreads.remove(notifierThread);
-            if (mNotifierThreads.size() == 0) {
-                CMSEngine engine = CMS.getCMSEngine();
-                RequestRepository requestRepository = engine.getRequestRepository();
-                if (requestRepository != null) {
-                    requestRepository.setPublishingStatus("-1");
-                }
+    public synchronized void removeNotifierThread(Thread notifierThread) {
+
+        if (mNotifierThreads == 0) {
+            return;
+        }
+
+        if (mJournal.getPendingRequests() > 0 && mNotifierThreads == 1 && !mRetryLater) {
+            // requests were added after the worker has checked the queue
+            startNotifierThread();
+            mNotifierThreads--;
+
+        } else if (--mNotifierThreads == 0) {
+            CMSEngine engine = CMS.getCMSEngine();
+            RequestRepository requestRepository = engine.getRequestRepository();
+            String cursor = getPublishingCursor();
+            if (requestRepository != null && cursor != null) {
+                requestRepository.setPublishingStatus(cursor);
             }
         }
-        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
+
+        logger.debug("Number of publishing threads: " + mNotifierThreads);
+    }
+
+    /**
+     * Starts a publishing queue worker.
+     */
+    private synchronized void startNotifierThread() {
+        try {
+            getExecutor().execute(new PublishingWorker());
+            mNotifierThreads++;
+            logger.debug("Number of publishing threads: " + mNotifierThreads);
+
+        } catch (RejectedExecutionException e) {
+            logger.warn("RequestNotifier: Unable to start publishing thread: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -354,20 +661,42 @@ public class RequestNotifier implements IRequestNotifier {
             if (listeners != null && r != null) {
                 while (listeners.hasMoreElements()) {
                     IRequestListener l = listeners.nextElement();
-                    logger.debug("RunListeners: IRequestListener = " + l.getClass().getName());
+                    logger.debug("RequestNotifier: IRequestListener = " + l.getClass().getName());
                     l.accept(r);
                 }
             }
         } else {
-            // spawn a seperate thread to call the listeners and return.
-            try {
-                new Thread(new RunListeners(r, mListeners.elements())).start();
-            } catch (Throwable e) {
-                logger.warn("Could not run listeners for request " + r.getRequestId() + ": " + e.getMessage(), e);
+            // queue the request for each listener and return
+            for (Map.Entry<String, IRequestListener> entry : mListeners.entrySet()) {
+                getListenerQueue(entry.getKey(), entry.getValue()).add(r);
             }
+            logger.debug("RequestNotifier: backlog: " + getBacklogSize() + " requests, " + getBacklogAge() + " ms");
         }
     }
 
+    private ListenerQueue getListenerQueue(String name, IRequestListener listener) {
+
+        ListenerQueue queue = mListenerQueues.get(name);
+
+        if (queue == null || queue.listener != listener) {
+            // new or replaced listener
+            queue = mListenerQueues.compute(name, (k, v) -> {
+                if (v != null && v.listener == listener) {
+                    return v;
+                }
+                ListenerQueue q = new ListenerQueue();
+                q.name = name;
+                q.listener = listener;
+                return q;
+            });
+
+            // add threads for a new listener
+            resizeExecutor();
+        }
+
+        return queue;
+    }
+
     /**
      * Checks for available publishing connections
      *
@@ -385,14 +714,14 @@ public class RequestNotifier implements IRequestNotifier {
     private boolean morePublishingThreads() {
         boolean moreThreads = false;
 
-        if (mNotifierThreads.size() == 0) {
+        if (mNotifierThreads == 0) {
             moreThreads = true;
-        } else if (mNotifierThreads.size() < mMaxThreads) {
-            logger.debug("morePublishingThreads  (" + mRequests.size() + ">" +
-                      ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads) +
-                      " " + "(" + mMaxRequests + "*" + mNotifierThreads.size() + "):" + mMaxThreads);
+        } else if (mNotifierThreads < mMaxThreads) {
+            logger.debug("morePublishingThreads  (" + mJournal.getPendingRequests() + ">" +
+                      ((mMaxRequests * mNotifierThreads) / mMaxThreads) +
+                      " " + "(" + mMaxRequests + "*" + mNotifierThreads + "):" + mMaxThreads);
             // gradually add new publishing threads
-            if (mRequests.size() > ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads)) {
+            if (mJournal.getPendingRequests() > ((mMaxRequests * mNotifierThreads) / mMaxThreads)) {
                 // check for available publishing connections
                 if (checkAvailablePublishingConnections()) {
                     moreThreads = true;
@@ -409,63 +738,244 @@ public class RequestNotifier implements IRequestNotifier {
      *
      * @param r request
      */
-    public synchronized void addToNotify(IRequest r) {
-        if (!mSearchForRequests) {
-            if (mRequests.size() < mMaxRequests) {
-                mRequests.addElement(r.getRequestId().toString());
-                logger.debug("addToNotify  extended buffer to " + mRequests.size() + "(" + mMaxRequests + ")" +
-                          " requests by adding request " + r.getRequestId().toString());
-                if (morePublishingThreads()) {
-                    try {
-                        Thread notifierThread = new Thread(new RunListeners(this));
-                        if (notifierThread != null) {
-                            mNotifierThreads.addElement(notifierThread);
-                            logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-                            if (mPublishingQueuePriority > 0) {
-                                notifierThread.setPriority(mPublishingQueuePriority);
-                            }
-                            notifierThread.start();
-                        }
-                    } catch (Throwable e) {
-                        logger.warn("addToNotify  Exception: " + e.getMessage(), e);
+    public void addToNotify(IRequest r) {
+
+        try {
+            if (!mJournal.add(r.getRequestId(), System.currentTimeMillis())) {
+                return;
+            }
+
+        } catch (IOException e) {
+            // the request is still queued in memory
+            logger.warn("addToNotify  Unable to update publishing journal: " + e.getMessage(), e);
+        }
+
+        logger.debug("addToNotify  added request " + r.getRequestId() + " to publishing queue: " +
+                  mJournal.getPendingRequests());
+
+        synchronized (this) {
+            if (morePublishingThreads()) {
+                startNotifierThread();
+            }
+        }
+    }
+
+    private boolean isPublishable(IRequest r) {
+
+        String requestType = r.getRequestType();
+        if (requestType == null) {
+            return false;
+        }
+
+        return requestType.equals(IRequest.ENROLLMENT_REQUEST) ||
+                requestType.equals(IRequest.RENEWAL_REQUEST) ||
+                requestType.equals(IRequest.REVOCATION_REQUEST) ||
+                requestType.equals(IRequest.CMCREVOKE_REQUEST) ||
+                requestType.equals(IRequest.UNREVOCATION_REQUEST);
+    }
+
+    /**
+     * Recovers publishing queue. Adds the completed requests after the
+     * cursor that are not in the journal, e.g. requests that completed
+     * just before a crash.
+     *
+     * @param id request ID of the cursor
+     */
+    public void recoverPublishingQueue(String id) {
+
+        logger.info("RequestNotifier: Recovering publishing queue after request " + id);
+
+        CMSEngine engine = CMS.getCMSEngine();
+        RequestRepository requestRepository = engine.getRequestRepository();
+
+        BigInteger start = new BigInteger(id);
+        int count = 0;
+
+        try {
+            while (true) {
+                IRequestVirtualList list = requestRepository.getPagedRequestsByFilter(
+                        new RequestId(start),
+                        false,
+                        "(requeststate=complete)",
+                        mMaxRequests,
+                        "requestId");
+
+                BigInteger last = start;
+                int size = list.getSize() - list.getCurrentIndex();
+
+                for (int i = 0; i < size; i++) {
+                    IRequest r = list.getElementAt(i);
+                    if (r == null) {
+                        continue;
+                    }
+
+                    BigInteger requestID = r.getRequestId().toBigInteger();
+                    if (requestID.compareTo(last) <= 0) {
+                        continue;
+                    }
+                    last = requestID;
+
+                    if (!isPublishable(r)) {
+                        mJournal.skip(r.getRequestId());
+                        continue;
+                    }
+
+                    if (mJournal.add(r.getRequestId(), r.getModificationTime().getTime())) {
+                        logger.debug("recoverPublishingQueue  added request " + requestID);
+                        count++;
                     }
                 }
-            } else {
-                mSearchForRequests = true;
+
+                if (last.equals(start)) {
+                    break;
+                }
+
+                start = last;
             }
+
+        } catch (EBaseException | IOException e) {
+            logger.warn("recoverPublishingQueue  Exception: " + e.getMessage(), e);
         }
+
+        logger.info("RequestNotifier: Recovered " + count + " requests, publishing queue: " +
+                mJournal.getPendingRequests());
     }
 
     /**
-     * Recovers publishing queue.
+     * Returns requests that could not be published to the publishing
+     * queue after a delay that doubles with each consecutive failure.
+     * The listeners that have already processed the requests will not
+     * receive them again.
      *
-     * @param id request request
+     * @param ids request IDs
      */
-    public void recoverPublishingQueue(String id) {
-        logger.debug("recoverPublishingQueue  mRequests.size()=" + mRequests.size() + "(" + mMaxRequests + ")" +
-                      " requests by adding request " + id);
-        if (mRequests.size() == 0) {
-            mRequests.addElement(id);
-            logger.debug("recoverPublishingQueue  extended buffer to " + mRequests.size() + "(" + mMaxRequests + ")" +
-                      " requests by adding request " + id);
-            if (morePublishingThreads()) {
-                synchronized (this) {
-                    mSearchForRequests = true;
+    private synchronized void scheduleRetry(Collection<RequestId> ids) {
+
+        mRetryDelay = mRetryDelay == 0 ? MIN_RETRY_DELAY : Math.min(mRetryDelay * 2, MAX_RETRY_DELAY);
+        logger.info("RequestNotifier: Retrying " + ids.size() + " requests in " + mRetryDelay + " ms");
+
+        if (mRetryExecutor == null) {
+            mRetryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "RequestNotifierRetry");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        List<RequestId> requestIDs = new ArrayList<>(ids);
+
+        mRetryExecutor.schedule(() -> {
+            for (RequestId id : requestIDs) {
+                mJournal.release(id);
+            }
+            synchronized (RequestNotifier.this) {
+                if (morePublishingThreads()) {
+                    startNotifierThread();
                 }
-                try {
-                    Thread notifierThread = new Thread(new RunListeners(this));
-                    if (notifierThread != null) {
-                        mNotifierThreads.addElement(notifierThread);
-                        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-                        if (mPublishingQueuePriority > 0) {
-                            notifierThread.setPriority(mPublishingQueuePriority);
-                        }
-                        notifierThread.start();
+            }
+        }, mRetryDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishing queue worker. Each listener receives the requests
+     * of a batch that it has not processed yet, so the requests that
+     * were being published during a restart are not published twice.
+     */
+    class PublishingWorker implements Runnable {
+
+        public void run() {
+            try {
+                List<IRequest> batch;
+                while (!(batch = nextBatch()).isEmpty()) {
+                    publish(batch);
+                }
+
+            } finally {
+                removeNotifierThread(Thread.currentThread());
+            }
+        }
+
+        private List<IRequest> nextBatch() {
+
+            List<IRequest> batch = new ArrayList<>();
+
+            while (batch.size() < mBatchSize) {
+                IRequest r = getRequest();
+                if (r == null) {
+                    break;
+                }
+                batch.add(r);
+            }
+
+            return batch;
+        }
+
+        private void publish(List<IRequest> batch) {
+
+            List<RequestId> ids = new ArrayList<>();
+            for (IRequest r : batch) {
+                ids.add(r.getRequestId());
+            }
+
+            // requests that a listener was unable to process
+            Set<RequestId> failed = new LinkedHashSet<>();
+
+            for (Map.Entry<String, IRequestListener> entry : mListeners.entrySet()) {
+
+                String name = entry.getKey();
+
+                List<IRequest> requests = new ArrayList<>();
+                List<RequestId> requestIDs = new ArrayList<>();
+
+                for (IRequest r : batch) {
+                    if (!mJournal.isDone(r.getRequestId(), name)) {
+                        requests.add(r);
+                        requestIDs.add(r.getRequestId());
                     }
+                }
+
+                if (requests.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    accept(entry.getValue(), requests);
+
                 } catch (Throwable e) {
-                    logger.warn("recoverPublishingQueue  Exception: " + e.getMessage(), e);
+                    logger.warn("RequestNotifier: Unable to run " + name + " listener: " + e.getMessage(), e);
+                    failed.addAll(requestIDs);
+                    continue;
+                }
+
+                try {
+                    mJournal.markDone(requestIDs, name);
+                } catch (IOException e) {
+                    logger.warn("RequestNotifier: Unable to update publishing journal: " + e.getMessage(), e);
+                }
+            }
+
+            List<RequestId> completed = new ArrayList<>(ids);
+            completed.removeAll(failed);
+
+            if (!completed.isEmpty()) {
+                try {
+                    mJournal.complete(completed);
+                } catch (IOException e) {
+                    logger.warn("RequestNotifier: Unable to update publishing journal: " + e.getMessage(), e);
                 }
+
+                updatePublishingStatus(completed.get(completed.size() - 1).toString());
             }
+
+            if (failed.isEmpty()) {
+                mRetryDelay = 0;
+            } else {
+                scheduleRetry(failed);
+            }
+
+            logger.debug("RequestNotifier: Published " + completed.size() + " requests, failed: " +
+                    failed.size() + " requests, backlog: " + getBacklogSize() + " requests, " +
+                    getBacklogAge() + " ms, cursor: " + getPublishingCursor());
         }
     }
 }
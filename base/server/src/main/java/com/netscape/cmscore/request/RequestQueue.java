@@ -20,7 +20,9 @@ package com.netscape.cmscore.request;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.IDBSearchResults;
@@ -33,6 +35,9 @@ import com.netscape.certsrv.request.IService;
 import com.netscape.certsrv.request.PolicyResult;
 import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+import com.netscape.cmscore.apps.EngineConfig;
 import com.netscape.cmscore.dbs.DBSSession;
 import com.netscape.cmscore.dbs.DBSubsystem;
 
@@ -44,6 +49,24 @@ public class RequestQueue extends ARequestQueue {
     protected String mBaseDN;
     protected RequestRepository mRepository;
 
+    protected boolean mCoalesceWrites;
+
+    // requests whose writes are being coalesced, mapped to whether
+    // the stored record is behind the request in memory
+    protected Map<RequestId, Boolean> mInFlight = new ConcurrentHashMap<>();
+
+    // requests whose stored record is still an intent record,
+    // mapped to the ID of the server that added the intent record
+    protected Map<RequestId, String> mIntents = new ConcurrentHashMap<>();
+
+    // intent records of other servers (e.g. clones) are only rejected
+    // if they have not been modified for this long (milliseconds)
+    public final static long INTENT_TIMEOUT = 60 * 60 * 1000;
+
+    // asynchronous requests of this server stored before this time
+    // were queued by a previous server run
+    protected long mStartTime = System.currentTimeMillis();
+
     /**
      * Create a request queue.
      *
@@ -112,6 +135,115 @@ public class RequestQueue extends ARequestQueue {
         return mRepository.readRequest(id);
     }
 
+    public boolean isCoalesceWrites() {
+        return mCoalesceWrites;
+    }
+
+    /**
+     * Enables write coalescing. The writes of a request between
+     * beginUpdates() and endUpdates() are then reduced to an intent
+     * record for a new request and a single write of the complete
+     * request once it leaves the BEGIN and APPROVED states.
+     */
+    public void setCoalesceWrites(boolean coalesceWrites) {
+        mCoalesceWrites = coalesceWrites;
+    }
+
+    /**
+     * Starts coalescing the writes of a request that will be
+     * processed by the calling thread. The caller must call
+     * endUpdates() when the processing is finished.
+     */
+    public void beginUpdates(IRequest request) {
+
+        if (!mCoalesceWrites) {
+            return;
+        }
+
+        mInFlight.put(request.getRequestId(), false);
+    }
+
+    /**
+     * Stops coalescing the writes of a request, and stores the request
+     * if there are deferred changes.
+     */
+    public void endUpdates(IRequest request) throws EBaseException {
+
+        RequestId requestID = request.getRequestId();
+        Boolean deferred = mInFlight.remove(requestID);
+
+        if (deferred == null || !deferred) {
+            return;
+        }
+
+        logger.debug("RequestQueue: Storing deferred changes of request " + requestID);
+        modifyRequest(request);
+    }
+
+    /**
+     * Stores a request that has already been added, and removes
+     * the intent marker on the first complete write.
+     */
+    private void modifyRequest(IRequest request) throws EBaseException {
+
+        RequestId requestID = request.getRequestId();
+        String intent = mIntents.remove(requestID);
+
+        try {
+            mRepository.modifyRequest(request, intent);
+
+        } catch (EBaseException e) {
+            if (intent != null) {
+                mIntents.put(requestID, intent);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Coalesces a write of an in-flight request. The first write of a
+     * new request in BEGIN state only adds an intent record, the writes
+     * of a stored request are deferred while it is in BEGIN or APPROVED
+     * state.
+     *
+     * @return true if the request does not need to be stored now
+     */
+    private boolean coalesceUpdate(IRequest request) throws EBaseException {
+
+        RequestId requestID = request.getRequestId();
+
+        if (!mInFlight.containsKey(requestID)) {
+            return false;
+        }
+
+        RequestStatus status = request.getRequestStatus();
+
+        if (status != RequestStatus.BEGIN && status != RequestStatus.APPROVED) {
+            return false;
+        }
+
+        String dbStatus = request.getExtDataInString("dbStatus");
+
+        if (dbStatus.equals("UPDATED")) {
+            logger.debug("RequestQueue: Deferring update of request " + requestID);
+
+        } else if (status == RequestStatus.BEGIN) {
+            logger.debug("RequestQueue: Adding intent record for request " + requestID);
+            request.setExtData("dbStatus", "UPDATED");
+            String serverID = getServerID();
+            mRepository.addIntent(request, serverID);
+            mIntents.put(requestID, serverID);
+
+        } else {
+            // a new APPROVED request would be resent by
+            // recoverWillBlock() so it has to be stored completely
+            return false;
+        }
+
+        mInFlight.put(requestID, true);
+        return true;
+    }
+
     public void updateRequest(IRequest request) throws EBaseException {
 
         String name = getUserIdentity();
@@ -127,17 +259,24 @@ public class RequestQueue extends ARequestQueue {
             return;
         }
 
+        if (mCoalesceWrites && coalesceUpdate(request)) {
+            return;
+        }
+
         // TODO: use a state flag to determine whether to call
         // addRequest or modifyRequest (see newRequest as well)
 
         String dbStatus = request.getExtDataInString("dbStatus");
         if (dbStatus.equals("UPDATED")) {
-            mRepository.modifyRequest(request);
-            return;
+            modifyRequest(request);
+
+        } else {
+            request.setExtData("dbStatus", "UPDATED");
+            mRepository.addRequest(request);
         }
 
-        request.setExtData("dbStatus", "UPDATED");
-        mRepository.addRequest(request);
+        // the stored record is up to date
+        mInFlight.replace(request.getRequestId(), false);
     }
 
     public void markRequestPending(IRequest request) throws EBaseException {
@@ -213,8 +352,17 @@ public class RequestQueue extends ARequestQueue {
             // ignore
         }
 
-        updateRequest(request);
-        stateEngine(request);
+        // the APPROVED state only needs to be stored if the
+        // service does not complete the request
+        beginUpdates(request);
+
+        try {
+            updateRequest(request);
+            stateEngine(request);
+
+        } finally {
+            endUpdates(request);
+        }
     }
 
     public void markAsServiced(IRequest request) throws EBaseException {
@@ -339,10 +487,14 @@ public class RequestQueue extends ARequestQueue {
 
     /**
      * Recovers from a crash. Resends all requests that are in
-     * the APPROVED state.
+     * the APPROVED state, and rejects the requests whose processing
+     * was interrupted after the intent record was added or while
+     * they were queued for asynchronous processing.
      */
     public void recoverWillBlock() {
 
+        recoverIntents();
+
         IRequestList list = listRequestsByStatus(RequestStatus.APPROVED);
 
         if (list == null) {
@@ -367,4 +519,103 @@ public class RequestQueue extends ARequestQueue {
             }
         }
     }
+
+    /**
+     * Rejects the requests that only have an intent record, since the
+     * request data was never stored, and the asynchronous requests
+     * that a previous server run left in BEGIN state, since their
+     * queue was only kept in memory. Intent records added by other
+     * servers (e.g. clones) are only rejected after INTENT_TIMEOUT.
+     */
+    public void recoverIntents() {
+
+        IRequestList list = listRequestsByStatus(RequestStatus.BEGIN);
+
+        if (list == null) {
+            return;
+        }
+
+        while (list.hasMoreElements()) {
+            RequestId requestID = list.nextRequestId();
+
+            // skip requests that are being processed
+            if (mInFlight.containsKey(requestID)) {
+                continue;
+            }
+
+            try {
+                IRequest request = mRepository.readRequest(requestID);
+
+                if (request == null || !isInterrupted(request)) {
+                    continue;
+                }
+
+                logger.warn("RequestQueue: Rejecting interrupted request " + requestID);
+
+                String intent = request.getExtDataInString(RequestRecord.IN_FLIGHT);
+                if (intent != null) {
+                    request.deleteExtData(RequestRecord.IN_FLIGHT);
+                    mIntents.put(requestID, intent);
+                }
+
+                request.setExtData("dbStatus", "UPDATED");
+
+                if (request.getExtDataInString(IRequest.ERROR) == null) {
+                    request.setExtData(IRequest.ERROR, "Request processing was interrupted");
+                }
+                request.setRequestStatus(RequestStatus.REJECTED);
+
+                updateRequest(request);
+                releaseRequest(request);
+
+            } catch (EBaseException e) {
+                logger.warn("RequestQueue: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Marks a request that is stored in BEGIN state and queued in
+     * memory for asynchronous processing, so it is rejected after a
+     * restart if it was not processed.
+     */
+    public void markAsync(IRequest request) {
+        request.setExtData(RequestRecord.ASYNC, getServerID());
+    }
+
+    /**
+     * Returns the ID of this server, so a clone does not reject
+     * the requests that are being processed or queued by other clones.
+     */
+    private String getServerID() {
+        CMSEngine engine = CMS.getCMSEngine();
+        EngineConfig cs = engine.getConfig();
+        return cs.getHostname() + ":" + engine.getInstanceDir();
+    }
+
+    private boolean isInterrupted(IRequest request) {
+
+        Date modificationTime = request.getModificationTime();
+        String serverID = request.getExtDataInString(RequestRecord.IN_FLIGHT);
+
+        if (serverID != null) {
+
+            if (serverID.equals(getServerID())) {
+                // added by a previous run of this server
+                return modificationTime == null || modificationTime.getTime() < mStartTime;
+            }
+
+            // another server might still be processing the request
+            return modificationTime == null
+                    || modificationTime.getTime() < System.currentTimeMillis() - INTENT_TIMEOUT;
+        }
+
+        serverID = request.getExtDataInString(RequestRecord.ASYNC);
+
+        if (serverID == null || !serverID.equals(getServerID())) {
+            return false;
+        }
+
+        return modificationTime == null || modificationTime.getTime() < mStartTime;
+    }
 }
@@ -64,6 +64,15 @@ public class RequestRecord implements IDBObj {
 
     public final static String ATTR_REALM = "realm";
 
+    // ext data key that marks an intent record, i.e. a record that
+    // only identifies a request whose data has not been stored yet;
+    // the value is the ID of the server processing the request
+    public final static String IN_FLIGHT = "inFlight";
+
+    // ext data key that marks a request stored in BEGIN state and
+    // queued in memory for asynchronous processing by a server
+    public final static String ASYNC = "async";
+
     RequestId mRequestId;
     RequestStatus mRequestState;
     Date mCreateTime;
@@ -221,6 +230,26 @@ public class RequestRecord implements IDBObj {
         }
     }
 
+    // copy the values that identify r to the local record,
+    // without the request data
+    void addIntent(IRequest r, String serverID) throws EBaseException {
+        mRequestId = r.getRequestId();
+        mRequestType = r.getRequestType();
+        mRequestState = r.getRequestStatus();
+        mSourceId = r.getSourceId();
+        mOwner = r.getRequestOwner();
+        mCreateTime = r.getCreationTime();
+        mModifyTime = r.getModificationTime();
+        realm = r.getRealm();
+
+        mExtData = new Hashtable<String, Object>();
+        mExtData.put(IN_FLIGHT, serverID);
+
+        for (int i = 0; i < mRequestA.length; i++) {
+            mRequestA[i].add(r, this);
+        }
+    }
+
     void read(IRequest r) throws EBaseException {
         r.setRequestStatus(mRequestState);
         r.setSourceId(mSourceId);
@@ -254,6 +283,14 @@ public class RequestRecord implements IDBObj {
         }
     }
 
+    // remove the marker of an intent record; the full write only replaces
+    // the ext data attributes of the request in memory
+    static void modIntent(ModificationSet mods, String serverID) {
+        Hashtable<String, Object> extData = new Hashtable<String, Object>();
+        extData.put(IN_FLIGHT, serverID);
+        mods.add(ATTR_EXT_DATA, Modification.MOD_DELETE, extData);
+    }
+
     static void register(DBSubsystem dbSubsystem)
             throws EDBException {
         DBRegistry reg = dbSubsystem.getRegistry();
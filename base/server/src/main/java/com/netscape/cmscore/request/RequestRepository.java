@@ -122,6 +122,9 @@ public class RequestRepository extends Repository {
             mIncrementNo = new BigInteger(incrementNo, mRadix);
         }
 
+        int requestNumberBlockSize = dbConfig.getInteger("requestNumberBlockSize", 0);
+        initSerialNumberBlocks(Runtime.getRuntime().availableProcessors(), requestNumberBlockSize);
+
         // Let RequestRecord class register its
         // database mapping and object mapping values
         RequestRecord.register(dbSubsystem);
@@ -211,6 +214,33 @@ public class RequestRepository extends Repository {
         }
     }
 
+    /**
+     * Adds an intent record for a request that is being processed.
+     * The record only identifies the request, the request data is
+     * stored by the next modifyRequest().
+     *
+     * @param serverID ID of the server processing the request
+     */
+    public void addIntent(IRequest request, String serverID) throws EBaseException {
+
+        RequestRecord requestRecord = new RequestRecord();
+        requestRecord.addIntent(request, serverID);
+
+        DBSSession dbs = dbSubsystem.createSession();
+
+        try {
+            String dn = "cn=" + requestRecord.mRequestId + "," + mBaseDN;
+            dbs.add(dn, requestRecord);
+
+        } catch (EBaseException e) {
+            logger.error("RequestRepository: " + e.getMessage(), e);
+            throw e;
+
+        } finally {
+            dbs.close();
+        }
+    }
+
     public IRequest readRequest(RequestId id) throws EBaseException {
 
         String name = "cn=" + id + "," + mBaseDN;
@@ -232,10 +262,26 @@ public class RequestRepository extends Repository {
     }
 
     public void modifyRequest(IRequest request) throws EBaseException {
+        modifyRequest(request, null);
+    }
+
+    /**
+     * Stores a request.
+     *
+     * @param request request
+     * @param intent the server ID of the intent record added by
+     * addIntent() if the stored record is still an intent record,
+     * otherwise null
+     */
+    public void modifyRequest(IRequest request, String intent) throws EBaseException {
 
         ModificationSet mods = new ModificationSet();
         RequestRecord.mod(mods, request);
 
+        if (intent != null) {
+            RequestRecord.modIntent(mods, intent);
+        }
+
         // mods.add(IRequestRecord.ATTR_REQUEST_STATE,
         // Modification.MOD_REPLACE, r.getRequestStatus());
 
@@ -341,6 +387,45 @@ public class RequestRepository extends Repository {
         return new SearchEnumeration(results);
     }
 
+    /**
+     * Finds a page of requests matching the filter whose IDs are
+     * greater than the given request ID, sorted by request ID.
+     *
+     * @param filter search filter
+     * @param after last request ID of the previous page, or null for the first page
+     * @param pageSize maximum number of requests to return
+     * @return request list
+     * @exception EBaseException failed to search requests
+     */
+    public IRequestList findRequestRecordsAfter(String filter, RequestId after, int pageSize)
+            throws EBaseException {
+
+        String pageFilter = filter;
+
+        if (after != null) {
+            BigInteger next = after.toBigInteger().add(BigInteger.ONE);
+            pageFilter = "(&" + filter + "(" + RequestRecord.ATTR_REQUEST_ID + ">=" + next + "))";
+        }
+
+        logger.debug("RequestRepository: findRequestRecordsAfter(" + pageFilter + ", " + pageSize + ")");
+
+        DBSSession dbs = dbSubsystem.createSession();
+        IDBSearchResults results = null;
+
+        try {
+            results = dbs.search(mBaseDN, pageFilter, pageSize, Schema.LDAP_ATTR_REQUEST_ID);
+
+        } finally {
+            dbs.close();
+        }
+
+        if (results == null) {
+            return null;
+        }
+
+        return new SearchEnumeration(results);
+    }
+
     /**
      * Gets a pageable list of IRequest entries in this queue. This
      * jumps right to the end of the list.
@@ -17,9 +17,11 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.session;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.ISecurityDomainSessionTable;
@@ -43,15 +45,37 @@ import netscape.ldap.LDAPv2;
 /**
  * This object stores the values for IP, uid and group based on the cookie id in LDAP.
  * Entries are stored under ou=Security Domain, ou=sessions, $basedn
+ *
+ * The sessions are also kept in memory and lookups are served from there.
+ * Changes are written through to LDAP so they are shared with the clones,
+ * and the memory table is resynchronized with LDAP whenever the session
+ * IDs are listed (i.e. by the session timer). A session that is not in
+ * memory (e.g. created on another clone since the last synchronization)
+ * is read from LDAP.
  */
 public class LDAPSecurityDomainSessionTable
         implements ISecurityDomainSessionTable {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LDAPSecurityDomainSessionTable.class);
 
+    /**
+     * A security domain session.
+     */
+    static class Session {
+        String ip;
+        String uid;
+        String group;
+        long beginTime;
+    }
+
     private long m_timeToLive;
     private LdapBoundConnFactory mLdapConnFactory;
 
+    private volatile Map<String, Session> mSessions = new ConcurrentHashMap<>();
+
+    // incremented on every local change to detect changes during synchronization
+    private long mModificationCount;
+
     public LDAPSecurityDomainSessionTable(long timeToLive) throws ELdapException, EBaseException {
         m_timeToLive = timeToLive;
 
@@ -103,6 +127,7 @@ public class LDAPSecurityDomainSessionTable
 
             // add new entry
             String entrydn = "cn=" + sessionId + "," + sessionsdn;
+            long beginTime = new Date().getTime();
             attrs = new LDAPAttributeSet();
             attrs.add(new LDAPAttribute("objectclass", "top"));
             attrs.add(new LDAPAttribute("objectclass", "securityDomainSessionEntry"));
@@ -110,12 +135,23 @@ public class LDAPSecurityDomainSessionTable
             attrs.add(new LDAPAttribute("host", ip));
             attrs.add(new LDAPAttribute("uid", uid));
             attrs.add(new LDAPAttribute("cmsUserGroup", group));
-            attrs.add(new LDAPAttribute("dateOfCreate", Long.toString((new Date()).getTime())));
+            attrs.add(new LDAPAttribute("dateOfCreate", Long.toString(beginTime)));
 
             entry = new LDAPEntry(entrydn, attrs);
 
             conn.add(entry);
 
+            Session session = new Session();
+            session.ip = ip;
+            session.uid = uid;
+            session.group = group;
+            session.beginTime = beginTime;
+
+            synchronized (this) {
+                mSessions.put(sessionId, session);
+                mModificationCount++;
+            }
+
             logger.info("SecurityDomainSessionTable: added session entry " + sessionId);
             status = SUCCESS;
 
@@ -161,28 +197,59 @@ public class LDAPSecurityDomainSessionTable
             }
         }
 
+        synchronized (this) {
+            mSessions.remove(sessionId);
+            mModificationCount++;
+        }
+
         return status;
     }
 
     public boolean sessionExists(String sessionId) throws Exception {
+        return getSession(sessionId) != null;
+    }
+
+    /**
+     * Returns the session from memory, or from LDAP if the session
+     * has not been synchronized yet. Returns null if the session
+     * does not exist.
+     */
+    private Session getSession(String sessionId) throws Exception {
+
+        Session session = mSessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+
+        long modificationCount;
+        synchronized (this) {
+            modificationCount = mModificationCount;
+        }
 
         CMSEngine engine = CMS.getCMSEngine();
         EngineConfig cs = engine.getConfig();
         LDAPConfig ldapConfig = cs.getInternalDBConfig();
 
         LDAPConnection conn = null;
-        boolean ret = false;
 
         try {
             String basedn = ldapConfig.getBaseDN();
             String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
             String filter = "(cn=" + sessionId + ")";
-            String[] attrs = { "cn" };
 
             conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
-            if (res.getCount() > 0)
-                ret = true;
+            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, null, false);
+            if (!res.hasMoreElements()) {
+                return null;
+            }
+
+            session = createSession(res.next());
+
+        } catch (LDAPException e) {
+            if (e.getLDAPResultCode() == LDAPException.NO_SUCH_OBJECT) {
+                return null;
+            }
+            throw e;
 
         } finally {
             try {
@@ -192,9 +259,48 @@ public class LDAPSecurityDomainSessionTable
             }
         }
 
-        return ret;
+        logger.debug("LDAPSecurityDomainSessionTable: loaded session " + sessionId);
+
+        synchronized (this) {
+            // don't restore a session removed during the search
+            if (modificationCount == mModificationCount) {
+                mSessions.putIfAbsent(sessionId, session);
+            } else {
+                logger.debug("LDAPSecurityDomainSessionTable: sessions modified during search");
+            }
+        }
+
+        return session;
     }
 
+    private Session createSession(LDAPEntry entry) throws Exception {
+
+        Session session = new Session();
+        session.ip = getAttributeValue(entry, "host");
+        session.uid = getAttributeValue(entry, "uid");
+        session.group = getAttributeValue(entry, "cmsUserGroup");
+
+        String beginStr = getAttributeValue(entry, "dateOfCreate");
+        session.beginTime = Long.parseLong(beginStr);
+
+        return session;
+    }
+
+    private String getAttributeValue(LDAPEntry entry, String attr) throws Exception {
+
+        LDAPAttribute attribute = entry.getAttribute(attr);
+        if (attribute == null) {
+            throw new Exception("No Attribute " + attr + " for this session in LDAPEntry " + entry.getDN());
+        }
+
+        return attribute.getStringValueArray()[0];
+    }
+
+    /**
+     * Returns the IDs of the sessions in LDAP. The memory table is
+     * replaced with the sessions found in LDAP unless it was modified
+     * locally during the search.
+     */
     public Enumeration<String> getSessionIDs() throws Exception {
 
         logger.debug("LDAPSecurityDomainSessionTable: getSessionIds() ");
@@ -204,18 +310,22 @@ public class LDAPSecurityDomainSessionTable
         LDAPConfig ldapConfig = cs.getInternalDBConfig();
 
         LDAPConnection conn = null;
-        Vector<String> ret = new Vector<String>();
+        Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+        long modificationCount;
+        synchronized (this) {
+            modificationCount = mModificationCount;
+        }
 
         try {
             String basedn = ldapConfig.getBaseDN();
             String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
             String filter = "(objectclass=securityDomainSessionEntry)";
-            String[] attrs = { "cn" };
 
             logger.debug("LDAPSecurityDomainSessionTable: searching " + sessionsdn);
 
             conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
+            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, null, false);
             while (res.hasMoreElements()) {
                 LDAPEntry entry = res.next();
                 LDAPAttribute sid = entry.getAttribute("cn");
@@ -223,7 +333,7 @@ public class LDAPSecurityDomainSessionTable
                     logger.error("LDAPSecurityDomainSessionTable: Missing session ID: " + entry.getDN());
                     throw new Exception("Missing session ID: " + entry.getDN());
                 }
-                ret.add(sid.getStringValueArray()[0]);
+                sessions.put(sid.getStringValueArray()[0], createSession(entry));
             }
 
         } catch (LDAPException e) {
@@ -244,63 +354,35 @@ public class LDAPSecurityDomainSessionTable
             }
         }
 
-        return ret.elements();
-    }
-
-    private String getStringValue(String sessionId, String attr) throws Exception {
-
-        CMSEngine engine = CMS.getCMSEngine();
-        EngineConfig cs = engine.getConfig();
-        LDAPConfig ldapConfig = cs.getInternalDBConfig();
-
-        LDAPConnection conn = null;
-        String ret = null;
-        try {
-            String basedn = ldapConfig.getBaseDN();
-            String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
-            String filter = "(cn=" + sessionId + ")";
-            String[] attrs = { attr };
-
-            conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
-            if (res.getCount() > 0) {
-                LDAPEntry entry = res.next();
-                LDAPAttribute searchAttribute = entry.getAttribute(attr);
-                if (searchAttribute == null) {
-                    throw new Exception("No Attribute " + attr + " for this session in LDAPEntry "+entry.getDN());
-                }
-                ret = searchAttribute.getStringValueArray()[0];
-            }
-
-        } finally {
-            try {
-                mLdapConnFactory.returnConn(conn);
-            } catch (Exception e) {
-                logger.warn("Unable to return LDAP connection: " + e.getMessage(), e);
+        synchronized (this) {
+            if (modificationCount == mModificationCount) {
+                mSessions = sessions;
+            } else {
+                logger.debug("LDAPSecurityDomainSessionTable: sessions modified during synchronization");
             }
         }
 
-        return ret;
+        return Collections.enumeration(sessions.keySet());
     }
 
     public String getIP(String sessionId) throws Exception {
-        return getStringValue(sessionId, "host");
+        Session session = getSession(sessionId);
+        return session == null ? null : session.ip;
     }
 
     public String getUID(String sessionId) throws Exception {
-        return getStringValue(sessionId, "uid");
+        Session session = getSession(sessionId);
+        return session == null ? null : session.uid;
     }
 
     public String getGroup(String sessionId) throws Exception {
-        return getStringValue(sessionId, "cmsUserGroup");
+        Session session = getSession(sessionId);
+        return session == null ? null : session.group;
     }
 
     public long getBeginTime(String sessionId) throws Exception {
-        String beginStr = getStringValue(sessionId, "dateOfCreate");
-        if (beginStr != null) {
-            return Long.parseLong(beginStr);
-        }
-        return -1;
+        Session session = getSession(sessionId);
+        return session == null ? -1 : session.beginTime;
     }
 
     public long getTimeToLive() {
@@ -308,34 +390,7 @@ public class LDAPSecurityDomainSessionTable
     }
 
     public int getSize() throws Exception {
-
-        CMSEngine engine = CMS.getCMSEngine();
-        EngineConfig cs = engine.getConfig();
-        LDAPConfig ldapConfig = cs.getInternalDBConfig();
-
-        LDAPConnection conn = null;
-        int ret = 0;
-
-        try {
-            String basedn = ldapConfig.getBaseDN();
-            String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
-            String filter = "(objectclass=securityDomainSessionEntry)";
-            String[] attrs = { "cn" };
-
-            conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
-            ret = res.getCount();
-
-        } finally {
-            try {
-                mLdapConnFactory.returnConn(conn);
-            } catch (Exception e) {
-                logger.warn("Unable to return LDAP connection: " + e.getMessage(), e);
-            }
-        }
-
-
-        return ret;
+        return mSessions.size();
     }
 
     public void shutdown() {
@@ -23,8 +23,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -53,6 +58,7 @@ import netscape.ldap.LDAPModificationSet;
 import netscape.ldap.LDAPSearchConstraints;
 import netscape.ldap.LDAPSearchResults;
 import netscape.ldap.LDAPv2;
+import netscape.ldap.controls.LDAPPersistSearchControl;
 
 /**
  * This class defines low-level LDAP usr/grp management
@@ -81,6 +87,29 @@ public class UGSubsystem {
     protected transient LdapBoundConnFactory mLdapConnFactory = null;
     protected String mBaseDN = null;
 
+    // incremented whenever a user, user certificate or group is changed
+    private final AtomicLong mModificationCount = new AtomicLong();
+
+    // group names (in lower case) of each user DN (in lower case)
+    private Map<String, GroupMembership> mGroupCache;
+    private int mGroupCacheSize;
+    private long mGroupCacheTimeout;
+    private long mGroupCacheMonitoredTimeout;
+
+    // incremented whenever the group cache is cleared, so that
+    // memberships read before a change are not stored
+    private final AtomicLong mGroupCacheGeneration = new AtomicLong();
+
+    private volatile boolean mGroupMonitorActive;
+    private volatile boolean mStopped;
+    private Thread mGroupMonitor;
+
+    static class GroupMembership {
+        Set<String> groups;
+        List<String> groupIDs;
+        long expirationTime;
+    }
+
     /**
      * Constructs LDAP based usr/grp management
      */
@@ -97,12 +126,45 @@ public class UGSubsystem {
 
         mLdapConnFactory = new LdapBoundConnFactory("UGSubsystem");
         mLdapConnFactory.init(socketConfig, ldapConfig, passwordStore);
+
+        if (config.getBoolean("groupCache.enable", true)) {
+
+            mGroupCacheSize = config.getInteger("groupCache.size", 10000);
+            // used when changes cannot be monitored with persistent search
+            mGroupCacheTimeout = config.getInteger("groupCache.timeout", 30) * 1000L;
+            // safety net when changes are monitored with persistent search
+            mGroupCacheMonitoredTimeout = config.getInteger("groupCache.monitoredTimeout", 600) * 1000L;
+
+            logger.info("UGSubsystem: group cache size: " + mGroupCacheSize);
+            mGroupCache = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Starts monitoring group changes with a persistent search, so
+     * the group cache can keep memberships longer. This is only done
+     * by the server, not by short-lived tools using this subsystem.
+     */
+    public void startGroupMonitor() {
+
+        if (mGroupCache == null || mGroupMonitor != null) {
+            return;
+        }
+
+        mGroupMonitor = new Thread(new GroupChangeMonitor(), "groupChangeMonitor");
+        mGroupMonitor.setDaemon(true);
+        mGroupMonitor.start();
     }
 
     /**
      * Disconnects usr/grp manager from the LDAP
      */
     public void shutdown() {
+
+        mStopped = true;
+        mGroupMonitor = null;
+        clearGroupCache();
+
         try {
             if (mLdapConnFactory != null) {
                 mLdapConnFactory.reset();
@@ -112,6 +174,28 @@ public class UGSubsystem {
         }
     }
 
+    /**
+     * Returns a counter that changes whenever users, user certificates
+     * or groups are modified through this subsystem. Data cached from
+     * the user database is stale if the counter has changed since it
+     * was read.
+     */
+    public long getModificationCount() {
+        return mModificationCount.get();
+    }
+
+    protected void modified() {
+        mModificationCount.incrementAndGet();
+        clearGroupCache();
+    }
+
+    protected void clearGroupCache() {
+        mGroupCacheGeneration.incrementAndGet();
+        if (mGroupCache != null) {
+            mGroupCache.clear();
+        }
+    }
+
     public User createUser(String id) {
         User user = new User();
         user.setUserID(id);
@@ -723,6 +807,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -774,6 +859,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user certificate: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -816,6 +902,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add seeAlso: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -858,6 +945,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove seeAlso: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -970,6 +1058,7 @@ public class UGSubsystem {
                 throw new EUsrGrpException("Unable to remove user certificate: " + e.getMessage(), e);
 
             } finally {
+                modified();
                 if (ldapconn != null)
                     returnConn(ldapconn);
             }
@@ -1003,6 +1092,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user to group: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1031,6 +1121,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove user from group: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1066,6 +1157,7 @@ public class UGSubsystem {
             logger.error("Unable to remove user: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1202,6 +1294,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to modify user: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1549,9 +1642,214 @@ public class UGSubsystem {
 
     /**
      * checks if the given user DN is in the specified group
-     * by running an ldap search for the user in the group
+     * using the group cache, or by running an ldap search for
+     * the user in the group if the cache is disabled
      */
     protected boolean isMemberOfLdapGroup(String userid, String groupname) {
+
+        if (mGroupCache == null) {
+            return searchLdapGroupMember(userid, groupname);
+        }
+
+        Set<String> groups = getCachedGroups(userid);
+        if (groups == null) {
+            return searchLdapGroupMember(userid, groupname);
+        }
+
+        boolean founduser = groups.contains(groupname.toLowerCase());
+        logger.trace("authorization result (cached): " + founduser);
+        return founduser;
+    }
+
+    /**
+     * Returns the names (in lower case) of the groups the user belongs
+     * to from the cache, loading them with a single search if needed.
+     *
+     * @return group names, or null if they cannot be loaded
+     */
+    protected Set<String> getCachedGroups(String userDN) {
+        GroupMembership membership = getGroupMembership(userDN);
+        return membership == null ? null : membership.groups;
+    }
+
+    /**
+     * Returns the IDs of the groups the user belongs to, e.g. to
+     * include them in audit events. The groups are read from the
+     * group cache if it is enabled, otherwise they are loaded with
+     * a single search for the user's memberships.
+     *
+     * @param userID user ID
+     * @return group IDs, or null if they cannot be loaded
+     */
+    public List<String> getGroupIDs(String userID) {
+        GroupMembership membership = getGroupMembership(getUserDN(userID));
+        return membership == null ? null : membership.groupIDs;
+    }
+
+    /**
+     * Returns the groups the user belongs to from the cache, loading
+     * them with a single search if needed. If the cache is disabled
+     * the groups are always loaded.
+     *
+     * @return group membership, or null if it cannot be loaded
+     */
+    protected GroupMembership getGroupMembership(String userDN) {
+
+        String key = userDN.toLowerCase();
+        long now = System.currentTimeMillis();
+
+        GroupMembership membership = mGroupCache == null ? null : mGroupCache.get(key);
+        if (membership != null && membership.expirationTime > now) {
+            return membership;
+        }
+
+        long generation = mGroupCacheGeneration.get();
+
+        String filter = "(&(objectclass=groupofuniquenames)(uniquemember=" + LDAPUtil.escapeFilter(userDN) + "))";
+        String attrs[] = { "cn" };
+
+        LDAPConnection ldapconn = null;
+        Set<String> groups = new HashSet<>();
+        List<String> groupIDs = new ArrayList<>();
+
+        try {
+            ldapconn = getConn();
+
+            logger.trace("UGSubsystem: loading groups of " + userDN);
+            LDAPSearchResults res = ldapconn.search(getGroupBaseDN(), LDAPv2.SCOPE_ONE, filter, attrs, false);
+
+            while (res.hasMoreElements()) {
+                LDAPEntry entry = res.next();
+                LDAPAttribute cn = entry.getAttribute("cn");
+                if (cn == null) continue;
+
+                String[] names = cn.getStringValueArray();
+                if (names.length == 0) continue;
+
+                // same group ID as buildGroup()
+                groupIDs.add(names[0]);
+
+                for (String name : names) {
+                    groups.add(name.toLowerCase());
+                }
+            }
+
+        } catch (LDAPException | ELdapException e) {
+            logger.warn("UGSubsystem: Unable to load groups of " + userDN + ": " + e.getMessage());
+            return null;
+
+        } finally {
+            if (ldapconn != null)
+                returnConn(ldapconn);
+        }
+
+        membership = new GroupMembership();
+        membership.groups = Collections.unmodifiableSet(groups);
+        membership.groupIDs = Collections.unmodifiableList(groupIDs);
+        membership.expirationTime = now + (mGroupMonitorActive ? mGroupCacheMonitoredTimeout : mGroupCacheTimeout);
+
+        if (mGroupCache == null) {
+            return membership;
+        }
+
+        if (mGroupCache.size() >= mGroupCacheSize) {
+            mGroupCache.clear();
+        }
+
+        // do not store memberships that might have changed during the search
+        if (generation == mGroupCacheGeneration.get()) {
+            mGroupCache.put(key, membership);
+        }
+
+        return membership;
+    }
+
+    /**
+     * Monitors changes to groups with a persistent search and clears
+     * the group cache when a group is added, modified, or removed.
+     * While the search is not active, cached memberships expire after
+     * the shorter timeout.
+     */
+    class GroupChangeMonitor implements Runnable {
+
+        public void run() {
+
+            int op = LDAPPersistSearchControl.ADD
+                | LDAPPersistSearchControl.MODIFY
+                | LDAPPersistSearchControl.DELETE
+                | LDAPPersistSearchControl.MODDN;
+            LDAPPersistSearchControl persistCtrl =
+                new LDAPPersistSearchControl(op, true, false, true);
+
+            LDAPConnection conn = null;
+
+            logger.info("Group change monitor: starting.");
+
+            while (!mStopped) {
+
+                long delay = 1000;
+
+                try {
+                    conn = getConn();
+
+                    LDAPSearchConstraints cons = conn.getSearchConstraints();
+                    cons.setServerControls(persistCtrl);
+                    cons.setBatchSize(1);
+                    cons.setServerTimeLimit(0 /* seconds */);
+
+                    String[] attrs = { "cn" };
+                    LDAPSearchResults results = conn.search(
+                        getGroupBaseDN(), LDAPConnection.SCOPE_ONE,
+                        "(objectclass=groupofuniquenames)", attrs, false, cons);
+
+                    // groups might have changed while the search was not active
+                    clearGroupCache();
+                    mGroupMonitorActive = true;
+
+                    while (!mStopped && results.hasMoreElements()) {
+                        LDAPEntry entry = results.next();
+                        logger.debug("Group change monitor: " + entry.getDN() + " changed");
+                        clearGroupCache();
+                    }
+
+                } catch (ELdapException e) {
+                    logger.warn("Group change monitor: failed to get LDAPConnection. Retrying in 1 second.");
+
+                } catch (LDAPException e) {
+                    // e.g. persistent search is not supported, rely on the timeout
+                    logger.warn("Group change monitor: Caught exception: " + e.getMessage() + ". Retrying in 60 seconds.", e);
+                    delay = 60000;
+
+                } finally {
+                    mGroupMonitorActive = false;
+
+                    if (conn != null) {
+                        returnConn(conn);
+                        conn = null;
+                    }
+                }
+
+                if (mStopped) {
+                    break;
+                }
+
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            logger.info("Group change monitor: stopping.");
+        }
+    }
+
+    /**
+     * checks if the given user DN is in the specified group
+     * by running an ldap search for the user in the group
+     */
+    protected boolean searchLdapGroupMember(String userid, String groupname) {
         String basedn = "cn=" + LDAPUtil.escapeRDNValue(groupname) + ",ou=groups," + mBaseDN;
         LDAPConnection ldapconn = null;
         boolean founduser = false;
@@ -1659,6 +1957,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add group: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1687,6 +1986,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove group: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1747,6 +2047,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to modify group: " + e.getMessage(), e);
 
         } finally {
+            modified();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
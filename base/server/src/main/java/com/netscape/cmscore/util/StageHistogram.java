@@ -0,0 +1,98 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.util;
+
+import com.netscape.certsrv.util.StageTimingData;
+
+/**
+ * A histogram of the times a stage of the certificate issuance took.
+ */
+public class StageHistogram {
+
+    // upper bounds of the buckets in milliseconds
+    public final static long[] BUCKETS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000
+    };
+
+    private long count;
+    private long totalTime;
+    private long minTime;
+    private long maxTime;
+
+    // the last element counts the times above the last bucket
+    private long[] histogram = new long[BUCKETS.length + 1];
+
+    public synchronized void add(long time) {
+
+        if (count == 0 || time < minTime) {
+            minTime = time;
+        }
+
+        if (time > maxTime) {
+            maxTime = time;
+        }
+
+        count++;
+        totalTime += time;
+
+        int i = 0;
+        while (i < BUCKETS.length && time > BUCKETS[i]) {
+            i++;
+        }
+
+        histogram[i]++;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that contains the given
+     * percentile, or the maximum time if it is above the last bucket.
+     */
+    long getPercentile(int percentile) {
+
+        long threshold = (count * percentile + 99) / 100;
+        long sum = 0;
+
+        for (int i = 0; i < BUCKETS.length; i++) {
+            sum += histogram[i];
+            if (sum >= threshold) {
+                return Math.min(BUCKETS[i], maxTime);
+            }
+        }
+
+        return maxTime;
+    }
+
+    public synchronized StageTimingData toData(String profileID, String stage) {
+
+        StageTimingData data = new StageTimingData();
+        data.setProfileID(profileID);
+        data.setStage(stage);
+        data.setCount(count);
+        data.setTotalTime(totalTime);
+        data.setMinTime(minTime);
+        data.setMaxTime(maxTime);
+        data.setAverageTime(count == 0 ? 0 : totalTime / count);
+        data.setP50(getPercentile(50));
+        data.setP90(getPercentile(90));
+        data.setP99(getPercentile(99));
+        data.setBuckets(BUCKETS.clone());
+        data.setHistogram(histogram.clone());
+
+        return data;
+    }
+}
@@ -17,13 +17,19 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.certsrv.util.StageTimingData;
 import com.netscape.certsrv.util.StatsEvent;
 
 /**
@@ -41,6 +47,10 @@ public class StatsSubsystem implements IStatsSubsystem {
     private Date mStartTime = new Date();
     private Hashtable<String, Vector<StatsMilestone>> mHashtable = new Hashtable<String, Vector<StatsMilestone>>();
 
+    // stage timings per profile
+    private Map<String, Map<String, StageHistogram>> mStageTimings = new ConcurrentHashMap<>();
+    private ThreadLocal<String> mProfile = new ThreadLocal<>();
+
     /**
      * Constructs a certificate server.
      */
@@ -137,9 +147,46 @@ public class StatsSubsystem implements IStatsSubsystem {
         }
     }
 
+    public String setProfile(String profileID) {
+        String previous = mProfile.get();
+        if (profileID == null) {
+            mProfile.remove();
+        } else {
+            mProfile.set(profileID);
+        }
+        return previous;
+    }
+
+    public void recordStage(String stage, long startTime) {
+        String profileID = mProfile.get();
+        if (profileID == null) {
+            return;
+        }
+        recordStage(profileID, stage, startTime);
+    }
+
+    public void recordStage(String profileID, String stage, long startTime) {
+        long time = System.currentTimeMillis() - startTime;
+        mStageTimings
+                .computeIfAbsent(profileID, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(stage, k -> new StageHistogram())
+                .add(time);
+    }
+
+    public Collection<StageTimingData> getStageTimings() {
+        Collection<StageTimingData> timings = new ArrayList<>();
+        for (Map.Entry<String, Map<String, StageHistogram>> profile : new TreeMap<>(mStageTimings).entrySet()) {
+            for (Map.Entry<String, StageHistogram> stage : new TreeMap<>(profile.getValue()).entrySet()) {
+                timings.add(stage.getValue().toData(profile.getKey(), stage.getKey()));
+            }
+        }
+        return timings;
+    }
+
     public void resetCounters() {
         mStartTime = new Date();
         mAllTrans.resetCounters();
+        mStageTimings.clear();
     }
 
     public StatsEvent getMainStatsEvent() {
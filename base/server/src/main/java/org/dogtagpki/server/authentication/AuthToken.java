@@ -71,6 +71,19 @@ public class AuthToken implements IAuthToken {
         set(TOKEN_AUTHTIME, new Date());
     }
 
+
+    /**
+     * Creates a copy of this token. Modifying the attributes of
+     * the copy does not affect this token.
+     *
+     * @return A copy of this token.
+     */
+    public AuthToken copy() {
+        AuthToken authToken = new AuthToken((AuthManager) null);
+        authToken.mAttrs = new Hashtable<String, Object>(mAttrs);
+        return authToken;
+    }
+
     public Object get(String attrName) {
         return mAttrs.get(attrName);
     }
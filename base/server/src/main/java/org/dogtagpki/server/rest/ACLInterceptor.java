@@ -17,8 +17,6 @@
 //--- END COPYRIGHT BLOCK ---
 package org.dogtagpki.server.rest;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.security.Principal;
@@ -68,67 +66,109 @@ public class ACLInterceptor implements ContainerRequestFilter {
     private final static String LOGGING_MISSING_ACL_MAPPING = "ACL mapping not found; OK";
     private final static String LOGGING_INVALID_ACL_MAPPING = "internal error: invalid ACL mapping";
 
-    Properties properties;
+    /**
+     * The ACL of a resource method.
+     */
+    static class ACL {
 
-    @Context
-    ServletContext servletContext;
+        // resource class and method name for audit
+        String info;
 
-    @Context
-    SecurityContext securityContext;
+        // ACL mapping name, null if authorization is not required
+        String name;
 
-    public synchronized void loadProperties() throws IOException {
+        // ACL configuration, null if not configured
+        String value;
 
-        if (properties != null)
-            return;
+        // resource and operation
+        String[] values;
+    }
 
-        properties = new Properties();
+    MappingTable<ACL> acls = new MappingTable<ACL>("acl.properties") {
+        protected ACL createMapping(Method method, Class<?> clazz, Properties properties) {
 
-        String context = servletContext.getContextPath();
-        String subsystem = context.startsWith("/") ? context.substring(1) : context;
+            ACL acl = new ACL();
+            acl.info = clazz.getSimpleName() + "." + method.getName();
 
-        // load default mapping
-        String defaultMapping = "/usr/share/pki/" + subsystem + "/conf/acl.properties";
-        logger.debug("ACLInterceptor: loading " + defaultMapping);
-        try (FileReader in = new FileReader(defaultMapping)) {
-            properties.load(in);
-        }
+            ACLMapping aclMapping = getACLMapping(method, clazz);
+            if (aclMapping == null) {
+                return acl;
+            }
 
-        // load custom mapping
-        File customMapping = new File(System.getProperty("catalina.base")
-                + "/" + subsystem + "/conf/acl.properties");
-        logger.debug("ACLInterceptor: checking " + customMapping);
-        if (customMapping.exists()) {
-            logger.debug("ACLInterceptor: loading " + customMapping);
-            try (FileReader in = new FileReader(customMapping)) {
-                properties.load(in);
+            acl.name = aclMapping.value();
+            acl.value = properties.getProperty(acl.name);
+
+            if (acl.value != null) {
+                acl.values = acl.value.split(",");
             }
+
+            return acl;
         }
+    };
+
+    static ACLMapping getACLMapping(Method method, Class<?> clazz) {
+
+        ACLMapping aclMapping = method.getAnnotation(ACLMapping.class);
+
+        // If not available, get ACL mapping for the class.
+        if (aclMapping == null) {
+            aclMapping = clazz.getAnnotation(ACLMapping.class);
+        }
+
+        return aclMapping;
     }
 
+    @Context
+    ServletContext servletContext;
+
+    @Context
+    SecurityContext securityContext;
+
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
         ResourceMethodInvoker methodInvoker = (ResourceMethodInvoker) requestContext
                 .getProperty("org.jboss.resteasy.core.ResourceMethodInvoker");
-        Method method = methodInvoker.getMethod();
-        Class<?> clazz = methodInvoker.getResourceClass();
-        String auditInfo =  clazz.getSimpleName() + "." + method.getName();
+
+        ACL acl;
+        try {
+            acl = acls.getMapping(servletContext, methodInvoker);
+
+        } catch (IOException e) {
+
+            Method method = methodInvoker.getMethod();
+            Class<?> clazz = methodInvoker.getResourceClass();
+
+            if (getACLMapping(method, clazz) != null) {
+
+                audit(AuthzEvent.createFailureEvent(
+                            ILogger.UNIDENTIFIED,
+                            null, //resource
+                            null, //operation
+                            LOGGING_ACL_PARSING_ERROR + ":"
+                                    + clazz.getSimpleName() + "." + method.getName()));
+
+                logger.error("ACLInterceptor: Unable to load ACL mappings: " + e.getMessage(), e);
+                throw new Failure(e);
+            }
+
+            // anonymous and authentication-only resources do not use the mappings
+            logger.warn("ACLInterceptor: Unable to load ACL mappings: " + e.getMessage());
+            acl = acls.createMapping(method, clazz, new Properties());
+        }
+
+        String auditInfo = acl.info;
 
         logger.debug("ACLInterceptor: " + auditInfo + "()");
         String auditSubjectID = ILogger.UNIDENTIFIED;
 
         /*
-         * when aclMapping is null, it's either of the following :
+         * when acl.name is null, it's either of the following :
          *   - only authentication needed
          *   - allows anonymous, i.e. no authentication or authorization needed
-         * use authzRequired to track when aclMapping is not null for ease of following the code
+         * use authzRequired to track when acl.name is not null for ease of following the code
          */
         boolean authzRequired = true;
-        ACLMapping aclMapping = method.getAnnotation(ACLMapping.class);
-        // If not available, get ACL mapping for the class.
-        if (aclMapping == null) {
-            aclMapping = clazz.getAnnotation(ACLMapping.class);
-        }
-        if (aclMapping == null) {
+        if (acl.name == null) {
             logger.debug("ACLInterceptor.filter: no authorization required");
             authzRequired = false;
         }
@@ -203,28 +243,11 @@ public class ACLInterceptor implements ContainerRequestFilter {
             return;
         }
 
-        // we know aclMapping is not null now (!noAuthzRequired); authz game on...
-        String name = aclMapping.value();
-        logger.debug("ACLInterceptor: mapping: " + name);
-
-        String values[] = null;
-        String value = null;
-        try {
-            loadProperties();
-
-            value = properties.getProperty(name);
-
-        } catch (IOException e) {
-
-            audit(AuthzEvent.createFailureEvent(
-                        auditSubjectID,
-                        null, //resource
-                        null, //operation
-                        LOGGING_ACL_PARSING_ERROR + ":" + auditInfo));
+        // we know acl.name is not null now (!noAuthzRequired); authz game on...
+        logger.debug("ACLInterceptor: mapping: " + acl.name);
 
-            e.printStackTrace();
-            throw new Failure(e);
-        }
+        String value = acl.value;
+        String values[] = acl.values;
 
         // If no property defined, allow request.
         if (value == null) {
@@ -239,8 +262,6 @@ public class ACLInterceptor implements ContainerRequestFilter {
             return;
         }
 
-        values = value.split(",");
-
         // If invalid mapping, reject request.
         if (values.length != 2) {
             logger.error("ACLInterceptor: Invalid ACL mapping: " + value);
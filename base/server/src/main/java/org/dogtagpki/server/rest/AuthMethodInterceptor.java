@@ -17,8 +17,6 @@
 //--- END COPYRIGHT BLOCK ---
 package org.dogtagpki.server.rest;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.security.Principal;
@@ -51,81 +49,71 @@ public class AuthMethodInterceptor implements ContainerRequestFilter {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AuthMethodInterceptor.class);
 
-    Properties properties;
+    /**
+     * The authentication methods allowed for a resource method.
+     */
+    static class AuthMethods {
 
-    @Context
-    ServletContext servletContext;
+        // resource class and method name
+        String info;
 
-    @Context
-    SecurityContext securityContext;
+        // authentication method mapping name
+        String name;
 
-    public synchronized void loadProperties() throws IOException {
+        Collection<String> methods = new HashSet<String>();
+    }
 
-        if (properties != null)
-            return;
+    MappingTable<AuthMethods> authMethodMappings = new MappingTable<AuthMethods>("auth-method.properties") {
+        protected AuthMethods createMapping(Method method, Class<?> clazz, Properties properties) {
 
-        properties = new Properties();
+            AuthMethods authMethods = new AuthMethods();
+            authMethods.info = clazz.getSimpleName() + "." + method.getName();
 
-        String context = servletContext.getContextPath();
-        String subsystem = context.startsWith("/") ? context.substring(1) : context;
+            // Get authentication mapping for the method.
+            AuthMethodMapping authMapping = method.getAnnotation(AuthMethodMapping.class);
 
-        // load default mapping
-        String defaultMapping = "/usr/share/pki/" + subsystem + "/conf/auth-method.properties";
-        logger.debug("AuthMethodInterceptor: loading " + defaultMapping);
-        try (FileReader in = new FileReader(defaultMapping)) {
-            properties.load(in);
-        }
+            // If not available, get authentication mapping for the class.
+            if (authMapping == null) {
+                authMapping = clazz.getAnnotation(AuthMethodMapping.class);
+            }
 
-        // load custom mapping
-        File customMapping = new File(System.getProperty("catalina.base") +
-                "/" + subsystem + "/conf/auth-method.properties");
-        logger.debug("AuthMethodInterceptor: checking " + customMapping);
-        if (customMapping.exists()) {
-            logger.debug("AuthMethodInterceptor: loading " + customMapping);
-            try (FileReader in = new FileReader(customMapping)) {
-                properties.load(in);
+            if (authMapping == null) {
+                // If not available, use the default mapping.
+                authMethods.name = "default";
+            } else {
+                // Get the method label
+                authMethods.name = authMapping.value();
             }
+
+            String value = properties.getProperty(authMethods.name);
+            if (value != null) {
+                for (String v : value.split(",")) {
+                    authMethods.methods.add(v.trim());
+                }
+            }
+
+            return authMethods;
         }
-    }
+    };
+
+    @Context
+    ServletContext servletContext;
+
+    @Context
+    SecurityContext securityContext;
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
         ResourceMethodInvoker methodInvoker = (ResourceMethodInvoker) requestContext
                 .getProperty("org.jboss.resteasy.core.ResourceMethodInvoker");
-        Method method = methodInvoker.getMethod();
-        Class<?> clazz = methodInvoker.getResourceClass();
-
-        logger.debug("AuthMethodInterceptor: " + clazz.getSimpleName() + "." + method.getName() + "()");
-
-        // Get authentication mapping for the method.
-        AuthMethodMapping authMapping = method.getAnnotation(AuthMethodMapping.class);
-
-        // If not available, get authentication mapping for the class.
-        if (authMapping == null) {
-            authMapping = clazz.getAnnotation(AuthMethodMapping.class);
-        }
-
-        String name;
-        if (authMapping == null) {
-            // If not available, use the default mapping.
-            name = "default";
-        } else {
-            // Get the method label
-            name = authMapping.value();
-        }
-
-        logger.debug("AuthMethodInterceptor: mapping: " + name);
 
         try {
-            loadProperties();
+            AuthMethods mapping = authMethodMappings.getMapping(servletContext, methodInvoker);
 
-            String value = properties.getProperty(name);
-            Collection<String> authMethods = new HashSet<String>();
-            if (value != null) {
-                for (String v : value.split(",")) {
-                    authMethods.add(v.trim());
-                }
-            }
+            logger.debug("AuthMethodInterceptor: " + mapping.info + "()");
+            logger.debug("AuthMethodInterceptor: mapping: " + mapping.name);
+
+            Collection<String> authMethods = mapping.methods;
 
             logger.debug("AuthMethodInterceptor: required auth methods: " + authMethods);
 
@@ -175,7 +163,7 @@ public class AuthMethodInterceptor implements ContainerRequestFilter {
             throw new ForbiddenException("Authentication method not allowed.");
 
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("AuthMethodInterceptor: Unable to load authentication method mappings: " + e.getMessage(), e);
             throw new Failure(e);
         }
     }
@@ -0,0 +1,177 @@
+//--- BEGIN COPYRIGHT BLOCK ---
+//This program is free software; you can redistribute it and/or modify
+//it under the terms of the GNU General Public License as published by
+//the Free Software Foundation; version 2 of the License.
+//
+//This program is distributed in the hope that it will be useful,
+//but WITHOUT ANY WARRANTY; without even the implied warranty of
+//MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+//GNU General Public License for more details.
+//
+//You should have received a copy of the GNU General Public License along
+//with this program; if not, write to the Free Software Foundation, Inc.,
+//51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+//(C) 2020 Red Hat, Inc.
+//All rights reserved.
+//--- END COPYRIGHT BLOCK ---
+package org.dogtagpki.server.rest;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+
+import org.jboss.resteasy.core.ResourceMethodInvoker;
+
+/**
+ * A table of mappings for REST resource methods, built from the default
+ * and custom mapping files of the subsystem (e.g. acl.properties).
+ *
+ * The mapping of each resource method is resolved once and stored in
+ * an immutable snapshot of the mapping files, so requests can look up
+ * their mapping without locking or reflection. The mapping files are
+ * checked for changes periodically, and a modified file replaces the
+ * whole snapshot.
+ *
+ * @param <T> mapping type
+ */
+public abstract class MappingTable<T> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(MappingTable.class);
+
+    // minimum time between checks for modified mapping files (in milliseconds)
+    public final static long CHECK_INTERVAL = 5000;
+
+    class Snapshot {
+        Properties properties;
+        long defaultModified;
+        long customModified;
+        Map<ResourceMethodInvoker, T> mappings = new ConcurrentHashMap<>();
+    }
+
+    private String filename;
+    private File defaultFile;
+    private File customFile;
+
+    private volatile Snapshot snapshot;
+    private volatile long lastChecked;
+
+    public MappingTable(String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * Resolves the mapping of a resource method.
+     *
+     * @param method resource method
+     * @param clazz resource class
+     * @param properties mapping properties
+     * @return mapping (not null)
+     */
+    protected abstract T createMapping(Method method, Class<?> clazz, Properties properties);
+
+    public T getMapping(ServletContext servletContext, ResourceMethodInvoker methodInvoker) throws IOException {
+
+        Snapshot current = getSnapshot(servletContext);
+
+        T mapping = current.mappings.get(methodInvoker);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        mapping = createMapping(
+                methodInvoker.getMethod(),
+                methodInvoker.getResourceClass(),
+                current.properties);
+
+        T existing = current.mappings.putIfAbsent(methodInvoker, mapping);
+        return existing == null ? mapping : existing;
+    }
+
+    private Snapshot getSnapshot(ServletContext servletContext) throws IOException {
+
+        Snapshot current = snapshot;
+
+        if (current != null && System.currentTimeMillis() - lastChecked < CHECK_INTERVAL) {
+            return current;
+        }
+
+        return reload(servletContext);
+    }
+
+    private synchronized Snapshot reload(ServletContext servletContext) throws IOException {
+
+        long now = System.currentTimeMillis();
+        Snapshot current = snapshot;
+
+        // another thread might have checked the files already
+        if (current != null && now - lastChecked < CHECK_INTERVAL) {
+            return current;
+        }
+
+        if (defaultFile == null) {
+            String context = servletContext.getContextPath();
+            String subsystem = context.startsWith("/") ? context.substring(1) : context;
+
+            defaultFile = new File("/usr/share/pki/" + subsystem + "/conf/" + filename);
+            customFile = new File(System.getProperty("catalina.base")
+                    + "/" + subsystem + "/conf/" + filename);
+        }
+
+        lastChecked = now;
+
+        long defaultModified = defaultFile.lastModified();
+        long customModified = customFile.lastModified();
+
+        if (current != null
+                && current.defaultModified == defaultModified
+                && current.customModified == customModified) {
+            return current;
+        }
+
+        try {
+            snapshot = load(defaultModified, customModified);
+
+        } catch (IOException e) {
+            if (current == null) {
+                throw e;
+            }
+
+            logger.warn("MappingTable: Unable to reload " + filename + ": " + e.getMessage(), e);
+            return current;
+        }
+
+        return snapshot;
+    }
+
+    private Snapshot load(long defaultModified, long customModified) throws IOException {
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.properties = new Properties();
+        snapshot.defaultModified = defaultModified;
+        snapshot.customModified = customModified;
+
+        // load default mapping
+        logger.debug("MappingTable: loading " + defaultFile);
+        try (FileReader in = new FileReader(defaultFile)) {
+            snapshot.properties.load(in);
+        }
+
+        // load custom mapping
+        logger.debug("MappingTable: checking " + customFile);
+        if (customFile.exists()) {
+            logger.debug("MappingTable: loading " + customFile);
+            try (FileReader in = new FileReader(customFile)) {
+                snapshot.properties.load(in);
+            }
+        }
+
+        return snapshot;
+    }
+}
@@ -0,0 +1,68 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.dogtagpki.server.rest;
+
+import javax.ws.rs.core.Response;
+
+import com.netscape.certsrv.base.ResourceNotFoundException;
+import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.certsrv.util.StageTimingCollection;
+import com.netscape.certsrv.util.StageTimingData;
+import com.netscape.certsrv.util.StatsResource;
+import com.netscape.cms.servlet.base.PKIService;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+
+public class StatsService extends PKIService implements StatsResource {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StatsService.class);
+
+    @Override
+    public Response findStageTimings(String profileID, String stage) {
+
+        logger.info("StatsService: Finding stage timings");
+        logger.info("StatsService: - profile: " + profileID);
+        logger.info("StatsService: - stage: " + stage);
+
+        CMSEngine engine = CMS.getCMSEngine();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+
+        if (statsSub == null) {
+            throw new ResourceNotFoundException("Statistics not available");
+        }
+
+        StageTimingCollection response = new StageTimingCollection();
+
+        for (StageTimingData timing : statsSub.getStageTimings()) {
+
+            if (profileID != null && !profileID.equals(timing.getProfileID())) {
+                continue;
+            }
+
+            if (stage != null && !stage.equals(timing.getStage())) {
+                continue;
+            }
+
+            response.addEntry(timing);
+        }
+
+        response.setTotal(response.getEntries().size());
+
+        return createOKResponse(response);
+    }
+}
@@ -0,0 +1,174 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.realm;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.dogtagpki.server.authentication.AuthToken;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.cmscore.usrgrp.User;
+
+public class PKIPrincipalCacheTest {
+
+    // valid from 2020 to 2119
+    static final String VALID_CERT =
+            "MIIBOTCB36ADAgECAggpkYqpHCKcTDAKBggqhkjOPQQDAjAQMQ4wDAYDVQQDEwV2" +
+            "YWxpZDAgFw0yMDAxMDEwNDE1NThaGA8yMTE5MTIwODA0MTU1OFowEDEOMAwGA1UE" +
+            "AxMFdmFsaWQwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAATnBWWM6HQDZO1ggW8P" +
+            "kxlXElLfW23Elknj9HC0wIFn0Z2jH5yGMTCNAkORRe/SXGT2+74gILf8On8MkClB" +
+            "ofZdoyEwHzAdBgNVHQ4EFgQUuivRUz5z+zpELOiF2V/uOl0NbZcwCgYIKoZIzj0E" +
+            "AwIDSQAwRgIhAOxAxr6J4FR0Cfvh6d31IO0ak2zH3lLH1ybP8cCfY68TAiEAlT5m" +
+            "UsO5qy1VApRjC/fdtGDsBIa6gLMXC60yaCtsuIo=";
+
+    // expired in 2020
+    static final String EXPIRED_CERT =
+            "MIIBOjCB4aADAgECAghhIgAmA9kULjAKBggqhkjOPQQDAjASMRAwDgYDVQQDEwdl" +
+            "eHBpcmVkMB4XDTIwMDEwMTA0MTYwMloXDTIwMDEwMjA0MTYwMlowEjEQMA4GA1UE" +
+            "AxMHZXhwaXJlZDBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABMNlUhI81N9xYf95" +
+            "UNbSB+ixv/JNuqQtX2UdhtaTaaZSkTGY0a7F5zv7lvUk345WgvLmA/O3Wz3Yh0ix" +
+            "CM78DeujITAfMB0GA1UdDgQWBBTO/e87u2UdW08+6pRKwIW0/Ki37jAKBggqhkjO" +
+            "PQQDAgNIADBFAiEAzdkXWlM7rTIkKb8QiLPUkm8/PJpxIxSIEb3fF3YZoG0CIGFM" +
+            "/OSgBifLEFbW5QuWy1c7veKhnzy8fNWPJsT9KIq/";
+
+    // valid from 2090
+    static final String FUTURE_CERT =
+            "MIIBPTCB46ADAgECAggZoaUxvRSYADAKBggqhkjOPQQDAjARMQ8wDQYDVQQDEwZm" +
+            "dXR1cmUwIhgPMjA5MDAxMDEwNDE2MDRaGA8yMDkxMDEwMTA0MTYwNFowETEPMA0G" +
+            "A1UEAxMGZnV0dXJlMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEtTwxRqRobg73" +
+            "3QeYB99gDF6s2EoC30pim0ymAvzViRCXVUq9rdY38/3Jlkb1zx67Umt+lVBzt7JF" +
+            "9yC7Z2VOeqMhMB8wHQYDVR0OBBYEFCC3C0wvsBMza5S/dgkkUl5WyUy3MAoGCCqG" +
+            "SM49BAMCA0kAMEYCIQDmstUB9+XeMmv33ne9aIWPhDbERNHVMXYZLrk4RteHIgIh" +
+            "AOF57FbVtqjliS9vZnI5sNy9vxelnpZ38lFqaQl6Qn9e";
+
+    PKIPrincipalCache cache;
+
+    X509Certificate createCert(String data) throws Exception {
+        CertificateFactory factory = CertificateFactory.getInstance("X.509");
+        byte[] bytes = Base64.getDecoder().decode(data);
+        return (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(bytes));
+    }
+
+    PKIPrincipal createPrincipal(String userID) {
+
+        User user = new User();
+        user.setUserID(userID);
+
+        AuthToken authToken = new AuthToken(null);
+        authToken.set(IAuthToken.USER_ID, userID);
+
+        return new PKIPrincipal(user, null, Arrays.asList("Administrators"), authToken);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new PKIPrincipalCache(10, 60000);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+
+        X509Certificate cert = createCert(VALID_CERT);
+        String fingerprint = PKIPrincipalCache.getFingerprint(cert);
+
+        Assert.assertNull(cache.get(fingerprint, 0));
+
+        cache.put(fingerprint, cert, createPrincipal("admin"), 0);
+
+        PKIPrincipal principal = cache.get(fingerprint, 0);
+        Assert.assertNotNull(principal);
+        Assert.assertEquals("admin", principal.getName());
+        Assert.assertEquals("admin", principal.getAuthToken().getInString(IAuthToken.USER_ID));
+        Assert.assertArrayEquals(new String[] { "Administrators" }, principal.getRoles());
+    }
+
+    @Test
+    public void testModificationCount() throws Exception {
+
+        X509Certificate cert = createCert(VALID_CERT);
+        String fingerprint = PKIPrincipalCache.getFingerprint(cert);
+
+        cache.put(fingerprint, cert, createPrincipal("admin"), 1);
+        Assert.assertNotNull(cache.get(fingerprint, 1));
+
+        // the user database has been modified
+        Assert.assertNull(cache.get(fingerprint, 2));
+
+        // the entry has been removed
+        Assert.assertNull(cache.get(fingerprint, 1));
+    }
+
+    @Test
+    public void testTokenCopy() throws Exception {
+
+        X509Certificate cert = createCert(VALID_CERT);
+        String fingerprint = PKIPrincipalCache.getFingerprint(cert);
+
+        PKIPrincipal principal = createPrincipal("admin");
+        cache.put(fingerprint, cert, principal, 0);
+
+        // modifying the token of a request does not affect the cache
+        principal.getAuthToken().set(IAuthToken.USER_ID, "other");
+
+        PKIPrincipal principal1 = cache.get(fingerprint, 0);
+        principal1.getAuthToken().set(IAuthToken.USER_ID, "other");
+
+        PKIPrincipal principal2 = cache.get(fingerprint, 0);
+        Assert.assertNotSame(principal1.getAuthToken(), principal2.getAuthToken());
+        Assert.assertEquals("admin", principal2.getAuthToken().getInString(IAuthToken.USER_ID));
+    }
+
+    @Test
+    public void testCertValidity() throws Exception {
+
+        X509Certificate expiredCert = createCert(EXPIRED_CERT);
+        String expiredFingerprint = PKIPrincipalCache.getFingerprint(expiredCert);
+
+        cache.put(expiredFingerprint, expiredCert, createPrincipal("expired"), 0);
+        Assert.assertNull(cache.get(expiredFingerprint, 0));
+
+        X509Certificate futureCert = createCert(FUTURE_CERT);
+        String futureFingerprint = PKIPrincipalCache.getFingerprint(futureCert);
+
+        cache.put(futureFingerprint, futureCert, createPrincipal("future"), 0);
+        Assert.assertNull(cache.get(futureFingerprint, 0));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+
+        cache = new PKIPrincipalCache(10, 50);
+
+        X509Certificate cert = createCert(VALID_CERT);
+        String fingerprint = PKIPrincipalCache.getFingerprint(cert);
+
+        cache.put(fingerprint, cert, createPrincipal("admin"), 0);
+        Assert.assertNotNull(cache.get(fingerprint, 0));
+
+        Thread.sleep(100);
+
+        Assert.assertNull(cache.get(fingerprint, 0));
+    }
+}
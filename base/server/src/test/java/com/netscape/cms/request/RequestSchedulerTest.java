@@ -0,0 +1,308 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.request;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netscape.certsrv.base.ServiceUnavailableException;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cmscore.base.PropConfigStore;
+import com.netscape.cmscore.request.RequestDefaultStub;
+
+public class RequestSchedulerTest {
+
+    List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+
+    RequestScheduler createScheduler(String... properties) throws Exception {
+
+        PropConfigStore config = new PropConfigStore();
+        for (int i = 0; i < properties.length; i += 2) {
+            config.putString(properties[i], properties[i + 1]);
+        }
+
+        RequestScheduler scheduler = new RequestScheduler();
+        scheduler.init(config);
+
+        return scheduler;
+    }
+
+    /**
+     * Submits a request in a new thread and waits until it is queued.
+     */
+    void submit(RequestScheduler scheduler, TestRequest request) throws Exception {
+
+        int queued = scheduler.getQueuedRequests();
+
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.requestIn(request);
+                admitted.add(request.name);
+            } catch (ServiceUnavailableException e) {
+                admitted.add("rejected " + request.name);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        waitFor(() -> scheduler.getQueuedRequests() > queued || admitted.contains(request.name));
+    }
+
+    void waitFor(BooleanSupplier condition) throws Exception {
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                Assert.fail("Timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "2");
+
+        TestRequest r1 = new TestRequest("r1", "A", null, null);
+        TestRequest r2 = new TestRequest("r2", "A", null, null);
+        TestRequest r3 = new TestRequest("r3", "A", null, null);
+
+        scheduler.requestIn(r1);
+        scheduler.requestIn(r2);
+        Assert.assertEquals(2, scheduler.getRunningRequests());
+
+        submit(scheduler, r3);
+        Assert.assertEquals(1, scheduler.getQueuedRequests());
+        Assert.assertTrue(admitted.isEmpty());
+
+        scheduler.requestOut(r1);
+        waitFor(() -> admitted.contains("r3"));
+
+        Assert.assertEquals(2, scheduler.getRunningRequests());
+        Assert.assertEquals(0, scheduler.getQueuedRequests());
+        Assert.assertEquals(3, scheduler.getAdmittedRequests());
+    }
+
+    @Test
+    public void testTenantRotation() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "1",
+                "tenant", "authority");
+
+        TestRequest r0 = new TestRequest("r0", "A", null, null);
+        TestRequest a1 = new TestRequest("a1", "A", null, null);
+        TestRequest a2 = new TestRequest("a2", "A", null, null);
+        TestRequest b1 = new TestRequest("b1", "B", null, null);
+
+        scheduler.requestIn(r0);
+
+        submit(scheduler, a1);
+        submit(scheduler, a2);
+        submit(scheduler, b1);
+        Assert.assertEquals(3, scheduler.getQueuedRequests());
+
+        scheduler.requestOut(r0);
+        waitFor(() -> admitted.size() == 1);
+
+        scheduler.requestOut(a1);
+        waitFor(() -> admitted.size() == 2);
+
+        scheduler.requestOut(b1);
+        waitFor(() -> admitted.size() == 3);
+
+        // tenant B is served before the second request of tenant A
+        Assert.assertEquals(Arrays.asList("a1", "b1", "a2"), admitted);
+    }
+
+    @Test
+    public void testProfileLimit() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "10",
+                "profile.caServerCert.maxConcurrent", "1");
+
+        TestRequest r1 = new TestRequest("r1", "A", "caServerCert", "enrollment");
+        TestRequest r2 = new TestRequest("r2", "A", "caServerCert", "enrollment");
+        TestRequest r3 = new TestRequest("r3", "B", "caUserCert", "enrollment");
+
+        scheduler.requestIn(r1);
+        submit(scheduler, r2);
+
+        // other profiles are not limited
+        scheduler.requestIn(r3);
+        Assert.assertEquals(2, scheduler.getRunningRequests());
+        Assert.assertEquals(1, scheduler.getQueuedRequests());
+
+        scheduler.requestOut(r1);
+        waitFor(() -> admitted.contains("r2"));
+        Assert.assertEquals(2, scheduler.getRunningRequests());
+    }
+
+    @Test
+    public void testTypeLimit() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "10",
+                "type.renewal.maxConcurrent", "1");
+
+        TestRequest r1 = new TestRequest("r1", "A", "caManualRenewal", "renewal");
+        TestRequest r2 = new TestRequest("r2", "B", "caServerCert", "renewal");
+        TestRequest r3 = new TestRequest("r3", "C", "caServerCert", "enrollment");
+
+        scheduler.requestIn(r1);
+        submit(scheduler, r2);
+
+        scheduler.requestIn(r3);
+        Assert.assertEquals(2, scheduler.getRunningRequests());
+        Assert.assertEquals(1, scheduler.getQueuedRequests());
+
+        scheduler.requestOut(r1);
+        waitFor(() -> admitted.contains("r2"));
+    }
+
+    @Test
+    public void testReentrant() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "1");
+
+        TestRequest r1 = new TestRequest("r1", "A", null, null);
+
+        // the request is processed again by the same thread
+        scheduler.requestIn(r1);
+        scheduler.requestIn(r1);
+        Assert.assertEquals(1, scheduler.getRunningRequests());
+
+        scheduler.requestOut(r1);
+        Assert.assertEquals(1, scheduler.getRunningRequests());
+
+        scheduler.requestOut(r1);
+        Assert.assertEquals(0, scheduler.getRunningRequests());
+        Assert.assertEquals(1, scheduler.getAdmittedRequests());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "1",
+                "maxQueueSize", "1");
+
+        TestRequest r1 = new TestRequest("r1", "A", null, null);
+        TestRequest r2 = new TestRequest("r2", "A", null, null);
+        TestRequest r3 = new TestRequest("r3", "A", null, null);
+
+        scheduler.requestIn(r1);
+        submit(scheduler, r2);
+
+        try {
+            scheduler.requestIn(r3);
+            Assert.fail("Request was not rejected");
+
+        } catch (ServiceUnavailableException e) {
+            // expected
+        }
+
+        Assert.assertEquals(1, scheduler.getRejectedRequests());
+        Assert.assertEquals(1, scheduler.getQueuedRequests());
+
+        scheduler.requestOut(r1);
+        waitFor(() -> admitted.contains("r2"));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+
+        RequestScheduler scheduler = createScheduler(
+                "maxConcurrent", "1",
+                "maxWaitTime", "100");
+
+        TestRequest r1 = new TestRequest("r1", "A", null, null);
+        TestRequest r2 = new TestRequest("r2", "A", null, null);
+
+        scheduler.requestIn(r1);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            scheduler.requestIn(r2);
+            Assert.fail("Request was not rejected");
+
+        } catch (ServiceUnavailableException e) {
+            // expected
+        }
+
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertEquals(0, scheduler.getQueuedRequests());
+        Assert.assertEquals(1, scheduler.getRejectedRequests());
+
+        // the rejected request does not hold a slot
+        scheduler.requestOut(r2);
+        scheduler.requestOut(r1);
+        Assert.assertEquals(0, scheduler.getRunningRequests());
+    }
+
+    class TestRequest extends RequestDefaultStub {
+
+        private static final long serialVersionUID = 1L;
+
+        String name;
+        String authority;
+        String profile;
+        String type;
+
+        TestRequest(String name, String authority, String profile, String type) {
+            this.name = name;
+            this.authority = authority;
+            this.profile = profile;
+            this.type = type;
+        }
+
+        public RequestId getRequestId() {
+            return new RequestId(name.hashCode());
+        }
+
+        public String getRequestType() {
+            return type;
+        }
+
+        public String getExtDataInString(String key) {
+
+            if (IRequest.AUTHORITY_ID.equals(key)) {
+                return authority;
+            }
+
+            if (IRequest.PROFILE_ID.equals(key)) {
+                return profile;
+            }
+
+            return null;
+        }
+    }
+}
@@ -47,6 +47,16 @@ public class AuthTokenTest extends CMSBaseTestCase {
         assertFalse(authToken.set("key", (String) null));
     }
 
+    public void testCopy() {
+        authToken.set("key", "value");
+
+        AuthToken copy = authToken.copy();
+        assertEquals("value", copy.getInString("key"));
+
+        copy.set("key", "other");
+        assertEquals("value", authToken.getInString("key"));
+    }
+
     public void testGetSetByteArray() {
         byte[] data = new byte[] { -12, 0, 14, 15 };
         authToken.set("key", data);
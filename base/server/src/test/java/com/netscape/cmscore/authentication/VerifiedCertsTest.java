@@ -0,0 +1,174 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.authentication;
+
+import java.math.BigInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VerifiedCertsTest {
+
+    BigInteger serial(int value) {
+        return BigInteger.valueOf(value);
+    }
+
+    byte[] cert(int value) {
+        return new byte[] { 0x30, (byte) value };
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 1);
+
+        certs.update(serial(1), cert(1), VerifiedCert.NOT_REVOKED);
+        Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(1), cert(1)));
+
+        // a different certificate with the same serial number
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(1), cert(2)));
+
+        Thread.sleep(1100);
+
+        Assert.assertEquals(VerifiedCert.EXPIRED, certs.check(serial(1), cert(1)));
+
+        // expired records are removed
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(1), cert(1)));
+    }
+
+    @Test
+    public void testUnknownStateInterval() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 60, 1);
+
+        certs.update(serial(1), cert(1), VerifiedCert.NOT_REVOKED);
+        certs.update(serial(2), null, VerifiedCert.CHECKED);
+
+        Assert.assertEquals(VerifiedCert.CHECKED, certs.check(serial(2), cert(2)));
+
+        Thread.sleep(1100);
+
+        // only the records in unknown state have expired
+        Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(1), cert(1)));
+        Assert.assertEquals(VerifiedCert.EXPIRED, certs.check(serial(2), cert(2)));
+    }
+
+    @Test
+    public void testUnknownStateDisabled() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 60, 0);
+
+        certs.update(serial(1), null, VerifiedCert.CHECKED);
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(1), cert(1)));
+    }
+
+    @Test
+    public void testSerialNumberKey() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 60);
+
+        // records without certificate are found by serial number
+        certs.update(serial(1), null, VerifiedCert.CHECKED);
+        Assert.assertEquals(VerifiedCert.CHECKED, certs.check(serial(1), cert(1)));
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(2), cert(2)));
+
+        Thread.sleep(5);
+
+        // the most recent record is used
+        certs.update(serial(1), cert(1), VerifiedCert.NOT_REVOKED);
+        Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(1), cert(1)));
+
+        Thread.sleep(5);
+
+        certs.update(serial(1), null, VerifiedCert.CHECKED);
+        Assert.assertEquals(VerifiedCert.CHECKED, certs.check(serial(1), cert(1)));
+    }
+
+    @Test
+    public void testEvictOldest() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 60);
+
+        for (int i = 1; i <= 11; i++) {
+            certs.update(serial(i), cert(i), VerifiedCert.NOT_REVOKED);
+            Thread.sleep(2);
+        }
+
+        // the list is reduced to 90% of its size
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(1), cert(1)));
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(2), cert(2)));
+
+        for (int i = 3; i <= 11; i++) {
+            Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(i), cert(i)));
+        }
+    }
+
+    @Test
+    public void testEvictExpiredFirst() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 60, 1);
+
+        for (int i = 1; i <= 5; i++) {
+            certs.update(serial(i), cert(i), VerifiedCert.NOT_REVOKED);
+        }
+
+        Thread.sleep(2);
+
+        for (int i = 6; i <= 10; i++) {
+            certs.update(serial(i), null, VerifiedCert.CHECKED);
+        }
+
+        Thread.sleep(1100);
+
+        certs.update(serial(11), cert(11), VerifiedCert.NOT_REVOKED);
+
+        // the expired records are removed instead of the oldest ones
+        for (int i = 1; i <= 5; i++) {
+            Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(i), cert(i)));
+        }
+
+        for (int i = 6; i <= 10; i++) {
+            Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(i), cert(i)));
+        }
+
+        Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(11), cert(11)));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+
+        VerifiedCerts certs = new VerifiedCerts(10, 60);
+
+        certs.update(serial(1), cert(1), VerifiedCert.NOT_REVOKED);
+        certs.update(serial(2), cert(2), VerifiedCert.NOT_REVOKED);
+
+        long generation = certs.getGeneration();
+
+        certs.remove(serial(1));
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(1), cert(1)));
+        Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(2), cert(2)));
+
+        // a status looked up before the removal is discarded
+        certs.update(serial(1), cert(1), VerifiedCert.NOT_REVOKED, generation);
+        Assert.assertEquals(VerifiedCert.UNKNOWN, certs.check(serial(1), cert(1)));
+
+        // other certificates are not affected
+        certs.update(serial(3), cert(3), VerifiedCert.NOT_REVOKED, generation);
+        Assert.assertEquals(VerifiedCert.NOT_REVOKED, certs.check(serial(3), cert(3)));
+    }
+}
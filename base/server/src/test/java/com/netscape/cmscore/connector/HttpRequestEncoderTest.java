@@ -0,0 +1,83 @@
+package com.netscape.cmscore.connector;
+
+import java.util.Hashtable;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class HttpRequestEncoderTest extends CMSBaseTestCase {
+
+    HttpPKIMessage msg;
+
+    public HttpRequestEncoderTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+        msg = new HttpPKIMessage();
+        msg.reqType = "enrollment";
+        msg.reqId = "12";
+        msg.reqStatus = "complete";
+        msg.reqRealm = null;
+
+        Hashtable<String, String> table = new Hashtable<String, String>();
+        table.put("key1", "value1");
+        table.put("key2", "\u00e9t\u00e9");
+
+        msg.mNameVals.addElement("profileId");
+        msg.mNameVals.addElement("caUserCert");
+        msg.mNameVals.addElement("params");
+        msg.mNameVals.addElement(table);
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(HttpRequestEncoderTest.class);
+    }
+
+    public void testCompactRoundTrip() throws Exception {
+        HttpRequestEncoder encoder = new HttpRequestEncoder(true);
+
+        String encoded = encoder.encode(msg);
+        assertTrue(HttpRequestEncoder.isCompact(encoded));
+
+        HttpPKIMessage result = (HttpPKIMessage) encoder.decode(encoded);
+        assertMessageEquals(msg, result);
+    }
+
+    public void testLegacyRoundTrip() throws Exception {
+        HttpRequestEncoder encoder = new HttpRequestEncoder();
+
+        String encoded = encoder.encode(msg);
+        assertFalse(HttpRequestEncoder.isCompact(encoded));
+
+        HttpPKIMessage result = (HttpPKIMessage) encoder.decode(encoded);
+        assertMessageEquals(msg, result);
+    }
+
+    public void testCompactDecoderReadsLegacy() throws Exception {
+        String encoded = new HttpRequestEncoder(false).encode(msg);
+
+        HttpPKIMessage result = (HttpPKIMessage) new HttpRequestEncoder(true).decode(encoded);
+        assertMessageEquals(msg, result);
+    }
+
+    public void testCompactIsSmaller() throws Exception {
+        String legacy = new HttpRequestEncoder(false).encode(msg);
+        String compact = new HttpRequestEncoder(true).encode(msg);
+
+        assertTrue(compact.length() < legacy.length());
+    }
+
+    void assertMessageEquals(HttpPKIMessage expected, HttpPKIMessage actual) {
+        assertEquals(expected.reqType, actual.reqType);
+        assertEquals(expected.reqId, actual.reqId);
+        assertEquals(expected.reqStatus, actual.reqStatus);
+        assertEquals(expected.reqRealm, actual.reqRealm);
+        assertEquals(expected.mNameVals, actual.mNameVals);
+    }
+}
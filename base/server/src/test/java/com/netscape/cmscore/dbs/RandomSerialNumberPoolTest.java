@@ -0,0 +1,102 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RandomSerialNumberPoolTest {
+
+    BigInteger serial(int value) {
+        return BigInteger.valueOf(value);
+    }
+
+    @Test
+    public void testOfferAndPoll() throws Exception {
+
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(2, 1000);
+        pool.setRange(serial(1), serial(100));
+
+        Assert.assertTrue(pool.offer(serial(10)));
+        Assert.assertTrue(pool.offer(serial(20)));
+
+        // pool is full
+        Assert.assertFalse(pool.offer(serial(30)));
+
+        // all offered serial numbers are reserved
+        Assert.assertTrue(pool.isReserved(serial(10)));
+        Assert.assertTrue(pool.isReserved(serial(30)));
+
+        Assert.assertEquals(serial(10), pool.poll());
+        Assert.assertEquals(serial(20), pool.poll());
+        Assert.assertNull(pool.poll());
+    }
+
+    @Test
+    public void testOutOfRange() throws Exception {
+
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(10, 1000);
+        pool.setRange(serial(1), serial(100));
+
+        Assert.assertFalse(pool.offer(serial(200)));
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testRangeChange() throws Exception {
+
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(10, 1000);
+        pool.setRange(serial(1), serial(100));
+
+        pool.offer(serial(10));
+        pool.offer(serial(20));
+
+        // same range keeps the pooled serial numbers
+        pool.setRange(serial(1), serial(100));
+        Assert.assertEquals(2, pool.size());
+
+        pool.setRange(serial(101), serial(200));
+        Assert.assertEquals(0, pool.size());
+        Assert.assertNull(pool.poll());
+
+        // serial numbers generated for the previous range are not pooled
+        Assert.assertFalse(pool.offer(serial(30)));
+        Assert.assertTrue(pool.offer(serial(150)));
+        Assert.assertEquals(serial(150), pool.poll());
+    }
+
+    @Test
+    public void testResetFilter() throws Exception {
+
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(10, 5);
+        pool.setRange(serial(1), serial(100));
+
+        pool.offer(serial(10));
+        for (int i = 50; i < 60; i++) {
+            pool.reserve(serial(i));
+        }
+
+        pool.resetFilterIfFull();
+
+        // the pooled serial numbers are still reserved
+        Assert.assertTrue(pool.isReserved(serial(10)));
+        Assert.assertEquals(serial(10), pool.poll());
+    }
+}
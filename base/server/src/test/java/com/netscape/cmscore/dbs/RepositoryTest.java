@@ -0,0 +1,169 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+
+public class RepositoryTest {
+
+    CMSEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = CMS.getCMSEngine();
+        CMS.setCMSEngine(new CMSEngine("TEST"));
+    }
+
+    @After
+    public void tearDown() {
+        CMS.setCMSEngine(engine);
+    }
+
+    @Test
+    public void testBlockReservation() throws Exception {
+
+        TestRepository repository = new TestRepository(1, 100);
+        repository.initSerialNumberBlocks(1, 5);
+
+        Assert.assertFalse(repository.isCacheInitialized());
+
+        Assert.assertEquals(BigInteger.valueOf(1), repository.getNextSerialNumber());
+        Assert.assertTrue(repository.isCacheInitialized());
+
+        // the rest of the block is reserved
+        Assert.assertEquals(BigInteger.valueOf(6), repository.peekNextSerialNumber());
+
+        for (int i = 2; i <= 5; i++) {
+            Assert.assertEquals(BigInteger.valueOf(i), repository.getNextSerialNumber());
+        }
+
+        // the next block starts after the reserved one
+        Assert.assertEquals(BigInteger.valueOf(6), repository.getNextSerialNumber());
+        Assert.assertEquals(BigInteger.valueOf(11), repository.peekNextSerialNumber());
+    }
+
+    @Test
+    public void testDiscardBlocks() throws Exception {
+
+        TestRepository repository = new TestRepository(1, 100);
+        repository.initSerialNumberBlocks(1, 5);
+
+        Assert.assertEquals(BigInteger.valueOf(1), repository.getNextSerialNumber());
+
+        // resetting the last serial number discards the reserved block
+        repository.setLastSerialNo(BigInteger.valueOf(50));
+
+        Assert.assertEquals(BigInteger.valueOf(51), repository.getNextSerialNumber());
+        Assert.assertEquals(BigInteger.valueOf(52), repository.getNextSerialNumber());
+    }
+
+    @Test
+    public void testExhaustion() throws Exception {
+
+        TestRepository repository = new TestRepository(1, 10);
+        repository.initSerialNumberBlocks(1, 4);
+
+        // the last block is truncated at the end of the range
+        for (int i = 1; i <= 10; i++) {
+            Assert.assertEquals(BigInteger.valueOf(i), repository.getNextSerialNumber());
+        }
+
+        try {
+            repository.getNextSerialNumber();
+            Assert.fail("Serial number allocated beyond the range");
+
+        } catch (EBaseException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentAllocation() throws Exception {
+
+        int threads = 8;
+        int serialNumbers = 500;
+        int stripes = 4;
+        int blockSize = 16;
+
+        // the blocks of the other stripes might not be used up
+        int max = threads * serialNumbers + stripes * blockSize;
+
+        TestRepository repository = new TestRepository(1, max);
+        repository.initSerialNumberBlocks(stripes, blockSize);
+
+        List<BigInteger> results = Collections.synchronizedList(new ArrayList<>());
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> list = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < serialNumbers; j++) {
+                        results.add(repository.getNextSerialNumber());
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            list.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : list) {
+            thread.join();
+        }
+
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+        Set<BigInteger> unique = new HashSet<>(results);
+        Assert.assertEquals(threads * serialNumbers, unique.size());
+
+        for (BigInteger serialNumber : unique) {
+            Assert.assertTrue(serialNumber.compareTo(BigInteger.ONE) >= 0);
+            Assert.assertTrue(serialNumber.compareTo(BigInteger.valueOf(max)) <= 0);
+        }
+    }
+
+    class TestRepository extends Repository {
+
+        TestRepository(long min, long max) {
+            super(new DBSubsystem(), 10);
+            mMinSerialNo = BigInteger.valueOf(min);
+            mMaxSerialNo = BigInteger.valueOf(max);
+        }
+
+        public BigInteger getLastSerialNumberInRange(BigInteger low, BigInteger high) {
+            // empty range
+            return low.subtract(BigInteger.ONE);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerialNumberFilterTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+
+        SerialNumberFilter filter = new SerialNumberFilter(1024, 7);
+
+        Assert.assertEquals(0, filter.getCount());
+        Assert.assertFalse(filter.mightContain(BigInteger.ONE));
+    }
+
+    @Test
+    public void testNoFalseNegatives() throws Exception {
+
+        // more serial numbers than the filter is sized for
+        SerialNumberFilter filter = new SerialNumberFilter(10000, 7);
+        Random random = new Random(0);
+
+        List<BigInteger> serialNumbers = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            BigInteger serialNumber = new BigInteger(128, random);
+            serialNumbers.add(serialNumber);
+            filter.add(serialNumber);
+        }
+
+        for (BigInteger serialNumber : serialNumbers) {
+            Assert.assertTrue(filter.mightContain(serialNumber));
+        }
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+
+        SerialNumberFilter filter = new SerialNumberFilter(100000, 7);
+
+        int threads = 4;
+        int count = 2000;
+
+        List<Thread> list = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * count;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    filter.add(BigInteger.valueOf(offset + i));
+                }
+            });
+            thread.start();
+            list.add(thread);
+        }
+
+        for (Thread thread : list) {
+            thread.join();
+        }
+
+        for (int i = 0; i < threads * count; i++) {
+            Assert.assertTrue(filter.mightContain(BigInteger.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+
+        SerialNumberFilter filter = new SerialNumberFilter(10000, 7);
+
+        for (int i = 0; i < 1000; i++) {
+            filter.add(BigInteger.valueOf(i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (filter.mightContain(BigInteger.valueOf(i))) {
+                falsePositives++;
+            }
+        }
+
+        // about 1% expected with 10 bits per serial number
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 500);
+    }
+}
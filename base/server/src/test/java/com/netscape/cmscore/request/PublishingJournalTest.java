@@ -0,0 +1,215 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.request;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.certsrv.request.RequestId;
+
+public class PublishingJournalTest {
+
+    Path dir;
+    Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal");
+        file = dir.resolve("publishing.journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File f : dir.toFile().listFiles()) {
+            f.delete();
+        }
+        Files.delete(dir);
+    }
+
+    PublishingJournal open() throws Exception {
+        PublishingJournal journal = new PublishingJournal(file.toString(), true);
+        journal.open();
+        return journal;
+    }
+
+    void write(String... lines) throws Exception {
+        Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+
+        PublishingJournal journal = open();
+
+        journal.add(new RequestId(1), 100);
+        journal.add(new RequestId(2), 200);
+        journal.add(new RequestId(3), 300);
+
+        journal.markDone(Arrays.asList(new RequestId(1), new RequestId(2)), "ldap");
+        journal.complete(Arrays.asList(new RequestId(1)));
+
+        // reload without closing, like after a crash
+        journal = open();
+
+        Assert.assertEquals(2, journal.getPendingRequests());
+        Assert.assertEquals(BigInteger.valueOf(1), journal.getCursor());
+        Assert.assertEquals(200, journal.getOldestQueueTime());
+
+        Assert.assertTrue(journal.isDone(new RequestId(1), "ldap"));
+        Assert.assertTrue(journal.isDone(new RequestId(2), "ldap"));
+        Assert.assertFalse(journal.isDone(new RequestId(2), "file"));
+        Assert.assertFalse(journal.isDone(new RequestId(3), "ldap"));
+
+        Assert.assertEquals(new RequestId(2), journal.next());
+        Assert.assertEquals(new RequestId(3), journal.next());
+        Assert.assertNull(journal.next());
+
+        journal.close();
+    }
+
+    @Test
+    public void testTruncatedRecord() throws Exception {
+
+        write("Q 1 100",
+                "Q 2 200",
+                "D 1 ldap",
+                "C 1",
+                "D 2 ldap",
+                "Q 3");
+
+        PublishingJournal journal = open();
+
+        // the truncated record of request 3 is ignored
+        Assert.assertEquals(1, journal.getPendingRequests());
+        Assert.assertEquals(BigInteger.valueOf(1), journal.getCursor());
+        Assert.assertFalse(journal.contains(new RequestId(3)));
+        Assert.assertTrue(journal.isDone(new RequestId(2), "ldap"));
+
+        Assert.assertEquals(new RequestId(2), journal.next());
+        Assert.assertNull(journal.next());
+
+        journal.close();
+    }
+
+    @Test
+    public void testPartiallyCompleted() throws Exception {
+
+        // request 2 completed before request 1
+        write("P 5",
+                "Q 6 100",
+                "Q 7 200",
+                "Q 8 300",
+                "D 7 ldap",
+                "D 7 file",
+                "C 7",
+                "D 6 ldap");
+
+        PublishingJournal journal = open();
+
+        Assert.assertEquals(2, journal.getPendingRequests());
+        Assert.assertEquals(BigInteger.valueOf(5), journal.getCursor());
+        Assert.assertEquals(100, journal.getOldestQueueTime());
+
+        Assert.assertTrue(journal.isDone(new RequestId(6), "ldap"));
+        Assert.assertFalse(journal.isDone(new RequestId(6), "file"));
+        Assert.assertTrue(journal.isDone(new RequestId(7), "file"));
+
+        // request 7 is not processed again
+        Assert.assertEquals(new RequestId(6), journal.next());
+        Assert.assertEquals(new RequestId(8), journal.next());
+        Assert.assertNull(journal.next());
+
+        // completing request 6 moves the cursor past request 7
+        journal.complete(Arrays.asList(new RequestId(6)));
+        Assert.assertEquals(BigInteger.valueOf(7), journal.getCursor());
+        Assert.assertEquals(300, journal.getOldestQueueTime());
+
+        journal = open();
+
+        Assert.assertEquals(1, journal.getPendingRequests());
+        Assert.assertEquals(BigInteger.valueOf(7), journal.getCursor());
+
+        journal.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+
+        PublishingJournal journal = open();
+
+        journal.add(new RequestId(1), 100);
+        journal.add(new RequestId(2), 200);
+        journal.markDone(Arrays.asList(new RequestId(2)), "ldap");
+        journal.complete(Arrays.asList(new RequestId(1)));
+        journal.close();
+
+        // the journal only contains the cursor and the pending requests
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Assert.assertEquals(Arrays.asList("P 1", "Q 2 200", "D 2 ldap"), lines);
+        Assert.assertFalse(Files.exists(dir.resolve("publishing.journal.tmp")));
+
+        journal = open();
+
+        Assert.assertEquals(1, journal.getPendingRequests());
+        Assert.assertEquals(BigInteger.valueOf(1), journal.getCursor());
+        Assert.assertTrue(journal.isDone(new RequestId(2), "ldap"));
+
+        journal.close();
+    }
+
+    @Test
+    public void testReleaseAndSkip() throws Exception {
+
+        PublishingJournal journal = open();
+
+        journal.add(new RequestId(1), 100);
+        Assert.assertFalse(journal.add(new RequestId(1), 100));
+
+        RequestId id = journal.next();
+        Assert.assertNull(journal.next());
+
+        // a request that could not be processed is returned to the queue
+        journal.release(id);
+        Assert.assertEquals(id, journal.next());
+
+        // the cursor does not move past a pending request
+        journal.skip(new RequestId(2));
+        Assert.assertNull(journal.getCursor());
+
+        journal.complete(Arrays.asList(id));
+        journal.skip(new RequestId(2));
+        Assert.assertEquals(BigInteger.valueOf(2), journal.getCursor());
+
+        journal = open();
+        Assert.assertEquals(0, journal.getPendingRequests());
+        Assert.assertEquals(BigInteger.valueOf(2), journal.getCursor());
+        Assert.assertEquals(0, journal.getOldestQueueTime());
+
+        journal.close();
+    }
+}
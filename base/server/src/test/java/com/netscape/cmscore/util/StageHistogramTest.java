@@ -0,0 +1,80 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netscape.certsrv.util.StageTimingData;
+
+public class StageHistogramTest {
+
+    @Test
+    public void testEmpty() {
+
+        StageTimingData data = new StageHistogram().toData("caServerCert", "signing");
+
+        Assert.assertEquals("caServerCert", data.getProfileID());
+        Assert.assertEquals("signing", data.getStage());
+        Assert.assertEquals(0, data.getCount());
+        Assert.assertEquals(0, data.getAverageTime());
+        Assert.assertEquals(0, data.getP99());
+    }
+
+    @Test
+    public void testPercentiles() {
+
+        StageHistogram histogram = new StageHistogram();
+
+        // 90 fast operations and 10 slow ones
+        for (int i = 0; i < 90; i++) {
+            histogram.add(3);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            histogram.add(150);
+        }
+
+        StageTimingData data = histogram.toData("caServerCert", "signing");
+
+        Assert.assertEquals(100, data.getCount());
+        Assert.assertEquals(3, data.getMinTime());
+        Assert.assertEquals(150, data.getMaxTime());
+        Assert.assertEquals((90 * 3 + 10 * 150) / 100, data.getAverageTime());
+
+        // percentiles are reported as the bucket upper bounds
+        Assert.assertEquals(5, data.getP50());
+        Assert.assertEquals(5, data.getP90());
+        Assert.assertEquals(150, data.getP99());
+
+        Assert.assertEquals(90, data.getHistogram()[2]);
+        Assert.assertEquals(10, data.getHistogram()[7]);
+    }
+
+    @Test
+    public void testOverflow() {
+
+        StageHistogram histogram = new StageHistogram();
+        histogram.add(45000);
+
+        StageTimingData data = histogram.toData("caServerCert", "publishing");
+
+        Assert.assertEquals(45000, data.getP50());
+        Assert.assertEquals(1, data.getHistogram()[StageHistogram.BUCKETS.length]);
+    }
+}
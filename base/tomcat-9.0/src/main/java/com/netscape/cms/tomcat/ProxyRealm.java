@@ -13,6 +13,7 @@ import org.apache.catalina.Container;
 import org.apache.catalina.Context;
 import org.apache.catalina.CredentialHandler;
 import org.apache.catalina.Realm;
+import org.apache.catalina.Valve;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
@@ -60,6 +61,20 @@ public class ProxyRealm implements Realm {
     public void setRealm(Realm realm) {
         this.realm = realm;
         realm.setContainer(container);
+
+        // principals authenticated by the previous realm are no longer valid
+        if (container != null) {
+            SSLSessionPrincipalValidator validator = null;
+            if (realm instanceof SSLSessionPrincipalValidator) {
+                validator = (SSLSessionPrincipalValidator) realm;
+            }
+
+            for (Valve valve : container.getPipeline().getValves()) {
+                if (valve instanceof AbstractPKIAuthenticator) {
+                    ((AbstractPKIAuthenticator) valve).setSSLSessionValidator(validator);
+                }
+            }
+        }
     }
 
     public static void registerRealm(String contextName, Realm realm) {
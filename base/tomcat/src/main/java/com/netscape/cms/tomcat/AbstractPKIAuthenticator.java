@@ -19,6 +19,7 @@
 package com.netscape.cms.tomcat;
 
 import java.io.IOException;
+import java.security.Principal;
 import java.security.cert.X509Certificate;
 
 import javax.servlet.http.HttpServletRequest;
@@ -52,6 +53,16 @@ public abstract class AbstractPKIAuthenticator extends AuthenticatorBase {
     AuthenticatorBase sslAuthenticator = new SSLAuthenticator();
     AuthenticatorBase fallbackAuthenticator = new BasicAuthenticator();
 
+    // maximum age of a principal reused in a resumed TLS session (in seconds),
+    // 0 (default) to authenticate every connection
+    int sslSessionMaxAge = 0;
+    int sslSessionCacheSize = 1000;
+
+    SSLSessionPrincipalCache sslSessionCache;
+
+    // provided by the subsystem realm, principals are not reused without it
+    volatile SSLSessionPrincipalValidator sslSessionValidator;
+
     public AbstractPKIAuthenticator() {
         logger.info("PKIAuthenticator: Creating " + getClass().getSimpleName());
     }
@@ -73,11 +84,72 @@ public abstract class AbstractPKIAuthenticator extends AuthenticatorBase {
 
     }
 
+    public int getSslSessionMaxAge() {
+        return sslSessionMaxAge;
+    }
+
+    public void setSslSessionMaxAge(int sslSessionMaxAge) {
+        logger.info("PKIAuthenticator: TLS session max age: " + sslSessionMaxAge);
+        this.sslSessionMaxAge = sslSessionMaxAge;
+    }
+
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        logger.info("PKIAuthenticator: TLS session cache size: " + sslSessionCacheSize);
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    /**
+     * Sets the validator of the reused principals and discards the
+     * principals of all TLS sessions, e.g. when the subsystem realm
+     * has been replaced.
+     */
+    public void setSSLSessionValidator(SSLSessionPrincipalValidator validator) {
+        sslSessionValidator = validator;
+        clearSSLSessionCache();
+    }
+
+    /**
+     * Discards the principals of all TLS sessions.
+     */
+    public void clearSSLSessionCache() {
+        if (sslSessionCache != null) {
+            logger.debug("PKIAuthenticator: Clearing TLS session cache");
+            sslSessionCache.clear();
+        }
+    }
+
     public boolean doAuthenticate(Request request, HttpServletResponse response) throws IOException {
         X509Certificate certs[] = (X509Certificate[]) request.getAttribute(Globals.CERTIFICATES_ATTR);
         boolean result;
 
         if (certs != null && certs.length > 0) {
+
+            String sessionID = (String) request.getAttribute(Globals.SSL_SESSION_ID_ATTR);
+
+            SSLSessionPrincipalValidator validator = sslSessionValidator;
+            boolean useCache = sslSessionCache != null && validator != null && sessionID != null;
+            long modificationCount = useCache ? validator.getModificationCount() : 0;
+
+            if (useCache) {
+                Principal principal = sslSessionCache.get(sessionID, certs[0], modificationCount);
+
+                if (principal != null && validator.isRevoked(certs)) {
+                    logger.info("PKIAuthenticator: Client certificate has been revoked: " + principal.getName());
+                    sslSessionCache.remove(sessionID);
+                    principal = null;
+                }
+
+                if (principal != null) {
+                    logger.info("PKIAuthenticator: Reusing principal of TLS session: " + principal.getName());
+                    register(request, response, principal, getAuthMethod(), null, null);
+                    return true;
+                }
+            }
+
             logger.info("PKIAuthenticator: Authenticate with client certificate authentication");
             HttpServletResponseWrapper wrapper = new HttpServletResponseWrapper(response) {
                 public void setHeader(String name, String value) {
@@ -89,6 +161,11 @@ public abstract class AbstractPKIAuthenticator extends AuthenticatorBase {
             };
             result = doSubAuthenticate(sslAuthenticator, request, wrapper);
 
+            Principal principal = request.getUserPrincipal();
+            if (result && useCache && principal != null) {
+                sslSessionCache.put(sessionID, certs[0], principal, modificationCount);
+            }
+
         } else {
             logger.info("PKIAuthenticator: Authenticating with " + fallbackMethod + " authentication");
             HttpServletResponseWrapper wrapper = new HttpServletResponseWrapper(response) {
@@ -145,6 +222,10 @@ public abstract class AbstractPKIAuthenticator extends AuthenticatorBase {
 
         fallbackAuthenticator.setAlwaysUseSession(alwaysUseSession);
         fallbackAuthenticator.init();
+
+        if (sslSessionMaxAge > 0) {
+            sslSessionCache = new SSLSessionPrincipalCache(sslSessionCacheSize, sslSessionMaxAge * 1000L);
+        }
     }
 
     @Override
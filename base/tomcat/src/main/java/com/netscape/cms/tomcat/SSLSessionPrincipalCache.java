@@ -0,0 +1,114 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+
+package com.netscape.cms.tomcat;
+
+import java.math.BigInteger;
+import java.security.Principal;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of principals authenticated with a client certificate,
+ * keyed by the TLS session ID. A resumed TLS session presenting the same
+ * client certificate can reuse the principal until it reaches the
+ * maximum age, or until the users or groups are modified.
+ */
+public class SSLSessionPrincipalCache {
+
+    class Entry {
+        X509Certificate cert;
+        BigInteger serialNumber;
+        Principal principal;
+        long modificationCount;
+        long expirationTime;
+    }
+
+    private int size;
+    private long maxAge;
+    private Map<String, Entry> entries;
+
+    /**
+     * @param size maximum number of TLS sessions
+     * @param maxAge maximum age of a principal in milliseconds
+     */
+    public SSLSessionPrincipalCache(int size, long maxAge) {
+
+        this.size = size;
+        this.maxAge = maxAge;
+
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > SSLSessionPrincipalCache.this.size;
+            }
+        };
+    }
+
+    /**
+     * Returns the principal of the TLS session, or null if there is
+     * no valid principal for the client certificate.
+     *
+     * @param modificationCount current user and group modification count
+     */
+    public synchronized Principal get(String sessionID, X509Certificate cert, long modificationCount) {
+
+        Entry entry = entries.get(sessionID);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expirationTime < System.currentTimeMillis()
+                || entry.modificationCount != modificationCount
+                || !entry.serialNumber.equals(cert.getSerialNumber())
+                || !entry.cert.equals(cert)) {
+            entries.remove(sessionID);
+            return null;
+        }
+
+        return entry.principal;
+    }
+
+    /**
+     * @param modificationCount user and group modification count read
+     * before the principal was authenticated
+     */
+    public synchronized void put(
+            String sessionID,
+            X509Certificate cert,
+            Principal principal,
+            long modificationCount) {
+
+        Entry entry = new Entry();
+        entry.cert = cert;
+        entry.serialNumber = cert.getSerialNumber();
+        entry.principal = principal;
+        entry.modificationCount = modificationCount;
+        entry.expirationTime = System.currentTimeMillis() + maxAge;
+
+        entries.put(sessionID, entry);
+    }
+
+    public synchronized void remove(String sessionID) {
+        entries.remove(sessionID);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
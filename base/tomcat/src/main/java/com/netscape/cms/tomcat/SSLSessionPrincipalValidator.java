@@ -0,0 +1,40 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.tomcat;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Checks whether a principal authenticated with a client certificate
+ * in a TLS session can still be reused. This is implemented by the
+ * subsystem realm.
+ */
+public interface SSLSessionPrincipalValidator {
+
+    /**
+     * Returns a counter that changes whenever users, user certificates
+     * or groups are modified.
+     */
+    public long getModificationCount();
+
+    /**
+     * Returns true if the client certificate has been revoked or its
+     * revocation status cannot be determined.
+     */
+    public boolean isRevoked(X509Certificate[] certs);
+}
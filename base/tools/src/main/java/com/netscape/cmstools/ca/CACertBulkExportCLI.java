@@ -0,0 +1,98 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+
+package com.netscape.cmstools.ca;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+
+import com.netscape.certsrv.ca.CACertClient;
+import com.netscape.certsrv.cert.CertSearchRequest;
+import com.netscape.cmstools.cli.MainCLI;
+
+/**
+ * Streams all certificates matching the search constraints
+ * into a local file as NDJSON records or a PEM bundle.
+ */
+public class CACertBulkExportCLI extends CACertFindCLI {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CACertBulkExportCLI.class);
+
+    public CACertBulkExportCLI(CACertCLI certCLI) {
+        super("bulk-export", "Export certificates in bulk", certCLI);
+    }
+
+    public void printHelp() {
+        formatter.printHelp(getFullName() + " [OPTIONS...]", options);
+    }
+
+    public void createOptions() {
+        Option option = new Option(null, "output-format", true, "Output format: ndjson (default), pem");
+        option.setArgName("format");
+        options.addOption(option);
+
+        option = new Option(null, "output-file", true, "Output file");
+        option.setArgName("file");
+        options.addOption(option);
+
+        option = new Option(null, "page-size", true, "Number of records fetched per database page");
+        option.setArgName("size");
+        options.addOption(option);
+
+        createSearchOptions();
+    }
+
+    public void execute(CommandLine cmd) throws Exception {
+
+        String[] cmdArgs = cmd.getArgs();
+
+        if (cmdArgs.length != 0) {
+            throw new Exception("Too many arguments specified.");
+        }
+
+        String outputFormat = cmd.getOptionValue("output-format", "ndjson");
+
+        String s = cmd.getOptionValue("page-size");
+        Integer pageSize = s == null ? null : Integer.valueOf(s);
+
+        CertSearchRequest searchData = createSearchRequest(cmd);
+
+        MainCLI mainCLI = (MainCLI) getRoot();
+        mainCLI.init();
+
+        CACertClient certClient = certCLI.getCertClient();
+        StreamingOutput so = certClient.exportCerts(searchData, outputFormat, pageSize);
+
+        String outputFile = cmd.getOptionValue("output-file");
+
+        if (outputFile != null) {
+            try (OutputStream out = new FileOutputStream(outputFile)) {
+                so.write(out);
+            }
+
+        } else {
+            so.write(System.out);
+            System.out.flush();
+        }
+    }
+}
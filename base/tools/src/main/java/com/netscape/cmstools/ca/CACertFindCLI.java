@@ -44,7 +44,11 @@ public class CACertFindCLI extends CommandCLI {
     public CACertCLI certCLI;
 
     public CACertFindCLI(CACertCLI certCLI) {
-        super("find", "Find certificates", certCLI);
+        this("find", "Find certificates", certCLI);
+    }
+
+    public CACertFindCLI(String name, String description, CACertCLI certCLI) {
+        super(name, description, certCLI);
         this.certCLI = certCLI;
     }
 
@@ -64,6 +68,12 @@ public class CACertFindCLI extends CommandCLI {
         option.setArgName("size");
         options.addOption(option);
 
+        createSearchOptions();
+    }
+
+    public void createSearchOptions() {
+        Option option = null;
+
         //file input
         option = new Option(null, "input", true, "File containing the search constraints");
         option.setArgName("file path");
@@ -199,6 +209,41 @@ public class CACertFindCLI extends CommandCLI {
             throw new Exception("Too many arguments specified.");
         }
 
+        String s = cmd.getOptionValue("start");
+        Integer start = s == null ? null : Integer.valueOf(s);
+
+        s = cmd.getOptionValue("size");
+        Integer size = s == null ? null : Integer.valueOf(s);
+
+        CertSearchRequest searchData = createSearchRequest(cmd);
+
+        MainCLI mainCLI = (MainCLI) getRoot();
+        mainCLI.init();
+
+        CACertClient certClient = certCLI.getCertClient();
+        CertDataInfos certs = certClient.findCerts(searchData, start, size);
+
+        MainCLI.printMessage(certs.getTotal() + " entries found");
+        if (certs.getTotal() == 0) return;
+
+        boolean first = true;
+
+        Collection<CertDataInfo> entries = certs.getEntries();
+        for (CertDataInfo cert : entries) {
+            if (first) {
+                first = false;
+            } else {
+                System.out.println();
+            }
+
+            CACertCLI.printCertInfo(cert);
+        }
+
+        MainCLI.printMessage("Number of entries returned " + certs.getEntries().size());
+    }
+
+    public CertSearchRequest createSearchRequest(CommandLine cmd) throws Exception {
+
         CertSearchRequest searchData = null;
         String fileName = null;
 
@@ -228,37 +273,9 @@ public class CACertFindCLI extends CommandCLI {
             searchData = new CertSearchRequest();
         }
 
-        String s = cmd.getOptionValue("start");
-        Integer start = s == null ? null : Integer.valueOf(s);
-
-        s = cmd.getOptionValue("size");
-        Integer size = s == null ? null : Integer.valueOf(s);
-
         addSearchAttribute(cmd, searchData);
 
-        MainCLI mainCLI = (MainCLI) getRoot();
-        mainCLI.init();
-
-        CACertClient certClient = certCLI.getCertClient();
-        CertDataInfos certs = certClient.findCerts(searchData, start, size);
-
-        MainCLI.printMessage(certs.getTotal() + " entries found");
-        if (certs.getTotal() == 0) return;
-
-        boolean first = true;
-
-        Collection<CertDataInfo> entries = certs.getEntries();
-        for (CertDataInfo cert : entries) {
-            if (first) {
-                first = false;
-            } else {
-                System.out.println();
-            }
-
-            CACertCLI.printCertInfo(cert);
-        }
-
-        MainCLI.printMessage("Number of entries returned " + certs.getEntries().size());
+        return searchData;
     }
 
     public Long convertValidityDurationUnit(String unit) throws Exception {
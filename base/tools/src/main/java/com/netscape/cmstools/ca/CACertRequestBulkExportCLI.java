@@ -0,0 +1,102 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2020 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+
+package com.netscape.cmstools.ca;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.dogtagpki.cli.CommandCLI;
+
+import com.netscape.certsrv.ca.CACertClient;
+import com.netscape.cmstools.cli.MainCLI;
+
+/**
+ * Streams all certificate requests matching the search constraints
+ * into a local file as NDJSON records.
+ */
+public class CACertRequestBulkExportCLI extends CommandCLI {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CACertRequestBulkExportCLI.class);
+
+    public CACertRequestCLI certRequestCLI;
+
+    public CACertRequestBulkExportCLI(CACertRequestCLI certRequestCLI) {
+        super("bulk-export", "Export certificate requests in bulk", certRequestCLI);
+        this.certRequestCLI = certRequestCLI;
+    }
+
+    public void printHelp() {
+        formatter.printHelp(getFullName() + " [OPTIONS...]", options);
+    }
+
+    public void createOptions() {
+        Option option = new Option(null, "status", true, "Request status (pending, cancelled, rejected, complete, all)");
+        option.setArgName("status");
+        options.addOption(option);
+
+        option = new Option(null, "type", true, "Request type (enrollment, renewal, revocation, all)");
+        option.setArgName("type");
+        options.addOption(option);
+
+        option = new Option(null, "output-file", true, "Output file");
+        option.setArgName("file");
+        options.addOption(option);
+
+        option = new Option(null, "page-size", true, "Number of records fetched per database page");
+        option.setArgName("size");
+        options.addOption(option);
+    }
+
+    public void execute(CommandLine cmd) throws Exception {
+
+        String[] cmdArgs = cmd.getArgs();
+
+        if (cmdArgs.length != 0) {
+            throw new Exception("Too many arguments specified.");
+        }
+
+        String requestState = cmd.getOptionValue("status");
+        if (requestState != null && requestState.equals("all")) requestState = null;
+
+        String requestType = cmd.getOptionValue("type");
+        if (requestType != null && requestType.equals("all")) requestType = null;
+
+        String s = cmd.getOptionValue("page-size");
+        Integer pageSize = s == null ? null : Integer.valueOf(s);
+
+        MainCLI mainCLI = (MainCLI) getRoot();
+        mainCLI.init();
+
+        CACertClient certClient = certRequestCLI.getCertClient();
+
+        String outputFile = cmd.getOptionValue("output-file");
+
+        if (outputFile != null) {
+            try (OutputStream out = new FileOutputStream(outputFile)) {
+                certClient.exportRequests(requestState, requestType, pageSize, out);
+            }
+
+        } else {
+            certClient.exportRequests(requestState, requestType, pageSize, System.out);
+            System.out.flush();
+        }
+    }
+}
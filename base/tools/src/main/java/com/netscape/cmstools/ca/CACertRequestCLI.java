@@ -44,6 +44,7 @@ public class CACertRequestCLI extends CLI {
         super("request", "Certificate request management commands", parent);
 
         addModule(new CACertRequestFindCLI(this));
+        addModule(new CACertRequestBulkExportCLI(this));
         addModule(new CACertRequestShowCLI(this));
         addModule(new CACertRequestSubmitCLI(this));
         addModule(new CACertRequestReviewCLI(this));
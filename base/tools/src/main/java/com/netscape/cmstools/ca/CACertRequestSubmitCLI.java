@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Files;
@@ -13,6 +14,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
@@ -24,6 +27,7 @@ import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
 import com.netscape.certsrv.ca.AuthorityID;
 import com.netscape.certsrv.ca.CACertClient;
+import com.netscape.certsrv.cert.CertBatchEnrollmentRequest;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfos;
 import com.netscape.certsrv.dbs.certdb.CertId;
@@ -38,6 +42,10 @@ public class CACertRequestSubmitCLI extends CommandCLI {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CACertRequestSubmitCLI.class);
 
+    private static final Pattern CSR_PATTERN = Pattern.compile(
+            "-----BEGIN (NEW )?CERTIFICATE REQUEST-----.*?-----END (NEW )?CERTIFICATE REQUEST-----",
+            Pattern.DOTALL);
+
     CACertRequestCLI certRequestCLI;
 
     public CACertRequestSubmitCLI(CACertRequestCLI CACertRequestCLI) {
@@ -77,6 +85,12 @@ public class CACertRequestSubmitCLI extends CommandCLI {
         option.setArgName("path");
         options.addOption(option);
 
+        option = new Option(null, "batch-file", true, "File containing multiple PEM CSRs to enroll in one batch");
+        option.setArgName("path");
+        options.addOption(option);
+
+        options.addOption(null, "async", false, "Return the request without waiting for the certificate to be issued");
+
         option = new Option(null, "serial", true, "Serial number of certificate for renewal");
         option.setArgName("number");
         options.addOption(option);
@@ -184,6 +198,22 @@ public class CACertRequestSubmitCLI extends CommandCLI {
         String csrFilename = cmd.getOptionValue("csr-file");
         String csr = null;
 
+        String batchFilename = cmd.getOptionValue("batch-file");
+
+        if (batchFilename != null && csrFilename != null) {
+            throw new Exception("--batch-file and --csr-file options are mutually exclusive");
+        }
+
+        if (batchFilename != null && request.isRenewal()) {
+            throw new Exception("Renewal requests cannot be submitted in a batch");
+        }
+
+        boolean async = cmd.hasOption("async");
+
+        if (async && request.isRenewal()) {
+            throw new Exception("Renewal requests cannot be submitted asynchronously");
+        }
+
         if (csrFilename != null) {
 
             csr = loadFile(csrFilename);
@@ -284,6 +314,18 @@ public class CACertRequestSubmitCLI extends CommandCLI {
             sessionID = cmd.getOptionValue("session");
         }
 
+        if (batchFilename != null) {
+            submitBatch(cmd, certClient, request, batchFilename, aid, adn);
+            return;
+        }
+
+        if (async) {
+            CertRequestInfos cri = certClient.enrollRequestAsync(request, aid, adn);
+            MainCLI.printMessage("Submitted certificate request");
+            CACertRequestCLI.printCertRequestInfos(cri);
+            return;
+        }
+
         if (sessionID == null) {
             CertRequestInfos cri = certClient.enrollRequest(request, aid, adn);
             MainCLI.printMessage("Submitted certificate request");
@@ -331,6 +373,44 @@ public class CACertRequestSubmitCLI extends CommandCLI {
         }
     }
 
+    /**
+     * Submits the CSRs in the batch file with the request as template,
+     * and writes the enrollment results as NDJSON records.
+     */
+    private void submitBatch(
+            CommandLine cmd,
+            CACertClient certClient,
+            CertEnrollmentRequest request,
+            String batchFilename,
+            AuthorityID aid,
+            X500Name adn) throws Exception {
+
+        CertBatchEnrollmentRequest batch = new CertBatchEnrollmentRequest();
+        batch.setRequest(request);
+
+        Matcher matcher = CSR_PATTERN.matcher(loadFile(batchFilename));
+        while (matcher.find()) {
+            batch.addCSR(matcher.group());
+        }
+
+        if (batch.getCSRs().isEmpty()) {
+            throw new Exception("No CSRs found in " + batchFilename);
+        }
+
+        logger.info("Submitting " + batch.getCSRs().size() + " CSRs");
+
+        String outputFile = cmd.getOptionValue("output-file");
+
+        if (outputFile != null) {
+            try (OutputStream out = new FileOutputStream(outputFile)) {
+                certClient.enrollRequests(batch, aid, adn, out);
+            }
+
+        } else {
+            certClient.enrollRequests(batch, aid, adn, System.out);
+        }
+    }
+
     private String loadFile(String fileName) throws FileNotFoundException {
         try (Scanner scanner = new Scanner(new File(fileName))) {
             return scanner.useDelimiter("\\A").next();